@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) 2020 Authlete, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.authlete.common.benchmarks;
+
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import com.authlete.common.dto.AuthorizationResponse;
+import com.authlete.common.dto.IntrospectionResponse;
+import com.authlete.common.dto.Service;
+import com.authlete.common.util.Utils;
+
+
+/**
+ * Benchmarks of {@link Utils#toJson(Object)} and {@link Utils#fromJson(String, Class)}
+ * with large DTOs.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Benchmark)
+public class JsonBenchmark
+{
+    private AuthorizationResponse mAuthorizationResponse;
+    private IntrospectionResponse mIntrospectionResponse;
+    private Service mService;
+
+
+    @Setup
+    public void setup()
+    {
+        mAuthorizationResponse = Utils.fromJson(Samples.AUTHORIZATION_RESPONSE_JSON, AuthorizationResponse.class);
+        mIntrospectionResponse = Utils.fromJson(Samples.INTROSPECTION_RESPONSE_JSON, IntrospectionResponse.class);
+        mService               = Utils.fromJson(Samples.SERVICE_JSON, Service.class);
+    }
+
+
+    @Benchmark
+    public AuthorizationResponse fromJson_AuthorizationResponse()
+    {
+        return Utils.fromJson(Samples.AUTHORIZATION_RESPONSE_JSON, AuthorizationResponse.class);
+    }
+
+
+    @Benchmark
+    public AuthorizationResponse fromJson_AuthorizationResponse_lazy()
+    {
+        return AuthorizationResponse.fromJson(Samples.AUTHORIZATION_RESPONSE_JSON, true);
+    }
+
+
+    @Benchmark
+    public IntrospectionResponse fromJson_IntrospectionResponse()
+    {
+        return Utils.fromJson(Samples.INTROSPECTION_RESPONSE_JSON, IntrospectionResponse.class);
+    }
+
+
+    @Benchmark
+    public Service fromJson_Service()
+    {
+        return Utils.fromJson(Samples.SERVICE_JSON, Service.class);
+    }
+
+
+    @Benchmark
+    public String toJson_AuthorizationResponse()
+    {
+        return Utils.toJson(mAuthorizationResponse);
+    }
+
+
+    @Benchmark
+    public String toJson_IntrospectionResponse()
+    {
+        return Utils.toJson(mIntrospectionResponse);
+    }
+
+
+    @Benchmark
+    public String toJson_Service()
+    {
+        return Utils.toJson(mService);
+    }
+}
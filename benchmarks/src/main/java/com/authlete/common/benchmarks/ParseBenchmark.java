@@ -0,0 +1,90 @@
+/*
+ * Copyright (C) 2020 Authlete, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.authlete.common.benchmarks;
+
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import com.authlete.common.assurance.constraint.VerifiedClaimsContainerConstraint;
+import com.authlete.common.dto.AuthzDetails;
+import com.authlete.common.types.ClientAuthMethod;
+import com.authlete.common.types.GrantType;
+import com.authlete.common.types.JWSAlg;
+import com.authlete.common.types.ResponseType;
+import com.authlete.common.web.BasicCredentials;
+import com.authlete.common.web.BearerToken;
+
+
+/**
+ * Benchmarks of parsers: {@code AuthzDetails.fromJson}, {@code
+ * VerifiedClaimsContainerConstraint.fromJson}, {@code parse} methods of
+ * enums, {@code BearerToken.parse} and {@code BasicCredentials.parse}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Benchmark)
+public class ParseBenchmark
+{
+    @Benchmark
+    public AuthzDetails AuthzDetails_fromJson()
+    {
+        return AuthzDetails.fromJson(Samples.AUTHZ_DETAILS_JSON);
+    }
+
+
+    @Benchmark
+    public VerifiedClaimsContainerConstraint VerifiedClaimsContainerConstraint_fromJson()
+    {
+        return VerifiedClaimsContainerConstraint.fromJson(Samples.VERIFIED_CLAIMS_JSON);
+    }
+
+
+    @Benchmark
+    public void enum_parse(Blackhole blackhole)
+    {
+        blackhole.consume(GrantType.parse("authorization_code"));
+        blackhole.consume(GrantType.parse("urn:ietf:params:oauth:grant-type:device_code"));
+        blackhole.consume(ResponseType.parse("code id_token"));
+        blackhole.consume(JWSAlg.parse("ES256"));
+        blackhole.consume(ClientAuthMethod.parse("private_key_jwt"));
+    }
+
+
+    @Benchmark
+    public String BearerToken_parse()
+    {
+        return BearerToken.parse(Samples.BEARER_AUTHORIZATION);
+    }
+
+
+    @Benchmark
+    public BasicCredentials BasicCredentials_parse()
+    {
+        return BasicCredentials.parse(Samples.BASIC_AUTHORIZATION);
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) 2020 Authlete, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.authlete.common.benchmarks;
+
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import com.authlete.common.util.UserCodeGenerator;
+import com.authlete.common.web.URLCoder;
+
+
+/**
+ * Benchmarks of {@code URLCoder.formUrlEncode} and {@code UserCodeGenerator.generate}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Benchmark)
+public class WebBenchmark
+{
+    private Map<String, String[]> mParameters;
+    private UserCodeGenerator mUserCodeGenerator;
+
+
+    @Setup
+    public void setup()
+    {
+        mParameters = new LinkedHashMap<String, String[]>();
+        mParameters.put("response_type", new String[] { "code" });
+        mParameters.put("client_id", new String[] { "4326385670" });
+        mParameters.put("redirect_uri", new String[] { "https://client.example.com/cb?a=b&c=d" });
+        mParameters.put("scope", new String[] { "openid profile email" });
+        mParameters.put("state", new String[] { "af0ifjsldkj" });
+        mParameters.put("code_challenge", new String[] { "E9Melhoa2OwvFrEMTJguCHaoeK1t8URWbuGJSstw-cM" });
+
+        mUserCodeGenerator = new UserCodeGenerator();
+    }
+
+
+    @Benchmark
+    public String URLCoder_formUrlEncode()
+    {
+        return URLCoder.formUrlEncode(mParameters);
+    }
+
+
+    @Benchmark
+    public String UserCodeGenerator_generate()
+    {
+        return mUserCodeGenerator.generate();
+    }
+
+
+    @Benchmark
+    @Threads(4)
+    public String UserCodeGenerator_generate_contended()
+    {
+        return mUserCodeGenerator.generate();
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2020 Authlete, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.authlete.common.api;
+
+
+import com.authlete.common.dto.AccessToken;
+import com.authlete.common.dto.TokenListResponse;
+
+
+/**
+ * Iterator over all the access tokens which match the conditions, built
+ * on top of {@link AuthleteApi#getTokenList(String, String, int, int)}.
+ *
+ * <pre style="border: solid 1px black; padding: 0.5em;">
+ * AccessTokenIterator it = new AccessTokenIterator(api, clientId, null);
+ * it.{@link #setPrefetchWindow(int) setPrefetchWindow}(4);
+ *
+ * try
+ * {
+ *     while (it.hasNext())
+ *     {
+ *         AccessToken token = it.next();
+ *         ...
+ *     }
+ * }
+ * finally
+ * {
+ *     it.close();
+ * }
+ * </pre>
+ *
+ * @see PagedIterator
+ *
+ * @since 2.76
+ */
+public class AccessTokenIterator extends PagedIterator<AccessToken>
+{
+    private final AuthleteApi mApi;
+    private final String mClientIdentifier;
+    private final String mSubject;
+
+
+    /**
+     * Constructor to iterate over all the access tokens of the service.
+     *
+     * @param api
+     *         An implementation of {@link AuthleteApi}.
+     */
+    public AccessTokenIterator(AuthleteApi api)
+    {
+        this(api, null, null);
+    }
+
+
+    /**
+     * Constructor with conditions.
+     *
+     * @param api
+     *         An implementation of {@link AuthleteApi}.
+     *
+     * @param clientIdentifier
+     *         Client ID or client ID alias. {@code null} not to filter
+     *         access tokens by client.
+     *
+     * @param subject
+     *         Subject of the resource owner. {@code null} not to filter
+     *         access tokens by subject.
+     */
+    public AccessTokenIterator(AuthleteApi api, String clientIdentifier, String subject)
+    {
+        if (api == null)
+        {
+            throw new IllegalArgumentException("api is null.");
+        }
+
+        mApi              = api;
+        mClientIdentifier = clientIdentifier;
+        mSubject          = subject;
+    }
+
+
+    @Override
+    protected Page<AccessToken> fetch(int start, int end) throws AuthleteApiException
+    {
+        TokenListResponse response =
+                mApi.getTokenList(mClientIdentifier, mSubject, start, end);
+
+        return new Page<AccessToken>(response.getAccessTokens(), response.getTotalCount());
+    }
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright (C) 2020 Authlete, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.authlete.common.api;
+
+
+import com.authlete.common.web.AuthorizationHeader;
+
+
+/**
+ * Provider of the access token with which {@link AuthleteApi}
+ * implementations call Authlete APIs.
+ *
+ * <p>
+ * {@link #getAuthorization()} is called for every API call, so
+ * implementations should return a prebuilt header and must not block
+ * unless no valid token is available. See {@link
+ * RefreshingAccessTokenProvider}.
+ * </p>
+ *
+ * @see Settings#setServiceAccessTokenProvider(AccessTokenProvider)
+ * @see Settings#setServiceOwnerAccessTokenProvider(AccessTokenProvider)
+ *
+ * @since 2.76
+ */
+public interface AccessTokenProvider
+{
+    /**
+     * Get the {@code Authorization} header which carries the current
+     * access token.
+     *
+     * @return
+     *         {@code Authorization} header whose scheme is {@code Bearer}
+     *         or {@code DPoP}.
+     *
+     * @throws AuthleteApiException
+     *         No valid access token is available.
+     */
+    AuthorizationHeader getAuthorization() throws AuthleteApiException;
+}
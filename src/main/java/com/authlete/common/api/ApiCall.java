@@ -0,0 +1,351 @@
+/*
+ * Copyright (C) 2020 Authlete, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.authlete.common.api;
+
+
+import java.io.Serializable;
+import java.util.Map;
+
+
+/**
+ * Information about an API call made by {@link AuthleteApiImpl}.
+ *
+ * <p>
+ * Credentials are not included. Only which of the service owner
+ * credentials and the service credentials was used is recorded. Note that
+ * request and response bodies may contain sensitive data such as access
+ * tokens and client secrets. {@link TrafficRecorder} redacts them before
+ * writing, but other listeners receive the bodies as they are.
+ * </p>
+ *
+ * @see ApiCallListener
+ * @see TrafficRecorder
+ * @see TrafficReplayer
+ *
+ * @since 2.76
+ */
+public class ApiCall implements Serializable
+{
+    private static final long serialVersionUID = 1L;
+
+
+    private long timestamp;
+    private long duration;
+    private String method;
+    private String path;
+    private Map<String, String> query;
+    private boolean serviceOwner;
+    private String request;
+    private int status;
+    private String response;
+    private String error;
+
+
+    /**
+     * Get the time at which the API call started.
+     *
+     * @return
+     *         The time in milliseconds since the Unix epoch.
+     */
+    public long getTimestamp()
+    {
+        return timestamp;
+    }
+
+
+    /**
+     * Set the time at which the API call started.
+     *
+     * @param timestamp
+     *         The time in milliseconds since the Unix epoch.
+     *
+     * @return
+     *         {@code this} object.
+     */
+    public ApiCall setTimestamp(long timestamp)
+    {
+        this.timestamp = timestamp;
+
+        return this;
+    }
+
+
+    /**
+     * Get the duration of the API call.
+     *
+     * @return
+     *         The duration in microseconds.
+     */
+    public long getDuration()
+    {
+        return duration;
+    }
+
+
+    /**
+     * Set the duration of the API call.
+     *
+     * @param duration
+     *         The duration in microseconds.
+     *
+     * @return
+     *         {@code this} object.
+     */
+    public ApiCall setDuration(long duration)
+    {
+        this.duration = duration;
+
+        return this;
+    }
+
+
+    /**
+     * Get the HTTP method.
+     *
+     * @return
+     *         The HTTP method such as {@code "POST"}.
+     */
+    public String getMethod()
+    {
+        return method;
+    }
+
+
+    /**
+     * Set the HTTP method.
+     *
+     * @param method
+     *         The HTTP method such as {@code "POST"}.
+     *
+     * @return
+     *         {@code this} object.
+     */
+    public ApiCall setMethod(String method)
+    {
+        this.method = method;
+
+        return this;
+    }
+
+
+    /**
+     * Get the path of the API.
+     *
+     * @return
+     *         The path such as {@code "/api/auth/introspection"}.
+     */
+    public String getPath()
+    {
+        return path;
+    }
+
+
+    /**
+     * Set the path of the API.
+     *
+     * @param path
+     *         The path such as {@code "/api/auth/introspection"}.
+     *
+     * @return
+     *         {@code this} object.
+     */
+    public ApiCall setPath(String path)
+    {
+        this.path = path;
+
+        return this;
+    }
+
+
+    /**
+     * Get the query parameters.
+     *
+     * @return
+     *         The query parameters. {@code null} if the API call did not
+     *         have any.
+     */
+    public Map<String, String> getQuery()
+    {
+        return query;
+    }
+
+
+    /**
+     * Set the query parameters.
+     *
+     * @param query
+     *         The query parameters.
+     *
+     * @return
+     *         {@code this} object.
+     */
+    public ApiCall setQuery(Map<String, String> query)
+    {
+        this.query = query;
+
+        return this;
+    }
+
+
+    /**
+     * Get the flag indicating whether the service owner credentials were
+     * used.
+     *
+     * @return
+     *         {@code true} if the service owner credentials were used.
+     *         {@code false} if the service credentials were used.
+     */
+    public boolean isServiceOwner()
+    {
+        return serviceOwner;
+    }
+
+
+    /**
+     * Set the flag indicating whether the service owner credentials were
+     * used.
+     *
+     * @param serviceOwner
+     *         {@code true} if the service owner credentials were used.
+     *
+     * @return
+     *         {@code this} object.
+     */
+    public ApiCall setServiceOwner(boolean serviceOwner)
+    {
+        this.serviceOwner = serviceOwner;
+
+        return this;
+    }
+
+
+    /**
+     * Get the request body.
+     *
+     * @return
+     *         The request body in JSON. {@code null} if the API call did
+     *         not have a request body.
+     */
+    public String getRequest()
+    {
+        return request;
+    }
+
+
+    /**
+     * Set the request body.
+     *
+     * @param request
+     *         The request body in JSON.
+     *
+     * @return
+     *         {@code this} object.
+     */
+    public ApiCall setRequest(String request)
+    {
+        this.request = request;
+
+        return this;
+    }
+
+
+    /**
+     * Get the HTTP status code of the response.
+     *
+     * @return
+     *         The HTTP status code. 0 if no response was received.
+     */
+    public int getStatus()
+    {
+        return status;
+    }
+
+
+    /**
+     * Set the HTTP status code of the response.
+     *
+     * @param status
+     *         The HTTP status code.
+     *
+     * @return
+     *         {@code this} object.
+     */
+    public ApiCall setStatus(int status)
+    {
+        this.status = status;
+
+        return this;
+    }
+
+
+    /**
+     * Get the response body.
+     *
+     * @return
+     *         The response body. {@code null} if not available.
+     */
+    public String getResponse()
+    {
+        return response;
+    }
+
+
+    /**
+     * Set the response body.
+     *
+     * @param response
+     *         The response body.
+     *
+     * @return
+     *         {@code this} object.
+     */
+    public ApiCall setResponse(String response)
+    {
+        this.response = response;
+
+        return this;
+    }
+
+
+    /**
+     * Get the error message of the API call.
+     *
+     * @return
+     *         The message of the {@link AuthleteApiException} thrown by
+     *         the API call. {@code null} if the API call succeeded.
+     */
+    public String getError()
+    {
+        return error;
+    }
+
+
+    /**
+     * Set the error message of the API call.
+     *
+     * @param error
+     *         The error message.
+     *
+     * @return
+     *         {@code this} object.
+     */
+    public ApiCall setError(String error)
+    {
+        this.error = error;
+
+        return this;
+    }
+}
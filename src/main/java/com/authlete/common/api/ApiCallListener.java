@@ -0,0 +1,43 @@
+/*
+ * Copyright (C) 2020 Authlete, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.authlete.common.api;
+
+
+/**
+ * Listener of API calls made by {@link AuthleteApiImpl}.
+ *
+ * <p>
+ * A listener is set by {@link Settings#setApiCallListener(ApiCallListener)}
+ * and notified after each call, whether successful or not, in the thread
+ * which made the call. Implementations must be thread-safe and should
+ * return quickly because the API call does not return until the listener
+ * returns. Exceptions thrown by the listener are ignored.
+ * </p>
+ *
+ * @see TrafficRecorder
+ *
+ * @since 2.76
+ */
+public interface ApiCallListener
+{
+    /**
+     * Called when an API call has finished.
+     *
+     * @param call
+     *         The information about the API call.
+     */
+    void onApiCall(ApiCall call);
+}
@@ -0,0 +1,257 @@
+/*
+ * Copyright (C) 2020 Authlete, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.authlete.common.api;
+
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonPrimitive;
+
+
+/**
+ * Redactor of credentials in {@link ApiCall}s.
+ *
+ * <p>
+ * The values of the following are replaced with {@code "REDACTED"} in
+ * request and response bodies.
+ * </p>
+ *
+ * <ul>
+ *   <li>JSON members {@code clientSecret}, {@code accessToken},
+ *       {@code refreshToken}, {@code idToken}, {@code token} (e.g. of
+ *       introspection and userinfo requests), {@code password},
+ *       {@code codeVerifier}, {@code dpop} and {@code jwks}.
+ *   <li>JSON members and headers ({@code {"key":..., "value":...}}) named
+ *       {@code Authorization}.
+ *   <li>Form parameters {@code client_secret}, {@code client_assertion},
+ *       {@code code}, {@code code_verifier}, {@code refresh_token},
+ *       {@code token}, {@code password}, {@code device_code},
+ *       {@code assertion}, {@code subject_token} and {@code actor_token}
+ *       in the {@code parameters} member.
+ * </ul>
+ *
+ * <p>
+ * Bodies which are not JSON are kept as they are.
+ * </p>
+ *
+ * @since 2.76
+ */
+final class ApiCallRedactor
+{
+    static final String REDACTED = "REDACTED";
+
+
+    private static final Set<String> JSON_KEYS = new HashSet<String>(Arrays.asList(
+            "clientSecret", "accessToken", "refreshToken", "idToken", "token",
+            "password", "codeVerifier", "dpop", "jwks"));
+
+    private static final Set<String> FORM_KEYS = new HashSet<String>(Arrays.asList(
+            "client_secret", "client_assertion", "code", "code_verifier", "refresh_token",
+            "token", "password", "device_code", "assertion", "subject_token", "actor_token"));
+
+    private static final String AUTHORIZATION = "Authorization";
+    private static final String PARAMETERS    = "parameters";
+
+
+    // Keep the bodies as close to the original as possible.
+    private static final Gson GSON = new GsonBuilder().disableHtmlEscaping().create();
+
+
+    private ApiCallRedactor()
+    {
+    }
+
+
+    /**
+     * Create a copy of the API call whose request and response bodies do
+     * not contain credentials. The given API call is not modified.
+     */
+    static ApiCall redact(ApiCall call)
+    {
+        return new ApiCall()
+            .setTimestamp(call.getTimestamp())
+            .setDuration(call.getDuration())
+            .setMethod(call.getMethod())
+            .setPath(call.getPath())
+            .setQuery(call.getQuery())
+            .setServiceOwner(call.isServiceOwner())
+            .setRequest(redactJson(call.getRequest()))
+            .setStatus(call.getStatus())
+            .setResponse(redactJson(call.getResponse()))
+            .setError(call.getError());
+    }
+
+
+    static String redactJson(String json)
+    {
+        if (json == null || json.isEmpty())
+        {
+            return json;
+        }
+
+        JsonElement element;
+
+        try
+        {
+            element = new JsonParser().parse(json);
+        }
+        catch (JsonParseException e)
+        {
+            // Not JSON.
+            return json;
+        }
+
+        if (redact(element) == false)
+        {
+            // Nothing to redact. Keep the original body.
+            return json;
+        }
+
+        return GSON.toJson(element);
+    }
+
+
+    private static boolean redact(JsonElement element)
+    {
+        if (element.isJsonArray())
+        {
+            boolean redacted = false;
+
+            for (JsonElement child : element.getAsJsonArray())
+            {
+                redacted |= redact(child);
+            }
+
+            return redacted;
+        }
+
+        if (element.isJsonObject())
+        {
+            return redact(element.getAsJsonObject());
+        }
+
+        return false;
+    }
+
+
+    private static boolean redact(JsonObject object)
+    {
+        boolean redacted = false;
+
+        // A header such as {"key":"Authorization","value":"Bearer ..."}.
+        if (isAuthorizationHeader(object))
+        {
+            object.addProperty("value", REDACTED);
+            redacted = true;
+        }
+
+        for (Map.Entry<String, JsonElement> entry : object.entrySet())
+        {
+            String      key   = entry.getKey();
+            JsonElement value = entry.getValue();
+
+            if (value.isJsonNull())
+            {
+                continue;
+            }
+
+            if (JSON_KEYS.contains(key) || AUTHORIZATION.equalsIgnoreCase(key))
+            {
+                entry.setValue(new JsonPrimitive(REDACTED));
+                redacted = true;
+            }
+            else if (PARAMETERS.equals(key) && isString(value))
+            {
+                String parameters = value.getAsString();
+                String form       = redactForm(parameters);
+
+                if (form != parameters)
+                {
+                    entry.setValue(new JsonPrimitive(form));
+                    redacted = true;
+                }
+            }
+            else
+            {
+                redacted |= redact(value);
+            }
+        }
+
+        return redacted;
+    }
+
+
+    private static boolean isAuthorizationHeader(JsonObject object)
+    {
+        JsonElement key = object.get("key");
+
+        return key != null && isString(key) && object.has("value")
+            && AUTHORIZATION.equalsIgnoreCase(key.getAsString());
+    }
+
+
+    private static boolean isString(JsonElement element)
+    {
+        return element.isJsonPrimitive() && element.getAsJsonPrimitive().isString();
+    }
+
+
+    /**
+     * Redact form parameters. The given string itself is returned when
+     * nothing is redacted.
+     */
+    static String redactForm(String form)
+    {
+        StringBuilder sb = new StringBuilder(form.length());
+        boolean redacted = false;
+
+        String[] pairs = form.split("&", -1);
+
+        for (int i = 0; i < pairs.length; i++)
+        {
+            String pair = pairs[i];
+
+            if (i != 0)
+            {
+                sb.append('&');
+            }
+
+            int    eq   = pair.indexOf('=');
+            String name = (0 <= eq) ? pair.substring(0, eq) : pair;
+
+            if (0 <= eq && FORM_KEYS.contains(name))
+            {
+                sb.append(name).append('=').append(REDACTED);
+                redacted = true;
+            }
+            else
+            {
+                sb.append(pair);
+            }
+        }
+
+        return redacted ? sb.toString() : form;
+    }
+}
@@ -17,8 +17,16 @@ package com.authlete.common.api;
 
 
 import java.lang.reflect.Constructor;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
 import com.authlete.common.conf.AuthleteConfiguration;
+import com.authlete.common.conf.AuthleteEnvConfiguration;
 import com.authlete.common.conf.AuthletePropertiesConfiguration;
+import com.authlete.common.conf.AuthleteSystemPropertyConfiguration;
+import com.authlete.common.conf.ReloadablePropertiesConfiguration;
 
 
 /**
@@ -28,6 +36,63 @@ import com.authlete.common.conf.AuthletePropertiesConfiguration;
  */
 public class AuthleteApiFactory
 {
+    /**
+     * The system property key to make {@link #getDefaultApi()} use a
+     * configuration file which is reloaded when it is modified ({@code
+     * authlete.configuration.reload}). When the value of this system
+     * property is {@code "true"}, {@link ReloadablePropertiesConfiguration}
+     * is used instead of {@link AuthletePropertiesConfiguration}.
+     *
+     * @since 2.76
+     */
+    public static final String SYSTEM_PROPERTY_AUTHLETE_CONFIGURATION_RELOAD =
+        "authlete.configuration.reload";
+
+
+    /**
+     * The system property key to specify the {@link AuthleteApi}
+     * implementation which {@link #create(AuthleteConfiguration)} uses
+     * ({@code authlete.api.impl}). The value is a fully-qualified class
+     * name such as {@code "com.authlete.common.api.AuthleteApiImpl"}.
+     *
+     * @since 2.76
+     */
+    public static final String SYSTEM_PROPERTY_AUTHLETE_API_IMPL =
+        "authlete.api.impl";
+
+
+    /**
+     * The system property key to specify where {@link #getDefaultApi()}
+     * reads the configuration from ({@code authlete.configuration.source}).
+     * If the system property is not set, the environment variable {@code
+     * AUTHLETE_CONFIGURATION_SOURCE} is referred to. The values are:
+     *
+     * <dl>
+     *   <dt>{@code "env"}</dt>
+     *   <dd>{@link AuthleteEnvConfiguration}, environment variables.</dd>
+     *
+     *   <dt>{@code "system"}</dt>
+     *   <dd>{@link AuthleteSystemPropertyConfiguration}, system properties.</dd>
+     *
+     *   <dt>{@code "file"} (default)</dt>
+     *   <dd>{@link AuthletePropertiesConfiguration}, a configuration file
+     *       searched for in the file system and in the classpath.</dd>
+     * </dl>
+     *
+     * @since 2.76
+     */
+    public static final String SYSTEM_PROPERTY_AUTHLETE_CONFIGURATION_SOURCE =
+        "authlete.configuration.source";
+
+
+    /**
+     * The environment variable referred to when the system property
+     * {@link #SYSTEM_PROPERTY_AUTHLETE_CONFIGURATION_SOURCE} is not set.
+     */
+    private static final String ENV_KEY_AUTHLETE_CONFIGURATION_SOURCE =
+        "AUTHLETE_CONFIGURATION_SOURCE";
+
+
     /**
      * An implementation of {@link AuthleteApi} using JAX-RS.
      * This implementation exists in authlete/authlete-java-jaxrs.
@@ -39,22 +104,19 @@ public class AuthleteApiFactory
      * An implementation of {@link AuthleteApi} using {@link java.net.HttpURLConnection HttpURLConnection}.
      * This implementation exists in authlete/authlete-java-common.
      */
-    private static final String IMPL_HTTP_URL_CONNECTION = "com.authlete.common.api.AuthleteApiImpl";
+    private static final String IMPL_HTTP_URL_CONNECTION = AuthleteApiImplProvider.IMPLEMENTATION_NAME;
 
 
     /**
-     * Known implementations of AuthleteApi.
+     * The default {@link AuthleteApi} instance.
      */
-    private static final String[] sKnownImpls = {
-        IMPL_JAX_RS,
-        IMPL_HTTP_URL_CONNECTION
-    };
+    private static volatile AuthleteApi sDefaultApi;
 
 
     /**
-     * The default {@link AuthleteApi} instance.
+     * Providers found by {@link ServiceLoader}, except the built-in one.
      */
-    private static volatile AuthleteApi sDefaultApi;
+    private static volatile List<AuthleteApiProvider> sProviders;
 
 
     private AuthleteApiFactory()
@@ -66,21 +128,29 @@ public class AuthleteApiFactory
      * Create an instance of {@link AuthleteApi}.
      *
      * <p>
-     * This method repeats to call {@link #create(AuthleteConfiguration, String)}
-     * until one of the known classes is successfully instantiated.
-     * </p>
-     *
-     * <p>
-     * The classes listed below are the ones that the current implementation knows.
+     * If the system property {@link #SYSTEM_PROPERTY_AUTHLETE_API_IMPL
+     * authlete.api.impl} is set, the implementation is created by the
+     * {@link AuthleteApiProvider} for the class, or by {@link
+     * #create(AuthleteConfiguration, String)} if no provider is found.
+     * Otherwise, implementations are tried in the following order until
+     * one of them is successfully instantiated.
      * </p>
      *
      * <ol>
+     * <li>Implementations whose {@link AuthleteApiProvider} is found by
+     *     {@link ServiceLoader}.
      * <li><code>com.authlete.jaxrs.api.AuthleteApiImpl</code><br/>
-     *     (using JAX-RS 2.0 API, contained in <code>com.authlete:authlete-java-jaxrs</code>)
+     *     (using JAX-RS 2.0 API, contained in <code>com.authlete:authlete-java-jaxrs</code>),
+     *     if the class exists.
      * <li><code>com.authlete.common.api.AuthleteApiImpl</code><br/>
      *     (using {@link java.net.HttpURLConnection HttpURLConnection}, contained in <code>com.authlete:authlete-java-common</code> since version 2.0)
      * </ol>
      *
+     * <p>
+     * Setting the system property avoids probing, and the built-in
+     * implementation is created without reflection.
+     * </p>
+     *
      * @param configuration
      *         Authlete configuration.
      *
@@ -88,14 +158,42 @@ public class AuthleteApiFactory
      *         An instance of {@link AuthleteApi}. If none of the known classes
      *         that implement {@code AuthleteApi} interface was successfully
      *         instantiated, {@code null} is returned.
+     *
+     * @throws IllegalArgumentException
+     *         The implementation specified by the system property cannot
+     *         be created. See {@link #create(AuthleteConfiguration, String)}.
      */
     public static AuthleteApi create(AuthleteConfiguration configuration)
     {
-        for (String className : sKnownImpls)
+        String preferred = System.getProperty(SYSTEM_PROPERTY_AUTHLETE_API_IMPL);
+
+        if (preferred != null && preferred.length() != 0)
+        {
+            return createPreferred(configuration, preferred);
+        }
+
+        List<AuthleteApiProvider> providers = getProviders();
+
+        for (AuthleteApiProvider provider : providers)
         {
             try
             {
-                return create(configuration, className);
+                return provider.create(configuration);
+            }
+            catch (RuntimeException e)
+            {
+                // Ignore.
+            }
+        }
+
+        // The JAX-RS implementation does not provide an AuthleteApiProvider.
+        // Check the existence of the class file instead of catching
+        // ClassNotFoundException.
+        if (findProvider(providers, IMPL_JAX_RS) == null && classExists(IMPL_JAX_RS))
+        {
+            try
+            {
+                return create(configuration, IMPL_JAX_RS);
             }
             catch (Exception e)
             {
@@ -103,11 +201,111 @@ public class AuthleteApiFactory
             }
         }
 
-        // No implementation was found.
+        try
+        {
+            return new AuthleteApiImplProvider().create(configuration);
+        }
+        catch (RuntimeException e)
+        {
+            // No implementation was found.
+            return null;
+        }
+    }
+
+
+    private static AuthleteApi createPreferred(AuthleteConfiguration configuration, String className)
+    {
+        if (configuration == null)
+        {
+            throw new IllegalArgumentException("configuration is null.");
+        }
+
+        if (IMPL_HTTP_URL_CONNECTION.equals(className))
+        {
+            return new AuthleteApiImplProvider().create(configuration);
+        }
+
+        AuthleteApiProvider provider = findProvider(getProviders(), className);
+
+        if (provider != null)
+        {
+            return provider.create(configuration);
+        }
+
+        return create(configuration, className);
+    }
+
+
+    private static List<AuthleteApiProvider> getProviders()
+    {
+        List<AuthleteApiProvider> providers = sProviders;
+
+        if (providers != null)
+        {
+            return providers;
+        }
+
+        providers = new ArrayList<AuthleteApiProvider>();
+
+        Iterator<AuthleteApiProvider> it =
+                ServiceLoader.load(AuthleteApiProvider.class).iterator();
+
+        while (true)
+        {
+            try
+            {
+                if (it.hasNext() == false)
+                {
+                    break;
+                }
+
+                AuthleteApiProvider provider = it.next();
+
+                // The built-in implementation is tried last.
+                if (IMPL_HTTP_URL_CONNECTION.equals(provider.getImplementationName()) == false)
+                {
+                    providers.add(provider);
+                }
+            }
+            catch (ServiceConfigurationError e)
+            {
+                // A broken provider. Skip it.
+            }
+        }
+
+        sProviders = providers;
+
+        return providers;
+    }
+
+
+    private static AuthleteApiProvider findProvider(List<AuthleteApiProvider> providers, String className)
+    {
+        for (AuthleteApiProvider provider : providers)
+        {
+            if (className.equals(provider.getImplementationName()))
+            {
+                return provider;
+            }
+        }
+
         return null;
     }
 
 
+    private static boolean classExists(String className)
+    {
+        ClassLoader loader = AuthleteApiFactory.class.getClassLoader();
+
+        if (loader == null)
+        {
+            loader = ClassLoader.getSystemClassLoader();
+        }
+
+        return loader.getResource(className.replace('.', '/') + ".class") != null;
+    }
+
+
     /**
      * Create an instance of {@link AuthleteApi} from the specified class.
      *
@@ -206,6 +404,21 @@ public class AuthleteApiFactory
      * the classpath are searched for the configuration file in this order.
      * </p>
      *
+     * <p>
+     * If the system property {@link #SYSTEM_PROPERTY_AUTHLETE_CONFIGURATION_SOURCE
+     * authlete.configuration.source} (or the environment variable {@code
+     * AUTHLETE_CONFIGURATION_SOURCE}) is {@code "env"} or {@code "system"},
+     * the configuration is read from environment variables or system
+     * properties, respectively, without searching for a file.
+     * </p>
+     *
+     * <p>
+     * If the system property {@code authlete.configuration.reload} is
+     * {@code "true"} and the configuration file exists in the file system,
+     * the file is loaded by {@link ReloadablePropertiesConfiguration} and
+     * the cached instance follows changes of the file.
+     * </p>
+     *
      * @return
      *         An instance of {@code AuthleteApi}.
      *
@@ -226,7 +439,7 @@ public class AuthleteApiFactory
             }
 
             // Load an Authlete configuration file.
-            AuthleteConfiguration ac = new AuthletePropertiesConfiguration();
+            AuthleteConfiguration ac = createDefaultConfiguration();
 
             // Create an AuthleteApi instance using the configuration.
             sDefaultApi = create(ac);
@@ -234,4 +447,38 @@ public class AuthleteApiFactory
             return sDefaultApi;
         }
     }
+
+
+    private static AuthleteConfiguration createDefaultConfiguration()
+    {
+        String source = System.getProperty(SYSTEM_PROPERTY_AUTHLETE_CONFIGURATION_SOURCE);
+
+        if (source == null)
+        {
+            source = System.getenv(ENV_KEY_AUTHLETE_CONFIGURATION_SOURCE);
+        }
+
+        if ("env".equals(source))
+        {
+            return new AuthleteEnvConfiguration();
+        }
+        else if ("system".equals(source))
+        {
+            return new AuthleteSystemPropertyConfiguration();
+        }
+
+        if (Boolean.getBoolean(SYSTEM_PROPERTY_AUTHLETE_CONFIGURATION_RELOAD))
+        {
+            try
+            {
+                return new ReloadablePropertiesConfiguration();
+            }
+            catch (IllegalArgumentException e)
+            {
+                // The configuration file is not in the file system.
+            }
+        }
+
+        return new AuthletePropertiesConfiguration();
+    }
 }
@@ -16,20 +16,23 @@
 package com.authlete.common.api;
 
 
-import java.io.BufferedInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
+import java.lang.ref.WeakReference;
 import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.URL;
-import java.net.URLEncoder;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 import com.authlete.common.conf.AuthleteConfiguration;
+import com.authlete.common.conf.ConfigurationListener;
+import com.authlete.common.conf.ReloadableConfiguration;
 import com.authlete.common.dto.ApiResponse;
 import com.authlete.common.dto.AuthorizationFailRequest;
 import com.authlete.common.dto.AuthorizationFailResponse;
@@ -90,8 +93,11 @@ import com.authlete.common.dto.UserInfoIssueRequest;
 import com.authlete.common.dto.UserInfoIssueResponse;
 import com.authlete.common.dto.UserInfoRequest;
 import com.authlete.common.dto.UserInfoResponse;
+import com.authlete.common.util.FieldMask;
 import com.authlete.common.util.Utils;
+import com.authlete.common.web.AuthorizationHeader;
 import com.authlete.common.web.BasicCredentials;
+import com.authlete.common.web.URLCoder;
 
 
 /**
@@ -106,6 +112,15 @@ class AuthleteApiImpl implements AuthleteApi
     private static String UTF_8 = "UTF-8";
 
 
+    /**
+     * Buffers to read response bodies, shared by all the instances. The
+     * number of pooled buffers is bounded regardless of the number of
+     * threads, and a buffer is allocated when the pool is empty.
+     */
+    private static final BlockingQueue<byte[]> sBuffers = new ArrayBlockingQueue<byte[]>(32);
+    private static final int BUFFER_SIZE = 8192;
+
+
     /** HTTP methods used in this source code. */
     private enum HttpMethod
     {
@@ -165,10 +180,57 @@ class AuthleteApiImpl implements AuthleteApi
     private static final String DEVICE_VERIFICATION_API_PATH           = "/api/device/verification";
     private static final String PUSHED_AUTH_REQ_API_PATH               = "/api/pushed_auth_req";
 
+    // URLs whose fixed parts are prepared once. See UrlTemplate.
+    private static final UrlTemplate AUTH_TOKEN_GET_LIST_BY_SUBJECT_URL       = new UrlTemplate(AUTH_TOKEN_GET_LIST_API_PATH, "clientIdentifier", "subject");
+    private static final UrlTemplate AUTH_TOKEN_GET_LIST_BY_RANGE_URL         = new UrlTemplate(AUTH_TOKEN_GET_LIST_API_PATH, "start", "end");
+    private static final UrlTemplate AUTH_TOKEN_GET_LIST_URL                  = new UrlTemplate(AUTH_TOKEN_GET_LIST_API_PATH, "clientIdentifier", "subject", "start", "end");
+    private static final UrlTemplate SERVICE_DELETE_URL                       = new UrlTemplate(SERVICE_DELETE_API_PATH);
+    private static final UrlTemplate SERVICE_GET_URL                          = new UrlTemplate(SERVICE_GET_API_PATH);
+    private static final UrlTemplate SERVICE_GET_LIST_BY_RANGE_URL            = new UrlTemplate(SERVICE_GET_LIST_API_PATH, "start", "end");
+    private static final UrlTemplate SERVICE_UPDATE_URL                       = new UrlTemplate(SERVICE_UPDATE_API_PATH);
+    private static final UrlTemplate SERVICE_JWKS_GET_URL                     = new UrlTemplate(SERVICE_JWKS_GET_API_PATH, "pretty", "includePrivateKeys");
+    private static final UrlTemplate SERVICE_CONFIGURATION_URL                = new UrlTemplate(SERVICE_CONFIGURATION_API_PATH, "pretty");
+    private static final UrlTemplate CLIENT_DELETE_URL                        = new UrlTemplate(CLIENT_DELETE_API_PATH);
+    private static final UrlTemplate CLIENT_GET_URL                           = new UrlTemplate(CLIENT_GET_API_PATH);
+    private static final UrlTemplate CLIENT_GET_LIST_BY_DEVELOPER_URL         = new UrlTemplate(CLIENT_GET_LIST_API_PATH, "developer");
+    private static final UrlTemplate CLIENT_GET_LIST_BY_RANGE_URL             = new UrlTemplate(CLIENT_GET_LIST_API_PATH, "start", "end");
+    private static final UrlTemplate CLIENT_GET_LIST_URL                      = new UrlTemplate(CLIENT_GET_LIST_API_PATH, "developer", "start", "end");
+    private static final UrlTemplate CLIENT_SECRET_REFRESH_URL                = new UrlTemplate(CLIENT_SECRET_REFRESH_API_PATH);
+    private static final UrlTemplate CLIENT_SECRET_UPDATE_URL                 = new UrlTemplate(CLIENT_SECRET_UPDATE_API_PATH);
+    private static final UrlTemplate CLIENT_UPDATE_URL                        = new UrlTemplate(CLIENT_UPDATE_API_PATH);
+    private static final UrlTemplate REQUESTABLE_SCOPES_DELETE_URL            = new UrlTemplate(REQUESTABLE_SCOPES_DELETE_API_PATH);
+    private static final UrlTemplate REQUESTABLE_SCOPES_GET_URL               = new UrlTemplate(REQUESTABLE_SCOPES_GET_API_PATH);
+    private static final UrlTemplate REQUESTABLE_SCOPES_UPDATE_URL            = new UrlTemplate(REQUESTABLE_SCOPES_UPDATE_API_PATH);
+    private static final UrlTemplate GRANTED_SCOPES_GET_URL                   = new UrlTemplate(GRANTED_SCOPES_GET_API_PATH);
+    private static final UrlTemplate GRANTED_SCOPES_DELETE_URL                = new UrlTemplate(GRANTED_SCOPES_DELETE_API_PATH);
+    private static final UrlTemplate CLIENT_AUTHORIZATION_DELETE_URL          = new UrlTemplate(CLIENT_AUTHORIZATION_DELETE_API_PATH);
+    private static final UrlTemplate CLIENT_AUTHORIZATION_UPDATE_URL          = new UrlTemplate(CLIENT_AUTHORIZATION_UPDATE_API_PATH);
+
+
+    /**
+     * The base URL and the credentials. They are replaced as a whole when
+     * a {@link ReloadableConfiguration} is reloaded. API calls in flight
+     * keep using the instance they have read.
+     */
+    private static class Endpoint
+    {
+        final String baseUrl;
+        final AuthorizationHeader serviceOwnerAuthorization;
+        final AuthorizationHeader serviceAuthorization;
+        final DpopProofGenerator dpop;
+
+
+        Endpoint(AuthleteConfiguration configuration)
+        {
+            dpop                      = createDpopProofGenerator(configuration);
+            serviceOwnerAuthorization = createServiceOwnerAuthorization(configuration, dpop != null);
+            serviceAuthorization      = createServiceAuthorization(configuration, dpop != null);
+            baseUrl                   = createBaseUrl(configuration);
+        }
+    }
 
-    private final String mBaseUrl;
-    private final BasicCredentials mServiceOwnerCredentials;
-    private final BasicCredentials mServiceCredentials;
+
+    private volatile Endpoint mEndpoint;
     private final Settings mSettings;
 
 
@@ -184,42 +246,149 @@ class AuthleteApiImpl implements AuthleteApi
      *         An instance of {@link AuthleteConfiguration}.
      */
     public AuthleteApiImpl(AuthleteConfiguration configuration)
+    {
+        this(configuration, new Settings());
+    }
+
+
+    /**
+     * The constructor with an instance of {@link AuthleteConfiguration}
+     * and settings which may be shared with other instances.
+     *
+     * @see AuthleteApiRegistry
+     */
+    AuthleteApiImpl(AuthleteConfiguration configuration, Settings settings)
     {
         if (configuration == null)
         {
             throw new IllegalArgumentException("configuration is null.");
         }
 
-        mServiceOwnerCredentials = createServiceOwnerCredentials(configuration);
-        mServiceCredentials      = createServiceCredentials(configuration);
-        mBaseUrl                 = createBaseUrl(configuration);
-        mSettings                = new Settings();
+        mEndpoint = new Endpoint(configuration);
+        mSettings = settings;
+
+        if (configuration instanceof ReloadableConfiguration)
+        {
+            // Replace the base URL and the credentials when the
+            // configuration is reloaded.
+            ReloadableConfiguration reloadable = (ReloadableConfiguration)configuration;
+            reloadable.addListener(new EndpointUpdater(this, reloadable));
+        }
     }
 
 
     /**
-     * Create a {@link BasicCredentials} for the service owner.
+     * Listener which updates the endpoint of an {@link AuthleteApiImpl}.
+     * It refers to the instance weakly so that the configuration, which
+     * may live longer, does not keep instances which are no longer used,
+     * and it removes itself once the instance has been collected.
      */
-    private static BasicCredentials createServiceOwnerCredentials(AuthleteConfiguration configuration)
+    private static class EndpointUpdater implements ConfigurationListener
+    {
+        private final WeakReference<AuthleteApiImpl> mApi;
+        private final ReloadableConfiguration mConfiguration;
+
+
+        EndpointUpdater(AuthleteApiImpl api, ReloadableConfiguration configuration)
+        {
+            mApi           = new WeakReference<AuthleteApiImpl>(api);
+            mConfiguration = configuration;
+        }
+
+
+        @Override
+        public void onConfigurationChanged(AuthleteConfiguration newConfiguration)
+        {
+            AuthleteApiImpl api = mApi.get();
+
+            if (api == null)
+            {
+                mConfiguration.removeListener(this);
+                return;
+            }
+
+            api.updateEndpoint(newConfiguration);
+        }
+    }
+
+
+    /**
+     * Replace the base URL and the credentials. A configuration without
+     * a valid base URL is ignored.
+     */
+    private void updateEndpoint(AuthleteConfiguration configuration)
+    {
+        try
+        {
+            mEndpoint = new Endpoint(configuration);
+        }
+        catch (IllegalArgumentException e)
+        {
+            // Keep using the current endpoint.
+        }
+    }
+
+
+    /**
+     * Create the {@code Authorization} header for the service owner.
+     */
+    private static AuthorizationHeader createServiceOwnerAuthorization(
+            AuthleteConfiguration configuration, boolean dpop)
     {
         // API key and API secret of a Service Owner.
         String key    = configuration.getServiceOwnerApiKey();
         String secret = configuration.getServiceOwnerApiSecret();
 
-        return new BasicCredentials(key, secret);
+        return createAuthorization(key, secret, configuration.getServiceOwnerAccessToken(), dpop);
     }
 
 
     /**
-     * Create a {@link BasicCredentials} for the service.
+     * Create the {@code Authorization} header for the service.
      */
-    private static BasicCredentials createServiceCredentials(AuthleteConfiguration configuration)
+    private static AuthorizationHeader createServiceAuthorization(
+            AuthleteConfiguration configuration, boolean dpop)
     {
         // API key and API secret of a Service.
         String key    = configuration.getServiceApiKey();
         String secret = configuration.getServiceApiSecret();
 
-        return new BasicCredentials(key, secret);
+        return createAuthorization(key, secret, configuration.getServiceAccessToken(), dpop);
+    }
+
+
+    /**
+     * Create an {@code Authorization} header. Basic authentication with
+     * the API key and the API secret is used unless only an access token
+     * is configured. The access token is DPoP-bound if a DPoP key is
+     * configured.
+     */
+    private static AuthorizationHeader createAuthorization(
+            String key, String secret, String accessToken, boolean dpop)
+    {
+        if (key == null && accessToken != null && accessToken.length() != 0)
+        {
+            return dpop ? AuthorizationHeader.dpop(accessToken)
+                        : AuthorizationHeader.bearer(accessToken);
+        }
+
+        return new BasicCredentials(key, secret).toAuthorizationHeader();
+    }
+
+
+    /**
+     * Create a generator of DPoP proofs if a DPoP key is configured.
+     */
+    private static DpopProofGenerator createDpopProofGenerator(AuthleteConfiguration configuration)
+    {
+        String jwk = configuration.getDpopKey();
+
+        if (jwk == null || jwk.length() == 0)
+        {
+            return null;
+        }
+
+        return new DpopProofGenerator(jwk);
     }
 
 
@@ -261,196 +430,308 @@ class AuthleteApiImpl implements AuthleteApi
     }
 
 
-    /**
-     * Call an API with HTTP GET method and Service Owner credentials (without query parameters).
-     */
-    private <TResponse> TResponse callServiceOwnerGetApi(
-            String path, Class<TResponse> responseClass) throws AuthleteApiException
-    {
-        return callServiceOwnerGetApi(path, (Map<String, String>)null, responseClass);
-    }
-
-
     /**
      * Call an API with HTTP GET method and Service Owner credentials.
+     *
+     * <p>
+     * {@code path} may contain a query built by a {@link UrlTemplate}.
+     * The same applies to the other call methods.
+     * </p>
      */
     private <TResponse> TResponse callServiceOwnerGetApi(
-            String path, Map<String, String> queryParams,
-            Class<TResponse> responseClass) throws AuthleteApiException
+            String path, Class<TResponse> responseClass) throws AuthleteApiException
     {
-        return callGetApi(mServiceOwnerCredentials, path, queryParams, responseClass);
+        return callGetApi(true, path, responseClass);
     }
 
 
     /**
-     * Call an API with HTTP GET method and Service credentials (without query parameters).
+     * Call an API with HTTP GET method and Service credentials.
      */
     private <TResponse> TResponse callServiceGetApi(
             String path, Class<TResponse> responseClass) throws AuthleteApiException
     {
-        return callServiceGetApi(path, (Map<String, String>)null, responseClass);
+        return callGetApi(false, path, responseClass);
     }
 
 
     /**
-     * Call an API with HTTP GET method and Service credentials.
+     * Call an API with HTTP GET method.
      */
-    private <TResponse> TResponse callServiceGetApi(
-            String path, Map<String, String> queryParams,
-            Class<TResponse> responseClass) throws AuthleteApiException
+    private <TResponse> TResponse callGetApi(
+            boolean serviceOwner, String path, Class<TResponse> responseClass) throws AuthleteApiException
     {
-        return callGetApi(mServiceCredentials, path, queryParams, responseClass);
+        return callApi(HttpMethod.GET, serviceOwner, path, (Object)null, responseClass);
     }
 
 
     /**
-     * Call an API with HTTP GET method.
+     * Call an API with HTTP POST method and Service Owner credentials.
      */
-    private <TResponse> TResponse callGetApi(
-            BasicCredentials credentials, String path, Map<String, String> queryParams,
-            Class<TResponse> responseClass) throws AuthleteApiException
+    private <TResponse> TResponse callServiceOwnerPostApi(
+            String path, Object requestBody, Class<TResponse> responseClass) throws AuthleteApiException
     {
-        return callApi(HttpMethod.GET, credentials, path, queryParams, (Object)null, responseClass);
+        return callPostApi(true, path, requestBody, responseClass);
     }
 
 
     /**
-     * Call an API with HTTP POST method and Service Owner credentials (without query parameters).
+     * Call an API with HTTP POST method and Service credentials.
      */
-    private <TResponse> TResponse callServiceOwnerPostApi(
+    private <TResponse> TResponse callServicePostApi(
             String path, Object requestBody, Class<TResponse> responseClass) throws AuthleteApiException
     {
-        return callServiceOwnerPostApi(path, (Map<String, String>)null, requestBody, responseClass);
+        return callPostApi(false, path, requestBody, responseClass);
     }
 
 
     /**
-     * Call an API with HTTP POST method and Service Owner credentials.
+     * Call an API with HTTP POST method.
      */
-    private <TResponse> TResponse callServiceOwnerPostApi(
-            String path, Map<String, String> queryParams,
+    private <TResponse> TResponse callPostApi(
+            boolean serviceOwner, String path,
             Object requestBody, Class<TResponse> responseClass) throws AuthleteApiException
     {
-        return callPostApi(mServiceOwnerCredentials, path, queryParams, requestBody, responseClass);
+        return callApi(HttpMethod.POST, serviceOwner, path, requestBody, responseClass);
     }
 
 
     /**
-     * Call an API with HTTP POST method and Service credentials (without query parameters).
+     * Call an API with HTTP DELETE method and Service Owner credentials.
      */
-    private <TResponse> TResponse callServicePostApi(
-            String path, Object requestBody, Class<TResponse> responseClass) throws AuthleteApiException
+    private void callServiceOwnerDeleteApi(String path) throws AuthleteApiException
     {
-        return callServicePostApi(path, (Map<String, String>)null, requestBody, responseClass);
+        callDeleteApi(true, path);
     }
 
 
     /**
-     * Call an API with HTTP POST method and Service credentials.
+     * Call an API with HTTP DELETE method and Service credentials.
      */
-    private <TResponse> TResponse callServicePostApi(
-            String path, Map<String, String> queryParams,
-            Object requestBody, Class<TResponse> responseClass) throws AuthleteApiException
+    private void callServiceDeleteApi(String path) throws AuthleteApiException
     {
-        return callPostApi(mServiceCredentials, path, queryParams, requestBody, responseClass);
+        callDeleteApi(false, path);
     }
 
 
     /**
-     * Call an API with HTTP POST method.
+     * Call an API with HTTP DELETE method.
      */
-    private <TResponse> TResponse callPostApi(
-            BasicCredentials credentials, String path, Map<String, String> queryParams,
-            Object requestBody, Class<TResponse> responseClass) throws AuthleteApiException
+    private void callDeleteApi(boolean serviceOwner, String path) throws AuthleteApiException
     {
-        return callApi(HttpMethod.POST, credentials, path, queryParams, requestBody, responseClass);
+        callApi(HttpMethod.DELETE, serviceOwner, path, (Object)null, (Class<?>)null);
     }
 
 
     /**
-     * Call an API with HTTP DELETE method and Service Owner credentials (without query parameters).
+     * Call an API.
      */
-    private <TResponse> void callServiceOwnerDeleteApi(String path) throws AuthleteApiException
+    private <TResponse> TResponse callApi(
+            HttpMethod method, boolean serviceOwner, String path,
+            Object requestBody, Class<TResponse> responseClass) throws AuthleteApiException
     {
-        callServiceOwnerDeleteApi(path, (Map<String, String>)null);
+        // Convert the request body into JSON.
+        String requestJson = (requestBody != null) ? Utils.toJson(requestBody) : null;
+
+        // Call the API and get the response body.
+        String responseBody = callApi(method, serviceOwner, path, requestJson);
+
+        // Convert the response body into an object.
+        return convertResponseBody(responseBody, responseClass);
     }
 
 
     /**
-     * Call an API with HTTP DELETE method and Service Owner credentials.
+     * Call an API with a request body in JSON and get the response body.
      */
-    private <TResponse> void callServiceOwnerDeleteApi(
-            String path, Map<String, String> queryParams) throws AuthleteApiException
+    private String callApi(
+            HttpMethod method, boolean serviceOwner,
+            String path, String requestJson) throws AuthleteApiException
     {
-        callDeleteApi(mServiceOwnerCredentials, path, queryParams);
+        // Read the endpoint once so that the base URL and the credentials
+        // are consistent even if the configuration is being reloaded.
+        Endpoint endpoint = mEndpoint;
+
+        ApiCallListener listener = mSettings.getApiCallListener();
+
+        long timestamp = (listener != null) ? System.currentTimeMillis() : 0;
+        long startTime = (listener != null) ? System.nanoTime() : 0;
+
+        HttpURLConnection con = null;
+        String responseBody = null;
+        AuthleteApiException error = null;
+
+        try
+        {
+            AuthorizationHeader authorization = getAuthorization(endpoint, serviceOwner);
+            String dpopProof = createDpopProof(endpoint, authorization, method, path);
+
+            // Create a connection to the Authlete API.
+            con = createConnection(
+                    method, authorization, dpopProof, endpoint.baseUrl, path, mSettings);
+
+            // Communicate with the API and get the response body.
+            responseBody = communicate(con, requestJson);
+
+            return responseBody;
+        }
+        catch (AuthleteApiException e)
+        {
+            error = e;
+
+            // The state of the connection is unknown. On success, the
+            // response has been read to the end, the streams have been
+            // closed and the underlying connection is returned to the
+            // keep-alive cache of HttpURLConnection to be reused by later
+            // API calls.
+            if (con != null)
+            {
+                con.disconnect();
+            }
+
+            throw e;
+        }
+        finally
+        {
+            if (listener != null)
+            {
+                notifyListener(listener, timestamp, startTime, method, serviceOwner,
+                        path, requestJson, con, responseBody, error);
+            }
+        }
     }
 
 
     /**
-     * Call an API with HTTP DELETE method and Service credentials (without query parameters).
+     * Get the {@code Authorization} header. An access token provider in
+     * the settings takes precedence over the configuration.
      */
-    private <TResponse> void callServiceDeleteApi(String path) throws AuthleteApiException
+    private AuthorizationHeader getAuthorization(
+            Endpoint endpoint, boolean serviceOwner) throws AuthleteApiException
     {
-        callServiceDeleteApi(path, (Map<String, String>)null);
+        AccessTokenProvider provider = serviceOwner
+                ? mSettings.getServiceOwnerAccessTokenProvider()
+                : mSettings.getServiceAccessTokenProvider();
+
+        if (provider != null)
+        {
+            return provider.getAuthorization();
+        }
+
+        return serviceOwner ? endpoint.serviceOwnerAuthorization : endpoint.serviceAuthorization;
     }
 
 
     /**
-     * Call an API with HTTP DELETE method and Service credentials.
+     * Create a DPoP proof if the access token is DPoP-bound.
      */
-    private <TResponse> void callServiceDeleteApi(
-            String path, Map<String, String> queryParams) throws AuthleteApiException
+    private static String createDpopProof(
+            Endpoint endpoint, AuthorizationHeader authorization,
+            HttpMethod method, String path) throws AuthleteApiException
     {
-        callDeleteApi(mServiceCredentials, path, queryParams);
+        if (endpoint.dpop == null || "DPoP".equals(authorization.getScheme()) == false)
+        {
+            return null;
+        }
+
+        int query = path.indexOf('?');
+
+        if (0 <= query)
+        {
+            // The HTTP URI without query (DPoP, 4.2).
+            path = path.substring(0, query);
+        }
+
+        try
+        {
+            return endpoint.dpop.generate(
+                    method.name(), endpoint.baseUrl + path, authorization.getCredentials());
+        }
+        catch (IllegalStateException e)
+        {
+            throw new AuthleteApiException(e.getMessage(), e);
+        }
     }
 
 
     /**
-     * Call an API with HTTP DELETE method.
+     * Call an API with the information recorded by an {@link ApiCallListener}.
+     * This is used by {@link TrafficReplayer}.
      */
-    private <TResponse> void callDeleteApi(
-            BasicCredentials credentials, String path,
-            Map<String, String> queryParams) throws AuthleteApiException
+    String callApi(ApiCall call) throws AuthleteApiException
     {
-        callApi(HttpMethod.DELETE, credentials, path, queryParams, (Object)null, (Class<TResponse>)null);
+        HttpMethod method;
+
+        try
+        {
+            method = HttpMethod.valueOf(call.getMethod());
+        }
+        catch (RuntimeException e)
+        {
+            throw new IllegalArgumentException("Unsupported HTTP method: " + call.getMethod());
+        }
+
+        String path = UrlTemplate.appendQuery(call.getPath(), call.getQuery());
+
+        return callApi(method, call.isServiceOwner(), path, call.getRequest());
     }
 
 
-    /**
-     * Call an API.
-     */
-    private <TResponse> TResponse callApi(
-            HttpMethod method, BasicCredentials credentials,
-            String path, Map<String, String> queryParams,
-            Object requestBody, Class<TResponse> responseClass) throws AuthleteApiException
+    private void notifyListener(
+            ApiCallListener listener, long timestamp, long startTime,
+            HttpMethod method, boolean serviceOwner, String path, String requestJson,
+            HttpURLConnection con, String responseBody, AuthleteApiException error)
     {
-        // Create a connection to the Authlete API.
-        HttpURLConnection con = createConnection(
-                method, credentials, mBaseUrl, path, queryParams, mSettings);
+        Map<String, String> queryParams = null;
+        int query = path.indexOf('?');
+
+        if (0 <= query)
+        {
+            // Split the query built by a UrlTemplate into parameters.
+            queryParams = toQueryParams(path.substring(query + 1));
+            path        = path.substring(0, query);
+        }
+
+        ApiCall call = new ApiCall()
+            .setTimestamp(timestamp)
+            .setDuration((System.nanoTime() - startTime) / 1000)
+            .setMethod(method.name())
+            .setPath(path)
+            .setQuery(queryParams)
+            .setServiceOwner(serviceOwner)
+            .setRequest(requestJson);
+
+        if (error == null)
+        {
+            call.setStatus(extractStatusCode(con)).setResponse(responseBody);
+        }
+        else
+        {
+            call.setStatus(error.getStatusCode())
+                .setResponse(error.getResponseBody())
+                .setError(error.getMessage());
+        }
 
         try
         {
-            // Communicate with the API and get a response.
-            return communicate(con, requestBody, responseClass);
+            listener.onApiCall(call);
         }
-        finally
+        catch (RuntimeException e)
         {
-            // Disconnect the connection in any case.
-            con.disconnect();
+            // Failures of the listener must not affect the API call.
         }
     }
 
 
     private static HttpURLConnection createConnection(
-            HttpMethod method, BasicCredentials credentials,
-            String baseUrl, String path, Map<String, String> queryParams,
-            Settings settings) throws AuthleteApiException
+            HttpMethod method, AuthorizationHeader authorization, String dpopProof,
+            String baseUrl, String path, Settings settings) throws AuthleteApiException
     {
         try
         {
             // Open a connection to the Authlete API.
             return openConnection(
-                    method, credentials, baseUrl, path, queryParams, settings);
+                    method, authorization, dpopProof, baseUrl, path, settings);
         }
         catch (Throwable cause)
         {
@@ -461,12 +742,11 @@ class AuthleteApiImpl implements AuthleteApi
 
 
     private static HttpURLConnection openConnection(
-            HttpMethod method, BasicCredentials credentials, String baseUrl,
-            String path, Map<String, String> queryParams,
-            Settings settings) throws IOException
+            HttpMethod method, AuthorizationHeader authorization, String dpopProof, String baseUrl,
+            String path, Settings settings) throws IOException
     {
-        // URL of an Authlete API.
-        URL url = buildUrl(baseUrl, path, queryParams);
+        // URL of an Authlete API. The path may contain a query.
+        URL url = new URL(baseUrl + path);
 
         // Open a connection to the Authlete API.
         HttpURLConnection con = (HttpURLConnection)url.openConnection();
@@ -475,7 +755,14 @@ class AuthleteApiImpl implements AuthleteApi
         con.setRequestMethod(method.name());
 
         // Set 'Authorization' HTTP header to access the Authlete API.
-        con.setRequestProperty("Authorization", credentials.format());
+        // The value has been built when the endpoint was created.
+        con.setRequestProperty("Authorization", authorization.getValue());
+
+        if (dpopProof != null)
+        {
+            // Set 'DPoP' HTTP header for the DPoP-bound access token.
+            con.setRequestProperty("DPoP", dpopProof);
+        }
 
         // Set 'Accept' HTTP header for a JSON response.
         con.setRequestProperty("Accept", "application/json");
@@ -493,103 +780,25 @@ class AuthleteApiImpl implements AuthleteApi
     }
 
 
-    private static URL buildUrl(
-            String baseUrl, String path, Map<String, String> queryParams) throws MalformedURLException
-    {
-        // {scheme}://{host}{path}
-        StringBuffer buf = new StringBuffer(baseUrl).append(path);
-
-        // ?key1=value1&key2=value2&...
-        appendQueryParams(buf, queryParams);
-
-        return new URL(buf.toString());
-    }
-
-
-    private static void appendQueryParams(StringBuffer buf, Map<String, String> params)
+    private static String communicate(
+            HttpURLConnection con, String requestJson) throws AuthleteApiException
     {
-        if (params == null || params.size() == 0)
-        {
-            // Nothing to append.
-            return;
-        }
-
-        buf.append('?');
-
-        for (Map.Entry<String, String> entry : params.entrySet())
-        {
-            // Key
-            String key = toQueryParamKey(entry.getKey());
-
-            if (key == null)
-            {
-                // Ignore this invalid key.
-                continue;
-            }
-
-            // Value
-            String value = toQueryParamValue(entry.getValue());
-
-            // Key=Value&
-            buf.append(key).append('=').append(value).append('&');
-        }
-
-        // Remove the last '&' (or '?' if none of the entries in 'params' has a valid key).
-        buf.setLength(buf.length() - 1);
-    }
-
-
-    private static String toQueryParamKey(String str)
-    {
-        if (str == null || str.length() == 0)
-        {
-            // Invalid key.
-            return null;
-        }
-
-        return urlEncode(str);
-    }
-
-
-    private static String toQueryParamValue(String str)
-    {
-        if (str == null || str.length() == 0)
+        // If the request has a request body.
+        if (requestJson != null)
         {
-            return "";
+            // Write the request body.
+            writeRequestBody(con, requestJson);
         }
 
-        return urlEncode(str);
-    }
-
-
-    private static String urlEncode(String str)
-    {
-        try
-        {
-            return URLEncoder.encode(str, UTF_8);
-        }
-        catch (UnsupportedEncodingException e)
-        {
-            // This never happens because UTF-8 is always supported.
-            return str;
-        }
+        // Read the response body. (JSON is expected)
+        return readResponseBody(con);
     }
 
 
     @SuppressWarnings("unchecked")
-    private <TResponse> TResponse communicate(
-            HttpURLConnection con, Object requestBody, Class<TResponse> responseClass) throws AuthleteApiException
+    private <TResponse> TResponse convertResponseBody(
+            String responseBody, Class<TResponse> responseClass)
     {
-        // If the request has a request body.
-        if (requestBody != null)
-        {
-            // Write the request body.
-            writeRequestBody(con, requestBody);
-        }
-
-        // Read the response body. (JSON is expected)
-        String responseBody = readResponseBody(con);
-
         // If the response does not include any entity.
         if (responseBody == null)
         {
@@ -604,11 +813,26 @@ class AuthleteApiImpl implements AuthleteApi
         }
 
         // Convert the JSON into an object.
-        return Utils.fromJson(responseBody, responseClass);
+        return Utils.fromJson(responseBody, responseClass,
+                getFieldMask(responseClass), mSettings.getStringPool());
+    }
+
+
+    private FieldMask getFieldMask(Class<?> responseClass)
+    {
+        // A client or a service obtained by a get API is typically modified
+        // and passed to the update API. If it were masked, the update would
+        // erase the fields which have not been bound.
+        if (responseClass == Client.class || responseClass == Service.class)
+        {
+            return null;
+        }
+
+        return mSettings.getFieldMask();
     }
 
 
-    private static void writeRequestBody(HttpURLConnection con, Object requestBody) throws AuthleteApiException
+    private static void writeRequestBody(HttpURLConnection con, String requestJson) throws AuthleteApiException
     {
         // Set 'Content-Type' to send JSON.
         con.setRequestProperty("Content-Type", "application/json");
@@ -619,7 +843,7 @@ class AuthleteApiImpl implements AuthleteApi
         try
         {
             // Write the request body.
-            writeContent(con, requestBody);
+            writeContent(con, requestJson);
         }
         catch (Throwable cause)
         {
@@ -629,20 +853,24 @@ class AuthleteApiImpl implements AuthleteApi
     }
 
 
-    private static void writeContent(HttpURLConnection con, Object requestBody) throws IOException
+    private static void writeContent(HttpURLConnection con, String json) throws IOException
     {
-        // Convert the object to JSON.
-        String json = Utils.toJson(requestBody);
-
         // Get the UTF-8 representation.
         byte[] bytes = getBytesUTF8(json);
 
         // Open the stream to send data to Authlete server.
         OutputStream out = con.getOutputStream();
 
-        // Write the request body.
-        out.write(bytes);
-        out.flush();
+        try
+        {
+            // Write the request body.
+            out.write(bytes);
+            out.flush();
+        }
+        finally
+        {
+            out.close();
+        }
     }
 
 
@@ -689,8 +917,17 @@ class AuthleteApiImpl implements AuthleteApi
         // Create a ByteArrayOutputStream instance to store the content in the response.
         ByteArrayOutputStream out = createByteArrayOutputStream(expectedLength);
 
-        // Read all bytes from the input stream of the connection and write them to out.
-        copy(new BufferedInputStream(in), out);
+        try
+        {
+            // Read all bytes from the input stream of the connection and write them to out.
+            copy(in, out);
+        }
+        finally
+        {
+            // Closing the stream after reading it to the end makes the
+            // connection reusable.
+            in.close();
+        }
 
         // Convert the bytes into a String instance.
         return out.toString(charset);
@@ -714,12 +951,26 @@ class AuthleteApiImpl implements AuthleteApi
 
     private static void copy(InputStream in, OutputStream out) throws IOException
     {
-        byte buf[] = new byte[8096];
-        int len;
+        byte buf[] = sBuffers.poll();
 
-        while ((len = in.read(buf)) != -1)
+        if (buf == null)
         {
-            out.write(buf, 0, len);
+            buf = new byte[BUFFER_SIZE];
+        }
+
+        try
+        {
+            int len;
+
+            while ((len = in.read(buf)) != -1)
+            {
+                out.write(buf, 0, len);
+            }
+        }
+        finally
+        {
+            // Dropped if the pool is full.
+            sBuffers.offer(buf);
         }
     }
 
@@ -836,18 +1087,13 @@ class AuthleteApiImpl implements AuthleteApi
     }
 
 
-    private static Map<String, String> buildMap(Object... pairs)
+    private static Map<String, String> toQueryParams(String query)
     {
-        int len = pairs.length;
         Map<String, String> map = new LinkedHashMap<String, String>();
 
-        for (int i = 0; i < len; ++i)
+        for (Map.Entry<String, List<String>> entry : URLCoder.formUrlDecode(query).entrySet())
         {
-            String key = (String)pairs[i];
-            Object obj = (len <= ++i)  ? null : pairs[i];
-            String val = (obj == null) ? null : obj.toString();
-
-            map.put(key, val);
+            map.put(entry.getKey(), entry.getValue().get(0));
         }
 
         return map;
@@ -857,8 +1103,17 @@ class AuthleteApiImpl implements AuthleteApi
     @Override
     public AuthorizationResponse authorization(AuthorizationRequest request) throws AuthleteApiException
     {
-        return callServicePostApi(
-                AUTH_AUTHORIZATION_API_PATH, request, AuthorizationResponse.class);
+        if (mSettings.isLazyBindingEnabled() == false)
+        {
+            return callServicePostApi(
+                    AUTH_AUTHORIZATION_API_PATH, request, AuthorizationResponse.class);
+        }
+
+        // Receive the response as JSON and defer parsing "service" and "client".
+        String json = callServicePostApi(
+                AUTH_AUTHORIZATION_API_PATH, request, String.class);
+
+        return AuthorizationResponse.fromJson(json, true);
     }
 
 
@@ -930,8 +1185,7 @@ class AuthleteApiImpl implements AuthleteApi
     public TokenListResponse getTokenList(String clientIdentifier, String subject) throws AuthleteApiException
     {
         return callServiceGetApi(
-                AUTH_TOKEN_GET_LIST_API_PATH,
-                buildMap("clientIdentifier", clientIdentifier, "subject", subject),
+                AUTH_TOKEN_GET_LIST_BY_SUBJECT_URL.expand(clientIdentifier, subject),
                 TokenListResponse.class);
     }
 
@@ -940,8 +1194,7 @@ class AuthleteApiImpl implements AuthleteApi
     public TokenListResponse getTokenList(int start, int end) throws AuthleteApiException
     {
         return callServiceGetApi(
-                AUTH_TOKEN_GET_LIST_API_PATH,
-                buildMap("start", start, "end", end),
+                AUTH_TOKEN_GET_LIST_BY_RANGE_URL.expand(start, end),
                 TokenListResponse.class);
     }
 
@@ -951,8 +1204,7 @@ class AuthleteApiImpl implements AuthleteApi
             int start, int end) throws AuthleteApiException
     {
         return callServiceGetApi(
-                AUTH_TOKEN_GET_LIST_API_PATH,
-                buildMap("clientIdentifier", clientIdentifier, "subject", subject, "start", start, "end", end),
+                AUTH_TOKEN_GET_LIST_URL.expand(clientIdentifier, subject, start, end),
                 TokenListResponse.class);
     }
 
@@ -1017,7 +1269,7 @@ class AuthleteApiImpl implements AuthleteApi
     public void deleteService(long apiKey) throws AuthleteApiException
     {
         callServiceOwnerDeleteApi(
-                String.format(SERVICE_DELETE_API_PATH, apiKey));
+                SERVICE_DELETE_URL.expand(apiKey));
     }
 
 
@@ -1025,7 +1277,7 @@ class AuthleteApiImpl implements AuthleteApi
     public Service getService(long apiKey) throws AuthleteApiException
     {
         return callServiceOwnerGetApi(
-                String.format(SERVICE_GET_API_PATH, apiKey), Service.class);
+                SERVICE_GET_URL.expand(apiKey), Service.class);
     }
 
 
@@ -1041,8 +1293,7 @@ class AuthleteApiImpl implements AuthleteApi
     public ServiceListResponse getServiceList(int start, int end) throws AuthleteApiException
     {
         return callServiceOwnerGetApi(
-                SERVICE_GET_LIST_API_PATH,
-                buildMap("start", start, "end", end),
+                SERVICE_GET_LIST_BY_RANGE_URL.expand(start, end),
                 ServiceListResponse.class);
     }
 
@@ -1051,7 +1302,7 @@ class AuthleteApiImpl implements AuthleteApi
     public Service updateService(Service service) throws AuthleteApiException
     {
         return callServiceOwnerPostApi(
-                String.format(SERVICE_UPDATE_API_PATH, service.getApiKey()),
+                SERVICE_UPDATE_URL.expand(service.getApiKey()),
                 service, Service.class);
     }
 
@@ -1068,8 +1319,7 @@ class AuthleteApiImpl implements AuthleteApi
     public String getServiceJwks(boolean pretty, boolean includePrivateKeys) throws AuthleteApiException
     {
         return callServiceGetApi(
-                SERVICE_JWKS_GET_API_PATH,
-                buildMap("pretty", pretty, "includePrivateKeys", includePrivateKeys),
+                SERVICE_JWKS_GET_URL.expand(pretty, includePrivateKeys),
                 String.class);
     }
 
@@ -1086,8 +1336,7 @@ class AuthleteApiImpl implements AuthleteApi
     public String getServiceConfiguration(boolean pretty) throws AuthleteApiException
     {
         return callServiceGetApi(
-                SERVICE_CONFIGURATION_API_PATH,
-                buildMap("pretty", pretty),
+                SERVICE_CONFIGURATION_URL.expand(pretty),
                 String.class);
     }
 
@@ -1147,7 +1396,7 @@ class AuthleteApiImpl implements AuthleteApi
     public void deleteClient(String clientId) throws AuthleteApiException
     {
         callServiceDeleteApi(
-                String.format(CLIENT_DELETE_API_PATH, clientId));
+                CLIENT_DELETE_URL.expand(clientId));
     }
 
 
@@ -1162,7 +1411,7 @@ class AuthleteApiImpl implements AuthleteApi
     public Client getClient(String clientId) throws AuthleteApiException
     {
         return callServiceGetApi(
-                String.format(CLIENT_GET_API_PATH, clientId), Client.class);
+                CLIENT_GET_URL.expand(clientId), Client.class);
     }
 
 
@@ -1178,8 +1427,7 @@ class AuthleteApiImpl implements AuthleteApi
     public ClientListResponse getClientList(String developer) throws AuthleteApiException
     {
         return callServiceGetApi(
-                CLIENT_GET_LIST_API_PATH,
-                buildMap("developer", developer),
+                CLIENT_GET_LIST_BY_DEVELOPER_URL.expand(developer),
                 ClientListResponse.class);
     }
 
@@ -1188,8 +1436,7 @@ class AuthleteApiImpl implements AuthleteApi
     public ClientListResponse getClientList(int start, int end) throws AuthleteApiException
     {
         return callServiceGetApi(
-                CLIENT_GET_LIST_API_PATH,
-                buildMap("start", start, "end", end),
+                CLIENT_GET_LIST_BY_RANGE_URL.expand(start, end),
                 ClientListResponse.class);
     }
 
@@ -1198,8 +1445,7 @@ class AuthleteApiImpl implements AuthleteApi
     public ClientListResponse getClientList(String developer, int start, int end) throws AuthleteApiException
     {
         return callServiceGetApi(
-                CLIENT_GET_LIST_API_PATH,
-                buildMap("developer", developer, "start", start, "end", end),
+                CLIENT_GET_LIST_URL.expand(developer, start, end),
                 ClientListResponse.class);
     }
 
@@ -1208,7 +1454,7 @@ class AuthleteApiImpl implements AuthleteApi
     public Client updateClient(Client client) throws AuthleteApiException
     {
         return callServicePostApi(
-                String.format(CLIENT_UPDATE_API_PATH, client.getClientId()),
+                CLIENT_UPDATE_URL.expand(client.getClientId()),
                 client, Client.class);
     }
 
@@ -1218,7 +1464,7 @@ class AuthleteApiImpl implements AuthleteApi
     {
         // Call the API.
         RequestableScopes response = callServiceGetApi(
-                String.format(REQUESTABLE_SCOPES_GET_API_PATH, clientId),
+                REQUESTABLE_SCOPES_GET_URL.expand(clientId),
                 RequestableScopes.class);
 
         // Extract 'requestableScopes' from the response.
@@ -1234,7 +1480,7 @@ class AuthleteApiImpl implements AuthleteApi
 
         // Call the API.
         RequestableScopes response = callServicePostApi(
-                String.format(REQUESTABLE_SCOPES_UPDATE_API_PATH, clientId),
+                REQUESTABLE_SCOPES_UPDATE_URL.expand(clientId),
                 request, RequestableScopes.class);
 
         // Extract 'requestableScopes' from the response.
@@ -1246,7 +1492,7 @@ class AuthleteApiImpl implements AuthleteApi
     public void deleteRequestableScopes(long clientId) throws AuthleteApiException
     {
         callServiceDeleteApi(
-                String.format(REQUESTABLE_SCOPES_DELETE_API_PATH, clientId));
+                REQUESTABLE_SCOPES_DELETE_URL.expand(clientId));
     }
 
 
@@ -1270,7 +1516,7 @@ class AuthleteApiImpl implements AuthleteApi
         GrantedScopesRequest request = new GrantedScopesRequest(subject);
 
         return callServicePostApi(
-                String.format(GRANTED_SCOPES_GET_API_PATH, clientId),
+                GRANTED_SCOPES_GET_URL.expand(clientId),
                 request, GrantedScopesGetResponse.class);
     }
 
@@ -1282,7 +1528,7 @@ class AuthleteApiImpl implements AuthleteApi
         GrantedScopesRequest request = new GrantedScopesRequest(subject);
 
         callServicePostApi(
-                String.format(GRANTED_SCOPES_DELETE_API_PATH, clientId),
+                GRANTED_SCOPES_DELETE_URL.expand(clientId),
                 request, ApiResponse.class);
     }
 
@@ -1351,7 +1597,7 @@ class AuthleteApiImpl implements AuthleteApi
         ClientAuthorizationDeleteRequest request = new ClientAuthorizationDeleteRequest(subject);
 
         callServicePostApi(
-                String.format(CLIENT_AUTHORIZATION_DELETE_API_PATH, clientId),
+                CLIENT_AUTHORIZATION_DELETE_URL.expand(clientId),
                 request, ApiResponse.class);
     }
 
@@ -1369,7 +1615,7 @@ class AuthleteApiImpl implements AuthleteApi
     public void updateClientAuthorization(long clientId, ClientAuthorizationUpdateRequest request) throws AuthleteApiException
     {
         callServicePostApi(
-                String.format(CLIENT_AUTHORIZATION_UPDATE_API_PATH, clientId),
+                CLIENT_AUTHORIZATION_UPDATE_URL.expand(clientId),
                 request, ApiResponse.class);
     }
 
@@ -1387,7 +1633,7 @@ class AuthleteApiImpl implements AuthleteApi
             String clientIdentifier) throws AuthleteApiException
     {
         return callServiceGetApi(
-                String.format(CLIENT_SECRET_REFRESH_API_PATH, clientIdentifier),
+                CLIENT_SECRET_REFRESH_URL.expand(clientIdentifier),
                 ClientSecretRefreshResponse.class);
     }
 
@@ -1411,7 +1657,7 @@ class AuthleteApiImpl implements AuthleteApi
             = new ClientSecretUpdateRequest().setClientSecret(clientSecret);
 
         return callServicePostApi(
-                String.format(CLIENT_SECRET_UPDATE_API_PATH, clientIdentifier),
+                CLIENT_SECRET_UPDATE_URL.expand(clientIdentifier),
                 request, ClientSecretUpdateResponse.class);
     }
 
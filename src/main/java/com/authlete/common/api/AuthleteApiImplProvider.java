@@ -0,0 +1,48 @@
+/*
+ * Copyright (C) 2020 Authlete, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.authlete.common.api;
+
+
+import com.authlete.common.conf.AuthleteConfiguration;
+
+
+/**
+ * {@link AuthleteApiProvider} of the implementation using {@link
+ * java.net.HttpURLConnection HttpURLConnection}.
+ *
+ * @since 2.76
+ */
+public final class AuthleteApiImplProvider implements AuthleteApiProvider
+{
+    /**
+     * The name of the implementation class.
+     */
+    static final String IMPLEMENTATION_NAME = "com.authlete.common.api.AuthleteApiImpl";
+
+
+    @Override
+    public String getImplementationName()
+    {
+        return IMPLEMENTATION_NAME;
+    }
+
+
+    @Override
+    public AuthleteApi create(AuthleteConfiguration configuration)
+    {
+        return new AuthleteApiImpl(configuration);
+    }
+}
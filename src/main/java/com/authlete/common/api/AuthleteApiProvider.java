@@ -0,0 +1,62 @@
+/*
+ * Copyright (C) 2020 Authlete, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.authlete.common.api;
+
+
+import com.authlete.common.conf.AuthleteConfiguration;
+
+
+/**
+ * Service provider interface to create {@link AuthleteApi} instances.
+ *
+ * <p>
+ * {@link AuthleteApiFactory#create(AuthleteConfiguration)} discovers
+ * implementations of this interface by {@link java.util.ServiceLoader},
+ * so a library which provides an {@code AuthleteApi} implementation lists
+ * its provider class in
+ * {@code META-INF/services/com.authlete.common.api.AuthleteApiProvider}.
+ * Unlike looking up a constructor by reflection, this works without
+ * reflection configuration on platforms which restrict reflection.
+ * </p>
+ *
+ * @see AuthleteApiFactory#SYSTEM_PROPERTY_AUTHLETE_API_IMPL
+ *
+ * @since 2.76
+ */
+public interface AuthleteApiProvider
+{
+    /**
+     * Get the fully-qualified name of the {@link AuthleteApi}
+     * implementation which this provider creates, e.g. {@code
+     * "com.authlete.common.api.AuthleteApiImpl"}.
+     *
+     * @return
+     *         The name of the implementation class.
+     */
+    String getImplementationName();
+
+
+    /**
+     * Create an instance of {@link AuthleteApi}.
+     *
+     * @param configuration
+     *         Authlete configuration.
+     *
+     * @return
+     *         An instance of {@code AuthleteApi}.
+     */
+    AuthleteApi create(AuthleteConfiguration configuration);
+}
@@ -0,0 +1,577 @@
+/*
+ * Copyright (C) 2020 Authlete, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.authlete.common.api;
+
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import com.authlete.common.conf.AuthleteConfiguration;
+import com.authlete.common.conf.AuthleteSimpleConfiguration;
+
+
+/**
+ * Registry of {@link AuthleteApi} instances for many Authlete services
+ * (tenants).
+ *
+ * <p>
+ * A multi-tenant server has to call Authlete APIs with the credentials
+ * of the service which a request is directed to. This registry creates an
+ * {@code AuthleteApi} instance for each service API key on demand, using
+ * the base URL and the service owner credentials of the base configuration
+ * and the service API secret returned by a {@link TenantLoader}. All the
+ * instances share:
+ * </p>
+ *
+ * <ul>
+ * <li>one {@link Settings} instance, which is returned by {@link
+ *     #getSettings()} and by {@link AuthleteApi#getSettings()} of every
+ *     instance, so timeouts, field masks, string pools and the {@link
+ *     ApiCallListener} (e.g. a metrics collector) are configured once;
+ * <li>the connection pool, because {@link java.net.HttpURLConnection}
+ *     keeps idle connections per destination in a JVM-wide keep-alive
+ *     cache regardless of the credentials;
+ * <li>the bounded pool of buffers used to read responses.
+ * </ul>
+ *
+ * <p>
+ * Therefore, an instance of a tenant consists of little more than its
+ * credentials. Tenants which have not been looked up for the {@link
+ * #setIdleTimeout(long) idle timeout} are evicted, and when the number of
+ * tenants exceeds the {@link #setMaxTenants(int) maximum}, the least
+ * recently used ones are evicted. Evicted tenants are loaded again when
+ * they are looked up next time. Look up the instance by {@link
+ * #get(String)} for each request instead of holding it.
+ * </p>
+ *
+ * <p>
+ * Service API keys unknown to the {@link TenantLoader} are remembered for
+ * the {@link #setNegativeCacheTimeout(long) negative cache timeout}, so
+ * requests with an unknown key do not call the loader every time. They do
+ * not count as tenants and never evict tenants.
+ * </p>
+ *
+ * <pre style="border: solid 1px black; padding: 0.5em;">
+ * AuthleteApiRegistry registry = new AuthleteApiRegistry(baseConfiguration,
+ *     new AuthleteApiRegistry.TenantLoader() {
+ *         public String loadServiceApiSecret(String serviceApiKey) {
+ *             return secretStore.find(serviceApiKey);
+ *         }
+ *     });
+ *
+ * registry.{@link #getSettings()}.setReadTimeout(5000);
+ *
+ * AuthleteApi api = registry.{@link #get(String) get}(serviceApiKey);
+ * IntrospectionResponse response = api.introspection(request);
+ * </pre>
+ *
+ * @since 2.76
+ */
+public class AuthleteApiRegistry
+{
+    /**
+     * The default idle timeout, 30 minutes.
+     */
+    public static final long DEFAULT_IDLE_TIMEOUT = TimeUnit.MINUTES.toMillis(30);
+
+
+    /**
+     * The default maximum number of tenants, 10000.
+     */
+    public static final int DEFAULT_MAX_TENANTS = 10000;
+
+
+    /**
+     * The default time for which unknown service API keys are remembered,
+     * 1 minute.
+     */
+    public static final long DEFAULT_NEGATIVE_CACHE_TIMEOUT = TimeUnit.MINUTES.toMillis(1);
+
+
+    /**
+     * Loader of the credentials of a tenant.
+     */
+    public interface TenantLoader
+    {
+        /**
+         * Load the API secret of a service.
+         *
+         * <p>
+         * This method is called when a tenant is looked up for the first
+         * time or after it has been evicted. It is never called for the
+         * same service API key concurrently.
+         * </p>
+         *
+         * @param serviceApiKey
+         *         The API key of the service.
+         *
+         * @return
+         *         The API secret of the service. {@code null} if the
+         *         service is unknown.
+         */
+        String loadServiceApiSecret(String serviceApiKey);
+    }
+
+
+    /**
+     * Entry of a tenant. The instance is created by the first caller and
+     * the others wait for it.
+     */
+    private class Tenant
+    {
+        private final String mServiceApiKey;
+        private volatile AuthleteApi mApi;
+        private long mLastAccess;
+        private boolean mLoaded;
+
+
+        Tenant(String serviceApiKey)
+        {
+            mServiceApiKey = serviceApiKey;
+        }
+
+
+        AuthleteApi getApi()
+        {
+            AuthleteApi api = mApi;
+
+            if (api != null)
+            {
+                return api;
+            }
+
+            synchronized (this)
+            {
+                if (mLoaded == false)
+                {
+                    mApi    = load(mServiceApiKey);
+                    mLoaded = true;
+                }
+
+                return mApi;
+            }
+        }
+    }
+
+
+    /**
+     * Settings shared by all the tenants. A service access token provider
+     * is rejected because it would make every tenant call service APIs
+     * with the access token of one service.
+     */
+    private static class SharedSettings extends Settings
+    {
+        @Override
+        public Settings setServiceAccessTokenProvider(AccessTokenProvider provider)
+        {
+            if (provider != null)
+            {
+                throw new IllegalStateException(
+                        "A service access token provider cannot be set to the settings shared by tenants.");
+            }
+
+            return super.setServiceAccessTokenProvider(provider);
+        }
+    }
+
+
+    private final AuthleteConfiguration mBaseConfiguration;
+    private final TenantLoader mLoader;
+    private final Settings mSettings = new SharedSettings();
+    private final AtomicLong mLoadCount = new AtomicLong();
+    private final AtomicLong mEvictionCount = new AtomicLong();
+    private volatile long mIdleTimeout = DEFAULT_IDLE_TIMEOUT;
+    private volatile int mMaxTenants = DEFAULT_MAX_TENANTS;
+    private volatile long mNegativeCacheTimeout = DEFAULT_NEGATIVE_CACHE_TIMEOUT;
+
+
+    /**
+     * Tenants in access order, the least recently used first. Both maps
+     * are guarded by the lock of this map.
+     */
+    private final LinkedHashMap<String, Tenant> mTenants = new LinkedHashMap<String, Tenant>(16, 0.75f, true);
+
+
+    /**
+     * Unknown service API keys and the times at which they expire, in
+     * insertion order.
+     */
+    private final LinkedHashMap<String, Long> mUnknownKeys = new LinkedHashMap<String, Long>() {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Long> eldest)
+        {
+            return mMaxTenants < size();
+        }
+    };
+
+
+    /**
+     * Constructor.
+     *
+     * @param baseConfiguration
+     *         The configuration which provides the base URL and the
+     *         service owner credentials. Service credentials in it are
+     *         not used.
+     *
+     * @param loader
+     *         The loader of service API secrets.
+     */
+    public AuthleteApiRegistry(AuthleteConfiguration baseConfiguration, TenantLoader loader)
+    {
+        if (baseConfiguration == null)
+        {
+            throw new IllegalArgumentException("baseConfiguration is null.");
+        }
+
+        if (loader == null)
+        {
+            throw new IllegalArgumentException("loader is null.");
+        }
+
+        mBaseConfiguration = baseConfiguration;
+        mLoader            = loader;
+    }
+
+
+    /**
+     * Get the settings shared by all the tenants.
+     *
+     * <p>
+     * {@link Settings#setServiceAccessTokenProvider(AccessTokenProvider)
+     * setServiceAccessTokenProvider} of the returned settings, which are
+     * also returned by {@link AuthleteApi#getSettings()} of every tenant,
+     * throws {@link IllegalStateException} because service credentials
+     * differ per tenant. A service owner access token provider can be set.
+     * </p>
+     *
+     * @return
+     *         The shared settings.
+     */
+    public Settings getSettings()
+    {
+        return mSettings;
+    }
+
+
+    /**
+     * Set the time after which a tenant which has not been looked up is
+     * evicted. The default value is {@link #DEFAULT_IDLE_TIMEOUT}.
+     *
+     * @param millis
+     *         The idle timeout in milliseconds. Must be positive.
+     *
+     * @return
+     *         {@code this} object.
+     */
+    public AuthleteApiRegistry setIdleTimeout(long millis)
+    {
+        if (millis <= 0)
+        {
+            throw new IllegalArgumentException("millis must be positive.");
+        }
+
+        mIdleTimeout = millis;
+
+        return this;
+    }
+
+
+    /**
+     * Set the maximum number of tenants held. The default value is
+     * {@link #DEFAULT_MAX_TENANTS}.
+     *
+     * @param max
+     *         The maximum number of tenants. Must be positive.
+     *
+     * @return
+     *         {@code this} object.
+     */
+    public AuthleteApiRegistry setMaxTenants(int max)
+    {
+        if (max <= 0)
+        {
+            throw new IllegalArgumentException("max must be positive.");
+        }
+
+        mMaxTenants = max;
+
+        return this;
+    }
+
+
+    /**
+     * Set the time for which a service API key unknown to the {@link
+     * TenantLoader} is remembered. During the time, {@link #get(String)}
+     * returns {@code null} for the key without calling the loader. The
+     * default value is {@link #DEFAULT_NEGATIVE_CACHE_TIMEOUT}. Call
+     * {@link #invalidate(String)} to forget a key earlier, for example,
+     * after a service has been created.
+     *
+     * @param millis
+     *         The timeout in milliseconds. 0 not to remember unknown keys.
+     *
+     * @return
+     *         {@code this} object.
+     */
+    public AuthleteApiRegistry setNegativeCacheTimeout(long millis)
+    {
+        if (millis < 0)
+        {
+            throw new IllegalArgumentException("millis must not be negative.");
+        }
+
+        mNegativeCacheTimeout = millis;
+
+        return this;
+    }
+
+
+    /**
+     * Get the {@link AuthleteApi} instance for a service. The tenant is
+     * loaded if it is not held.
+     *
+     * @param serviceApiKey
+     *         The API key of the service.
+     *
+     * @return
+     *         The {@code AuthleteApi} instance. {@code null} if the
+     *         {@link TenantLoader} does not know the service.
+     *
+     * @throws RuntimeException
+     *         The {@link TenantLoader} threw it. The tenant is loaded
+     *         again on the next call.
+     */
+    public AuthleteApi get(String serviceApiKey)
+    {
+        if (serviceApiKey == null)
+        {
+            throw new IllegalArgumentException("serviceApiKey is null.");
+        }
+
+        long now = System.currentTimeMillis();
+        Tenant tenant;
+
+        synchronized (mTenants)
+        {
+            sweep(now);
+
+            // This moves the tenant to the end of the access order.
+            tenant = mTenants.get(serviceApiKey);
+
+            if (tenant == null)
+            {
+                if (mUnknownKeys.containsKey(serviceApiKey))
+                {
+                    return null;
+                }
+
+                tenant = new Tenant(serviceApiKey);
+                mTenants.put(serviceApiKey, tenant);
+            }
+
+            tenant.mLastAccess = now;
+        }
+
+        AuthleteApi api;
+
+        try
+        {
+            // Load the tenant outside the lock.
+            api = tenant.getApi();
+        }
+        catch (RuntimeException e)
+        {
+            synchronized (mTenants)
+            {
+                mTenants.remove(serviceApiKey, tenant);
+            }
+
+            throw e;
+        }
+
+        synchronized (mTenants)
+        {
+            if (api == null)
+            {
+                // Unknown services are not held as tenants.
+                mTenants.remove(serviceApiKey, tenant);
+
+                if (0 < mNegativeCacheTimeout)
+                {
+                    mUnknownKeys.put(serviceApiKey, now + mNegativeCacheTimeout);
+                }
+            }
+            else
+            {
+                // Evict only for known services so that unknown keys do
+                // not push tenants out.
+                evictIfFull();
+            }
+        }
+
+        return api;
+    }
+
+
+    private AuthleteApi load(String serviceApiKey)
+    {
+        String secret = mLoader.loadServiceApiSecret(serviceApiKey);
+
+        if (secret == null)
+        {
+            return null;
+        }
+
+        mLoadCount.incrementAndGet();
+
+        AuthleteConfiguration configuration = new AuthleteSimpleConfiguration()
+            .setBaseUrl(mBaseConfiguration.getBaseUrl())
+            .setServiceOwnerApiKey(mBaseConfiguration.getServiceOwnerApiKey())
+            .setServiceOwnerApiSecret(mBaseConfiguration.getServiceOwnerApiSecret())
+            .setServiceApiKey(serviceApiKey)
+            .setServiceApiSecret(secret);
+
+        return new AuthleteApiImpl(configuration, mSettings);
+    }
+
+
+    /**
+     * Remove a tenant, for example, after its API secret has been changed,
+     * or forget that the service API key is unknown. The tenant is loaded
+     * again when it is looked up next time.
+     *
+     * @param serviceApiKey
+     *         The API key of the service.
+     */
+    public void invalidate(String serviceApiKey)
+    {
+        if (serviceApiKey == null)
+        {
+            return;
+        }
+
+        synchronized (mTenants)
+        {
+            mTenants.remove(serviceApiKey);
+            mUnknownKeys.remove(serviceApiKey);
+        }
+    }
+
+
+    /**
+     * Remove all the tenants and forget the unknown service API keys.
+     */
+    public void clear()
+    {
+        synchronized (mTenants)
+        {
+            mTenants.clear();
+            mUnknownKeys.clear();
+        }
+    }
+
+
+    /**
+     * Get the number of tenants held.
+     *
+     * @return
+     *         The number of tenants.
+     */
+    public int size()
+    {
+        synchronized (mTenants)
+        {
+            return mTenants.size();
+        }
+    }
+
+
+    /**
+     * Get the number of times tenants have been loaded.
+     *
+     * @return
+     *         The number of loads.
+     */
+    public long getLoadCount()
+    {
+        return mLoadCount.get();
+    }
+
+
+    /**
+     * Get the number of tenants evicted because they were idle or because
+     * the number of tenants exceeded the maximum.
+     *
+     * @return
+     *         The number of evictions.
+     */
+    public long getEvictionCount()
+    {
+        return mEvictionCount.get();
+    }
+
+
+    /**
+     * Remove the least recently used tenants, which are at the head of
+     * the map, while the number of tenants exceeds the maximum.
+     */
+    private void evictIfFull()
+    {
+        Iterator<Tenant> it = mTenants.values().iterator();
+
+        while (mMaxTenants < mTenants.size() && it.hasNext())
+        {
+            it.next();
+            it.remove();
+            mEvictionCount.incrementAndGet();
+        }
+    }
+
+
+    /**
+     * Remove idle tenants and expired unknown keys. Both are at the head
+     * of the maps, so this stops at the first entry which is still valid.
+     */
+    private void sweep(long now)
+    {
+        long threshold = now - mIdleTimeout;
+
+        for (Iterator<Tenant> it = mTenants.values().iterator(); it.hasNext(); )
+        {
+            if (threshold <= it.next().mLastAccess)
+            {
+                break;
+            }
+
+            it.remove();
+            mEvictionCount.incrementAndGet();
+        }
+
+        for (Iterator<Long> it = mUnknownKeys.values().iterator(); it.hasNext(); )
+        {
+            if (now < it.next())
+            {
+                break;
+            }
+
+            it.remove();
+        }
+    }
+}
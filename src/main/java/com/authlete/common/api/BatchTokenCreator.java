@@ -0,0 +1,161 @@
+/*
+ * Copyright (C) 2020 Authlete, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.authlete.common.api;
+
+
+import java.util.Iterator;
+import java.util.List;
+import com.authlete.common.dto.TokenCreateRequest;
+import com.authlete.common.dto.TokenCreateResponse;
+
+
+/**
+ * Creator of many tokens at once by {@link AuthleteApi#tokenCreate(TokenCreateRequest)}.
+ *
+ * <p>
+ * Requests are issued by a {@link BulkExecutor} and the number of requests
+ * in flight (the depth of the pipeline) is the {@link
+ * BulkExecutor#setConcurrency(int) concurrency} of the executor. Responses
+ * are returned in the input order together with per-request errors.
+ * </p>
+ *
+ * <p>
+ * {@code /auth/token/create} API is not idempotent; retrying a request
+ * which has timed out may create a duplicate access token. Therefore,
+ * even if {@link BulkExecutor#setMaxRetries(int) retries} are enabled, a
+ * failed request is retried only when it has surely not been processed by
+ * Authlete server (see {@link BulkExecutor#isUnprocessed(AuthleteApiException)}).
+ * </p>
+ *
+ * <pre style="border: solid 1px black; padding: 0.5em;">
+ * BatchTokenCreator creator = new BatchTokenCreator(api,
+ *     new BulkExecutor().setConcurrency(32));
+ *
+ * List&lt;BulkResult&lt;TokenCreateRequest, TokenCreateResponse&gt;&gt; results =
+ *     creator.create(requests);
+ * </pre>
+ *
+ * <p>
+ * {@link AuthleteApiImpl} reuses HTTP connections through the keep-alive
+ * cache of {@link java.net.HttpURLConnection}. The cache holds at most
+ * {@code http.maxConnections} (system property, 5 by default) idle
+ * connections per destination, so set the property to a value equal to
+ * or larger than the concurrency to reuse connections of all the requests
+ * in flight.
+ * </p>
+ *
+ * @since 2.76
+ */
+public class BatchTokenCreator
+{
+    private final AuthleteApi mApi;
+    private final BulkExecutor mExecutor;
+
+
+    /**
+     * Constructor with a default {@link BulkExecutor}.
+     *
+     * @param api
+     *         An implementation of {@link AuthleteApi}.
+     */
+    public BatchTokenCreator(AuthleteApi api)
+    {
+        this(api, new BulkExecutor());
+    }
+
+
+    /**
+     * Constructor.
+     *
+     * @param api
+     *         An implementation of {@link AuthleteApi}.
+     *
+     * @param executor
+     *         A bulk executor which controls the depth, rate limit and
+     *         retries.
+     */
+    public BatchTokenCreator(AuthleteApi api, BulkExecutor executor)
+    {
+        if (api == null)
+        {
+            throw new IllegalArgumentException("api is null.");
+        }
+
+        if (executor == null)
+        {
+            throw new IllegalArgumentException("executor is null.");
+        }
+
+        mApi      = api;
+        mExecutor = executor;
+    }
+
+
+    /**
+     * Create tokens.
+     *
+     * @param requests
+     *         Requests to {@code /auth/token/create} API.
+     *
+     * @return
+     *         The outcomes in the input order. Note that a response whose
+     *         {@link TokenCreateResponse#getAction() action} is not {@code
+     *         OK} is a successful outcome of the API call.
+     */
+    public List<BulkResult<TokenCreateRequest, TokenCreateResponse>> create(
+            Iterable<? extends TokenCreateRequest> requests)
+    {
+        if (requests == null)
+        {
+            throw new IllegalArgumentException("requests is null.");
+        }
+
+        return create(requests.iterator());
+    }
+
+
+    /**
+     * Create tokens.
+     *
+     * @param requests
+     *         Requests to {@code /auth/token/create} API. They are consumed
+     *         lazily.
+     *
+     * @return
+     *         The outcomes in the input order. Note that a response whose
+     *         {@link TokenCreateResponse#getAction() action} is not {@code
+     *         OK} is a successful outcome of the API call.
+     */
+    public List<BulkResult<TokenCreateRequest, TokenCreateResponse>> create(
+            Iterator<? extends TokenCreateRequest> requests)
+    {
+        return mExecutor.execute(requests, new BulkExecutor.RetryableTask<TokenCreateRequest, TokenCreateResponse>() {
+            @Override
+            public TokenCreateResponse execute(TokenCreateRequest request)
+            {
+                return mApi.tokenCreate(request);
+            }
+
+
+            @Override
+            public boolean isRetryable(TokenCreateRequest request, AuthleteApiException exception)
+            {
+                // A token may have been created if the request reached the server.
+                return BulkExecutor.isUnprocessed(exception);
+            }
+        });
+    }
+}
@@ -0,0 +1,539 @@
+/*
+ * Copyright (C) 2020 Authlete, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.authlete.common.api;
+
+
+import java.net.ConnectException;
+import java.net.NoRouteToHostException;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import com.authlete.common.util.RateLimiter;
+
+
+/**
+ * Executor of bulk operations with bounded concurrency, an optional rate
+ * limit and optional retries.
+ *
+ * <p>
+ * Inputs are consumed lazily from an iterator. At most {@link
+ * #setConcurrency(int) concurrency} operations are in flight at a time,
+ * so a huge sequence of inputs (e.g. a stream of access tokens) does not
+ * flood Authlete server or the executor's queue. When a rate limit is set,
+ * API calls (including retries) are spaced evenly to keep the rate. The
+ * outcome of every input is returned as a {@link BulkResult} in the input
+ * order, and a failure of one input does not stop the others.
+ * </p>
+ *
+ * <pre style="border: solid 1px black; padding: 0.5em;">
+ * BulkExecutor executor = new BulkExecutor()
+ *     .{@link #setConcurrency(int) setConcurrency}(16)
+ *     .{@link #setRateLimit(double) setRateLimit}(200)
+ *     .{@link #setMaxRetries(int) setMaxRetries}(2);
+ *
+ * List&lt;BulkResult&lt;Long, Client&gt;&gt; results = executor.execute(clientIds,
+ *     new BulkExecutor.Task&lt;Long, Client&gt;() {
+ *         public Client execute(Long clientId) { return api.getClient(clientId); }
+ *     });
+ * </pre>
+ *
+ * @since 2.76
+ */
+public class BulkExecutor
+{
+    /**
+     * The default concurrency, 8.
+     */
+    public static final int DEFAULT_CONCURRENCY = 8;
+
+
+    private static final long INITIAL_BACKOFF_MILLIS = 100;
+    private static final AtomicInteger sThreadNumber = new AtomicInteger();
+
+
+    /**
+     * Operation applied to each input.
+     *
+     * @param <TInput>
+     *         The type of inputs.
+     *
+     * @param <TOutput>
+     *         The type of outputs.
+     */
+    public interface Task<TInput, TOutput>
+    {
+        /**
+         * Execute the operation for the input. This method is called
+         * concurrently from multiple threads.
+         *
+         * @param input
+         *         An input.
+         *
+         * @return
+         *         The output.
+         *
+         * @throws AuthleteApiException
+         *         An API call failed.
+         */
+        TOutput execute(TInput input) throws AuthleteApiException;
+    }
+
+
+    /**
+     * Operation which decides whether a failed execution may be retried.
+     *
+     * <p>
+     * Operations which are not idempotent, such as {@link
+     * AuthleteApi#createClient(com.authlete.common.dto.Client)
+     * createClient}, must not be retried when the failed request may have
+     * been processed by Authlete server; a retry after a timeout would
+     * create a duplicate. Such operations implement this interface and
+     * typically allow retries only when {@link #isUnprocessed(AuthleteApiException)}
+     * returns {@code true}.
+     * </p>
+     *
+     * @param <TInput>
+     *         The type of inputs.
+     *
+     * @param <TOutput>
+     *         The type of outputs.
+     */
+    public interface RetryableTask<TInput, TOutput> extends Task<TInput, TOutput>
+    {
+        /**
+         * Decide whether the failed execution for the input may be retried.
+         * This method is called only when the maximum number of retries
+         * has not been reached.
+         *
+         * @param input
+         *         The input.
+         *
+         * @param exception
+         *         The exception thrown by {@link #execute(Object) execute}.
+         *
+         * @return
+         *         {@code true} to retry.
+         */
+        boolean isRetryable(TInput input, AuthleteApiException exception);
+    }
+
+
+    private int mConcurrency = DEFAULT_CONCURRENCY;
+    private RateLimiter mRateLimiter;
+    private int mMaxRetries;
+    private ExecutorService mExecutor;
+
+
+    /**
+     * Get the maximum number of operations in flight.
+     *
+     * @return
+     *         The concurrency.
+     */
+    public int getConcurrency()
+    {
+        return mConcurrency;
+    }
+
+
+    /**
+     * Set the maximum number of operations in flight. The default value
+     * is {@link #DEFAULT_CONCURRENCY}.
+     *
+     * @param concurrency
+     *         The concurrency. Must be positive.
+     *
+     * @return
+     *         {@code this} object.
+     */
+    public BulkExecutor setConcurrency(int concurrency)
+    {
+        if (concurrency <= 0)
+        {
+            throw new IllegalArgumentException("concurrency must be positive.");
+        }
+
+        mConcurrency = concurrency;
+
+        return this;
+    }
+
+
+    /**
+     * Set the maximum number of operations started per second.
+     *
+     * @param permitsPerSecond
+     *         The rate limit. 0 or a negative value to disable the rate
+     *         limit, which is the default.
+     *
+     * @return
+     *         {@code this} object.
+     */
+    public BulkExecutor setRateLimit(double permitsPerSecond)
+    {
+        mRateLimiter = (0 < permitsPerSecond) ? new RateLimiter(permitsPerSecond) : null;
+
+        return this;
+    }
+
+
+    /**
+     * Get the maximum number of retries for each input.
+     *
+     * @return
+     *         The maximum number of retries.
+     */
+    public int getMaxRetries()
+    {
+        return mMaxRetries;
+    }
+
+
+    /**
+     * Set the maximum number of retries for each input. The default value
+     * is 0.
+     *
+     * <p>
+     * An operation is retried with exponential backoff only when it fails
+     * with an {@link AuthleteApiException} which indicates a transient
+     * error (see {@link #isTransient(AuthleteApiException)}). An operation
+     * implementing {@link RetryableTask} decides by itself instead.
+     * </p>
+     *
+     * @param retries
+     *         The maximum number of retries. Must not be negative.
+     *
+     * @return
+     *         {@code this} object.
+     */
+    public BulkExecutor setMaxRetries(int retries)
+    {
+        if (retries < 0)
+        {
+            throw new IllegalArgumentException("retries must not be negative.");
+        }
+
+        mMaxRetries = retries;
+
+        return this;
+    }
+
+
+    /**
+     * Set the executor used to run operations.
+     *
+     * <p>
+     * If no executor is set, a thread pool whose size is equal to the
+     * concurrency is created for each call of {@code execute} method and
+     * shut down at the end of the call.
+     * </p>
+     *
+     * @param executor
+     *         An executor. {@code null} to use a temporary thread pool.
+     *
+     * @return
+     *         {@code this} object.
+     */
+    public BulkExecutor setExecutor(ExecutorService executor)
+    {
+        mExecutor = executor;
+
+        return this;
+    }
+
+
+    /**
+     * Execute the operation for each input.
+     *
+     * @param inputs
+     *         Inputs.
+     *
+     * @param task
+     *         The operation.
+     *
+     * @return
+     *         The outcomes in the input order.
+     */
+    public <TInput, TOutput> List<BulkResult<TInput, TOutput>> execute(
+            Iterable<? extends TInput> inputs, Task<? super TInput, ? extends TOutput> task)
+    {
+        if (inputs == null)
+        {
+            throw new IllegalArgumentException("inputs is null.");
+        }
+
+        return execute(inputs.iterator(), task);
+    }
+
+
+    /**
+     * Execute the operation for each input.
+     *
+     * @param inputs
+     *         Inputs. They are consumed lazily as the operations for the
+     *         preceding inputs complete.
+     *
+     * @param task
+     *         The operation.
+     *
+     * @return
+     *         The outcomes in the input order.
+     *
+     * @throws IllegalStateException
+     *         The current thread was interrupted.
+     */
+    public <TInput, TOutput> List<BulkResult<TInput, TOutput>> execute(
+            Iterator<? extends TInput> inputs, final Task<? super TInput, ? extends TOutput> task)
+    {
+        if (inputs == null)
+        {
+            throw new IllegalArgumentException("inputs is null.");
+        }
+
+        if (task == null)
+        {
+            throw new IllegalArgumentException("task is null.");
+        }
+
+        ExecutorService executor = mExecutor;
+        boolean owned = false;
+
+        if (executor == null)
+        {
+            executor = createExecutor(mConcurrency);
+            owned    = true;
+        }
+
+        final Semaphore window = new Semaphore(mConcurrency);
+        List<TInput> inputList = new ArrayList<TInput>();
+        List<Future<TOutput>> futures = new ArrayList<Future<TOutput>>();
+
+        try
+        {
+            while (inputs.hasNext())
+            {
+                final TInput input = inputs.next();
+
+                // Wait until the number of operations in flight decreases.
+                window.acquire();
+
+                Future<TOutput> future;
+
+                try
+                {
+                    future = executor.submit(new Callable<TOutput>() {
+                        @Override
+                        public TOutput call() throws Exception
+                        {
+                            try
+                            {
+                                return executeWithRetries(task, input);
+                            }
+                            finally
+                            {
+                                window.release();
+                            }
+                        }
+                    });
+                }
+                catch (RuntimeException e)
+                {
+                    window.release();
+                    throw e;
+                }
+
+                inputList.add(input);
+                futures.add(future);
+            }
+
+            return collect(inputList, futures);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+
+            for (Future<TOutput> future : futures)
+            {
+                future.cancel(true);
+            }
+
+            throw new IllegalStateException("Interrupted while executing the bulk operation.", e);
+        }
+        finally
+        {
+            if (owned)
+            {
+                executor.shutdownNow();
+            }
+        }
+    }
+
+
+    private <TInput, TOutput> TOutput executeWithRetries(
+            Task<? super TInput, ? extends TOutput> task, TInput input) throws InterruptedException
+    {
+        long backoff = INITIAL_BACKOFF_MILLIS;
+
+        for (int attempt = 0; ; ++attempt)
+        {
+            if (mRateLimiter != null)
+            {
+                mRateLimiter.acquire();
+            }
+
+            try
+            {
+                return task.execute(input);
+            }
+            catch (AuthleteApiException e)
+            {
+                if (mMaxRetries <= attempt || isRetryable(task, input, e) == false)
+                {
+                    throw e;
+                }
+            }
+
+            Thread.sleep(backoff);
+            backoff *= 2;
+        }
+    }
+
+
+    @SuppressWarnings("unchecked")
+    private static <TInput> boolean isRetryable(
+            Task<? super TInput, ?> task, TInput input, AuthleteApiException e)
+    {
+        if (task instanceof RetryableTask)
+        {
+            return ((RetryableTask<? super TInput, ?>)task).isRetryable(input, e);
+        }
+
+        return isTransient(e);
+    }
+
+
+    /**
+     * Check whether the exception indicates a transient error, that is,
+     * a network error (no HTTP status), {@code 429 Too Many Requests} or
+     * a {@code 5xx} status. The request may have been processed by
+     * Authlete server, so only idempotent operations should be retried.
+     *
+     * @param e
+     *         An exception thrown by an API call.
+     *
+     * @return
+     *         {@code true} if the error is transient.
+     */
+    public static boolean isTransient(AuthleteApiException e)
+    {
+        int status = e.getStatusCode();
+
+        // 0 means that no HTTP response was received.
+        return status == 0 || status == 429 || 500 <= status;
+    }
+
+
+    /**
+     * Check whether the exception indicates that the request has surely
+     * not been processed by Authlete server, that is, {@code 429 Too Many
+     * Requests}, or a failure to resolve the host name or to connect to
+     * the server. Non-idempotent operations can be retried safely in these
+     * cases.
+     *
+     * @param e
+     *         An exception thrown by an API call.
+     *
+     * @return
+     *         {@code true} if the request has not been processed.
+     */
+    public static boolean isUnprocessed(AuthleteApiException e)
+    {
+        int status = e.getStatusCode();
+
+        if (status == 429)
+        {
+            return true;
+        }
+
+        if (status != 0)
+        {
+            return false;
+        }
+
+        for (Throwable cause = e.getCause(); cause != null; cause = cause.getCause())
+        {
+            if (cause instanceof ConnectException ||
+                cause instanceof NoRouteToHostException ||
+                cause instanceof UnknownHostException)
+            {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+
+    private static <TInput, TOutput> List<BulkResult<TInput, TOutput>> collect(
+            List<TInput> inputs, List<Future<TOutput>> futures) throws InterruptedException
+    {
+        int size = futures.size();
+        List<BulkResult<TInput, TOutput>> results = new ArrayList<BulkResult<TInput, TOutput>>(size);
+
+        for (int i = 0; i < size; ++i)
+        {
+            TOutput output = null;
+            Throwable error = null;
+
+            try
+            {
+                output = futures.get(i).get();
+            }
+            catch (ExecutionException e)
+            {
+                error = e.getCause();
+            }
+
+            results.add(new BulkResult<TInput, TOutput>(i, inputs.get(i), output, error));
+        }
+
+        return results;
+    }
+
+
+    private static ExecutorService createExecutor(int size)
+    {
+        return Executors.newFixedThreadPool(size, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable)
+            {
+                Thread thread = new Thread(runnable, "authlete-bulk-" + sThreadNumber.incrementAndGet());
+                thread.setDaemon(true);
+
+                return thread;
+            }
+        });
+    }
+}
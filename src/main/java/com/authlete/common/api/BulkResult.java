@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2020 Authlete, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.authlete.common.api;
+
+
+/**
+ * Outcome of one item of a bulk operation executed by {@link BulkExecutor}.
+ *
+ * @param <TInput>
+ *         The type of inputs.
+ *
+ * @param <TOutput>
+ *         The type of outputs.
+ *
+ * @since 2.76
+ */
+public class BulkResult<TInput, TOutput>
+{
+    private final int mIndex;
+    private final TInput mInput;
+    private final TOutput mOutput;
+    private final Throwable mError;
+
+
+    BulkResult(int index, TInput input, TOutput output, Throwable error)
+    {
+        mIndex  = index;
+        mInput  = input;
+        mOutput = output;
+        mError  = error;
+    }
+
+
+    /**
+     * Get the index of the input in the sequence of inputs.
+     *
+     * @return
+     *         The index starting from 0.
+     */
+    public int getIndex()
+    {
+        return mIndex;
+    }
+
+
+    /**
+     * Get the input.
+     *
+     * @return
+     *         The input.
+     */
+    public TInput getInput()
+    {
+        return mInput;
+    }
+
+
+    /**
+     * Get the output of the operation.
+     *
+     * @return
+     *         The output. {@code null} if the operation failed or if the
+     *         operation does not return any value.
+     */
+    public TOutput getOutput()
+    {
+        return mOutput;
+    }
+
+
+    /**
+     * Get the error which occurred in the operation.
+     *
+     * @return
+     *         The error. {@code null} if the operation succeeded. In most
+     *         cases, the error is an {@link AuthleteApiException}.
+     */
+    public Throwable getError()
+    {
+        return mError;
+    }
+
+
+    /**
+     * Check if the operation succeeded.
+     *
+     * @return
+     *         {@code true} if the operation did not throw any exception.
+     */
+    public boolean isSuccessful()
+    {
+        return mError == null;
+    }
+}
@@ -0,0 +1,238 @@
+/*
+ * Copyright (C) 2020 Authlete, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.authlete.common.api;
+
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import com.authlete.common.dto.AccessToken;
+import com.authlete.common.dto.RevocationRequest;
+import com.authlete.common.dto.RevocationResponse;
+import com.authlete.common.web.URLCoder;
+
+
+/**
+ * Revoker of many tokens at once.
+ *
+ * <p>
+ * API calls are issued by a {@link BulkExecutor}, so the number of calls
+ * in flight and the rate of calls are bounded. The outcome of each call is
+ * returned as a {@link BulkResult}.
+ * </p>
+ *
+ * <p>
+ * Two ways of revocation are supported.
+ * </p>
+ *
+ * <ol>
+ * <li>{@link #revokeTokens(Iterator, String, String)} revokes tokens whose
+ *     values are known by calling {@link AuthleteApi#revocation(RevocationRequest)}
+ *     for each token on behalf of the client.
+ * <li>{@link #revokeAuthorizations(String, String)} enumerates the access
+ *     tokens which match a client and/or a subject by {@link
+ *     AccessTokenIterator} and deletes the grants of the distinct pairs of
+ *     client and subject by {@link AuthleteApi#deleteClientAuthorization(long,
+ *     String)}. Because the token list does not contain token values, this
+ *     is the way to revoke all the tokens of a subject or of a client in an
+ *     incident. Tokens without a subject, such as those issued by the
+ *     client credentials flow, do not belong to a grant which can be
+ *     deleted, so they are reported as failures.
+ * </ol>
+ *
+ * <pre style="border: solid 1px black; padding: 0.5em;">
+ * BulkRevoker revoker = new BulkRevoker(api, new BulkExecutor()
+ *     .setConcurrency(16).setRateLimit(100));
+ *
+ * for (BulkResult&lt;AccessToken, Void&gt; result : revoker.revokeAuthorizations(null, "compromised-user"))
+ * {
+ *     if (result.isSuccessful() == false)
+ *     {
+ *         ...
+ *     }
+ * }
+ * </pre>
+ *
+ * @since 2.76
+ */
+public class BulkRevoker
+{
+    private final AuthleteApi mApi;
+    private final BulkExecutor mExecutor;
+
+
+    /**
+     * Constructor with a default {@link BulkExecutor}.
+     *
+     * @param api
+     *         An implementation of {@link AuthleteApi}.
+     */
+    public BulkRevoker(AuthleteApi api)
+    {
+        this(api, new BulkExecutor());
+    }
+
+
+    /**
+     * Constructor.
+     *
+     * @param api
+     *         An implementation of {@link AuthleteApi}.
+     *
+     * @param executor
+     *         A bulk executor which controls concurrency, rate limit and
+     *         retries.
+     */
+    public BulkRevoker(AuthleteApi api, BulkExecutor executor)
+    {
+        if (api == null)
+        {
+            throw new IllegalArgumentException("api is null.");
+        }
+
+        if (executor == null)
+        {
+            throw new IllegalArgumentException("executor is null.");
+        }
+
+        mApi      = api;
+        mExecutor = executor;
+    }
+
+
+    /**
+     * Revoke tokens by calling {@link AuthleteApi#revocation(RevocationRequest)}
+     * for each token.
+     *
+     * @param tokens
+     *         Access tokens or refresh tokens to revoke. They are consumed
+     *         lazily.
+     *
+     * @param clientId
+     *         The client ID of the client application to which the tokens
+     *         have been issued.
+     *
+     * @param clientSecret
+     *         The client secret. {@code null} for public clients.
+     *
+     * @return
+     *         The outcomes in the input order. Whether each token has been
+     *         revoked is indicated by {@link RevocationResponse#getAction()}.
+     */
+    public List<BulkResult<String, RevocationResponse>> revokeTokens(
+            Iterator<String> tokens, final String clientId, final String clientSecret)
+    {
+        return mExecutor.execute(tokens, new BulkExecutor.Task<String, RevocationResponse>() {
+            @Override
+            public RevocationResponse execute(String token)
+            {
+                RevocationRequest request = new RevocationRequest()
+                    .setParameters("token=" + URLCoder.encode(token))
+                    .setClientId(clientId)
+                    .setClientSecret(clientSecret);
+
+                return mApi.revocation(request);
+            }
+        });
+    }
+
+
+    /**
+     * Revoke all the tokens which match the client and/or the subject by
+     * deleting the grants.
+     *
+     * <p>
+     * The input of each outcome is the first access token found for a
+     * distinct pair of client ID and subject.
+     * </p>
+     *
+     * <p>
+     * An access token without a subject (e.g. one issued by the client
+     * credentials flow) cannot be revoked by deleting a grant. Each of them
+     * is returned as a failed outcome whose error is an {@link
+     * UnsupportedOperationException}. Revoke them by {@link
+     * #revokeTokens(Iterator, String, String)} if their values are known.
+     * </p>
+     *
+     * @param clientIdentifier
+     *         Client ID or client ID alias. {@code null} not to filter
+     *         tokens by client.
+     *
+     * @param subject
+     *         Subject of the resource owner. {@code null} not to filter
+     *         tokens by subject.
+     *
+     * @return
+     *         The outcomes of {@link AuthleteApi#deleteClientAuthorization(long,
+     *         String)} calls, and failed outcomes of access tokens without
+     *         a subject.
+     *
+     * @throws AuthleteApiException
+     *         Failed to enumerate access tokens.
+     */
+    public List<BulkResult<AccessToken, Void>> revokeAuthorizations(String clientIdentifier, String subject)
+    {
+        List<AccessToken> grants = new ArrayList<AccessToken>();
+        Set<String> keys = new HashSet<String>();
+
+        AccessTokenIterator it = new AccessTokenIterator(mApi, clientIdentifier, subject);
+
+        try
+        {
+            while (it.hasNext())
+            {
+                AccessToken token = it.next();
+
+                if (token.getSubject() == null)
+                {
+                    // Not a grant. Reported individually.
+                    grants.add(token);
+                }
+                // Tokens of the same grant are deleted at once.
+                else if (keys.add(token.getClientId() + ":" + token.getSubject()))
+                {
+                    grants.add(token);
+                }
+            }
+        }
+        finally
+        {
+            it.close();
+        }
+
+        return mExecutor.execute(grants, new BulkExecutor.Task<AccessToken, Void>() {
+            @Override
+            public Void execute(AccessToken token)
+            {
+                if (token.getSubject() == null)
+                {
+                    // deleteClientAuthorization(clientId, null) does not
+                    // revoke it. Not an AuthleteApiException, so that it
+                    // is not retried.
+                    throw new UnsupportedOperationException(String.format(
+                            "The access token (hash: %s) of the client %d has no subject and cannot be " +
+                            "revoked by deleting a grant.", token.getAccessTokenHash(), token.getClientId()));
+                }
+
+                mApi.deleteClientAuthorization(token.getClientId(), token.getSubject());
+
+                return null;
+            }
+        });
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright (C) 2020 Authlete, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.authlete.common.api;
+
+
+import com.authlete.common.dto.Client;
+import com.authlete.common.dto.ClientListResponse;
+
+
+/**
+ * Iterator over all the client applications of the service or of a
+ * developer, built on top of {@link AuthleteApi#getClientList(String,
+ * int, int)}.
+ *
+ * @see PagedIterator
+ *
+ * @since 2.76
+ */
+public class ClientIterator extends PagedIterator<Client>
+{
+    private final AuthleteApi mApi;
+    private final String mDeveloper;
+
+
+    /**
+     * Constructor.
+     *
+     * @param api
+     *         An implementation of {@link AuthleteApi}.
+     *
+     * @param developer
+     *         The developer of the targeted client applications, or
+     *         {@code null} to iterate over the client applications of
+     *         the entire service.
+     */
+    public ClientIterator(AuthleteApi api, String developer)
+    {
+        if (api == null)
+        {
+            throw new IllegalArgumentException("api is null.");
+        }
+
+        mApi       = api;
+        mDeveloper = developer;
+    }
+
+
+    @Override
+    protected Page<Client> fetch(int start, int end) throws AuthleteApiException
+    {
+        ClientListResponse response = mApi.getClientList(mDeveloper, start, end);
+
+        return new Page<Client>(response.getClients(), response.getTotalCount());
+    }
+}
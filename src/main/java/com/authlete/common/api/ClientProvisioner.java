@@ -0,0 +1,633 @@
+/*
+ * Copyright (C) 2020 Authlete, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.authlete.common.api;
+
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import com.authlete.common.dto.Client;
+import com.authlete.common.dto.ClientListResponse;
+import com.authlete.common.util.FieldMask;
+import com.authlete.common.util.JsonLinesReader;
+import com.authlete.common.util.Utils;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+
+
+/**
+ * Pipeline to create and update client applications in bulk from
+ * definitions in the JSON Lines format.
+ *
+ * <p>
+ * Each line of definitions is a JSON object in the same format as {@link
+ * Client}. Only the properties contained in a definition are managed, so
+ * a definition can be a subset of a client's properties. A definition is
+ * matched with an existing client application by {@code "clientId"} if it
+ * is contained, or by {@code "clientIdAlias"} otherwise. A definition which
+ * does not match any existing client application is created.
+ * </p>
+ *
+ * <p>
+ * {@link #plan(Reader)} fetches the current client applications by {@link
+ * ClientIterator} and computes the changes. Definitions whose properties
+ * are all equal to the current values are dropped. {@link #apply(List)}
+ * executes the changes by {@link AuthleteApi#createClient(Client)}, {@link
+ * AuthleteApi#updateClient(Client)} and, when {@code
+ * "extension.requestableScopes"} is changed, {@link
+ * AuthleteApi#setRequestableScopes(long, String[])}, using a {@link
+ * BulkExecutor}.
+ * </p>
+ *
+ * <p>
+ * If a {@link Settings#setFieldMask(FieldMask) field mask} is set, the
+ * client applications in the list are partial, so each client application
+ * to update is fetched again by {@link AuthleteApi#getClient(long)}, which
+ * is not masked, before the definition is merged into it. The mask must
+ * not exclude {@code "clients"} and {@code "totalCount"} of {@link
+ * ClientListResponse} or {@code "clientId"} and {@code "clientIdAlias"} of
+ * {@link Client}, which are needed to match definitions.
+ * </p>
+ *
+ * <pre style="border: solid 1px black; padding: 0.5em;">
+ * ClientProvisioner provisioner = new ClientProvisioner(api);
+ *
+ * try (Reader in = Files.newBufferedReader(Paths.get("clients.jsonl")))
+ * {
+ *     for (BulkResult&lt;ClientProvisioner.Change, Client&gt; result : provisioner.provision(in))
+ *     {
+ *         ...
+ *     }
+ * }
+ * </pre>
+ *
+ * <p>
+ * Updates are retried on transient errors. Because {@code createClient} is
+ * not idempotent, a failed creation is retried only when the request has
+ * surely not been processed by Authlete server (see {@link
+ * BulkExecutor#isUnprocessed(AuthleteApiException)}); otherwise, a retry
+ * after a timeout could create a duplicate client application. When the
+ * call of {@code setRequestableScopes} following a successful creation
+ * fails, only the call is retried.
+ * </p>
+ *
+ * @since 2.76
+ */
+public class ClientProvisioner
+{
+    /**
+     * The default maximum number of retries, 2.
+     */
+    public static final int DEFAULT_MAX_RETRIES = 2;
+
+
+    private static final String EXTENSION          = "extension";
+    private static final String REQUESTABLE_SCOPES = "requestableScopes";
+
+
+    /**
+     * Type of change.
+     */
+    public enum ChangeType
+    {
+        /**
+         * A client application is created.
+         */
+        CREATE,
+
+
+        /**
+         * An existing client application is updated.
+         */
+        UPDATE
+    }
+
+
+    /**
+     * Change to be applied to a client application.
+     */
+    public static class Change
+    {
+        private final ChangeType mType;
+        private final Client mClient;
+        private final String[] mRequestableScopes;
+        private final int mLineNumber;
+
+
+        Change(ChangeType type, Client client, String[] requestableScopes, int lineNumber)
+        {
+            mType              = type;
+            mClient            = client;
+            mRequestableScopes = requestableScopes;
+            mLineNumber        = lineNumber;
+        }
+
+
+        /**
+         * Get the type of the change.
+         *
+         * @return
+         *         The type of the change.
+         */
+        public ChangeType getType()
+        {
+            return mType;
+        }
+
+
+        /**
+         * Get the client application to be passed to {@code createClient}
+         * or {@code updateClient}. For updates, the definition has been
+         * merged into the current state.
+         *
+         * @return
+         *         The client application.
+         */
+        public Client getClient()
+        {
+            return mClient;
+        }
+
+
+        /**
+         * Get the requestable scopes to be set.
+         *
+         * @return
+         *         The requestable scopes. {@code null} if they are not
+         *         changed.
+         */
+        public String[] getRequestableScopes()
+        {
+            return mRequestableScopes;
+        }
+
+
+        /**
+         * Get the number of the line of the definition.
+         *
+         * @return
+         *         The line number starting from 1.
+         */
+        public int getLineNumber()
+        {
+            return mLineNumber;
+        }
+    }
+
+
+    private final AuthleteApi mApi;
+    private final BulkExecutor mExecutor;
+
+
+    /**
+     * Constructor with a default {@link BulkExecutor} which retries up to
+     * {@link #DEFAULT_MAX_RETRIES} times.
+     *
+     * @param api
+     *         An implementation of {@link AuthleteApi}.
+     */
+    public ClientProvisioner(AuthleteApi api)
+    {
+        this(api, new BulkExecutor().setMaxRetries(DEFAULT_MAX_RETRIES));
+    }
+
+
+    /**
+     * Constructor.
+     *
+     * @param api
+     *         An implementation of {@link AuthleteApi}.
+     *
+     * @param executor
+     *         A bulk executor which controls concurrency, rate limit and
+     *         retries.
+     */
+    public ClientProvisioner(AuthleteApi api, BulkExecutor executor)
+    {
+        if (api == null)
+        {
+            throw new IllegalArgumentException("api is null.");
+        }
+
+        if (executor == null)
+        {
+            throw new IllegalArgumentException("executor is null.");
+        }
+
+        mApi      = api;
+        mExecutor = executor;
+    }
+
+
+    /**
+     * Compute the changes and apply them.
+     *
+     * @param definitions
+     *         Client definitions in the JSON Lines format.
+     *
+     * @return
+     *         The outcomes of the changes. The output of each outcome is
+     *         the client application returned from Authlete server.
+     *
+     * @throws IOException
+     *         Failed to read the definitions, or a definition is malformed.
+     *
+     * @throws AuthleteApiException
+     *         Failed to fetch the current client applications.
+     */
+    public List<BulkResult<Change, Client>> provision(Reader definitions) throws IOException
+    {
+        return apply(plan(definitions));
+    }
+
+
+    /**
+     * Compute the changes required to make the client applications match
+     * the definitions.
+     *
+     * @param definitions
+     *         Client definitions in the JSON Lines format.
+     *
+     * @return
+     *         The changes. Unchanged client applications are not included.
+     *
+     * @throws IOException
+     *         Failed to read the definitions, or a definition is malformed.
+     *
+     * @throws AuthleteApiException
+     *         Failed to fetch the current client applications.
+     *
+     * @throws IllegalStateException
+     *         The field mask of the API excludes properties needed to
+     *         match definitions.
+     */
+    public List<Change> plan(Reader definitions) throws IOException
+    {
+        if (definitions == null)
+        {
+            throw new IllegalArgumentException("definitions is null.");
+        }
+
+        FieldMask mask = mApi.getSettings().getFieldMask();
+        boolean masked = (mask != null);
+
+        if (masked)
+        {
+            checkFieldMask(mask, ClientListResponse.class, "clients", "totalCount");
+            checkFieldMask(mask, Client.class, "clientId", "clientIdAlias");
+        }
+
+        // The current state.
+        Map<String, JsonObject> current = fetchCurrentClients();
+
+        List<Change> changes = new ArrayList<Change>();
+        JsonLinesReader reader = new JsonLinesReader(definitions);
+
+        for (String line = reader.next(); line != null; line = reader.next())
+        {
+            JsonObject definition = parseDefinition(line, reader.getLineNumber());
+            JsonObject existing   = findExisting(current, definition);
+
+            if (existing != null && masked)
+            {
+                // Merge the definition into the full client application so
+                // that the update does not erase the masked properties.
+                existing = toJsonObject(mApi.getClient(existing.get("clientId").getAsLong()));
+            }
+
+            Change change = (existing == null)
+                    ? createChange(definition, reader.getLineNumber())
+                    : updateChange(existing, definition, reader.getLineNumber());
+
+            if (change != null)
+            {
+                changes.add(change);
+            }
+        }
+
+        return changes;
+    }
+
+
+    /**
+     * Apply the changes.
+     *
+     * @param changes
+     *         Changes computed by {@link #plan(Reader)}.
+     *
+     * @return
+     *         The outcomes of the changes in the same order.
+     */
+    public List<BulkResult<Change, Client>> apply(List<Change> changes)
+    {
+        // Clients which have been created or updated, so that a retry
+        // after a failure of setRequestableScopes does not repeat them.
+        final Map<Change, Client> applied =
+                Collections.synchronizedMap(new IdentityHashMap<Change, Client>());
+
+        return mExecutor.execute(changes, new BulkExecutor.RetryableTask<Change, Client>() {
+            @Override
+            public Client execute(Change change)
+            {
+                return applyChange(change, applied);
+            }
+
+
+            @Override
+            public boolean isRetryable(Change change, AuthleteApiException exception)
+            {
+                if (change.getType() == ChangeType.CREATE && applied.containsKey(change) == false)
+                {
+                    // The client may have been created if the request reached the server.
+                    return BulkExecutor.isUnprocessed(exception);
+                }
+
+                return BulkExecutor.isTransient(exception);
+            }
+        });
+    }
+
+
+    private Client applyChange(Change change, Map<Change, Client> applied)
+    {
+        Client client = applied.get(change);
+
+        if (client == null)
+        {
+            client = (change.getType() == ChangeType.CREATE)
+                    ? mApi.createClient(change.getClient())
+                    : mApi.updateClient(change.getClient());
+
+            applied.put(change, client);
+        }
+
+        if (change.getRequestableScopes() != null)
+        {
+            // Requestable scopes are managed by a different API.
+            mApi.setRequestableScopes(client.getClientId(), change.getRequestableScopes());
+        }
+
+        return client;
+    }
+
+
+    private Map<String, JsonObject> fetchCurrentClients()
+    {
+        Map<String, JsonObject> current = new HashMap<String, JsonObject>();
+        ClientIterator it = new ClientIterator(mApi, null);
+
+        try
+        {
+            while (it.hasNext())
+            {
+                Client client = it.next();
+                JsonObject json = toJsonObject(client);
+
+                current.put(idKey(client.getClientId()), json);
+
+                if (client.getClientIdAlias() != null)
+                {
+                    current.put(aliasKey(client.getClientIdAlias()), json);
+                }
+            }
+        }
+        finally
+        {
+            it.close();
+        }
+
+        return current;
+    }
+
+
+    private static void checkFieldMask(FieldMask mask, Class<?> klass, String... required)
+    {
+        String[] included = mask.getFieldNames(klass);
+
+        if (included == null)
+        {
+            // Not masked.
+            return;
+        }
+
+        List<String> names = Arrays.asList(included);
+
+        for (String name : required)
+        {
+            if (names.contains(name) == false)
+            {
+                throw new IllegalStateException(String.format(
+                        "The field mask excludes '%s' of %s, which is needed to match client definitions.",
+                        name, klass.getSimpleName()));
+            }
+        }
+    }
+
+
+    private static String idKey(long clientId)
+    {
+        return "id:" + clientId;
+    }
+
+
+    private static String aliasKey(String alias)
+    {
+        return "alias:" + alias;
+    }
+
+
+    private static JsonObject parseDefinition(String line, int lineNumber) throws IOException
+    {
+        try
+        {
+            return new JsonParser().parse(line).getAsJsonObject();
+        }
+        catch (JsonParseException | IllegalStateException e)
+        {
+            throw new IOException(String.format("Line %d is not a JSON object.", lineNumber), e);
+        }
+    }
+
+
+    private static JsonObject findExisting(Map<String, JsonObject> current, JsonObject definition)
+    {
+        JsonElement clientId = definition.get("clientId");
+
+        if (clientId != null && clientId.isJsonPrimitive())
+        {
+            return current.get(idKey(clientId.getAsLong()));
+        }
+
+        JsonElement alias = definition.get("clientIdAlias");
+
+        if (alias != null && alias.isJsonPrimitive())
+        {
+            return current.get(aliasKey(alias.getAsString()));
+        }
+
+        return null;
+    }
+
+
+    private static Change createChange(JsonObject definition, int lineNumber)
+    {
+        Client client = toClient(definition);
+
+        return new Change(ChangeType.CREATE, client,
+                getRequestableScopes(definition), lineNumber);
+    }
+
+
+    private static Change updateChange(JsonObject existing, JsonObject definition, int lineNumber)
+    {
+        JsonObject merged = new JsonObject();
+        boolean changed = false;
+
+        for (Map.Entry<String, JsonElement> entry : existing.entrySet())
+        {
+            merged.add(entry.getKey(), entry.getValue());
+        }
+
+        for (Map.Entry<String, JsonElement> entry : definition.entrySet())
+        {
+            String name        = entry.getKey();
+            JsonElement value  = entry.getValue();
+            JsonElement actual = existing.get(name);
+
+            if (equals(value, actual) == false)
+            {
+                changed = true;
+            }
+
+            merged.add(name, merge(actual, value));
+        }
+
+        if (changed == false)
+        {
+            // The client application is up to date.
+            return null;
+        }
+
+        String[] scopes = getRequestableScopes(definition);
+
+        if (scopes != null && equals(getRequestableScopesJson(definition), getRequestableScopesJson(existing)))
+        {
+            // Requestable scopes are not changed.
+            scopes = null;
+        }
+
+        return new Change(ChangeType.UPDATE, toClient(merged), scopes, lineNumber);
+    }
+
+
+    private static JsonElement merge(JsonElement actual, JsonElement value)
+    {
+        if (actual == null || actual.isJsonObject() == false || value.isJsonObject() == false)
+        {
+            return value;
+        }
+
+        // Merge nested objects such as "extension" property by property.
+        JsonObject merged = new JsonObject();
+
+        for (Map.Entry<String, JsonElement> entry : actual.getAsJsonObject().entrySet())
+        {
+            merged.add(entry.getKey(), entry.getValue());
+        }
+
+        for (Map.Entry<String, JsonElement> entry : value.getAsJsonObject().entrySet())
+        {
+            merged.add(entry.getKey(), merge(merged.get(entry.getKey()), entry.getValue()));
+        }
+
+        return merged;
+    }
+
+
+    private static boolean equals(JsonElement value, JsonElement actual)
+    {
+        // Gson omits null properties.
+        if (value == null || value.isJsonNull())
+        {
+            return actual == null || actual.isJsonNull();
+        }
+
+        if (value.isJsonObject() && actual != null && actual.isJsonObject())
+        {
+            // Compare only the properties in the definition.
+            for (Map.Entry<String, JsonElement> entry : value.getAsJsonObject().entrySet())
+            {
+                if (equals(entry.getValue(), actual.getAsJsonObject().get(entry.getKey())) == false)
+                {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+
+        return value.equals(actual);
+    }
+
+
+    private static JsonElement getRequestableScopesJson(JsonObject json)
+    {
+        JsonElement extension = json.get(EXTENSION);
+
+        if (extension == null || extension.isJsonObject() == false)
+        {
+            return JsonNull.INSTANCE;
+        }
+
+        JsonElement scopes = extension.getAsJsonObject().get(REQUESTABLE_SCOPES);
+
+        return (scopes != null) ? scopes : JsonNull.INSTANCE;
+    }
+
+
+    private static String[] getRequestableScopes(JsonObject definition)
+    {
+        JsonElement scopes = getRequestableScopesJson(definition);
+
+        if (scopes.isJsonNull())
+        {
+            return null;
+        }
+
+        return Utils.fromJson(scopes.toString(), String[].class);
+    }
+
+
+    private static JsonObject toJsonObject(Client client)
+    {
+        return new JsonParser().parse(Utils.toJson(client)).getAsJsonObject();
+    }
+
+
+    private static Client toClient(JsonObject json)
+    {
+        return Utils.fromJson(json.toString(), Client.class);
+    }
+}
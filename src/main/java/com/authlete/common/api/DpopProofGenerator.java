@@ -0,0 +1,383 @@
+/*
+ * Copyright (C) 2020 Authlete, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.authlete.common.api;
+
+
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.MessageDigest;
+import java.security.PrivateKey;
+import java.security.SecureRandom;
+import java.security.Signature;
+import java.security.spec.ECParameterSpec;
+import java.security.spec.ECPrivateKeySpec;
+import java.security.spec.KeySpec;
+import java.security.spec.RSAPrivateCrtKeySpec;
+import java.security.spec.RSAPrivateKeySpec;
+import com.authlete.common.types.JWSAlg;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+
+/**
+ * Generator of DPoP proof JWTs
+ * (<a href="https://datatracker.ietf.org/doc/draft-ietf-oauth-dpop/"
+ * >OAuth 2.0 DPoP</a>, 4.2) signed with a private key in JWK format,
+ * such as the one returned by {@link
+ * com.authlete.common.conf.AuthleteConfiguration#getDpopKey()
+ * AuthleteConfiguration.getDpopKey()}.
+ *
+ * <p>
+ * The key is parsed, and the JOSE header including the public key is
+ * built and encoded, only once at construction. Initialized {@link
+ * Signature} instances are kept per thread. Therefore, generating a proof
+ * costs a signature and a small payload regardless of the key format.
+ * Proofs themselves are not cached because each of them must have a
+ * unique {@code jti}.
+ * </p>
+ *
+ * <p>
+ * EC ({@code P-256}, {@code P-384}, {@code P-521} and {@code secp256k1})
+ * and RSA keys are supported. The algorithm is the {@code "alg"} of the
+ * JWK, or derived from the key type when the JWK does not have it. This
+ * class is thread-safe.
+ * </p>
+ *
+ * @since 2.76
+ */
+public class DpopProofGenerator
+{
+    private static final SecureRandom sRandom = new SecureRandom();
+
+
+    private final JWSAlg mAlg;
+    private final PrivateKey mKey;
+    private final String mEncodedHeader;
+    private final ThreadLocal<Signature> mSigners = new ThreadLocal<Signature>();
+
+
+    /**
+     * The hash of the access token used last, {token, ath}. Access tokens
+     * change rarely, so the hash is computed once per token.
+     */
+    private volatile String[] mLastAth;
+
+
+    /**
+     * Constructor.
+     *
+     * @param jwk
+     *         A private key in JWK format.
+     *
+     * @throws IllegalArgumentException
+     *         The JWK is not a supported private key.
+     */
+    public DpopProofGenerator(String jwk)
+    {
+        if (jwk == null)
+        {
+            throw new IllegalArgumentException("jwk is null.");
+        }
+
+        JsonObject key;
+
+        try
+        {
+            JsonElement element = new JsonParser().parse(jwk);
+
+            if (element.isJsonObject() == false)
+            {
+                throw new IllegalArgumentException("jwk is not a JSON object.");
+            }
+
+            key = element.getAsJsonObject();
+        }
+        catch (RuntimeException e)
+        {
+            throw new IllegalArgumentException("jwk is malformed.", e);
+        }
+
+        JsonObject publicKey = new JsonObject();
+
+        try
+        {
+            mAlg = determineAlg(key);
+            mKey = toPrivateKey(key, publicKey);
+
+            // Fail now rather than on the first proof.
+            mSigners.set(JwsSupport.createSigner(mAlg, mKey));
+        }
+        catch (GeneralSecurityException e)
+        {
+            throw new IllegalArgumentException("jwk is not a supported private key: " + e.getMessage(), e);
+        }
+
+        JsonObject header = new JsonObject();
+        header.addProperty("typ", "dpop+jwt");
+        header.addProperty("alg", mAlg.getName());
+        header.add("jwk", publicKey);
+
+        mEncodedHeader = encode(header.toString());
+    }
+
+
+    private static JWSAlg determineAlg(JsonObject jwk) throws GeneralSecurityException
+    {
+        String alg = JwkSet.getString(jwk, "alg");
+
+        if (alg != null)
+        {
+            JWSAlg parsed = JWSAlg.parse(alg);
+
+            if (parsed == null || JwsSupport.isSupported(parsed) == false)
+            {
+                throw new GeneralSecurityException("Unsupported algorithm: " + alg);
+            }
+
+            return parsed;
+        }
+
+        String kty = JwkSet.getString(jwk, "kty");
+
+        if ("RSA".equals(kty))
+        {
+            return JWSAlg.PS256;
+        }
+
+        if ("EC".equals(kty))
+        {
+            String crv = JwkSet.getString(jwk, "crv");
+
+            if ("P-384".equals(crv))
+            {
+                return JWSAlg.ES384;
+            }
+            else if ("P-521".equals(crv))
+            {
+                return JWSAlg.ES512;
+            }
+            else if ("secp256k1".equals(crv))
+            {
+                return JWSAlg.ES256K;
+            }
+
+            return JWSAlg.ES256;
+        }
+
+        throw new GeneralSecurityException("Unsupported key type: " + kty);
+    }
+
+
+    /**
+     * Convert a private JWK into a private key and put the public members
+     * into {@code publicKey}.
+     */
+    private static PrivateKey toPrivateKey(JsonObject jwk, JsonObject publicKey) throws GeneralSecurityException
+    {
+        String kty = JwkSet.getString(jwk, "kty");
+        KeySpec spec;
+
+        if ("EC".equals(kty))
+        {
+            String crv = JwkSet.getString(jwk, "crv");
+            ECParameterSpec params = JwkSet.getEcParameterSpec(crv);
+            BigInteger d = JwkSet.getBigInteger(jwk, "d");
+
+            if (params == null || d == null || jwk.has("x") == false || jwk.has("y") == false)
+            {
+                throw new GeneralSecurityException("The EC key lacks 'crv', 'x', 'y' or 'd'.");
+            }
+
+            spec = new ECPrivateKeySpec(d, params);
+
+            // The members in the lexicographic order (RFC 7638).
+            publicKey.addProperty("crv", crv);
+            publicKey.addProperty("kty", kty);
+            publicKey.addProperty("x", JwkSet.getString(jwk, "x"));
+            publicKey.addProperty("y", JwkSet.getString(jwk, "y"));
+        }
+        else if ("RSA".equals(kty))
+        {
+            BigInteger n = JwkSet.getBigInteger(jwk, "n");
+            BigInteger e = JwkSet.getBigInteger(jwk, "e");
+            BigInteger d = JwkSet.getBigInteger(jwk, "d");
+
+            if (n == null || e == null || d == null)
+            {
+                throw new GeneralSecurityException("The RSA key lacks 'n', 'e' or 'd'.");
+            }
+
+            spec = createRsaKeySpec(jwk, n, e, d);
+
+            publicKey.addProperty("e", JwkSet.getString(jwk, "e"));
+            publicKey.addProperty("kty", kty);
+            publicKey.addProperty("n", JwkSet.getString(jwk, "n"));
+        }
+        else
+        {
+            throw new GeneralSecurityException("Unsupported key type: " + kty);
+        }
+
+        return KeyFactory.getInstance(kty).generatePrivate(spec);
+    }
+
+
+    private static KeySpec createRsaKeySpec(JsonObject jwk, BigInteger n, BigInteger e, BigInteger d)
+    {
+        BigInteger p  = JwkSet.getBigInteger(jwk, "p");
+        BigInteger q  = JwkSet.getBigInteger(jwk, "q");
+        BigInteger dp = JwkSet.getBigInteger(jwk, "dp");
+        BigInteger dq = JwkSet.getBigInteger(jwk, "dq");
+        BigInteger qi = JwkSet.getBigInteger(jwk, "qi");
+
+        if (p == null || q == null || dp == null || dq == null || qi == null)
+        {
+            return new RSAPrivateKeySpec(n, d);
+        }
+
+        // The CRT parameters make signing several times faster.
+        return new RSAPrivateCrtKeySpec(n, e, d, p, q, dp, dq, qi);
+    }
+
+
+    /**
+     * Get the signature algorithm.
+     *
+     * @return
+     *         The signature algorithm.
+     */
+    public JWSAlg getAlg()
+    {
+        return mAlg;
+    }
+
+
+    /**
+     * Generate a DPoP proof.
+     *
+     * @param htm
+     *         The HTTP method of the request, e.g. {@code "POST"}.
+     *
+     * @param htu
+     *         The HTTP URI of the request without query and fragment.
+     *
+     * @param accessToken
+     *         The access token sent with the request. {@code null} if
+     *         no access token is sent. When given, the {@code "ath"}
+     *         claim is included.
+     *
+     * @return
+     *         A DPoP proof JWT.
+     *
+     * @throws IllegalStateException
+     *         Signing failed.
+     */
+    public String generate(String htm, String htu, String accessToken)
+    {
+        if (htm == null || htu == null)
+        {
+            throw new IllegalArgumentException("htm or htu is null.");
+        }
+
+        JsonObject payload = new JsonObject();
+        payload.addProperty("jti", generateJti());
+        payload.addProperty("htm", htm);
+        payload.addProperty("htu", htu);
+        payload.addProperty("iat", System.currentTimeMillis() / 1000L);
+
+        if (accessToken != null)
+        {
+            payload.addProperty("ath", computeAth(accessToken));
+        }
+
+        String signingInput = mEncodedHeader + "." + encode(payload.toString());
+
+        try
+        {
+            byte[] signature = JwsSupport.sign(mAlg, getSigner(),
+                    signingInput.getBytes(StandardCharsets.US_ASCII));
+
+            return signingInput + "." + JwsSupport.encodeBase64Url(signature);
+        }
+        catch (GeneralSecurityException e)
+        {
+            // The key has been validated in the constructor.
+            throw new IllegalStateException("Failed to sign a DPoP proof.", e);
+        }
+    }
+
+
+    private Signature getSigner() throws GeneralSecurityException
+    {
+        Signature signer = mSigners.get();
+
+        if (signer == null)
+        {
+            signer = JwsSupport.createSigner(mAlg, mKey);
+            mSigners.set(signer);
+        }
+
+        return signer;
+    }
+
+
+    private static String generateJti()
+    {
+        byte[] random = new byte[16];
+        sRandom.nextBytes(random);
+
+        return JwsSupport.encodeBase64Url(random);
+    }
+
+
+    private String computeAth(String accessToken)
+    {
+        String[] last = mLastAth;
+
+        if (last != null && last[0].equals(accessToken))
+        {
+            return last[1];
+        }
+
+        String ath;
+
+        try
+        {
+            byte[] hash = MessageDigest.getInstance("SHA-256")
+                    .digest(accessToken.getBytes(StandardCharsets.US_ASCII));
+
+            ath = JwsSupport.encodeBase64Url(hash);
+        }
+        catch (GeneralSecurityException e)
+        {
+            // SHA-256 is always available.
+            throw new IllegalStateException(e);
+        }
+
+        mLastAth = new String[] { accessToken, ath };
+
+        return ath;
+    }
+
+
+    private static String encode(String json)
+    {
+        return JwsSupport.encodeBase64Url(json.getBytes(StandardCharsets.UTF_8));
+    }
+}
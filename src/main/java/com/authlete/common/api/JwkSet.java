@@ -0,0 +1,321 @@
+/*
+ * Copyright (C) 2020 Authlete, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.authlete.common.api;
+
+
+import java.math.BigInteger;
+import java.security.AlgorithmParameters;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.PublicKey;
+import java.security.spec.ECGenParameterSpec;
+import java.security.spec.ECParameterSpec;
+import java.security.spec.ECPoint;
+import java.security.spec.ECPublicKeySpec;
+import java.security.spec.RSAPublicKeySpec;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+
+/**
+ * Public keys extracted from a JWK Set document.
+ *
+ * <p>
+ * Only keys which can be used to verify JWS signatures are kept, that is,
+ * RSA keys and EC keys on P-256, P-384, P-521 or secp256k1 whose {@code
+ * "use"} is not {@code "enc"}. Keys of other types are silently ignored.
+ * </p>
+ *
+ * @since 2.76
+ */
+final class JwkSet
+{
+    private static final JwkSet EMPTY = new JwkSet(
+            Collections.<String, PublicKey>emptyMap(), Collections.<PublicKey>emptyList());
+
+
+    private final Map<String, PublicKey> mKeysById;
+    private final List<PublicKey> mKeysWithoutId;
+
+
+    private JwkSet(Map<String, PublicKey> keysById, List<PublicKey> keysWithoutId)
+    {
+        mKeysById      = keysById;
+        mKeysWithoutId = keysWithoutId;
+    }
+
+
+    /**
+     * Get an empty key set.
+     */
+    static JwkSet empty()
+    {
+        return EMPTY;
+    }
+
+
+    /**
+     * Parse a JWK Set document.
+     *
+     * @param json
+     *         A JWK Set document. If {@code null} is given, an empty key
+     *         set is returned.
+     *
+     * @return
+     *         A key set which contains the verification keys found in
+     *         the document.
+     */
+    static JwkSet parse(String json)
+    {
+        if (json == null)
+        {
+            return EMPTY;
+        }
+
+        JsonElement root = new JsonParser().parse(json);
+
+        if (root.isJsonObject() == false)
+        {
+            return EMPTY;
+        }
+
+        JsonElement keys = root.getAsJsonObject().get("keys");
+
+        if (keys == null || keys.isJsonArray() == false)
+        {
+            return EMPTY;
+        }
+
+        Map<String, PublicKey> keysById      = new HashMap<String, PublicKey>();
+        List<PublicKey>        keysWithoutId = new ArrayList<PublicKey>();
+
+        for (JsonElement element : (JsonArray)keys)
+        {
+            if (element.isJsonObject() == false)
+            {
+                continue;
+            }
+
+            JsonObject jwk = element.getAsJsonObject();
+
+            // Keys for encryption are not used for signature verification.
+            if ("enc".equals(getString(jwk, "use")))
+            {
+                continue;
+            }
+
+            PublicKey key = toPublicKey(jwk);
+
+            if (key == null)
+            {
+                // Unsupported or malformed key.
+                continue;
+            }
+
+            String kid = getString(jwk, "kid");
+
+            if (kid != null)
+            {
+                keysById.put(kid, key);
+            }
+            else
+            {
+                keysWithoutId.add(key);
+            }
+        }
+
+        return new JwkSet(keysById, keysWithoutId);
+    }
+
+
+    /**
+     * Find a key.
+     *
+     * @param kid
+     *         The key ID. When {@code null} is given, the key is returned
+     *         only if the key set contains exactly one key.
+     *
+     * @return
+     *         The key, or {@code null} if not found.
+     */
+    PublicKey get(String kid)
+    {
+        if (kid != null)
+        {
+            return mKeysById.get(kid);
+        }
+
+        // A JWS without 'kid' can be verified without ambiguity only
+        // when the key set contains a single key.
+        if (mKeysById.size() + mKeysWithoutId.size() != 1)
+        {
+            return null;
+        }
+
+        if (mKeysWithoutId.size() == 1)
+        {
+            return mKeysWithoutId.get(0);
+        }
+
+        return mKeysById.values().iterator().next();
+    }
+
+
+    /**
+     * Get the number of keys in this key set.
+     */
+    int size()
+    {
+        return mKeysById.size() + mKeysWithoutId.size();
+    }
+
+
+    private static PublicKey toPublicKey(JsonObject jwk)
+    {
+        String kty = getString(jwk, "kty");
+
+        try
+        {
+            if ("RSA".equals(kty))
+            {
+                return toRsaPublicKey(jwk);
+            }
+            else if ("EC".equals(kty))
+            {
+                return toEcPublicKey(jwk);
+            }
+        }
+        catch (GeneralSecurityException e)
+        {
+            // The key is malformed or not supported by the platform.
+        }
+        catch (IllegalArgumentException e)
+        {
+            // Invalid base64url.
+        }
+
+        return null;
+    }
+
+
+    private static PublicKey toRsaPublicKey(JsonObject jwk) throws GeneralSecurityException
+    {
+        BigInteger n = getBigInteger(jwk, "n");
+        BigInteger e = getBigInteger(jwk, "e");
+
+        if (n == null || e == null)
+        {
+            return null;
+        }
+
+        return KeyFactory.getInstance("RSA").generatePublic(new RSAPublicKeySpec(n, e));
+    }
+
+
+    private static PublicKey toEcPublicKey(JsonObject jwk) throws GeneralSecurityException
+    {
+        ECParameterSpec spec = getEcParameterSpec(getString(jwk, "crv"));
+        BigInteger x = getBigInteger(jwk, "x");
+        BigInteger y = getBigInteger(jwk, "y");
+
+        if (spec == null || x == null || y == null)
+        {
+            return null;
+        }
+
+        return KeyFactory.getInstance("EC").generatePublic(
+                new ECPublicKeySpec(new ECPoint(x, y), spec));
+    }
+
+
+    /**
+     * Get the parameter spec of the elliptic curve identified by the
+     * {@code "crv"} parameter of a JWK.
+     */
+    static ECParameterSpec getEcParameterSpec(String crv) throws GeneralSecurityException
+    {
+        String name = getEcCurveName(crv);
+
+        if (name == null)
+        {
+            return null;
+        }
+
+        AlgorithmParameters parameters = AlgorithmParameters.getInstance("EC");
+        parameters.init(new ECGenParameterSpec(name));
+
+        return parameters.getParameterSpec(ECParameterSpec.class);
+    }
+
+
+    private static String getEcCurveName(String crv)
+    {
+        if ("P-256".equals(crv))
+        {
+            return "secp256r1";
+        }
+        else if ("P-384".equals(crv))
+        {
+            return "secp384r1";
+        }
+        else if ("P-521".equals(crv))
+        {
+            return "secp521r1";
+        }
+        else if ("secp256k1".equals(crv))
+        {
+            return "secp256k1";
+        }
+        else
+        {
+            return null;
+        }
+    }
+
+
+    static String getString(JsonObject object, String name)
+    {
+        JsonElement element = object.get(name);
+
+        if (element == null || element.isJsonPrimitive() == false)
+        {
+            return null;
+        }
+
+        return element.getAsString();
+    }
+
+
+    static BigInteger getBigInteger(JsonObject object, String name)
+    {
+        String value = getString(object, name);
+
+        if (value == null)
+        {
+            return null;
+        }
+
+        // Base64url-encoded unsigned big-endian representation.
+        return new BigInteger(1, JwsSupport.decodeBase64Url(value));
+    }
+}
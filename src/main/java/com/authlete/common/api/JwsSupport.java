@@ -0,0 +1,439 @@
+/*
+ * Copyright (C) 2020 Authlete, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.authlete.common.api;
+
+
+import java.io.ByteArrayOutputStream;
+import java.security.GeneralSecurityException;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.security.spec.MGF1ParameterSpec;
+import java.security.spec.PSSParameterSpec;
+import java.util.Base64;
+import com.authlete.common.types.JWSAlg;
+
+
+/**
+ * Helper methods for JWS signing and signature verification using the JCA.
+ *
+ * @since 2.76
+ */
+final class JwsSupport
+{
+    private JwsSupport()
+    {
+    }
+
+
+    /**
+     * Check whether the given algorithm can be handled by {@link
+     * #verify(JWSAlg, PublicKey, byte[], byte[]) verify()}.
+     * Symmetric algorithms, {@code none} and {@code EdDSA} are not
+     * supported.
+     */
+    static boolean isSupported(JWSAlg alg)
+    {
+        return getJcaAlgorithm(alg) != null;
+    }
+
+
+    /**
+     * Verify a JWS signature.
+     *
+     * @param alg
+     *         The signature algorithm.
+     *
+     * @param key
+     *         The public key.
+     *
+     * @param signingInput
+     *         The JWS signing input, i.e. the ASCII representation of
+     *         <code><i>{header}</i>.<i>{payload}</i></code>.
+     *
+     * @param signature
+     *         The decoded JWS signature.
+     *
+     * @return
+     *         {@code true} if the signature is valid.
+     *
+     * @throws GeneralSecurityException
+     *         The algorithm is not available on this platform or the key
+     *         does not fit the algorithm.
+     */
+    static boolean verify(
+            JWSAlg alg, PublicKey key, byte[] signingInput, byte[] signature) throws GeneralSecurityException
+    {
+        String jcaAlgorithm = getJcaAlgorithm(alg);
+
+        if (jcaAlgorithm == null)
+        {
+            throw new GeneralSecurityException("Unsupported JWS algorithm: " + alg);
+        }
+
+        if (isEcdsa(alg))
+        {
+            // JWS uses the concatenation of R and S (RFC 7518, 3.4)
+            // while the JCA expects ASN.1 DER.
+            signature = concatToDer(signature);
+
+            if (signature == null)
+            {
+                return false;
+            }
+        }
+
+        Signature verifier = Signature.getInstance(jcaAlgorithm);
+
+        if (isRsaPss(alg))
+        {
+            verifier.setParameter(createPssParameterSpec(alg));
+        }
+
+        verifier.initVerify(key);
+        verifier.update(signingInput);
+
+        return verifier.verify(signature);
+    }
+
+
+    /**
+     * Create a {@link Signature} initialized for signing. The instance can
+     * be used repeatedly by a thread because {@link Signature#sign()}
+     * resets it to the initialized state.
+     *
+     * @throws GeneralSecurityException
+     *         The algorithm is not available on this platform or the key
+     *         does not fit the algorithm.
+     */
+    static Signature createSigner(JWSAlg alg, PrivateKey key) throws GeneralSecurityException
+    {
+        String jcaAlgorithm = getJcaAlgorithm(alg);
+
+        if (jcaAlgorithm == null)
+        {
+            throw new GeneralSecurityException("Unsupported JWS algorithm: " + alg);
+        }
+
+        Signature signer = Signature.getInstance(jcaAlgorithm);
+
+        if (isRsaPss(alg))
+        {
+            signer.setParameter(createPssParameterSpec(alg));
+        }
+
+        signer.initSign(key);
+
+        return signer;
+    }
+
+
+    /**
+     * Sign a JWS signing input with a signer created by {@link
+     * #createSigner(JWSAlg, PrivateKey) createSigner()}.
+     *
+     * @return
+     *         The JWS signature, i.e. R | S for ECDSA.
+     */
+    static byte[] sign(JWSAlg alg, Signature signer, byte[] signingInput) throws GeneralSecurityException
+    {
+        signer.update(signingInput);
+
+        byte[] signature = signer.sign();
+
+        if (isEcdsa(alg))
+        {
+            signature = derToConcat(signature, getEcdsaFieldLength(alg));
+        }
+
+        return signature;
+    }
+
+
+    private static int getEcdsaFieldLength(JWSAlg alg)
+    {
+        switch (alg)
+        {
+            case ES384:
+                return 48;
+
+            case ES512:
+                return 66;
+
+            default:
+                return 32;
+        }
+    }
+
+
+    private static String getJcaAlgorithm(JWSAlg alg)
+    {
+        if (alg == null)
+        {
+            return null;
+        }
+
+        switch (alg)
+        {
+            case RS256:
+                return "SHA256withRSA";
+
+            case RS384:
+                return "SHA384withRSA";
+
+            case RS512:
+                return "SHA512withRSA";
+
+            case PS256:
+            case PS384:
+            case PS512:
+                return "RSASSA-PSS";
+
+            case ES256:
+            case ES256K:
+                return "SHA256withECDSA";
+
+            case ES384:
+                return "SHA384withECDSA";
+
+            case ES512:
+                return "SHA512withECDSA";
+
+            default:
+                return null;
+        }
+    }
+
+
+    static boolean isEcdsa(JWSAlg alg)
+    {
+        switch (alg)
+        {
+            case ES256:
+            case ES384:
+            case ES512:
+            case ES256K:
+                return true;
+
+            default:
+                return false;
+        }
+    }
+
+
+    private static boolean isRsaPss(JWSAlg alg)
+    {
+        switch (alg)
+        {
+            case PS256:
+            case PS384:
+            case PS512:
+                return true;
+
+            default:
+                return false;
+        }
+    }
+
+
+    static PSSParameterSpec createPssParameterSpec(JWSAlg alg)
+    {
+        switch (alg)
+        {
+            case PS384:
+                return new PSSParameterSpec("SHA-384", "MGF1", MGF1ParameterSpec.SHA384, 48, 1);
+
+            case PS512:
+                return new PSSParameterSpec("SHA-512", "MGF1", MGF1ParameterSpec.SHA512, 64, 1);
+
+            default:
+                return new PSSParameterSpec("SHA-256", "MGF1", MGF1ParameterSpec.SHA256, 32, 1);
+        }
+    }
+
+
+    /**
+     * Convert an ECDSA signature in the JWS format (R | S) into ASN.1 DER.
+     *
+     * @return
+     *         The DER representation, or {@code null} if the input is
+     *         malformed.
+     */
+    private static byte[] concatToDer(byte[] signature)
+    {
+        if (signature.length == 0 || signature.length % 2 != 0)
+        {
+            return null;
+        }
+
+        int half = signature.length / 2;
+
+        byte[] r = toDerInteger(signature, 0, half);
+        byte[] s = toDerInteger(signature, half, half);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(r.length + s.length + 8);
+
+        // SEQUENCE { INTEGER r, INTEGER s }
+        out.write(0x30);
+        writeDerLength(out, r.length + s.length);
+        out.write(r, 0, r.length);
+        out.write(s, 0, s.length);
+
+        return out.toByteArray();
+    }
+
+
+    /**
+     * Convert an ECDSA signature in ASN.1 DER into the JWS format (R | S)
+     * where R and S have the given length each.
+     */
+    private static byte[] derToConcat(byte[] der, int length) throws GeneralSecurityException
+    {
+        byte[] concat = new byte[length * 2];
+
+        try
+        {
+            // SEQUENCE
+            int offset = 1;
+            offset += derLengthSize(der, offset);
+
+            // INTEGER r
+            offset = copyDerInteger(der, offset, concat, 0, length);
+
+            // INTEGER s
+            copyDerInteger(der, offset, concat, length, length);
+        }
+        catch (ArrayIndexOutOfBoundsException e)
+        {
+            throw new GeneralSecurityException("Malformed ECDSA signature.");
+        }
+
+        return concat;
+    }
+
+
+    private static int derLengthSize(byte[] der, int offset)
+    {
+        // The number of bytes of the length field.
+        return (der[offset] & 0x80) == 0 ? 1 : 1 + (der[offset] & 0x7F);
+    }
+
+
+    private static int copyDerInteger(
+            byte[] der, int offset, byte[] target, int targetOffset, int length) throws GeneralSecurityException
+    {
+        if (der[offset] != 0x02)
+        {
+            throw new GeneralSecurityException("Malformed ECDSA signature.");
+        }
+
+        // Short form only; an integer of a supported curve is shorter
+        // than 128 bytes.
+        int valueLength = der[offset + 1] & 0xFF;
+        int start = offset + 2;
+        int end   = start + valueLength;
+
+        // Skip the leading zeros.
+        while (start < end && der[start] == 0)
+        {
+            ++start;
+        }
+
+        int actual = end - start;
+
+        if (length < actual)
+        {
+            throw new GeneralSecurityException("Malformed ECDSA signature.");
+        }
+
+        // Right-align the value.
+        System.arraycopy(der, start, target, targetOffset + length - actual, actual);
+
+        return end;
+    }
+
+
+    private static byte[] toDerInteger(byte[] source, int offset, int length)
+    {
+        // Skip leading zeros but keep at least one byte.
+        int start = offset;
+        int end   = offset + length;
+
+        while (start < end - 1 && source[start] == 0)
+        {
+            ++start;
+        }
+
+        // A leading zero is needed if the most significant bit is set.
+        boolean pad = (source[start] & 0x80) != 0;
+        int valueLength = end - start + (pad ? 1 : 0);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(valueLength + 4);
+
+        out.write(0x02);
+        writeDerLength(out, valueLength);
+
+        if (pad)
+        {
+            out.write(0);
+        }
+
+        out.write(source, start, end - start);
+
+        return out.toByteArray();
+    }
+
+
+    private static void writeDerLength(ByteArrayOutputStream out, int length)
+    {
+        if (length < 0x80)
+        {
+            out.write(length);
+        }
+        else if (length < 0x100)
+        {
+            out.write(0x81);
+            out.write(length);
+        }
+        else
+        {
+            out.write(0x82);
+            out.write(length >> 8);
+            out.write(length & 0xFF);
+        }
+    }
+
+
+    /**
+     * Decode a base64url string (with or without padding).
+     *
+     * @throws IllegalArgumentException
+     *         The input is not a valid base64url string.
+     */
+    static byte[] decodeBase64Url(String input)
+    {
+        return Base64.getUrlDecoder().decode(input);
+    }
+
+
+    /**
+     * Encode the given bytes by base64url without padding.
+     */
+    static String encodeBase64Url(byte[] input)
+    {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(input);
+    }
+}
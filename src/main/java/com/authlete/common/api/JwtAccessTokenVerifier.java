@@ -0,0 +1,1028 @@
+/*
+ * Copyright (C) 2020 Authlete, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.authlete.common.api;
+
+
+import java.io.ByteArrayInputStream;
+import java.io.UnsupportedEncodingException;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.PublicKey;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import com.authlete.common.dto.IntrospectionRequest;
+import com.authlete.common.dto.IntrospectionResponse;
+import com.authlete.common.dto.IntrospectionResponse.Action;
+import com.authlete.common.types.JWSAlg;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+
+/**
+ * Verifier of JWT-based access tokens which works locally using the
+ * service's JWK Set.
+ *
+ * <p>
+ * When a service is configured to issue access tokens in the JWT format,
+ * a resource server can validate them without calling Authlete's
+ * {@code /auth/introspection} API. This class verifies the signature of
+ * an access token with a key in the JWK Set obtained by {@link
+ * AuthleteApi#getServiceJwks()} (cached), checks {@code iss}, {@code exp},
+ * {@code nbf}, {@code aud},
+ * {@code scope}, {@code sub} and {@code cnf} ({@code x5t#S256}), and builds
+ * an {@link IntrospectionResponse} in the same manner as the introspection
+ * API does.
+ * </p>
+ *
+ * <p>
+ * The expected issuer is the one given by {@link #setIssuer(String)}. If
+ * it is not set, the {@code issuer} in the discovery document obtained by
+ * {@link AuthleteApi#getServiceConfiguration(boolean)} is used.
+ * </p>
+ *
+ * <p>
+ * {@link AuthleteApi#introspection(IntrospectionRequest)} is called as a
+ * fallback in the following cases.
+ * </p>
+ *
+ * <ul>
+ * <li>The access token is not a JWS.
+ * <li>The {@code typ} header is not {@code at+jwt} (RFC 9068), unless
+ *     {@link #setAccessTokenTypeRequired(boolean)} is set to {@code true},
+ *     in which case the access token is rejected. Many issuers do not
+ *     put {@code typ} in JWT access tokens.
+ * <li>The key identified by {@code kid} is not found even after the JWK
+ *     Set is re-fetched.
+ * <li>The signature algorithm is not supported by this class or by the
+ *     platform (e.g. {@code HS256}, {@code EdDSA}).
+ * <li>The access token is bound to a DPoP key, or the request contains a
+ *     DPoP proof.
+ * <li>The expected issuer is not set and cannot be obtained from the
+ *     discovery document.
+ * <li>Revocation checking is demanded (see {@link
+ *     #setRevocationCheckRequired(boolean)} and {@link
+ *     #introspect(IntrospectionRequest, boolean)}). A JWT cannot tell by
+ *     itself whether it has been revoked.
+ * </ul>
+ *
+ * <pre style="border: solid 1px black; padding: 0.5em;">
+ * JwtAccessTokenVerifier verifier = new JwtAccessTokenVerifier(api)
+ *     .{@link #setAudiences(String...) setAudiences}("https://api.example.com");
+ *
+ * IntrospectionResponse response = verifier.{@link #introspect(IntrospectionRequest)
+ * introspect}(new IntrospectionRequest().setToken(accessToken).setScopes(scopes));
+ * </pre>
+ *
+ * <p>
+ * Instances of this class are thread-safe.
+ * </p>
+ *
+ * @since 2.76
+ */
+public class JwtAccessTokenVerifier
+{
+    /**
+     * The default duration in milliseconds for which a fetched JWK Set is
+     * used without being re-fetched.
+     */
+    public static final long DEFAULT_JWKS_CACHE_DURATION = 60L * 60L * 1000L;
+
+
+    /**
+     * The default minimum interval in milliseconds between two fetches of
+     * the JWK Set that are triggered by unknown key IDs.
+     */
+    public static final long DEFAULT_JWKS_MIN_REFRESH_INTERVAL = 60L * 1000L;
+
+
+    /**
+     * The default allowable clock skew in seconds.
+     */
+    public static final int DEFAULT_CLOCK_SKEW = 0;
+
+
+    private static final Pattern PEM_PATTERN = Pattern.compile(
+            "-----BEGIN CERTIFICATE-----(.+?)-----END CERTIFICATE-----", Pattern.DOTALL);
+
+
+    private final AuthleteApi mApi;
+    private final Object mJwksLock = new Object();
+    private volatile JwkSet mJwkSet;
+    private volatile long mJwksFetchedAt;
+    private volatile long mJwksCacheDuration = DEFAULT_JWKS_CACHE_DURATION;
+    private volatile long mJwksMinRefreshInterval = DEFAULT_JWKS_MIN_REFRESH_INTERVAL;
+    private volatile int mClockSkew = DEFAULT_CLOCK_SKEW;
+    private volatile Set<String> mAudiences;
+    private volatile String mIssuer;
+    private volatile String mDiscoveredIssuer;
+    private volatile boolean mRevocationCheckRequired;
+    private volatile boolean mAccessTokenTypeRequired;
+
+
+    /**
+     * Constructor.
+     *
+     * @param api
+     *         The {@link AuthleteApi} instance used to fetch the JWK Set
+     *         of the service and to call the introspection API as a
+     *         fallback.
+     *
+     * @throws IllegalArgumentException
+     *         {@code api} is {@code null}.
+     */
+    public JwtAccessTokenVerifier(AuthleteApi api)
+    {
+        if (api == null)
+        {
+            throw new IllegalArgumentException("api is null.");
+        }
+
+        mApi = api;
+    }
+
+
+    /**
+     * Get the duration in milliseconds for which a fetched JWK Set is
+     * used without being re-fetched.
+     *
+     * @return
+     *         The cache duration in milliseconds.
+     */
+    public long getJwksCacheDuration()
+    {
+        return mJwksCacheDuration;
+    }
+
+
+    /**
+     * Set the duration in milliseconds for which a fetched JWK Set is
+     * used without being re-fetched. The default value is {@link
+     * #DEFAULT_JWKS_CACHE_DURATION} (1 hour).
+     *
+     * @param duration
+     *         The cache duration in milliseconds.
+     *
+     * @return
+     *         {@code this} object.
+     *
+     * @throws IllegalArgumentException
+     *         The given value is negative.
+     */
+    public JwtAccessTokenVerifier setJwksCacheDuration(long duration)
+    {
+        if (duration < 0)
+        {
+            throw new IllegalArgumentException("duration cannot be negative.");
+        }
+
+        mJwksCacheDuration = duration;
+
+        return this;
+    }
+
+
+    /**
+     * Get the minimum interval in milliseconds between two fetches of
+     * the JWK Set triggered by unknown key IDs.
+     *
+     * @return
+     *         The minimum interval in milliseconds.
+     */
+    public long getJwksMinRefreshInterval()
+    {
+        return mJwksMinRefreshInterval;
+    }
+
+
+    /**
+     * Set the minimum interval in milliseconds between two fetches of
+     * the JWK Set triggered by unknown key IDs. This prevents access
+     * tokens with bogus {@code kid} from making this verifier call the
+     * JWK Set API repeatedly. The default value is {@link
+     * #DEFAULT_JWKS_MIN_REFRESH_INTERVAL} (1 minute).
+     *
+     * @param interval
+     *         The minimum interval in milliseconds.
+     *
+     * @return
+     *         {@code this} object.
+     *
+     * @throws IllegalArgumentException
+     *         The given value is negative.
+     */
+    public JwtAccessTokenVerifier setJwksMinRefreshInterval(long interval)
+    {
+        if (interval < 0)
+        {
+            throw new IllegalArgumentException("interval cannot be negative.");
+        }
+
+        mJwksMinRefreshInterval = interval;
+
+        return this;
+    }
+
+
+    /**
+     * Get the allowable clock skew in seconds.
+     *
+     * @return
+     *         The allowable clock skew in seconds.
+     */
+    public int getClockSkew()
+    {
+        return mClockSkew;
+    }
+
+
+    /**
+     * Set the allowable clock skew in seconds which is used when {@code
+     * exp} and {@code nbf} are checked. The default value is 0.
+     *
+     * @param skew
+     *         The allowable clock skew in seconds.
+     *
+     * @return
+     *         {@code this} object.
+     *
+     * @throws IllegalArgumentException
+     *         The given value is negative.
+     */
+    public JwtAccessTokenVerifier setClockSkew(int skew)
+    {
+        if (skew < 0)
+        {
+            throw new IllegalArgumentException("skew cannot be negative.");
+        }
+
+        mClockSkew = skew;
+
+        return this;
+    }
+
+
+    /**
+     * Get the audiences one of which must be contained in the {@code aud}
+     * claim of access tokens.
+     *
+     * @return
+     *         The expected audiences. {@code null} if {@code aud} is not
+     *         checked.
+     */
+    public String[] getAudiences()
+    {
+        Set<String> audiences = mAudiences;
+
+        if (audiences == null)
+        {
+            return null;
+        }
+
+        return audiences.toArray(new String[audiences.size()]);
+    }
+
+
+    /**
+     * Set the audiences one of which must be contained in the {@code aud}
+     * claim of access tokens. Typically, the URL of the resource server.
+     * When an access token does not satisfy this condition, the token is
+     * regarded as invalid.
+     *
+     * @param audiences
+     *         The expected audiences. If {@code null} or an empty array
+     *         is given, {@code aud} is not checked.
+     *
+     * @return
+     *         {@code this} object.
+     */
+    public JwtAccessTokenVerifier setAudiences(String... audiences)
+    {
+        if (audiences == null || audiences.length == 0)
+        {
+            mAudiences = null;
+        }
+        else
+        {
+            mAudiences = new HashSet<String>(Arrays.asList(audiences));
+        }
+
+        return this;
+    }
+
+
+    /**
+     * Get the issuer which must be the value of the {@code iss} claim of
+     * access tokens.
+     *
+     * @return
+     *         The expected issuer. {@code null} if the issuer in the
+     *         discovery document of the service is used.
+     */
+    public String getIssuer()
+    {
+        return mIssuer;
+    }
+
+
+    /**
+     * Set the issuer which must be the value of the {@code iss} claim of
+     * access tokens. When an access token does not satisfy this condition,
+     * the token is regarded as invalid.
+     *
+     * @param issuer
+     *         The expected issuer. If {@code null} is given, the issuer in
+     *         the discovery document of the service is used.
+     *
+     * @return
+     *         {@code this} object.
+     */
+    public JwtAccessTokenVerifier setIssuer(String issuer)
+    {
+        mIssuer = issuer;
+
+        return this;
+    }
+
+
+    /**
+     * Get the flag indicating whether revocation checking is always
+     * required.
+     *
+     * @return
+     *         {@code true} if every access token is checked by the
+     *         introspection API.
+     */
+    public boolean isRevocationCheckRequired()
+    {
+        return mRevocationCheckRequired;
+    }
+
+
+    /**
+     * Set the flag indicating whether revocation checking is always
+     * required. When {@code true} is given, local verification is
+     * disabled and every access token is checked by the introspection
+     * API. The default value is {@code false}.
+     *
+     * @param required
+     *         {@code true} to always call the introspection API.
+     *
+     * @return
+     *         {@code this} object.
+     */
+    public JwtAccessTokenVerifier setRevocationCheckRequired(boolean required)
+    {
+        mRevocationCheckRequired = required;
+
+        return this;
+    }
+
+
+    /**
+     * Get the flag indicating whether the {@code typ} header of access
+     * tokens must be {@code at+jwt}.
+     *
+     * @return
+     *         {@code true} if access tokens without {@code at+jwt} are
+     *         rejected.
+     */
+    public boolean isAccessTokenTypeRequired()
+    {
+        return mAccessTokenTypeRequired;
+    }
+
+
+    /**
+     * Set the flag indicating whether the {@code typ} header of access
+     * tokens must be {@code at+jwt} (or {@code application/at+jwt}). When
+     * {@code true} is given, other JWTs signed with the same keys, such as
+     * ID tokens, are rejected locally. When {@code false} is given, they
+     * are checked by the introspection API. The default value is {@code
+     * false}.
+     *
+     * @param required
+     *         {@code true} to reject JWTs whose {@code typ} is not
+     *         {@code at+jwt}.
+     *
+     * @return
+     *         {@code this} object.
+     */
+    public JwtAccessTokenVerifier setAccessTokenTypeRequired(boolean required)
+    {
+        mAccessTokenTypeRequired = required;
+
+        return this;
+    }
+
+
+    /**
+     * Introspect an access token.
+     *
+     * <p>
+     * This method is an alias of {@link #introspect(IntrospectionRequest,
+     * boolean) introspect}{@code (request, false)}.
+     * </p>
+     *
+     * @param request
+     *         The introspection request.
+     *
+     * @return
+     *         An introspection response.
+     *
+     * @throws AuthleteApiException
+     *         The fallback call to Authlete's APIs failed.
+     */
+    public IntrospectionResponse introspect(IntrospectionRequest request) throws AuthleteApiException
+    {
+        return introspect(request, false);
+    }
+
+
+    /**
+     * Introspect an access token.
+     *
+     * @param request
+     *         The introspection request.
+     *
+     * @param checkRevocation
+     *         {@code true} to call the introspection API regardless of
+     *         whether the access token can be verified locally.
+     *
+     * @return
+     *         An introspection response.
+     *
+     * @throws IllegalArgumentException
+     *         {@code request} is {@code null}.
+     *
+     * @throws AuthleteApiException
+     *         The fallback call to Authlete's APIs failed.
+     */
+    public IntrospectionResponse introspect(
+            IntrospectionRequest request, boolean checkRevocation) throws AuthleteApiException
+    {
+        if (request == null)
+        {
+            throw new IllegalArgumentException("request is null.");
+        }
+
+        if (checkRevocation || mRevocationCheckRequired)
+        {
+            return mApi.introspection(request);
+        }
+
+        IntrospectionResponse response = introspectLocally(request);
+
+        if (response == null)
+        {
+            // The access token cannot be verified locally.
+            return mApi.introspection(request);
+        }
+
+        return response;
+    }
+
+
+    /**
+     * Fetch the JWK Set of the service and replace the cached one.
+     *
+     * @throws AuthleteApiException
+     *         The call to the JWK Set API failed.
+     */
+    public void refreshJwks() throws AuthleteApiException
+    {
+        synchronized (mJwksLock)
+        {
+            fetchJwks();
+        }
+    }
+
+
+    private void fetchJwks()
+    {
+        // Update the timestamp first so that a failing API won't be
+        // called again before the minimum refresh interval elapses.
+        mJwksFetchedAt = System.currentTimeMillis();
+
+        JwkSet jwkSet = JwkSet.parse(mApi.getServiceJwks());
+
+        mJwkSet = jwkSet;
+
+        if (mIssuer == null && mDiscoveredIssuer == null)
+        {
+            mDiscoveredIssuer = discoverIssuer();
+        }
+    }
+
+
+    private String discoverIssuer()
+    {
+        try
+        {
+            JsonElement configuration = new JsonParser().parse(mApi.getServiceConfiguration(false));
+
+            return configuration.isJsonObject()
+                    ? JwkSet.getString(configuration.getAsJsonObject(), "issuer") : null;
+        }
+        catch (RuntimeException e)
+        {
+            // Tokens are sent to Authlete until the issuer is known.
+            return null;
+        }
+    }
+
+
+    /**
+     * Introspect the access token locally.
+     *
+     * @return
+     *         An introspection response, or {@code null} if the access
+     *         token cannot be verified locally.
+     */
+    private IntrospectionResponse introspectLocally(IntrospectionRequest request)
+    {
+        String token = request.getToken();
+
+        if (token == null || request.getDpop() != null)
+        {
+            // Let Authlete generate the response.
+            return null;
+        }
+
+        // Split the token into header, payload and signature.
+        int dot1 = token.indexOf('.');
+        int dot2 = (dot1 < 0) ? -1 : token.indexOf('.', dot1 + 1);
+
+        if (dot2 < 0 || token.indexOf('.', dot2 + 1) >= 0)
+        {
+            // Not a JWS in the compact serialization.
+            return null;
+        }
+
+        JsonObject header;
+        JsonObject payload;
+        byte[] signature;
+
+        try
+        {
+            header    = parseJsonObject(token.substring(0, dot1));
+            payload   = parseJsonObject(token.substring(dot1 + 1, dot2));
+            signature = JwsSupport.decodeBase64Url(token.substring(dot2 + 1));
+        }
+        catch (Exception e)
+        {
+            // Not a JWT. The token may be an opaque one containing dots.
+            return null;
+        }
+
+        if (header == null || payload == null)
+        {
+            return null;
+        }
+
+        JWSAlg alg = JWSAlg.parse(JwkSet.getString(header, "alg"));
+
+        if (JwsSupport.isSupported(alg) == false)
+        {
+            return null;
+        }
+
+        if (isAccessTokenType(JwkSet.getString(header, "typ")) == false)
+        {
+            if (mAccessTokenTypeRequired)
+            {
+                // An ID token, for example, is signed with the same keys.
+                return unauthorized("The JWT is not an access token.");
+            }
+
+            // Many issuers omit 'typ'. Let Authlete judge the token.
+            return null;
+        }
+
+        JsonObject cnf = getObject(payload, "cnf");
+
+        if (cnf != null && cnf.has("jkt"))
+        {
+            // DPoP-bound access tokens are validated by Authlete.
+            return null;
+        }
+
+        PublicKey key = findKey(JwkSet.getString(header, "kid"));
+
+        if (key == null)
+        {
+            return null;
+        }
+
+        boolean valid;
+
+        try
+        {
+            valid = JwsSupport.verify(alg, key, getBytesASCII(token.substring(0, dot2)), signature);
+        }
+        catch (GeneralSecurityException e)
+        {
+            // The platform cannot verify the signature.
+            return null;
+        }
+
+        if (valid == false)
+        {
+            return unauthorized("The signature of the access token is invalid.");
+        }
+
+        String issuer = (mIssuer != null) ? mIssuer : mDiscoveredIssuer;
+
+        if (issuer == null)
+        {
+            // The issuer is unknown.
+            return null;
+        }
+
+        if (issuer.equals(JwkSet.getString(payload, "iss")) == false)
+        {
+            return unauthorized("The access token has not been issued by the service.");
+        }
+
+        return checkClaims(request, payload, cnf);
+    }
+
+
+    private static boolean isAccessTokenType(String typ)
+    {
+        // RFC 9068, 2.1. Header
+        return "at+jwt".equalsIgnoreCase(typ) || "application/at+jwt".equalsIgnoreCase(typ);
+    }
+
+
+    private PublicKey findKey(String kid)
+    {
+        long now = System.currentTimeMillis();
+        JwkSet jwkSet = mJwkSet;
+
+        if (jwkSet == null || mJwksFetchedAt + mJwksCacheDuration <= now)
+        {
+            jwkSet = refreshJwksIfStale(null, now);
+        }
+
+        PublicKey key = (jwkSet == null) ? null : jwkSet.get(kid);
+
+        if (key == null && kid != null)
+        {
+            // The service may have rotated its keys.
+            jwkSet = refreshJwksIfStale(jwkSet, now);
+            key    = (jwkSet == null) ? null : jwkSet.get(kid);
+        }
+
+        return key;
+    }
+
+
+    private JwkSet refreshJwksIfStale(JwkSet current, long now)
+    {
+        synchronized (mJwksLock)
+        {
+            // Another thread may have refreshed the JWK Set.
+            if (mJwkSet != null && mJwkSet != current
+                    && now < mJwksFetchedAt + mJwksCacheDuration)
+            {
+                return mJwkSet;
+            }
+
+            if (mJwkSet != null && now < mJwksFetchedAt + mJwksMinRefreshInterval)
+            {
+                // Too early to fetch the JWK Set again.
+                return mJwkSet;
+            }
+
+            try
+            {
+                fetchJwks();
+            }
+            catch (RuntimeException e)
+            {
+                // The API failed or returned a malformed JWK Set. Keep
+                // using the JWK Set fetched last (if any). Tokens which
+                // cannot be verified are sent to Authlete.
+                if (mJwkSet == null)
+                {
+                    mJwkSet = JwkSet.empty();
+                }
+            }
+
+            return mJwkSet;
+        }
+    }
+
+
+    private IntrospectionResponse checkClaims(
+            IntrospectionRequest request, JsonObject payload, JsonObject cnf)
+    {
+        long now = System.currentTimeMillis() / 1000L;
+        int skew = mClockSkew;
+
+        long exp = getLong(payload, "exp", 0);
+
+        if (exp <= 0)
+        {
+            return unauthorized("The access token does not have a valid expiration time.");
+        }
+
+        if (exp + skew <= now)
+        {
+            return unauthorized("The access token has expired.");
+        }
+
+        long nbf = getLong(payload, "nbf", 0);
+
+        if (nbf != 0 && now + skew < nbf)
+        {
+            return unauthorized("The access token is not valid yet.");
+        }
+
+        if (checkAudience(payload) == false)
+        {
+            return unauthorized("The access token is not intended for this resource server.");
+        }
+
+        IntrospectionResponse response = new IntrospectionResponse();
+        response.setExistent(true);
+        response.setExpiresAt(exp * 1000L);
+        response.setSubject(JwkSet.getString(payload, "sub"));
+        response.setScopes(getScopes(payload));
+        setClientId(response, JwkSet.getString(payload, "client_id"));
+
+        String thumbprint = (cnf == null) ? null : JwkSet.getString(cnf, "x5t#S256");
+
+        if (thumbprint != null)
+        {
+            response.setCertificateThumbprint(thumbprint);
+
+            if (thumbprint.equals(computeThumbprint(request.getClientCertificate())) == false)
+            {
+                return unauthorized(response,
+                        "The access token is bound to a client certificate, but the presented one does not match.");
+            }
+        }
+
+        response.setUsable(true);
+
+        String subject = request.getSubject();
+
+        if (subject != null && subject.equals(response.getSubject()) == false)
+        {
+            return forbidden(response, "invalid_request",
+                    "The access token does not belong to the specified subject.");
+        }
+
+        if (coversScopes(response.getScopes(), request.getScopes()) == false)
+        {
+            return forbidden(response, "insufficient_scope",
+                    "The access token does not cover the required scopes.");
+        }
+
+        response.setSufficient(true);
+        response.setAction(Action.OK);
+        response.setResultMessage("The access token is valid.");
+
+        return response;
+    }
+
+
+    private boolean checkAudience(JsonObject payload)
+    {
+        Set<String> audiences = mAudiences;
+
+        if (audiences == null)
+        {
+            // 'aud' is not checked.
+            return true;
+        }
+
+        JsonElement aud = payload.get("aud");
+
+        if (aud == null)
+        {
+            return false;
+        }
+
+        if (aud.isJsonArray())
+        {
+            for (JsonElement element : (JsonArray)aud)
+            {
+                if (element.isJsonPrimitive() && audiences.contains(element.getAsString()))
+                {
+                    return true;
+                }
+            }
+
+            return false;
+        }
+
+        return aud.isJsonPrimitive() && audiences.contains(aud.getAsString());
+    }
+
+
+    private static boolean coversScopes(String[] granted, String[] required)
+    {
+        if (required == null || required.length == 0)
+        {
+            return true;
+        }
+
+        if (granted == null)
+        {
+            return false;
+        }
+
+        Collection<String> grantedSet = new HashSet<String>(Arrays.asList(granted));
+
+        for (String scope : required)
+        {
+            if (scope != null && grantedSet.contains(scope) == false)
+            {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+
+    private static void setClientId(IntrospectionResponse response, String clientId)
+    {
+        if (clientId == null)
+        {
+            return;
+        }
+
+        try
+        {
+            response.setClientId(Long.parseLong(clientId));
+        }
+        catch (NumberFormatException e)
+        {
+            // The client ID alias was used when the token was issued.
+            response.setClientIdAlias(clientId);
+            response.setClientIdAliasUsed(true);
+        }
+    }
+
+
+    private static String[] getScopes(JsonObject payload)
+    {
+        String scope = JwkSet.getString(payload, "scope");
+
+        if (scope == null || scope.length() == 0)
+        {
+            return null;
+        }
+
+        return scope.trim().split(" +");
+    }
+
+
+    private static IntrospectionResponse unauthorized(String description)
+    {
+        return unauthorized(new IntrospectionResponse(), description);
+    }
+
+
+    private static IntrospectionResponse unauthorized(IntrospectionResponse response, String description)
+    {
+        response.setUsable(false);
+        response.setAction(Action.UNAUTHORIZED);
+        response.setResponseContent(buildResponseContent("invalid_token", description));
+        response.setResultMessage(description);
+
+        return response;
+    }
+
+
+    private static IntrospectionResponse forbidden(
+            IntrospectionResponse response, String error, String description)
+    {
+        response.setAction(Action.FORBIDDEN);
+        response.setResponseContent(buildResponseContent(error, description));
+        response.setResultMessage(description);
+
+        return response;
+    }
+
+
+    private static String buildResponseContent(String error, String description)
+    {
+        return String.format("Bearer error=\"%s\",error_description=\"%s\"", error, description);
+    }
+
+
+    /**
+     * Compute the base64url-encoded SHA-256 thumbprint of a certificate
+     * in PEM format.
+     *
+     * @return
+     *         The thumbprint, or {@code null} if it cannot be computed.
+     */
+    private static String computeThumbprint(String pem)
+    {
+        if (pem == null)
+        {
+            return null;
+        }
+
+        Matcher matcher = PEM_PATTERN.matcher(pem);
+
+        if (matcher.find() == false)
+        {
+            return null;
+        }
+
+        try
+        {
+            byte[] der = Base64.getMimeDecoder().decode(matcher.group(1));
+
+            // Make sure that the data is really a certificate.
+            X509Certificate certificate = (X509Certificate)CertificateFactory
+                    .getInstance("X.509").generateCertificate(new ByteArrayInputStream(der));
+
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(certificate.getEncoded());
+
+            return JwsSupport.encodeBase64Url(digest);
+        }
+        catch (GeneralSecurityException e)
+        {
+            return null;
+        }
+        catch (IllegalArgumentException e)
+        {
+            return null;
+        }
+    }
+
+
+    private static JsonObject parseJsonObject(String base64url) throws UnsupportedEncodingException
+    {
+        String json = new String(JwsSupport.decodeBase64Url(base64url), "UTF-8");
+
+        JsonElement element = new JsonParser().parse(json);
+
+        return element.isJsonObject() ? element.getAsJsonObject() : null;
+    }
+
+
+    private static JsonObject getObject(JsonObject object, String name)
+    {
+        JsonElement element = object.get(name);
+
+        return (element != null && element.isJsonObject()) ? element.getAsJsonObject() : null;
+    }
+
+
+    private static long getLong(JsonObject object, String name, long defaultValue)
+    {
+        JsonElement element = object.get(name);
+
+        if (element == null || element.isJsonPrimitive() == false
+                || element.getAsJsonPrimitive().isNumber() == false)
+        {
+            return defaultValue;
+        }
+
+        return element.getAsLong();
+    }
+
+
+    private static byte[] getBytesASCII(String str)
+    {
+        try
+        {
+            return str.getBytes("US-ASCII");
+        }
+        catch (UnsupportedEncodingException e)
+        {
+            // This never happens because US-ASCII is always supported.
+            return str.getBytes();
+        }
+    }
+}
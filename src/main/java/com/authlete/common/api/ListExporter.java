@@ -0,0 +1,312 @@
+/*
+ * Copyright (C) 2020 Authlete, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.authlete.common.api;
+
+
+import java.io.IOException;
+import java.io.Writer;
+import com.authlete.common.dto.Client;
+import com.authlete.common.dto.Service;
+import com.authlete.common.util.JsonLinesWriter;
+
+
+/**
+ * Exporter of the whole lists of client applications and services.
+ *
+ * <p>
+ * After the first page tells the total count, the range {@code [0,
+ * totalCount)} is partitioned into pages of {@link #setPageSize(int)
+ * the page size}, and up to {@link #setParallelism(int) parallelism}
+ * pages are fetched concurrently. Items are passed to the sink in the
+ * order of ranges, so the output is the same as the one of sequential
+ * export.
+ * </p>
+ *
+ * <pre style="border: solid 1px black; padding: 0.5em;">
+ * try (Writer out = Files.newBufferedWriter(Paths.get("clients.jsonl")))
+ * {
+ *     int count = new ListExporter(api)
+ *         .{@link #setParallelism(int) setParallelism}(8)
+ *         .{@link #exportClients(String, Writer) exportClients}(null, out);
+ * }
+ * </pre>
+ *
+ * @since 2.76
+ */
+public class ListExporter
+{
+    /**
+     * The default page size, 100.
+     */
+    public static final int DEFAULT_PAGE_SIZE = PagedIterator.DEFAULT_PAGE_SIZE;
+
+
+    /**
+     * The default parallelism, 4.
+     */
+    public static final int DEFAULT_PARALLELISM = 4;
+
+
+    /**
+     * Destination of exported items.
+     *
+     * @param <T>
+     *         The type of items.
+     */
+    public interface Sink<T>
+    {
+        /**
+         * Accept an item. This method is called in the caller's thread
+         * of the export method, in the order of the list.
+         *
+         * @param item
+         *         An item.
+         *
+         * @throws IOException
+         *         Failed to write the item.
+         */
+        void accept(T item) throws IOException;
+    }
+
+
+    private final AuthleteApi mApi;
+    private int mPageSize = DEFAULT_PAGE_SIZE;
+    private int mParallelism = DEFAULT_PARALLELISM;
+
+
+    /**
+     * Constructor.
+     *
+     * @param api
+     *         An implementation of {@link AuthleteApi}.
+     */
+    public ListExporter(AuthleteApi api)
+    {
+        if (api == null)
+        {
+            throw new IllegalArgumentException("api is null.");
+        }
+
+        mApi = api;
+    }
+
+
+    /**
+     * Get the number of items fetched by one API call.
+     *
+     * @return
+     *         The page size.
+     */
+    public int getPageSize()
+    {
+        return mPageSize;
+    }
+
+
+    /**
+     * Set the number of items fetched by one API call. The default value
+     * is {@link #DEFAULT_PAGE_SIZE}.
+     *
+     * @param size
+     *         The page size. Must be positive.
+     *
+     * @return
+     *         {@code this} object.
+     */
+    public ListExporter setPageSize(int size)
+    {
+        if (size <= 0)
+        {
+            throw new IllegalArgumentException("size must be positive.");
+        }
+
+        mPageSize = size;
+
+        return this;
+    }
+
+
+    /**
+     * Get the maximum number of concurrent API calls.
+     *
+     * @return
+     *         The parallelism.
+     */
+    public int getParallelism()
+    {
+        return mParallelism;
+    }
+
+
+    /**
+     * Set the maximum number of concurrent API calls. The default value
+     * is {@link #DEFAULT_PARALLELISM}.
+     *
+     * @param parallelism
+     *         The parallelism. Must be positive.
+     *
+     * @return
+     *         {@code this} object.
+     */
+    public ListExporter setParallelism(int parallelism)
+    {
+        if (parallelism <= 0)
+        {
+            throw new IllegalArgumentException("parallelism must be positive.");
+        }
+
+        mParallelism = parallelism;
+
+        return this;
+    }
+
+
+    /**
+     * Export client applications to the sink.
+     *
+     * @param developer
+     *         The developer of the targeted client applications, or
+     *         {@code null} to export the client applications of the
+     *         entire service.
+     *
+     * @param sink
+     *         The destination of client applications.
+     *
+     * @return
+     *         The number of exported client applications.
+     *
+     * @throws IOException
+     *         The sink failed to write.
+     *
+     * @throws AuthleteApiException
+     *         An API call failed.
+     */
+    public int exportClients(String developer, Sink<? super Client> sink) throws IOException
+    {
+        return export(new ClientIterator(mApi, developer), sink);
+    }
+
+
+    /**
+     * Export client applications in the JSON Lines format.
+     *
+     * @param developer
+     *         The developer of the targeted client applications, or
+     *         {@code null} to export the client applications of the
+     *         entire service.
+     *
+     * @param out
+     *         The destination. It is flushed but not closed.
+     *
+     * @return
+     *         The number of exported client applications.
+     *
+     * @throws IOException
+     *         Failed to write.
+     *
+     * @throws AuthleteApiException
+     *         An API call failed.
+     */
+    public int exportClients(String developer, Writer out) throws IOException
+    {
+        return exportJsonLines(new ClientIterator(mApi, developer), out);
+    }
+
+
+    /**
+     * Export services to the sink.
+     *
+     * @param sink
+     *         The destination of services.
+     *
+     * @return
+     *         The number of exported services.
+     *
+     * @throws IOException
+     *         The sink failed to write.
+     *
+     * @throws AuthleteApiException
+     *         An API call failed.
+     */
+    public int exportServices(Sink<? super Service> sink) throws IOException
+    {
+        return export(new ServiceIterator(mApi), sink);
+    }
+
+
+    /**
+     * Export services in the JSON Lines format.
+     *
+     * @param out
+     *         The destination. It is flushed but not closed.
+     *
+     * @return
+     *         The number of exported services.
+     *
+     * @throws IOException
+     *         Failed to write.
+     *
+     * @throws AuthleteApiException
+     *         An API call failed.
+     */
+    public int exportServices(Writer out) throws IOException
+    {
+        return exportJsonLines(new ServiceIterator(mApi), out);
+    }
+
+
+    private <T> int exportJsonLines(PagedIterator<T> iterator, Writer out) throws IOException
+    {
+        final JsonLinesWriter writer = new JsonLinesWriter(out);
+
+        int count = export(iterator, new Sink<T>() {
+            @Override
+            public void accept(T item) throws IOException
+            {
+                writer.write(item);
+            }
+        });
+
+        writer.flush();
+
+        return count;
+    }
+
+
+    private <T> int export(PagedIterator<T> iterator, Sink<? super T> sink) throws IOException
+    {
+        // While the caller's thread is writing a page, the other pages
+        // are fetched concurrently.
+        iterator.setPageSize(mPageSize).setPrefetchWindow(mParallelism);
+
+        int count = 0;
+
+        try
+        {
+            while (iterator.hasNext())
+            {
+                sink.accept(iterator.next());
+                ++count;
+            }
+        }
+        finally
+        {
+            iterator.close();
+        }
+
+        return count;
+    }
+}
@@ -0,0 +1,491 @@
+/*
+ * Copyright (C) 2020 Authlete, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.authlete.common.api;
+
+
+import java.io.Closeable;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+
+/**
+ * Iterator over all the items of a list API which supports ranges
+ * ({@code start} and {@code end}).
+ *
+ * <p>
+ * The first page is fetched when {@link #hasNext()} is called for the
+ * first time. Its response tells the total number of items, and then the
+ * following pages are fetched in the background while the caller is
+ * processing the current page. The number of pages fetched ahead is
+ * controlled by {@link #setPrefetchWindow(int)}. Items are returned in the
+ * order of ranges.
+ * </p>
+ *
+ * <p>
+ * An iterator should be closed when it is not used any more, especially
+ * when the iteration is terminated early, so that pending requests are
+ * cancelled and the background threads are released. A {@link Stream}
+ * returned by {@link #stream()} closes the iterator when the stream is
+ * closed.
+ * </p>
+ *
+ * <pre style="border: solid 1px black; padding: 0.5em;">
+ * try (Stream&lt;AccessToken&gt; tokens = new {@link AccessTokenIterator}(api, null, subject).stream())
+ * {
+ *     tokens.forEach(token -&gt; audit(token));
+ * }
+ * </pre>
+ *
+ * <p>
+ * Because items are fetched page by page, items which are added or
+ * removed while the iteration is in progress may be missed or returned
+ * twice. Instances of this class are not thread-safe.
+ * </p>
+ *
+ * @param <T>
+ *         The type of items.
+ *
+ * @since 2.76
+ */
+public abstract class PagedIterator<T> implements Iterator<T>, Closeable
+{
+    /**
+     * The default page size, 100.
+     */
+    public static final int DEFAULT_PAGE_SIZE = 100;
+
+
+    /**
+     * The default prefetch window, 2.
+     */
+    public static final int DEFAULT_PREFETCH_WINDOW = 2;
+
+
+    private static final AtomicInteger sThreadNumber = new AtomicInteger();
+
+
+    /**
+     * A page returned from a list API.
+     *
+     * @param <T>
+     *         The type of items.
+     */
+    protected static final class Page<T>
+    {
+        private final T[] mItems;
+        private final int mTotalCount;
+
+
+        /**
+         * Constructor.
+         *
+         * @param items
+         *         Items in the page. {@code null} is regarded as empty.
+         *
+         * @param totalCount
+         *         The total number of items reported by the API.
+         */
+        public Page(T[] items, int totalCount)
+        {
+            mItems      = items;
+            mTotalCount = totalCount;
+        }
+    }
+
+
+    private int mPageSize = DEFAULT_PAGE_SIZE;
+    private int mPrefetchWindow = DEFAULT_PREFETCH_WINDOW;
+    private ExecutorService mExecutor;
+    private boolean mExecutorOwned;
+    private final Deque<Future<Page<T>>> mPending = new ArrayDeque<Future<Page<T>>>();
+    private T[] mItems;
+    private int mIndex;
+    private int mTotalCount = -1;
+    private int mNextStart;
+    private boolean mClosed;
+
+
+    /**
+     * Fetch items in the range.
+     *
+     * <p>
+     * This method may be called from background threads.
+     * </p>
+     *
+     * @param start
+     *         The start index (inclusive) of the range.
+     *
+     * @param end
+     *         The end index (exclusive) of the range.
+     *
+     * @return
+     *         The fetched page.
+     *
+     * @throws AuthleteApiException
+     *         The API call failed.
+     */
+    protected abstract Page<T> fetch(int start, int end) throws AuthleteApiException;
+
+
+    /**
+     * Get the number of items fetched by one API call.
+     *
+     * @return
+     *         The page size.
+     */
+    public int getPageSize()
+    {
+        return mPageSize;
+    }
+
+
+    /**
+     * Set the number of items fetched by one API call. The default value
+     * is {@link #DEFAULT_PAGE_SIZE}.
+     *
+     * @param size
+     *         The page size. Must be positive.
+     *
+     * @return
+     *         {@code this} object.
+     *
+     * @throws IllegalArgumentException
+     *         {@code size} is not positive.
+     *
+     * @throws IllegalStateException
+     *         The iteration has already started.
+     */
+    public PagedIterator<T> setPageSize(int size)
+    {
+        if (size <= 0)
+        {
+            throw new IllegalArgumentException("size must be positive.");
+        }
+
+        ensureNotStarted();
+
+        mPageSize = size;
+
+        return this;
+    }
+
+
+    /**
+     * Get the maximum number of pages fetched ahead.
+     *
+     * @return
+     *         The prefetch window.
+     */
+    public int getPrefetchWindow()
+    {
+        return mPrefetchWindow;
+    }
+
+
+    /**
+     * Set the maximum number of pages fetched ahead. The default value is
+     * {@link #DEFAULT_PREFETCH_WINDOW}. When 0 is given, pages are fetched
+     * one by one in the caller's thread.
+     *
+     * @param window
+     *         The prefetch window. Must not be negative.
+     *
+     * @return
+     *         {@code this} object.
+     *
+     * @throws IllegalArgumentException
+     *         {@code window} is negative.
+     *
+     * @throws IllegalStateException
+     *         The iteration has already started.
+     */
+    public PagedIterator<T> setPrefetchWindow(int window)
+    {
+        if (window < 0)
+        {
+            throw new IllegalArgumentException("window must not be negative.");
+        }
+
+        ensureNotStarted();
+
+        mPrefetchWindow = window;
+
+        return this;
+    }
+
+
+    /**
+     * Set the executor used to fetch pages in the background.
+     *
+     * <p>
+     * If no executor is set, a thread pool whose size is equal to the
+     * prefetch window is created on demand and shut down when this
+     * iterator is closed. An executor given by this method is not shut
+     * down by this iterator.
+     * </p>
+     *
+     * @param executor
+     *         An executor.
+     *
+     * @return
+     *         {@code this} object.
+     *
+     * @throws IllegalStateException
+     *         The iteration has already started.
+     */
+    public PagedIterator<T> setExecutor(ExecutorService executor)
+    {
+        ensureNotStarted();
+
+        mExecutor      = executor;
+        mExecutorOwned = false;
+
+        return this;
+    }
+
+
+    /**
+     * Get the total number of items reported by the API.
+     *
+     * @return
+     *         The total number of items. -1 if the first page has not
+     *         been fetched yet.
+     */
+    public int getTotalCount()
+    {
+        return mTotalCount;
+    }
+
+
+    @Override
+    public boolean hasNext()
+    {
+        if (mClosed)
+        {
+            return false;
+        }
+
+        while (mItems == null || mItems.length <= mIndex)
+        {
+            if (loadNextPage() == false)
+            {
+                // No more items.
+                close();
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+
+    @Override
+    public T next()
+    {
+        if (hasNext() == false)
+        {
+            throw new NoSuchElementException();
+        }
+
+        return mItems[mIndex++];
+    }
+
+
+    /**
+     * Create a sequential, ordered stream over the items. Closing the
+     * stream closes this iterator.
+     *
+     * @return
+     *         A stream over the items.
+     */
+    public Stream<T> stream()
+    {
+        Spliterator<T> spliterator = Spliterators.spliteratorUnknownSize(
+                this, Spliterator.ORDERED | Spliterator.NONNULL);
+
+        return StreamSupport.stream(spliterator, false).onClose(new Runnable() {
+            @Override
+            public void run()
+            {
+                close();
+            }
+        });
+    }
+
+
+    /**
+     * Cancel pending requests and release the background threads.
+     */
+    @Override
+    public void close()
+    {
+        if (mClosed)
+        {
+            return;
+        }
+
+        mClosed = true;
+        mItems  = null;
+
+        for (Future<Page<T>> future : mPending)
+        {
+            future.cancel(true);
+        }
+
+        mPending.clear();
+
+        if (mExecutorOwned)
+        {
+            mExecutor.shutdownNow();
+            mExecutor = null;
+        }
+    }
+
+
+    private void ensureNotStarted()
+    {
+        if (0 <= mTotalCount || mClosed)
+        {
+            throw new IllegalStateException("The iteration has already started.");
+        }
+    }
+
+
+    private boolean loadNextPage()
+    {
+        Page<T> page;
+
+        if (mTotalCount < 0)
+        {
+            // The first page tells the total count.
+            page        = fetch(0, mPageSize);
+            mTotalCount = Math.max(page.mTotalCount, 0);
+            mNextStart  = mPageSize;
+        }
+        else if (mPending.size() != 0)
+        {
+            page = await(mPending.poll());
+        }
+        else if (mNextStart < mTotalCount)
+        {
+            // Prefetching is disabled.
+            int start  = mNextStart;
+            mNextStart = end(start);
+            page       = fetch(start, mNextStart);
+        }
+        else
+        {
+            return false;
+        }
+
+        mItems = page.mItems;
+        mIndex = 0;
+
+        fillWindow();
+
+        return true;
+    }
+
+
+    private int end(int start)
+    {
+        return (int)Math.min((long)start + mPageSize, mTotalCount);
+    }
+
+
+    private void fillWindow()
+    {
+        while (mPending.size() < mPrefetchWindow && mNextStart < mTotalCount)
+        {
+            final int start = mNextStart;
+            final int end   = end(start);
+
+            mNextStart = end;
+
+            mPending.add(getExecutor().submit(new Callable<Page<T>>() {
+                @Override
+                public Page<T> call()
+                {
+                    return fetch(start, end);
+                }
+            }));
+        }
+    }
+
+
+    private ExecutorService getExecutor()
+    {
+        if (mExecutor == null)
+        {
+            mExecutor = Executors.newFixedThreadPool(mPrefetchWindow, new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable)
+                {
+                    Thread thread = new Thread(runnable, "authlete-prefetch-" + sThreadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+
+                    return thread;
+                }
+            });
+            mExecutorOwned = true;
+        }
+
+        return mExecutor;
+    }
+
+
+    private Page<T> await(Future<Page<T>> future)
+    {
+        try
+        {
+            return future.get();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            close();
+
+            throw new IllegalStateException("Interrupted while waiting for a page.", e);
+        }
+        catch (ExecutionException e)
+        {
+            close();
+
+            Throwable cause = e.getCause();
+
+            if (cause instanceof RuntimeException)
+            {
+                // e.g. AuthleteApiException
+                throw (RuntimeException)cause;
+            }
+
+            throw new IllegalStateException("Failed to fetch a page.", cause);
+        }
+    }
+}
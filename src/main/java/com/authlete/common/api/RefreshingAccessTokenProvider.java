@@ -0,0 +1,444 @@
+/*
+ * Copyright (C) 2020 Authlete, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.authlete.common.api;
+
+
+import java.io.Closeable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import com.authlete.common.web.AuthorizationHeader;
+
+
+/**
+ * {@link AccessTokenProvider} which refreshes the access token in the
+ * background before it expires.
+ *
+ * <p>
+ * {@link #getAuthorization()} returns the current header without locking.
+ * When the token is within the {@link #setRefreshMargin(long) refresh
+ * margin} of its expiry, one background thread fetches a new token while
+ * API calls keep using the current one. The margin is at most half the
+ * lifetime of a token, so short-lived tokens are not refreshed on every
+ * call. Only when there is no valid token at all (at the first call, or
+ * after failed refreshes until expiry) do callers wait, and then a single
+ * fetch serves all of them.
+ * </p>
+ *
+ * <p>
+ * After a failed fetch, no fetch is made for the {@link
+ * #setRetryInterval(long) retry interval}. During the interval, callers
+ * without a valid token fail immediately instead of calling the fetcher
+ * again.
+ * </p>
+ *
+ * <pre style="border: solid 1px black; padding: 0.5em;">
+ * RefreshingAccessTokenProvider provider = new RefreshingAccessTokenProvider(
+ *     new RefreshingAccessTokenProvider.Fetcher() {
+ *         public RefreshingAccessTokenProvider.Token fetch() throws Exception {
+ *             // Obtain an access token, e.g. by the client credentials flow.
+ *             return new RefreshingAccessTokenProvider.Token(
+ *                 accessToken, System.currentTimeMillis() + expiresIn * 1000L);
+ *         }
+ *     });
+ *
+ * api.getSettings().setServiceAccessTokenProvider(provider);
+ * </pre>
+ *
+ * @since 2.76
+ */
+public class RefreshingAccessTokenProvider implements AccessTokenProvider, Closeable
+{
+    /**
+     * The default refresh margin, 60 seconds.
+     */
+    public static final long DEFAULT_REFRESH_MARGIN = TimeUnit.SECONDS.toMillis(60);
+
+
+    /**
+     * The default interval after a failed fetch, 5 seconds.
+     */
+    public static final long DEFAULT_RETRY_INTERVAL = TimeUnit.SECONDS.toMillis(5);
+
+
+    private static final Logger sLogger = Logger.getLogger(RefreshingAccessTokenProvider.class.getName());
+
+
+    /**
+     * Fetcher of a new access token.
+     */
+    public interface Fetcher
+    {
+        /**
+         * Fetch a new access token. This method is never called
+         * concurrently.
+         *
+         * @return
+         *         A new access token.
+         *
+         * @throws Exception
+         *         Failed to fetch an access token.
+         */
+        Token fetch() throws Exception;
+    }
+
+
+    /**
+     * An access token and its expiry.
+     */
+    public static class Token
+    {
+        private final String mAccessToken;
+        private final long mExpiresAt;
+
+
+        /**
+         * Constructor.
+         *
+         * @param accessToken
+         *         The access token.
+         *
+         * @param expiresAt
+         *         The time at which the access token expires in
+         *         milliseconds since the Unix epoch. 0 if it does not
+         *         expire.
+         */
+        public Token(String accessToken, long expiresAt)
+        {
+            if (accessToken == null)
+            {
+                throw new IllegalArgumentException("accessToken is null.");
+            }
+
+            mAccessToken = accessToken;
+            mExpiresAt   = (expiresAt == 0) ? Long.MAX_VALUE : expiresAt;
+        }
+
+
+        /**
+         * Get the access token.
+         *
+         * @return
+         *         The access token.
+         */
+        public String getAccessToken()
+        {
+            return mAccessToken;
+        }
+
+
+        /**
+         * Get the time at which the access token expires.
+         *
+         * @return
+         *         The expiry in milliseconds since the Unix epoch.
+         *         {@link Long#MAX_VALUE} if it does not expire.
+         */
+        public long getExpiresAt()
+        {
+            return mExpiresAt;
+        }
+    }
+
+
+    /**
+     * The current token and its header, replaced as a whole.
+     */
+    private static class State
+    {
+        final AuthorizationHeader header;
+        final long expiresAt;
+        final long refreshAt;
+
+
+        State(AuthorizationHeader header, long expiresAt, long refreshAt)
+        {
+            this.header    = header;
+            this.expiresAt = expiresAt;
+            this.refreshAt = refreshAt;
+        }
+    }
+
+
+    private final Fetcher mFetcher;
+    private final Object mFetchLock = new Object();
+    private final AtomicBoolean mRefreshing = new AtomicBoolean();
+    private final ExecutorService mExecutor;
+    private volatile State mState;
+    private volatile long mNextAttempt;
+    private volatile Exception mLastFailure;
+    private volatile long mRefreshMargin = DEFAULT_REFRESH_MARGIN;
+    private volatile long mRetryInterval = DEFAULT_RETRY_INTERVAL;
+    private volatile boolean mDpop;
+
+
+    /**
+     * Constructor.
+     *
+     * @param fetcher
+     *         The fetcher of access tokens.
+     */
+    public RefreshingAccessTokenProvider(Fetcher fetcher)
+    {
+        if (fetcher == null)
+        {
+            throw new IllegalArgumentException("fetcher is null.");
+        }
+
+        mFetcher  = fetcher;
+        mExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable)
+            {
+                Thread thread = new Thread(runnable, "authlete-token-refresher");
+                thread.setDaemon(true);
+
+                return thread;
+            }
+        });
+    }
+
+
+    /**
+     * Set how long before the expiry the access token is refreshed. The
+     * default value is {@link #DEFAULT_REFRESH_MARGIN}. For a token whose
+     * lifetime is shorter than twice the margin, half the lifetime is used
+     * instead.
+     *
+     * @param millis
+     *         The margin in milliseconds.
+     *
+     * @return
+     *         {@code this} object.
+     */
+    public RefreshingAccessTokenProvider setRefreshMargin(long millis)
+    {
+        if (millis < 0)
+        {
+            throw new IllegalArgumentException("millis must not be negative.");
+        }
+
+        mRefreshMargin = millis;
+
+        return this;
+    }
+
+
+    /**
+     * Set the interval after a failed fetch during which no fetch is made.
+     * The default value is {@link #DEFAULT_RETRY_INTERVAL}.
+     *
+     * @param millis
+     *         The interval in milliseconds.
+     *
+     * @return
+     *         {@code this} object.
+     */
+    public RefreshingAccessTokenProvider setRetryInterval(long millis)
+    {
+        if (millis < 0)
+        {
+            throw new IllegalArgumentException("millis must not be negative.");
+        }
+
+        mRetryInterval = millis;
+
+        return this;
+    }
+
+
+    /**
+     * Set whether the access tokens are DPoP-bound. If {@code true}, the
+     * scheme of the header is {@code DPoP} instead of {@code Bearer}.
+     *
+     * @param dpop
+     *         {@code true} if the access tokens are DPoP-bound.
+     *
+     * @return
+     *         {@code this} object.
+     */
+    public RefreshingAccessTokenProvider setDpop(boolean dpop)
+    {
+        mDpop = dpop;
+
+        return this;
+    }
+
+
+    @Override
+    public AuthorizationHeader getAuthorization() throws AuthleteApiException
+    {
+        State state = mState;
+        long now = System.currentTimeMillis();
+
+        if (state == null || state.expiresAt <= now)
+        {
+            return fetchNow().header;
+        }
+
+        if (state.refreshAt <= now && mNextAttempt <= now)
+        {
+            refreshInBackground();
+        }
+
+        return state.header;
+    }
+
+
+    /**
+     * Fetch a token synchronously. Concurrent callers wait for the fetch
+     * of the first one.
+     */
+    private State fetchNow() throws AuthleteApiException
+    {
+        synchronized (mFetchLock)
+        {
+            State state = mState;
+
+            long now = System.currentTimeMillis();
+
+            // Another thread may have fetched a token while waiting.
+            if (state != null && now < state.expiresAt)
+            {
+                return state;
+            }
+
+            Exception failure = mLastFailure;
+
+            // Do not call the fetcher again right after a failure.
+            if (failure != null && now < mNextAttempt)
+            {
+                throw createException(failure);
+            }
+
+            try
+            {
+                return fetch();
+            }
+            catch (Exception e)
+            {
+                onFailure(e);
+
+                throw createException(e);
+            }
+        }
+    }
+
+
+    private static AuthleteApiException createException(Exception cause)
+    {
+        return new AuthleteApiException("Failed to fetch an access token: " + cause.getMessage(), cause);
+    }
+
+
+    private void onFailure(Exception e)
+    {
+        mLastFailure = e;
+        mNextAttempt = System.currentTimeMillis() + mRetryInterval;
+    }
+
+
+    private void refreshInBackground()
+    {
+        if (mRefreshing.compareAndSet(false, true) == false)
+        {
+            // A refresh is in progress.
+            return;
+        }
+
+        try
+        {
+            mExecutor.execute(new Runnable() {
+                @Override
+                public void run()
+                {
+                    try
+                    {
+                        synchronized (mFetchLock)
+                        {
+                            fetch();
+                        }
+                    }
+                    catch (Exception e)
+                    {
+                        // Keep using the current token and retry later.
+                        onFailure(e);
+
+                        sLogger.log(Level.WARNING, "Failed to refresh the access token: " + e.getMessage(), e);
+                    }
+                    finally
+                    {
+                        mRefreshing.set(false);
+                    }
+                }
+            });
+        }
+        catch (RejectedExecutionException e)
+        {
+            // Closed. The token is fetched synchronously after it expires.
+            mRefreshing.set(false);
+        }
+    }
+
+
+    /**
+     * Fetch a token and make it current. Called with mFetchLock held.
+     */
+    private State fetch() throws Exception
+    {
+        Token token = mFetcher.fetch();
+
+        if (token == null)
+        {
+            throw new IllegalStateException("The fetcher returned null.");
+        }
+
+        AuthorizationHeader header = mDpop
+                ? AuthorizationHeader.dpop(token.getAccessToken())
+                : AuthorizationHeader.bearer(token.getAccessToken());
+
+        long now       = System.currentTimeMillis();
+        long expiresAt = token.getExpiresAt();
+
+        // Refresh at least half the lifetime after the fetch, so that a
+        // token living shorter than the margin is not refreshed on every
+        // call.
+        long margin    = Math.min(mRefreshMargin, Math.max(0, expiresAt - now) / 2);
+        State state    = new State(header, expiresAt, expiresAt - margin);
+
+        mState       = state;
+        mLastFailure = null;
+        mNextAttempt = 0;
+
+        return state;
+    }
+
+
+    /**
+     * Stop the background thread. Tokens are still fetched synchronously
+     * when they expire.
+     */
+    @Override
+    public void close()
+    {
+        mExecutor.shutdownNow();
+    }
+}
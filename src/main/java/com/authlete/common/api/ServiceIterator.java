@@ -0,0 +1,60 @@
+/*
+ * Copyright (C) 2020 Authlete, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.authlete.common.api;
+
+
+import com.authlete.common.dto.Service;
+import com.authlete.common.dto.ServiceListResponse;
+
+
+/**
+ * Iterator over all the services of the service owner, built on top of
+ * {@link AuthleteApi#getServiceList(int, int)}.
+ *
+ * @see PagedIterator
+ *
+ * @since 2.76
+ */
+public class ServiceIterator extends PagedIterator<Service>
+{
+    private final AuthleteApi mApi;
+
+
+    /**
+     * Constructor.
+     *
+     * @param api
+     *         An implementation of {@link AuthleteApi}.
+     */
+    public ServiceIterator(AuthleteApi api)
+    {
+        if (api == null)
+        {
+            throw new IllegalArgumentException("api is null.");
+        }
+
+        mApi = api;
+    }
+
+
+    @Override
+    protected Page<Service> fetch(int start, int end) throws AuthleteApiException
+    {
+        ServiceListResponse response = mApi.getServiceList(start, end);
+
+        return new Page<Service>(response.getServices(), response.getTotalCount());
+    }
+}
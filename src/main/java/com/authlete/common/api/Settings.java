@@ -17,6 +17,10 @@
 package com.authlete.common.api;
 
 
+import com.authlete.common.util.FieldMask;
+import com.authlete.common.util.StringPool;
+
+
 /**
  * Settings of {@link AuthleteApi} implementation.
  *
@@ -28,6 +32,12 @@ public class Settings
 {
     private int connectionTimeout;
     private int readTimeout;
+    private boolean lazyBindingEnabled;
+    private FieldMask fieldMask;
+    private StringPool stringPool;
+    private ApiCallListener apiCallListener;
+    private AccessTokenProvider serviceAccessTokenProvider;
+    private AccessTokenProvider serviceOwnerAccessTokenProvider;
 
 
     /**
@@ -130,4 +140,275 @@ public class Settings
 
         return this;
     }
+
+
+    /**
+     * Get the flag indicating whether large sub-objects in API responses
+     * are parsed lazily.
+     *
+     * @return
+     *         {@code true} if lazy binding is enabled.
+     *
+     * @since 2.76
+     */
+    public boolean isLazyBindingEnabled()
+    {
+        return lazyBindingEnabled;
+    }
+
+
+    /**
+     * Set the flag indicating whether large sub-objects in API responses
+     * are parsed lazily.
+     *
+     * <p>
+     * When this flag is {@code true}, the {@code "service"} and {@code
+     * "client"} objects in responses from {@code /auth/authorization} API
+     * are parsed only when {@link com.authlete.common.dto.AuthorizationResponse#getService()
+     * getService()} and {@link com.authlete.common.dto.AuthorizationResponse#getClient()
+     * getClient()} are called. See {@link
+     * com.authlete.common.dto.AuthorizationResponse#fromJson(String, boolean)
+     * AuthorizationResponse.fromJson(String, boolean)} for details.
+     * The default value is {@code false}.
+     * </p>
+     *
+     * @param enabled
+     *         {@code true} to enable lazy binding.
+     *
+     * @return
+     *         {@code this} object.
+     *
+     * @since 2.76
+     */
+    public Settings setLazyBindingEnabled(boolean enabled)
+    {
+        this.lazyBindingEnabled = enabled;
+
+        return this;
+    }
+
+
+    /**
+     * Get the field mask applied when responses from Authlete APIs are
+     * converted into objects.
+     *
+     * @return
+     *         The field mask. {@code null} if not set.
+     *
+     * @since 2.76
+     */
+    public FieldMask getFieldMask()
+    {
+        return fieldMask;
+    }
+
+
+    /**
+     * Set the field mask applied when responses from Authlete APIs are
+     * converted into objects.
+     *
+     * <p>
+     * When a field mask is set, only the fields included in the mask are
+     * bound for objects of the masked classes, and other properties are
+     * skipped while the JSON is tokenized. For example, an administration
+     * tool which lists clients by {@link AuthleteApi#getClientList()} and
+     * needs only their IDs and names can reduce memory consumption
+     * considerably by masking {@link com.authlete.common.dto.Client
+     * Client}. The default value is {@code null}.
+     * </p>
+     *
+     * <p>
+     * The mask is not applied to APIs which return a single {@link
+     * com.authlete.common.dto.Client Client} or {@link
+     * com.authlete.common.dto.Service Service} such as {@link
+     * AuthleteApi#getClient(long)}, because the results are typically
+     * modified and passed to the update APIs. For the same reason, do not
+     * pass masked objects obtained by list APIs to the update APIs; the
+     * fields which have not been bound would be erased.
+     * </p>
+     *
+     * @param mask
+     *         A field mask. {@code null} to bind all fields.
+     *
+     * @return
+     *         {@code this} object.
+     *
+     * @since 2.76
+     */
+    public Settings setFieldMask(FieldMask mask)
+    {
+        this.fieldMask = mask;
+
+        return this;
+    }
+
+
+    /**
+     * Get the string pool used to deduplicate string values when responses
+     * from Authlete APIs are converted into objects.
+     *
+     * @return
+     *         The string pool. {@code null} if not set.
+     *
+     * @since 2.76
+     */
+    public StringPool getStringPool()
+    {
+        return stringPool;
+    }
+
+
+    /**
+     * Set the string pool used to deduplicate string values when responses
+     * from Authlete APIs are converted into objects.
+     *
+     * <p>
+     * Scope names, subjects, client ID aliases, redirect URIs and other
+     * fields listed in {@link StringPool} which are repeated in large
+     * responses such as the ones from
+     * {@link AuthleteApi#getTokenList()} and {@link
+     * AuthleteApi#getClientList()} are decoded into shared {@code String}
+     * instances. This reduces the heap retained by applications which
+     * cache the objects. The default value is {@code null}.
+     * </p>
+     *
+     * @param pool
+     *         A string pool. {@code null} not to deduplicate strings.
+     *
+     * @return
+     *         {@code this} object.
+     *
+     * @since 2.76
+     */
+    public Settings setStringPool(StringPool pool)
+    {
+        this.stringPool = pool;
+
+        return this;
+    }
+
+
+    /**
+     * Get the listener notified of API calls.
+     *
+     * @return
+     *         The listener. {@code null} if not set.
+     *
+     * @since 2.76
+     */
+    public ApiCallListener getApiCallListener()
+    {
+        return apiCallListener;
+    }
+
+
+    /**
+     * Set the listener notified of API calls.
+     *
+     * <p>
+     * The listener receives the method, the path, the request and response
+     * bodies, the status code and the timing of each API call. For example,
+     * {@link TrafficRecorder} records API calls to replay them later. The
+     * default value is {@code null}. When no listener is set, API calls do
+     * not collect the information at all.
+     * </p>
+     *
+     * @param listener
+     *         A listener. {@code null} to remove the listener.
+     *
+     * @return
+     *         {@code this} object.
+     *
+     * @since 2.76
+     */
+    public Settings setApiCallListener(ApiCallListener listener)
+    {
+        this.apiCallListener = listener;
+
+        return this;
+    }
+
+
+    /**
+     * Get the provider of the access token used to call service-level
+     * APIs.
+     *
+     * @return
+     *         The access token provider, or {@code null} if the credentials
+     *         in the configuration are used.
+     *
+     * @since 2.76
+     */
+    public AccessTokenProvider getServiceAccessTokenProvider()
+    {
+        return serviceAccessTokenProvider;
+    }
+
+
+    /**
+     * Set the provider of the access token used to call service-level
+     * APIs. When set, it takes precedence over the service API key, the
+     * service API secret and the service access token in the
+     * configuration.
+     *
+     * <p>
+     * The settings of {@link AuthleteApiRegistry} are shared among all
+     * the services, so they reject this provider with {@link
+     * IllegalStateException}.
+     * </p>
+     *
+     * @param provider
+     *         The access token provider. {@code null} to use the
+     *         credentials in the configuration.
+     *
+     * @return
+     *         {@code this} object.
+     *
+     * @since 2.76
+     */
+    public Settings setServiceAccessTokenProvider(AccessTokenProvider provider)
+    {
+        this.serviceAccessTokenProvider = provider;
+
+        return this;
+    }
+
+
+    /**
+     * Get the provider of the access token used to call service
+     * owner-level APIs.
+     *
+     * @return
+     *         The access token provider, or {@code null} if the credentials
+     *         in the configuration are used.
+     *
+     * @since 2.76
+     */
+    public AccessTokenProvider getServiceOwnerAccessTokenProvider()
+    {
+        return serviceOwnerAccessTokenProvider;
+    }
+
+
+    /**
+     * Set the provider of the access token used to call service
+     * owner-level APIs. When set, it takes precedence over the service
+     * owner API key, the service owner API secret and the service owner
+     * access token in the configuration.
+     *
+     * @param provider
+     *         The access token provider. {@code null} to use the
+     *         credentials in the configuration.
+     *
+     * @return
+     *         {@code this} object.
+     *
+     * @since 2.76
+     */
+    public Settings setServiceOwnerAccessTokenProvider(AccessTokenProvider provider)
+    {
+        this.serviceOwnerAccessTokenProvider = provider;
+
+        return this;
+    }
 }
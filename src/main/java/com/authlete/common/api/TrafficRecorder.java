@@ -0,0 +1,288 @@
+/*
+ * Copyright (C) 2020 Authlete, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.authlete.common.api;
+
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+import com.authlete.common.util.JsonLinesWriter;
+
+
+/**
+ * Recorder of API calls made by {@link AuthleteApiImpl}.
+ *
+ * <p>
+ * API calls are written as JSON Lines of {@link ApiCall} in a background
+ * thread, so the threads making API calls only put them into a bounded
+ * queue. When the queue is full, API calls are dropped instead of being
+ * waited for, and the number of dropped calls is reported by {@link
+ * #getDroppedCount()}. Files are opened in append mode, and a file whose
+ * name ends with {@code ".gz"} is compressed. The recorded calls can be
+ * replayed by {@link TrafficReplayer}.
+ * </p>
+ *
+ * <pre style="border: solid 1px black; padding: 0.5em;">
+ * TrafficRecorder recorder = new TrafficRecorder(new File("/var/log/authlete-traffic.jsonl.gz"));
+ *
+ * api.{@link AuthleteApi#getSettings() getSettings()}.{@link
+ * Settings#setApiCallListener(ApiCallListener) setApiCallListener}(recorder);
+ *
+ * ...
+ *
+ * recorder.{@link #close()};
+ * </pre>
+ *
+ * <p>
+ * Credentials are not recorded. API credentials are never part of {@link
+ * ApiCall}, and client secrets, tokens, authorization codes, PKCE code
+ * verifiers, passwords, JWK Sets and {@code Authorization} headers in
+ * request and response bodies are replaced with {@code "REDACTED"} before
+ * being written. Replayed API calls therefore send the placeholder instead
+ * of the original values. Bodies may still contain personal data, so
+ * protect the files accordingly.
+ * </p>
+ *
+ * @since 2.76
+ */
+public class TrafficRecorder implements ApiCallListener, Closeable
+{
+    /**
+     * The default capacity of the queue, 10000.
+     */
+    public static final int DEFAULT_QUEUE_CAPACITY = 10000;
+
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int MAX_BATCH_SIZE = 1000;
+    private static final long POLL_INTERVAL_MILLIS = 100;
+
+
+    private final JsonLinesWriter mWriter;
+    private final BlockingQueue<ApiCall> mQueue;
+    private final AtomicLong mDroppedCount = new AtomicLong();
+    private final Thread mThread;
+    private volatile boolean mClosed;
+    private volatile IOException mFailure;
+
+
+    /**
+     * Constructor with a file. API calls are appended to the file.
+     *
+     * @param file
+     *         A file. If its name ends with {@code ".gz"}, the content is
+     *         compressed by gzip.
+     *
+     * @throws IOException
+     *         Failed to open the file.
+     */
+    public TrafficRecorder(File file) throws IOException
+    {
+        this(openFile(file), DEFAULT_QUEUE_CAPACITY);
+    }
+
+
+    /**
+     * Constructor with a writer.
+     *
+     * @param writer
+     *         A writer to which API calls are written. It is closed by
+     *         {@link #close()}.
+     */
+    public TrafficRecorder(Writer writer)
+    {
+        this(writer, DEFAULT_QUEUE_CAPACITY);
+    }
+
+
+    /**
+     * Constructor with a writer and the capacity of the queue.
+     *
+     * @param writer
+     *         A writer to which API calls are written. It is closed by
+     *         {@link #close()}.
+     *
+     * @param queueCapacity
+     *         The maximum number of API calls waiting to be written.
+     */
+    public TrafficRecorder(Writer writer, int queueCapacity)
+    {
+        if (writer == null)
+        {
+            throw new IllegalArgumentException("writer is null.");
+        }
+
+        if (queueCapacity <= 0)
+        {
+            throw new IllegalArgumentException("queueCapacity must be positive.");
+        }
+
+        mWriter = new JsonLinesWriter(writer);
+        mQueue  = new ArrayBlockingQueue<ApiCall>(queueCapacity);
+
+        mThread = new Thread(new Runnable() {
+            @Override
+            public void run()
+            {
+                drain();
+            }
+        }, "authlete-traffic-recorder");
+        mThread.setDaemon(true);
+        mThread.start();
+    }
+
+
+    private static Writer openFile(File file) throws IOException
+    {
+        if (file == null)
+        {
+            throw new IllegalArgumentException("file is null.");
+        }
+
+        OutputStream out = new FileOutputStream(file, true);
+
+        if (file.getName().endsWith(".gz"))
+        {
+            // Appended gzip members are read as one stream.
+            out = new GZIPOutputStream(out, BUFFER_SIZE);
+        }
+
+        return new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), BUFFER_SIZE);
+    }
+
+
+    @Override
+    public void onApiCall(ApiCall call)
+    {
+        if (mClosed || mFailure != null || mQueue.offer(call) == false)
+        {
+            mDroppedCount.incrementAndGet();
+        }
+    }
+
+
+    /**
+     * Get the number of API calls which were not recorded because the
+     * queue was full or the recorder had been closed or had failed to
+     * write.
+     *
+     * @return
+     *         The number of dropped API calls.
+     */
+    public long getDroppedCount()
+    {
+        return mDroppedCount.get();
+    }
+
+
+    /**
+     * Write the queued API calls and close the writer.
+     *
+     * @throws IOException
+     *         Failed to write API calls or to close the writer.
+     */
+    @Override
+    public void close() throws IOException
+    {
+        if (mClosed)
+        {
+            return;
+        }
+
+        mClosed = true;
+
+        try
+        {
+            mThread.join();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+
+        mWriter.close();
+
+        if (mFailure != null)
+        {
+            throw mFailure;
+        }
+    }
+
+
+    private void drain()
+    {
+        List<ApiCall> batch = new ArrayList<ApiCall>();
+
+        try
+        {
+            while (true)
+            {
+                ApiCall call = mQueue.poll(POLL_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+
+                if (call == null)
+                {
+                    if (mClosed && mQueue.isEmpty())
+                    {
+                        break;
+                    }
+
+                    continue;
+                }
+
+                batch.add(call);
+                mQueue.drainTo(batch, MAX_BATCH_SIZE);
+
+                for (ApiCall entry : batch)
+                {
+                    // Redact here so that the threads making API calls
+                    // do not pay for it.
+                    mWriter.write(ApiCallRedactor.redact(entry));
+                }
+
+                batch.clear();
+
+                // Flush when the burst is over so that the file is up to
+                // date without flushing per API call.
+                if (mQueue.isEmpty())
+                {
+                    mWriter.flush();
+                }
+            }
+        }
+        catch (InterruptedException e)
+        {
+            // Stop recording.
+        }
+        catch (IOException e)
+        {
+            mFailure = e;
+            mQueue.clear();
+        }
+    }
+}
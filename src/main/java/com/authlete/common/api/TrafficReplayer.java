@@ -0,0 +1,426 @@
+/*
+ * Copyright (C) 2020 Authlete, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.authlete.common.api;
+
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+import com.authlete.common.conf.AuthleteConfiguration;
+import com.authlete.common.util.JsonLinesReader;
+import com.authlete.common.util.LatencyRecorder;
+
+
+/**
+ * Replayer of API calls recorded by {@link TrafficRecorder}.
+ *
+ * <p>
+ * The recorded API calls are sent to the Authlete server specified by the
+ * configuration given to the constructor, with the credentials in the
+ * configuration. By default, the calls are issued at the original pace,
+ * that is, the intervals between the calls are the same as the recorded
+ * ones. {@link #setSpeed(double)} accelerates or slows down the pace.
+ * </p>
+ *
+ * <pre style="border: solid 1px black; padding: 0.5em;">
+ * TrafficReplayer replayer = new TrafficReplayer(stagingConfiguration)
+ *     .{@link #setSpeed(double) setSpeed}(4.0);
+ *
+ * TrafficReplayer.Report report = replayer.{@link #replay(File) replay}(
+ *     new File("authlete-traffic.jsonl.gz"));
+ *
+ * System.out.println(report.{@link Report#getLatencies() getLatencies()}.{@link
+ * LatencyRecorder#summarize() summarize()});
+ * </pre>
+ *
+ * @since 2.76
+ */
+public class TrafficReplayer
+{
+    /**
+     * The default concurrency, 16.
+     */
+    public static final int DEFAULT_CONCURRENCY = 16;
+
+
+    private static final AtomicInteger sThreadNumber = new AtomicInteger();
+
+
+    /**
+     * Result of a replay.
+     */
+    public static class Report
+    {
+        private final int mCount;
+        private final int mErrorCount;
+        private final int mMismatchCount;
+        private final LatencyRecorder mLatencies;
+        private final long mElapsedMillis;
+
+
+        Report(int count, int errorCount, int mismatchCount, LatencyRecorder latencies, long elapsedMillis)
+        {
+            mCount         = count;
+            mErrorCount    = errorCount;
+            mMismatchCount = mismatchCount;
+            mLatencies     = latencies;
+            mElapsedMillis = elapsedMillis;
+        }
+
+
+        /**
+         * Get the number of replayed API calls.
+         *
+         * @return
+         *         The number of replayed API calls.
+         */
+        public int getCount()
+        {
+            return mCount;
+        }
+
+
+        /**
+         * Get the number of replayed API calls which failed.
+         *
+         * @return
+         *         The number of failed API calls.
+         */
+        public int getErrorCount()
+        {
+            return mErrorCount;
+        }
+
+
+        /**
+         * Get the number of replayed API calls whose outcomes differ from
+         * the recorded ones, that is, calls which succeeded only in one of
+         * the recording and the replay, or which failed with different
+         * HTTP status codes.
+         *
+         * @return
+         *         The number of mismatches.
+         */
+        public int getMismatchCount()
+        {
+            return mMismatchCount;
+        }
+
+
+        /**
+         * Get the latencies of the replayed API calls.
+         *
+         * @return
+         *         The latencies.
+         */
+        public LatencyRecorder getLatencies()
+        {
+            return mLatencies;
+        }
+
+
+        /**
+         * Get the time taken by the replay.
+         *
+         * @return
+         *         The elapsed time in milliseconds.
+         */
+        public long getElapsedMillis()
+        {
+            return mElapsedMillis;
+        }
+    }
+
+
+    private final AuthleteApiImpl mApi;
+    private double mSpeed = 1.0;
+    private int mConcurrency = DEFAULT_CONCURRENCY;
+
+
+    /**
+     * Constructor.
+     *
+     * @param configuration
+     *         The configuration of the Authlete server to which the
+     *         recorded API calls are sent.
+     */
+    public TrafficReplayer(AuthleteConfiguration configuration)
+    {
+        mApi = new AuthleteApiImpl(configuration);
+    }
+
+
+    /**
+     * Get the settings of the API client used for the replay. For
+     * example, a {@link TrafficRecorder} can be set to record the
+     * responses of the replayed calls.
+     *
+     * @return
+     *         The settings.
+     */
+    public Settings getSettings()
+    {
+        return mApi.getSettings();
+    }
+
+
+    /**
+     * Set the speed of the replay.
+     *
+     * @param speed
+     *         1.0 for the original pace (the default value), 2.0 for twice
+     *         as fast, 0.5 for half the speed, and 0 to issue the calls as
+     *         fast as possible.
+     *
+     * @return
+     *         {@code this} object.
+     */
+    public TrafficReplayer setSpeed(double speed)
+    {
+        if (!(0 <= speed))
+        {
+            throw new IllegalArgumentException("speed must not be negative.");
+        }
+
+        mSpeed = speed;
+
+        return this;
+    }
+
+
+    /**
+     * Set the maximum number of API calls in flight. When Authlete server
+     * responds slower than at the time of the recording, the replay falls
+     * behind the original pace if the concurrency is not large enough.
+     *
+     * @param concurrency
+     *         The concurrency. Must be positive. The default value is
+     *         {@link #DEFAULT_CONCURRENCY}.
+     *
+     * @return
+     *         {@code this} object.
+     */
+    public TrafficReplayer setConcurrency(int concurrency)
+    {
+        if (concurrency <= 0)
+        {
+            throw new IllegalArgumentException("concurrency must be positive.");
+        }
+
+        mConcurrency = concurrency;
+
+        return this;
+    }
+
+
+    /**
+     * Replay API calls recorded in a file.
+     *
+     * @param file
+     *         A file written by {@link TrafficRecorder}. If its name ends
+     *         with {@code ".gz"}, the content is decompressed.
+     *
+     * @return
+     *         The result of the replay.
+     *
+     * @throws IOException
+     *         Failed to read the file.
+     */
+    public Report replay(File file) throws IOException
+    {
+        if (file == null)
+        {
+            throw new IllegalArgumentException("file is null.");
+        }
+
+        InputStream in = new FileInputStream(file);
+
+        try
+        {
+            if (file.getName().endsWith(".gz"))
+            {
+                in = new GZIPInputStream(in);
+            }
+
+            return replay(new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8)));
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+
+
+    /**
+     * Replay API calls recorded in JSON Lines.
+     *
+     * @param reader
+     *         A reader of JSON Lines of {@link ApiCall}.
+     *
+     * @return
+     *         The result of the replay.
+     *
+     * @throws IOException
+     *         Failed to read API calls, or interrupted.
+     */
+    public Report replay(Reader reader) throws IOException
+    {
+        if (reader == null)
+        {
+            throw new IllegalArgumentException("reader is null.");
+        }
+
+        JsonLinesReader in = new JsonLinesReader(reader);
+        ExecutorService executor = createExecutor(mConcurrency);
+        final Semaphore window = new Semaphore(mConcurrency);
+        final LatencyRecorder latencies = new LatencyRecorder();
+        final AtomicInteger errorCount = new AtomicInteger();
+        final AtomicInteger mismatchCount = new AtomicInteger();
+
+        long begin = System.nanoTime();
+        long firstTimestamp = 0;
+        int count = 0;
+
+        try
+        {
+            ApiCall call;
+
+            while ((call = in.next(ApiCall.class)) != null)
+            {
+                if (count++ == 0)
+                {
+                    firstTimestamp = call.getTimestamp();
+                }
+
+                // Wait until the time corresponding to the recorded one.
+                if (0 < mSpeed)
+                {
+                    long offset = TimeUnit.MILLISECONDS.toNanos(call.getTimestamp() - firstTimestamp);
+                    long wait   = begin + (long)(offset / mSpeed) - System.nanoTime();
+
+                    if (0 < wait)
+                    {
+                        TimeUnit.NANOSECONDS.sleep(wait);
+                    }
+                }
+
+                window.acquire();
+
+                final ApiCall recorded = call;
+
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run()
+                    {
+                        try
+                        {
+                            replay(recorded, latencies, errorCount, mismatchCount);
+                        }
+                        finally
+                        {
+                            window.release();
+                        }
+                    }
+                });
+            }
+
+            // Wait for the API calls in flight.
+            window.acquire(mConcurrency);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while replaying API calls.");
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - begin);
+
+        return new Report(count, errorCount.get(), mismatchCount.get(), latencies, elapsed);
+    }
+
+
+    private void replay(ApiCall call, LatencyRecorder latencies,
+            AtomicInteger errorCount, AtomicInteger mismatchCount)
+    {
+        boolean recordedSuccess = (call.getError() == null);
+        boolean mismatch;
+        long begin = System.nanoTime();
+
+        try
+        {
+            mApi.callApi(call);
+
+            mismatch = (recordedSuccess == false);
+        }
+        catch (AuthleteApiException e)
+        {
+            errorCount.incrementAndGet();
+
+            mismatch = recordedSuccess || e.getStatusCode() != call.getStatus();
+        }
+        catch (IllegalArgumentException e)
+        {
+            // The recorded call is broken.
+            errorCount.incrementAndGet();
+
+            mismatch = true;
+        }
+
+        long latency = System.nanoTime() - begin;
+
+        synchronized (latencies)
+        {
+            latencies.record(latency);
+        }
+
+        if (mismatch)
+        {
+            mismatchCount.incrementAndGet();
+        }
+    }
+
+
+    private static ExecutorService createExecutor(int size)
+    {
+        return Executors.newFixedThreadPool(size, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable)
+            {
+                Thread thread = new Thread(runnable, "authlete-traffic-replayer-" + sThreadNumber.incrementAndGet());
+                thread.setDaemon(true);
+
+                return thread;
+            }
+        });
+    }
+}
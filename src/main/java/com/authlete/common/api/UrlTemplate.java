@@ -0,0 +1,269 @@
+/*
+ * Copyright (C) 2020 Authlete, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.authlete.common.api;
+
+
+import java.util.Map;
+import com.authlete.common.web.URLCoder;
+
+
+/**
+ * Template of the path and the query of an Authlete API URL.
+ *
+ * <p>
+ * A template is built from a path format which may contain {@code %d}
+ * and {@code %s} placeholders (as used with {@link String#format(String,
+ * Object...) String.format()} before) and optional names of query
+ * parameters. The fixed parts of the path and the encoded query parameter
+ * names with their separators are prepared once, so expanding a template
+ * only converts and encodes the values given to {@link #expand(Object...)}.
+ * </p>
+ *
+ * <p>
+ * Path values are inserted as they are, the same as {@code String.format()}
+ * did. Query values are URL-encoded, and {@code null} or an empty string
+ * results in an empty value.
+ * </p>
+ *
+ * @since 2.76
+ */
+final class UrlTemplate
+{
+    /**
+     * The fixed parts of the path. The placeholders are between them.
+     */
+    private final String[] mLiterals;
+
+
+    /**
+     * "?name=" and "&amp;name=" with encoded names.
+     */
+    private final String[] mQueryPrefixes;
+
+
+    /**
+     * The estimated length of an expanded template.
+     */
+    private final int mCapacity;
+
+
+    /**
+     * Constructor.
+     *
+     * @param pathFormat
+     *         The path which may contain {@code %d} and {@code %s}.
+     *
+     * @param queryNames
+     *         The names of query parameters whose values follow the path
+     *         values in {@link #expand(Object...)}.
+     */
+    UrlTemplate(String pathFormat, String... queryNames)
+    {
+        mLiterals      = pathFormat.split("%[ds]", -1);
+        mQueryPrefixes = new String[queryNames.length];
+
+        int capacity = pathFormat.length() + 16 * (mLiterals.length - 1);
+
+        for (int i = 0; i < queryNames.length; ++i)
+        {
+            mQueryPrefixes[i] = (i == 0 ? "?" : "&") + URLCoder.encode(queryNames[i]) + "=";
+
+            capacity += mQueryPrefixes[i].length() + 16;
+        }
+
+        mCapacity = capacity;
+    }
+
+
+    /**
+     * Expand the template.
+     *
+     * @param values
+     *         The values of the placeholders in the path followed by the
+     *         values of the query parameters.
+     *
+     * @return
+     *         The path and the query, e.g.
+     *         {@code "/api/client/get/list?developer=x&start=0&end=5"}.
+     */
+    String expand(Object... values)
+    {
+        int pathCount = mLiterals.length - 1;
+
+        if (values.length != pathCount + mQueryPrefixes.length)
+        {
+            throw new IllegalArgumentException("The number of values does not match the template.");
+        }
+
+        StringBuilder sb = new StringBuilder(mCapacity).append(mLiterals[0]);
+
+        for (int i = 0; i < pathCount; ++i)
+        {
+            sb.append(values[i]).append(mLiterals[i + 1]);
+        }
+
+        for (int i = 0; i < mQueryPrefixes.length; ++i)
+        {
+            sb.append(mQueryPrefixes[i]);
+            appendQueryValue(sb, values[pathCount + i]);
+        }
+
+        return sb.toString();
+    }
+
+
+    /**
+     * Expand a template whose only value is a number, without boxing.
+     */
+    String expand(long value)
+    {
+        if (mLiterals.length + mQueryPrefixes.length != 2)
+        {
+            throw new IllegalArgumentException("The number of values does not match the template.");
+        }
+
+        StringBuilder sb = new StringBuilder(mCapacity);
+
+        if (mLiterals.length == 2)
+        {
+            sb.append(mLiterals[0]).append(value).append(mLiterals[1]);
+        }
+        else
+        {
+            sb.append(mLiterals[0]).append(mQueryPrefixes[0]).append(value);
+        }
+
+        return sb.toString();
+    }
+
+
+    /**
+     * Expand a template whose values are {@code start} and {@code end}
+     * query parameters, without boxing.
+     */
+    String expand(int start, int end)
+    {
+        StringBuilder sb = beginQuery(2);
+        appendRange(sb, 0, start, end);
+
+        return sb.toString();
+    }
+
+
+    /**
+     * Expand a template whose values are a query parameter followed by
+     * {@code start} and {@code end}, without boxing.
+     */
+    String expand(String value, int start, int end)
+    {
+        StringBuilder sb = beginQuery(3);
+        sb.append(mQueryPrefixes[0]);
+        appendQueryValue(sb, value);
+        appendRange(sb, 1, start, end);
+
+        return sb.toString();
+    }
+
+
+    /**
+     * Expand a template whose values are two query parameters followed by
+     * {@code start} and {@code end}, without boxing.
+     */
+    String expand(String value1, String value2, int start, int end)
+    {
+        StringBuilder sb = beginQuery(4);
+        sb.append(mQueryPrefixes[0]);
+        appendQueryValue(sb, value1);
+        sb.append(mQueryPrefixes[1]);
+        appendQueryValue(sb, value2);
+        appendRange(sb, 2, start, end);
+
+        return sb.toString();
+    }
+
+
+    private StringBuilder beginQuery(int count)
+    {
+        if (mLiterals.length != 1 || mQueryPrefixes.length != count)
+        {
+            throw new IllegalArgumentException("The number of values does not match the template.");
+        }
+
+        return new StringBuilder(mCapacity).append(mLiterals[0]);
+    }
+
+
+    private void appendRange(StringBuilder sb, int index, int start, int end)
+    {
+        sb.append(mQueryPrefixes[index]).append(start)
+          .append(mQueryPrefixes[index + 1]).append(end);
+    }
+
+
+    /**
+     * Append query parameters given as a map to a path. Entries with a
+     * {@code null} or empty key are ignored.
+     *
+     * @return
+     *         The path with the query.
+     */
+    static String appendQuery(String path, Map<String, String> parameters)
+    {
+        if (parameters == null || parameters.size() == 0)
+        {
+            return path;
+        }
+
+        StringBuilder sb = new StringBuilder(path);
+        char separator = '?';
+
+        for (Map.Entry<String, String> entry : parameters.entrySet())
+        {
+            String key = entry.getKey();
+
+            if (key == null || key.length() == 0)
+            {
+                // Ignore this invalid key.
+                continue;
+            }
+
+            sb.append(separator).append(URLCoder.encode(key)).append('=');
+            appendQueryValue(sb, entry.getValue());
+
+            separator = '&';
+        }
+
+        return sb.toString();
+    }
+
+
+    private static void appendQueryValue(StringBuilder sb, Object value)
+    {
+        if (value == null)
+        {
+            return;
+        }
+
+        if (value instanceof Number || value instanceof Boolean)
+        {
+            // Nothing to encode.
+            sb.append(value);
+            return;
+        }
+
+        sb.append(URLCoder.encode(value.toString()));
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright (C) 2020 Authlete, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.authlete.common.conf;
+
+
+/**
+ * Implementation of {@link AuthleteConfiguration} based on system
+ * properties.
+ *
+ * <p>
+ * The names of the system properties are those of the configuration file
+ * read by {@link AuthletePropertiesConfiguration} prefixed with {@code
+ * "authlete."}. Unlike {@link AuthletePropertiesConfiguration}, neither
+ * the file system nor the classpath is searched, and encrypted secrets
+ * are not supported.
+ * </p>
+ *
+ * <blockquote>
+ * <dl>
+ *   <dt><b>authlete.base_url</b></dt>
+ *   <dd><p>The base URL.</p></dd>
+ *
+ *   <dt><b>authlete.service_owner.api_key</b></dt>
+ *   <dd><p>The API key of the service owner.</p></dd>
+ *
+ *   <dt><b>authlete.service_owner.api_secret</b></dt>
+ *   <dd><p>The API secret of the service owner.</p></dd>
+ *
+ *   <dt><b>authlete.service_owner.access_token</b></dt>
+ *   <dd><p>The access token of the service owner.</p></dd>
+ *
+ *   <dt><b>authlete.service.api_key</b></dt>
+ *   <dd><p>The API key of the service.</p></dd>
+ *
+ *   <dt><b>authlete.service.api_secret</b></dt>
+ *   <dd><p>The API secret of the service.</p></dd>
+ *
+ *   <dt><b>authlete.service.access_token</b></dt>
+ *   <dd><p>The access token of the service.</p></dd>
+ *
+ *   <dt><b>authlete.service.dpop_key</b></dt>
+ *   <dd><p>The key pair for DPoP in JWK format.</p></dd>
+ *
+ *   <dt><b>authlete.service.client_certificate</b></dt>
+ *   <dd><p>The client certificate for MTLS in PEM format.</p></dd>
+ * </dl>
+ * </blockquote>
+ *
+ * @see AuthleteEnvConfiguration
+ *
+ * @since 2.76
+ */
+public class AuthleteSystemPropertyConfiguration implements AuthleteConfiguration
+{
+    private static final String KEY_BASE_URL                   = "authlete.base_url";
+    private static final String KEY_SERVICE_OWNER_API_KEY      = "authlete.service_owner.api_key";
+    private static final String KEY_SERVICE_OWNER_API_SECRET   = "authlete.service_owner.api_secret";
+    private static final String KEY_SERVICE_OWNER_ACCESS_TOKEN = "authlete.service_owner.access_token";
+    private static final String KEY_SERVICE_API_KEY            = "authlete.service.api_key";
+    private static final String KEY_SERVICE_API_SECRET         = "authlete.service.api_secret";
+    private static final String KEY_SERVICE_ACCESS_TOKEN       = "authlete.service.access_token";
+    private static final String KEY_DPOP_KEY                   = "authlete.service.dpop_key";
+    private static final String KEY_CLIENT_CERTIFICATE         = "authlete.service.client_certificate";
+
+
+    @Override
+    public String getBaseUrl()
+    {
+        return get(KEY_BASE_URL);
+    }
+
+
+    @Override
+    public String getServiceOwnerApiKey()
+    {
+        return get(KEY_SERVICE_OWNER_API_KEY);
+    }
+
+
+    @Override
+    public String getServiceOwnerApiSecret()
+    {
+        return get(KEY_SERVICE_OWNER_API_SECRET);
+    }
+
+
+    @Override
+    public String getServiceOwnerAccessToken()
+    {
+        return get(KEY_SERVICE_OWNER_ACCESS_TOKEN);
+    }
+
+
+    @Override
+    public String getServiceApiKey()
+    {
+        return get(KEY_SERVICE_API_KEY);
+    }
+
+
+    @Override
+    public String getServiceApiSecret()
+    {
+        return get(KEY_SERVICE_API_SECRET);
+    }
+
+
+    @Override
+    public String getServiceAccessToken()
+    {
+        return get(KEY_SERVICE_ACCESS_TOKEN);
+    }
+
+
+    @Override
+    public String getDpopKey()
+    {
+        return get(KEY_DPOP_KEY);
+    }
+
+
+    @Override
+    public String getClientCertificate()
+    {
+        return get(KEY_CLIENT_CERTIFICATE);
+    }
+
+
+    private String get(String key)
+    {
+        return System.getProperty(key);
+    }
+}
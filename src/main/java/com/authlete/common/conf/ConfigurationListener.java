@@ -0,0 +1,35 @@
+/*
+ * Copyright (C) 2020 Authlete, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.authlete.common.conf;
+
+
+/**
+ * Listener of changes of a {@link ReloadableConfiguration}.
+ *
+ * @since 2.76
+ */
+public interface ConfigurationListener
+{
+    /**
+     * Called when the configuration has been reloaded and its content has
+     * changed. This method is called in the thread which reloaded the
+     * configuration.
+     *
+     * @param configuration
+     *         An immutable snapshot of the new configuration.
+     */
+    void onConfigurationChanged(AuthleteConfiguration configuration);
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright (C) 2020 Authlete, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.authlete.common.conf;
+
+
+/**
+ * Authlete configuration whose content may change at runtime.
+ *
+ * <p>
+ * The getter methods inherited from {@link AuthleteConfiguration} return
+ * the values of the latest content. Because the content may change between
+ * two getter calls, use {@link #getSnapshot()} to read a consistent set of
+ * values. {@code AuthleteApiImpl} of this library registers a listener and
+ * replaces its base URL and credentials when the content changes. The
+ * listener refers to the {@code AuthleteApiImpl} weakly and removes itself
+ * at the first change after the instance has been garbage-collected.
+ * </p>
+ *
+ * @see ReloadablePropertiesConfiguration
+ *
+ * @since 2.76
+ */
+public interface ReloadableConfiguration extends AuthleteConfiguration
+{
+    /**
+     * Get an immutable snapshot of the current content.
+     *
+     * @return
+     *         The current content.
+     */
+    AuthleteConfiguration getSnapshot();
+
+
+    /**
+     * Add a listener notified when the content changes.
+     *
+     * @param listener
+     *         A listener.
+     */
+    void addListener(ConfigurationListener listener);
+
+
+    /**
+     * Remove a listener. Implementations must allow a listener to remove
+     * itself while it is being notified.
+     *
+     * @param listener
+     *         A listener.
+     */
+    void removeListener(ConfigurationListener listener);
+}
@@ -0,0 +1,515 @@
+/*
+ * Copyright (C) 2020 Authlete, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.authlete.common.conf;
+
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+
+/**
+ * Implementation of {@link ReloadableConfiguration} based on a properties
+ * file which is reloaded when it is modified.
+ *
+ * <p>
+ * The format of the file and the way to decrypt encrypted secrets are the
+ * same as those of {@link AuthletePropertiesConfiguration}. Unlike {@code
+ * AuthletePropertiesConfiguration}, the file must exist in the file system.
+ * The directory of the file is watched by a {@link WatchService} in a
+ * daemon thread, and the file is loaded again when it is created or
+ * modified. If the content has changed, the listeners are notified. For
+ * example, {@code AuthleteApiImpl} created with this configuration starts
+ * to use new credentials without dropping pooled connections or affecting
+ * API calls in flight, so API secrets can be rotated without restarting
+ * the application.
+ * </p>
+ *
+ * <p>
+ * Any event in the directory is checked against the resolved target, the
+ * size and the last modification time of the file, so a file replaced
+ * through a symbolic link is detected, too. For example, Kubernetes updates
+ * a mounted ConfigMap or Secret by swapping the {@code ..data} symbolic
+ * link, which does not cause any event for the file itself.
+ * </p>
+ *
+ * <p>
+ * If the file cannot be loaded, for example because it is being written,
+ * the current content is kept. To avoid loading a partially-written file,
+ * replace the file atomically (write a temporary file in the same
+ * directory and rename it).
+ * </p>
+ *
+ * <pre style="border: solid 1px black; padding: 0.5em;">
+ * ReloadablePropertiesConfiguration conf =
+ *     new ReloadablePropertiesConfiguration("/etc/authlete/authlete.properties");
+ *
+ * AuthleteApi api = AuthleteApiFactory.create(conf);
+ * </pre>
+ *
+ * @see com.authlete.common.api.AuthleteApiFactory#getDefaultApi()
+ *
+ * @since 2.76
+ */
+public class ReloadablePropertiesConfiguration implements ReloadableConfiguration, Closeable
+{
+    /**
+     * Time to wait after a change is detected before loading the file, so
+     * that a series of writes is loaded once.
+     */
+    private static final long SETTLE_MILLIS = 100;
+
+
+    private static final Logger sLogger = Logger.getLogger(ReloadablePropertiesConfiguration.class.getName());
+
+
+    private final Path mPath;
+    private final String mKey;
+    private final String mIv;
+    private final List<ConfigurationListener> mListeners = new CopyOnWriteArrayList<ConfigurationListener>();
+    private volatile AuthletePropertiesConfiguration mSnapshot;
+    private WatchService mWatchService;
+    private List<Object> mStamp;
+    private volatile boolean mClosed;
+
+
+    /**
+     * Constructor with the default file, the default key and the default
+     * initial vector.
+     *
+     * <p>
+     * The file is either {@link AuthletePropertiesConfiguration#DEFAULT_FILE
+     * authlete.properties} or the value of the system property {@link
+     * AuthletePropertiesConfiguration#SYSTEM_PROPERTY_AUTHLETE_CONFIGURATION_FILE
+     * authlete.configuration.file} if the value is not empty.
+     * </p>
+     *
+     * @throws IllegalArgumentException
+     *         The file does not exist in the file system.
+     */
+    public ReloadablePropertiesConfiguration()
+    {
+        this(getDefaultFile());
+    }
+
+
+    /**
+     * Constructor with a file, the default key and the default initial
+     * vector.
+     *
+     * @param file
+     *         The path of the properties file.
+     *
+     * @throws IllegalArgumentException
+     *         {@code file} is {@code null} or does not exist in the file
+     *         system.
+     */
+    public ReloadablePropertiesConfiguration(String file)
+    {
+        this(file, AuthletePropertiesConfiguration.DEFAULT_KEY, AuthletePropertiesConfiguration.DEFAULT_IV);
+    }
+
+
+    /**
+     * Constructor with a file and a pair of secret key and initial vector
+     * to decode encrypted property values.
+     *
+     * @param file
+     *         The path of the properties file.
+     *
+     * @param key
+     *         The secret key to decode encrypted property values in hex.
+     *
+     * @param iv
+     *         The initial vector to decode encrypted property values in hex.
+     *
+     * @throws IllegalArgumentException
+     *         {@code file}, {@code key} or {@code iv} is {@code null}, or
+     *         the file does not exist in the file system.
+     */
+    public ReloadablePropertiesConfiguration(String file, String key, String iv)
+    {
+        if (file == null)
+        {
+            throw new IllegalArgumentException("file is null.");
+        }
+
+        if (key == null)
+        {
+            throw new IllegalArgumentException("key is null.");
+        }
+
+        if (iv == null)
+        {
+            throw new IllegalArgumentException("iv is null.");
+        }
+
+        mPath = Paths.get(file).toAbsolutePath();
+        mKey  = key;
+        mIv   = iv;
+
+        if (Files.isRegularFile(mPath) == false)
+        {
+            throw new IllegalArgumentException(String.format("'%s' is not found in the file system.", file));
+        }
+
+        mSnapshot = load();
+        mStamp    = stamp();
+
+        startWatching();
+    }
+
+
+    private static String getDefaultFile()
+    {
+        String file = System.getProperty(
+                AuthletePropertiesConfiguration.SYSTEM_PROPERTY_AUTHLETE_CONFIGURATION_FILE);
+
+        if (file != null && file.length() != 0)
+        {
+            return file;
+        }
+
+        return AuthletePropertiesConfiguration.DEFAULT_FILE;
+    }
+
+
+    private AuthletePropertiesConfiguration load()
+    {
+        return new AuthletePropertiesConfiguration(mPath.toString(), mKey, mIv);
+    }
+
+
+    private void startWatching()
+    {
+        Path directory = mPath.getParent();
+
+        try
+        {
+            mWatchService = directory.getFileSystem().newWatchService();
+            directory.register(mWatchService, ENTRY_CREATE, ENTRY_MODIFY);
+        }
+        catch (IOException e)
+        {
+            sLogger.log(Level.WARNING, String.format(
+                    "Failed to watch '%s'. Call reload() to reload it.", mPath), e);
+            return;
+        }
+
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run()
+            {
+                watch();
+            }
+        }, "authlete-configuration-watcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+
+    private void watch()
+    {
+        try
+        {
+            while (mClosed == false)
+            {
+                if (isRelevant(mWatchService.take()) == false)
+                {
+                    continue;
+                }
+
+                // Wait for the writer to finish and discard the events
+                // caused by the rest of the writes.
+                Thread.sleep(SETTLE_MILLIS);
+
+                WatchKey key;
+
+                while ((key = mWatchService.poll()) != null)
+                {
+                    key.pollEvents();
+                    key.reset();
+                }
+
+                reload();
+            }
+        }
+        catch (ClosedWatchServiceException e)
+        {
+            // close() has been called.
+        }
+        catch (InterruptedException e)
+        {
+            // Stop watching.
+        }
+    }
+
+
+    private boolean isRelevant(WatchKey key)
+    {
+        boolean relevant = false;
+        Path fileName = mPath.getFileName();
+
+        for (WatchEvent<?> event : key.pollEvents())
+        {
+            // OVERFLOW means that events may have been lost.
+            if (event.kind() == OVERFLOW || fileName.equals(event.context()))
+            {
+                relevant = true;
+            }
+        }
+
+        key.reset();
+
+        // An event for another entry, such as the '..data' symbolic link
+        // of Kubernetes, may have replaced the file.
+        List<Object> stamp = stamp();
+
+        if (stamp.equals(mStamp) == false)
+        {
+            mStamp   = stamp;
+            relevant = true;
+        }
+
+        return relevant;
+    }
+
+
+    /**
+     * Get the resolved target, the size and the last modification time of
+     * the file. The list is empty if the file cannot be accessed.
+     */
+    private List<Object> stamp()
+    {
+        try
+        {
+            return Arrays.<Object>asList(mPath.toRealPath(),
+                    Files.size(mPath), Files.getLastModifiedTime(mPath));
+        }
+        catch (IOException e)
+        {
+            return Arrays.asList();
+        }
+    }
+
+
+    /**
+     * Load the file again and notify the listeners if the content has
+     * changed. This method is called automatically when the file is
+     * modified, but it can be called explicitly, for example, on a signal.
+     *
+     * @return
+     *         {@code true} if the content has changed.
+     */
+    public synchronized boolean reload()
+    {
+        AuthletePropertiesConfiguration loaded;
+
+        try
+        {
+            if (Files.isRegularFile(mPath) == false)
+            {
+                sLogger.warning(String.format("'%s' is not found. The current configuration is kept.", mPath));
+                return false;
+            }
+
+            loaded = load();
+        }
+        catch (RuntimeException e)
+        {
+            // For example, failed to decrypt a secret.
+            sLogger.log(Level.WARNING, String.format(
+                    "Failed to reload '%s'. The current configuration is kept.", mPath), e);
+            return false;
+        }
+
+        // AuthletePropertiesConfiguration leaves all the values null when
+        // it fails to load the file.
+        if (loaded.getBaseUrl() == null || isSame(mSnapshot, loaded))
+        {
+            return false;
+        }
+
+        mSnapshot = loaded;
+
+        for (ConfigurationListener listener : mListeners)
+        {
+            try
+            {
+                listener.onConfigurationChanged(loaded);
+            }
+            catch (RuntimeException e)
+            {
+                sLogger.log(Level.WARNING, "A configuration listener threw an exception.", e);
+            }
+        }
+
+        return true;
+    }
+
+
+    private static boolean isSame(AuthleteConfiguration a, AuthleteConfiguration b)
+    {
+        return equals(a.getBaseUrl(),                 b.getBaseUrl())
+            && equals(a.getServiceOwnerApiKey(),      b.getServiceOwnerApiKey())
+            && equals(a.getServiceOwnerApiSecret(),   b.getServiceOwnerApiSecret())
+            && equals(a.getServiceOwnerAccessToken(), b.getServiceOwnerAccessToken())
+            && equals(a.getServiceApiKey(),           b.getServiceApiKey())
+            && equals(a.getServiceApiSecret(),        b.getServiceApiSecret())
+            && equals(a.getServiceAccessToken(),      b.getServiceAccessToken())
+            && equals(a.getDpopKey(),                 b.getDpopKey())
+            && equals(a.getClientCertificate(),       b.getClientCertificate());
+    }
+
+
+    private static boolean equals(String a, String b)
+    {
+        return (a == null) ? (b == null) : a.equals(b);
+    }
+
+
+    /**
+     * Stop watching the file.
+     */
+    @Override
+    public void close() throws IOException
+    {
+        mClosed = true;
+
+        if (mWatchService != null)
+        {
+            mWatchService.close();
+        }
+    }
+
+
+    @Override
+    public AuthleteConfiguration getSnapshot()
+    {
+        return mSnapshot;
+    }
+
+
+    @Override
+    public void addListener(ConfigurationListener listener)
+    {
+        if (listener == null)
+        {
+            throw new IllegalArgumentException("listener is null.");
+        }
+
+        mListeners.add(listener);
+    }
+
+
+    @Override
+    public void removeListener(ConfigurationListener listener)
+    {
+        mListeners.remove(listener);
+    }
+
+
+    /**
+     * Get the base URL.
+     */
+    @Override
+    public String getBaseUrl()
+    {
+        return mSnapshot.getBaseUrl();
+    }
+
+
+    /**
+     * Get the service owner API key.
+     */
+    @Override
+    public String getServiceOwnerApiKey()
+    {
+        return mSnapshot.getServiceOwnerApiKey();
+    }
+
+
+    /**
+     * Get the service owner API secret.
+     */
+    @Override
+    public String getServiceOwnerApiSecret()
+    {
+        return mSnapshot.getServiceOwnerApiSecret();
+    }
+
+
+    @Override
+    public String getServiceOwnerAccessToken()
+    {
+        return mSnapshot.getServiceOwnerAccessToken();
+    }
+
+
+    /**
+     * Get the service API key.
+     */
+    @Override
+    public String getServiceApiKey()
+    {
+        return mSnapshot.getServiceApiKey();
+    }
+
+
+    /**
+     * Get the service API secret.
+     */
+    @Override
+    public String getServiceApiSecret()
+    {
+        return mSnapshot.getServiceApiSecret();
+    }
+
+
+    @Override
+    public String getServiceAccessToken()
+    {
+        return mSnapshot.getServiceAccessToken();
+    }
+
+
+    @Override
+    public String getDpopKey()
+    {
+        return mSnapshot.getDpopKey();
+    }
+
+
+    @Override
+    public String getClientCertificate()
+    {
+        return mSnapshot.getClientCertificate();
+    }
+}
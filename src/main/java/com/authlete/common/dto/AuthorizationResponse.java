@@ -16,9 +16,15 @@
 package com.authlete.common.dto;
 
 
+import java.io.IOException;
+import java.io.ObjectOutputStream;
 import java.net.URI;
+import java.util.HashMap;
+import java.util.Map;
 import com.authlete.common.types.Display;
 import com.authlete.common.types.Prompt;
+import com.authlete.common.util.JsonMemberExtractor;
+import com.authlete.common.util.Materializable;
 import com.authlete.common.util.Utils;
 
 
@@ -904,7 +910,7 @@ import com.authlete.common.util.Utils;
  *
  * @author Takahiko Kawasaki
  */
-public class AuthorizationResponse extends ApiResponse
+public class AuthorizationResponse extends ApiResponse implements Materializable
 {
     private static final long serialVersionUID = 14L;
 
@@ -977,8 +983,8 @@ public class AuthorizationResponse extends ApiResponse
 
 
     private Action action;
-    private Service service;
-    private Client client;
+    private volatile Service service;
+    private volatile Client client;
     private Display display;
     private int maxAge;
     private Scope[] scopes;
@@ -1002,6 +1008,16 @@ public class AuthorizationResponse extends ApiResponse
     private String ticket;
 
 
+    /*
+     * Raw JSON of "service" and "client" which have not been parsed yet.
+     * See fromJson(String, boolean). A parsed object is published before
+     * its JSON is cleared, so a thread which sees null here sees the
+     * parsed object.
+     */
+    private transient volatile String serviceJson;
+    private transient volatile String clientJson;
+
+
     /**
      * Get the next action that the service implementation should take.
      */
@@ -1030,6 +1046,19 @@ public class AuthorizationResponse extends ApiResponse
      */
     public Service getService()
     {
+        if (serviceJson != null)
+        {
+            synchronized (this)
+            {
+                if (serviceJson != null)
+                {
+                    // Parse the JSON which has been retained by the lazy binding.
+                    service     = Utils.fromJson(serviceJson, Service.class);
+                    serviceJson = null;
+                }
+            }
+        }
+
         return service;
     }
 
@@ -1044,7 +1073,11 @@ public class AuthorizationResponse extends ApiResponse
      */
     public void setService(Service service)
     {
-        this.service = service;
+        synchronized (this)
+        {
+            this.service     = service;
+            this.serviceJson = null;
+        }
     }
 
 
@@ -1057,6 +1090,19 @@ public class AuthorizationResponse extends ApiResponse
      */
     public Client getClient()
     {
+        if (clientJson != null)
+        {
+            synchronized (this)
+            {
+                if (clientJson != null)
+                {
+                    // Parse the JSON which has been retained by the lazy binding.
+                    client     = Utils.fromJson(clientJson, Client.class);
+                    clientJson = null;
+                }
+            }
+        }
+
         return client;
     }
 
@@ -1067,7 +1113,11 @@ public class AuthorizationResponse extends ApiResponse
      */
     public void setClient(Client client)
     {
-        this.client = client;
+        synchronized (this)
+        {
+            this.client     = client;
+            this.clientJson = null;
+        }
     }
 
 
@@ -1864,6 +1914,8 @@ public class AuthorizationResponse extends ApiResponse
      */
     public String summarize()
     {
+        Client client = getClient();
+
         return String.format(SUMMARY_FORMAT,
                 ticket,
                 action,
@@ -1888,4 +1940,101 @@ public class AuthorizationResponse extends ApiResponse
                 Utils.stringifyPrompts(prompts)
                 );
     }
+
+
+    /**
+     * Create an instance from the JSON of a response from Authlete's
+     * {@code /auth/authorization} API.
+     *
+     * <p>
+     * When {@code lazy} is {@code true}, the {@code "service"} and {@code
+     * "client"} objects in the JSON are not parsed here. Instead, their raw
+     * JSON is retained and parsed on the first call of {@link #getService()}
+     * and {@link #getClient()}, respectively. Because most authorization
+     * endpoint implementations use only {@code action}, {@code ticket},
+     * {@code responseContent} and {@code scopes}, this reduces the cost of
+     * parsing the response on the hot path. Lazily-bound objects are parsed
+     * before the instance is serialized by Java serialization or by {@link
+     * Utils#toJson(Object)}.
+     * </p>
+     *
+     * @param json
+     *         JSON of a response from {@code /auth/authorization} API.
+     *
+     * @param lazy
+     *         {@code true} to defer parsing {@code "service"} and {@code
+     *         "client"} until they are accessed.
+     *
+     * @return
+     *         An instance of {@code AuthorizationResponse}. If {@code json}
+     *         is {@code null}, {@code null} is returned.
+     *
+     * @since 2.76
+     */
+    public static AuthorizationResponse fromJson(String json, boolean lazy)
+    {
+        if (json == null)
+        {
+            return null;
+        }
+
+        if (lazy == false)
+        {
+            return Utils.fromJson(json, AuthorizationResponse.class);
+        }
+
+        Map<String, String> members = new HashMap<String, String>();
+        members.put("service", null);
+        members.put("client",  null);
+
+        // Strip the "service" and "client" objects from the JSON.
+        String rest = JsonMemberExtractor.extract(json, members);
+
+        AuthorizationResponse response = Utils.fromJson(rest, AuthorizationResponse.class);
+
+        if (response != null)
+        {
+            response.serviceJson = toRawJson(members.get("service"));
+            response.clientJson  = toRawJson(members.get("client"));
+        }
+
+        return response;
+    }
+
+
+    private static String toRawJson(String json)
+    {
+        // The JSON "null" does not have to be parsed.
+        if (json == null || json.equals("null"))
+        {
+            return null;
+        }
+
+        return json;
+    }
+
+
+    /**
+     * Parse the {@code "service"} and {@code "client"} objects which have
+     * been retained by {@link #fromJson(String, boolean) fromJson}{@code
+     * (json, true)}, if any.
+     *
+     * @since 2.76
+     */
+    @Override
+    public void materialize()
+    {
+        // The getters parse the retained JSON.
+        getService();
+        getClient();
+    }
+
+
+    private void writeObject(ObjectOutputStream out) throws IOException
+    {
+        // Parse lazily-bound objects so that they are serialized.
+        materialize();
+
+        out.defaultWriteObject();
+    }
 }
@@ -0,0 +1,1418 @@
+/*
+ * Copyright (C) 2020 Authlete, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.authlete.common.util;
+
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Array;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Type;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import com.google.gson.Gson;
+
+
+/**
+ * Compact binary codec for DTOs such as {@link com.authlete.common.dto.Client
+ * Client}, {@link com.authlete.common.dto.Service Service} and {@link
+ * com.authlete.common.dto.AuthorizationResponse AuthorizationResponse}.
+ *
+ * <p>
+ * The format is intended for caches and session replication where the
+ * standard Java serialization is too slow and too large. It is versioned
+ * and self-describing at the field level:
+ * </p>
+ *
+ * <ul>
+ * <li>The stream starts with a two-byte magic number and a format version.
+ * <li>The first occurrence of a class in a stream is preceded by a
+ *     descriptor listing the names and wire types of its fields. Later
+ *     occurrences refer to the descriptor by index. Fields are matched by
+ *     name on decoding, so fields added or removed between library versions
+ *     are tolerated (unknown fields are skipped, missing ones keep their
+ *     default values).
+ * <li>Integers are written as zigzag varints.
+ * <li>Enums are written as the value of {@code getValue()} when the enum
+ *     has {@code getValue()} and {@code getByValue(short)} (like the enums
+ *     in {@link com.authlete.common.types}), or as their ordinal otherwise.
+ * <li>{@code boolean} fields and the null-ness of reference fields are
+ *     packed into a bitmap at the head of each object.
+ * <li>Strings of up to 256 characters are registered in a per-stream
+ *     string table, so repeated values (scope names, grant types, URIs)
+ *     are written only once.
+ * </ul>
+ *
+ * <p>
+ * Fields whose type is neither a primitive, a wrapper, {@code String},
+ * {@code URI}, an enum, an array nor a class in the {@code com.authlete}
+ * packages are written as JSON strings generated by Gson. Static and
+ * transient fields are not written.
+ * </p>
+ *
+ * <pre style="border: solid 1px black; padding: 0.5em;">
+ * byte[] bytes = BinaryCodec.{@link #encode(Object) encode}(response);
+ *
+ * AuthorizationResponse copy =
+ *     BinaryCodec.{@link #decode(byte[], Class) decode}(bytes, AuthorizationResponse.class);
+ * </pre>
+ *
+ * @since 2.76
+ */
+public final class BinaryCodec
+{
+    /**
+     * The version of the binary format written by this class.
+     */
+    public static final int FORMAT_VERSION = 1;
+
+
+    private static final int MAGIC_0 = 0xA1;
+    private static final int MAGIC_1 = 0xEB;
+
+
+    // Wire type tags.
+    private static final int TAG_BOOLEAN = 1;
+    private static final int TAG_INT     = 2;
+    private static final int TAG_DOUBLE  = 3;
+    private static final int TAG_STRING  = 4;
+    private static final int TAG_URI     = 5;
+    private static final int TAG_ENUM    = 6;
+    private static final int TAG_OBJECT  = 7;
+    private static final int TAG_ARRAY   = 8;
+    private static final int TAG_JSON    = 9;
+    private static final int FLAG_NULLABLE = 0x80;
+
+
+    // Headers of string values.
+    private static final int STRING_NEW_SHARED   = 0;
+    private static final int STRING_NEW_UNSHARED = 1;
+    private static final int STRING_REF_BASE     = 2;
+    private static final int MAX_SHARED_STRING_LENGTH = 256;
+
+
+    // Limits of lengths read from a stream. Buffers for longer data are
+    // grown as the data arrives, so a corrupt length in a few bytes does
+    // not allocate a huge buffer.
+    private static final int MAX_LENGTH        = Integer.MAX_VALUE - 8;
+    private static final int MAX_FIELD_COUNT   = 0xFFFF;
+    private static final int INITIAL_CAPACITY  = 1024;
+    private static final int CHUNK_SIZE        = 64 * 1024;
+
+
+    private static final Gson GSON = new Gson();
+    private static final Map<Class<?>, ClassInfo> sClassInfoCache =
+            new ConcurrentHashMap<Class<?>, ClassInfo>();
+
+
+    private BinaryCodec()
+    {
+    }
+
+
+    /**
+     * Encode a DTO and write the binary representation into the stream.
+     *
+     * <p>
+     * This method writes small pieces of data many times, so a buffered
+     * stream should be given.
+     * </p>
+     *
+     * @param dto
+     *         The object to encode. May be {@code null}.
+     *
+     * @param out
+     *         The output stream.
+     *
+     * @throws IOException
+     *         Failed to write data into the stream.
+     *
+     * @throws IllegalArgumentException
+     *         {@code out} is {@code null}, or the class of {@code dto} is
+     *         not supported.
+     */
+    public static void encode(Object dto, OutputStream out) throws IOException
+    {
+        if (out == null)
+        {
+            throw new IllegalArgumentException("out is null.");
+        }
+
+        out.write(MAGIC_0);
+        out.write(MAGIC_1);
+        out.write(FORMAT_VERSION);
+
+        if (dto == null)
+        {
+            out.write(0);
+            return;
+        }
+
+        out.write(1);
+
+        new Encoder(out).writeObject(dto);
+    }
+
+
+    /**
+     * Encode a DTO into a byte array.
+     *
+     * @param dto
+     *         The object to encode. May be {@code null}.
+     *
+     * @return
+     *         The binary representation.
+     */
+    public static byte[] encode(Object dto)
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(512);
+
+        try
+        {
+            encode(dto, out);
+        }
+        catch (IOException e)
+        {
+            // This never happens.
+            throw new IllegalStateException(e);
+        }
+
+        return out.toByteArray();
+    }
+
+
+    /**
+     * Read the binary representation of a DTO from the stream and decode it.
+     *
+     * @param in
+     *         The input stream.
+     *
+     * @param klass
+     *         The class of the DTO.
+     *
+     * @return
+     *         The decoded object. May be {@code null}.
+     *
+     * @throws IOException
+     *         Failed to read data from the stream, or the data is malformed.
+     *
+     * @throws IllegalArgumentException
+     *         {@code in} or {@code klass} is {@code null}.
+     */
+    public static <T> T decode(InputStream in, Class<T> klass) throws IOException
+    {
+        if (in == null)
+        {
+            throw new IllegalArgumentException("in is null.");
+        }
+
+        if (klass == null)
+        {
+            throw new IllegalArgumentException("klass is null.");
+        }
+
+        if (readByte(in) != MAGIC_0 || readByte(in) != MAGIC_1)
+        {
+            throw new IOException("The data is not in the format of BinaryCodec.");
+        }
+
+        int version = readByte(in);
+
+        if (version != FORMAT_VERSION)
+        {
+            throw new IOException("Unsupported format version: " + version);
+        }
+
+        if (readByte(in) == 0)
+        {
+            return null;
+        }
+
+        return klass.cast(new Decoder(in).readObject(getClassInfo(klass)));
+    }
+
+
+    /**
+     * Decode the binary representation of a DTO.
+     *
+     * @param data
+     *         The binary representation.
+     *
+     * @param klass
+     *         The class of the DTO.
+     *
+     * @return
+     *         The decoded object. May be {@code null}.
+     *
+     * @throws IllegalArgumentException
+     *         The data is malformed.
+     */
+    public static <T> T decode(byte[] data, Class<T> klass)
+    {
+        try
+        {
+            return decode(new ByteArrayInputStream(data), klass);
+        }
+        catch (IOException e)
+        {
+            throw new IllegalArgumentException("Failed to decode the data: " + e.getMessage(), e);
+        }
+    }
+
+
+    private static ClassInfo getClassInfo(Class<?> klass)
+    {
+        ClassInfo info = sClassInfoCache.get(klass);
+
+        if (info == null)
+        {
+            info = new ClassInfo(klass);
+            sClassInfoCache.put(klass, info);
+        }
+
+        return info;
+    }
+
+
+    /**
+     * Wire type of a value. For arrays, {@code component} holds the wire
+     * type of the elements.
+     */
+    private static class WireType
+    {
+        final int tag;
+        final boolean nullable;
+        final WireType component;
+
+
+        WireType(int tag, boolean nullable, WireType component)
+        {
+            this.tag       = tag;
+            this.nullable  = nullable;
+            this.component = component;
+        }
+
+
+        boolean usesBit()
+        {
+            return tag == TAG_BOOLEAN || nullable;
+        }
+
+
+        boolean isCompatibleWith(WireType other)
+        {
+            if (tag != other.tag)
+            {
+                return false;
+            }
+
+            if (tag == TAG_ARRAY)
+            {
+                return component.isCompatibleWith(other.component)
+                        && component.nullable == other.component.nullable;
+            }
+
+            return true;
+        }
+    }
+
+
+    /**
+     * Local (reflection-based) type information of a value.
+     */
+    private static class LocalType
+    {
+        final WireType wire;
+        final Class<?> klass;
+        final Type genericType;
+        final LocalType component;
+        final EnumInfo enumInfo;
+
+
+        LocalType(Class<?> klass, Type genericType)
+        {
+            this.klass       = klass;
+            this.genericType = genericType;
+
+            int tag;
+            boolean nullable = (klass.isPrimitive() == false);
+            LocalType component = null;
+            EnumInfo enumInfo = null;
+
+            if (klass == boolean.class)
+            {
+                tag = TAG_BOOLEAN;
+            }
+            else if (klass == byte.class  || klass == short.class || klass == int.class
+                  || klass == long.class  || klass == char.class
+                  || klass == Byte.class  || klass == Short.class || klass == Integer.class
+                  || klass == Long.class  || klass == Character.class)
+            {
+                tag = TAG_INT;
+            }
+            else if (klass == float.class || klass == double.class
+                  || klass == Float.class || klass == Double.class)
+            {
+                tag = TAG_DOUBLE;
+            }
+            else if (klass == String.class)
+            {
+                tag = TAG_STRING;
+            }
+            else if (klass == URI.class)
+            {
+                tag = TAG_URI;
+            }
+            else if (klass.isEnum())
+            {
+                tag = TAG_ENUM;
+                enumInfo = new EnumInfo(klass);
+            }
+            else if (klass.isArray())
+            {
+                tag = TAG_ARRAY;
+                component = new LocalType(klass.getComponentType(), klass.getComponentType());
+            }
+            else if (klass.getName().startsWith("com.authlete.") && klass.isInterface() == false)
+            {
+                tag = TAG_OBJECT;
+            }
+            else
+            {
+                tag = TAG_JSON;
+            }
+
+            this.component = component;
+            this.enumInfo  = enumInfo;
+            this.wire      = new WireType(tag, nullable,
+                    (component == null) ? null : component.wire);
+        }
+    }
+
+
+    /**
+     * Conversion between enum instances and integers.
+     */
+    private static class EnumInfo
+    {
+        final Object[] constants;
+        final Method getValue;
+        final Method getByValue;
+
+
+        EnumInfo(Class<?> klass)
+        {
+            constants = klass.getEnumConstants();
+
+            Method getter = null;
+            Method finder = null;
+
+            try
+            {
+                getter = klass.getMethod("getValue");
+                finder = klass.getMethod("getByValue", short.class);
+
+                if (getter.getReturnType() != short.class
+                        || Modifier.isStatic(finder.getModifiers()) == false)
+                {
+                    getter = null;
+                    finder = null;
+                }
+            }
+            catch (NoSuchMethodException e)
+            {
+                getter = null;
+                finder = null;
+            }
+
+            getValue   = getter;
+            getByValue = finder;
+        }
+
+
+        long toLong(Object constant) throws IOException
+        {
+            if (getValue == null)
+            {
+                return ((Enum<?>)constant).ordinal();
+            }
+
+            try
+            {
+                return (Short)getValue.invoke(constant);
+            }
+            catch (Exception e)
+            {
+                throw new IOException("Failed to get the value of " + constant, e);
+            }
+        }
+
+
+        Object fromLong(long value) throws IOException
+        {
+            if (getByValue == null)
+            {
+                return (0 <= value && value < constants.length) ? constants[(int)value] : null;
+            }
+
+            if (value < Short.MIN_VALUE || Short.MAX_VALUE < value)
+            {
+                return null;
+            }
+
+            try
+            {
+                return getByValue.invoke(null, (short)value);
+            }
+            catch (Exception e)
+            {
+                throw new IOException("Failed to find an enum by " + value, e);
+            }
+        }
+    }
+
+
+    /**
+     * Field information of a local class.
+     */
+    private static class ClassInfo
+    {
+        final Class<?> klass;
+        final Constructor<?> constructor;
+        final Field[] fields;
+        final LocalType[] types;
+        final Map<String, Integer> indexes = new HashMap<String, Integer>();
+
+
+        ClassInfo(Class<?> klass)
+        {
+            this.klass = klass;
+
+            List<Field> list = new ArrayList<Field>();
+            collectFields(klass, list);
+
+            fields = list.toArray(new Field[list.size()]);
+            types  = new LocalType[fields.length];
+
+            for (int i = 0; i < fields.length; ++i)
+            {
+                fields[i].setAccessible(true);
+                types[i] = new LocalType(fields[i].getType(), fields[i].getGenericType());
+                indexes.put(fields[i].getName(), i);
+            }
+
+            constructor = findConstructor(klass);
+        }
+
+
+        private static void collectFields(Class<?> klass, List<Field> list)
+        {
+            if (klass == null || klass == Object.class)
+            {
+                return;
+            }
+
+            // Fields of super classes first.
+            collectFields(klass.getSuperclass(), list);
+
+            for (Field field : klass.getDeclaredFields())
+            {
+                int modifiers = field.getModifiers();
+
+                if (Modifier.isStatic(modifiers) || Modifier.isTransient(modifiers) || field.isSynthetic())
+                {
+                    continue;
+                }
+
+                list.add(field);
+            }
+        }
+
+
+        private static Constructor<?> findConstructor(Class<?> klass)
+        {
+            try
+            {
+                Constructor<?> constructor = klass.getDeclaredConstructor();
+                constructor.setAccessible(true);
+
+                return constructor;
+            }
+            catch (NoSuchMethodException e)
+            {
+                return null;
+            }
+        }
+
+
+        Object newInstance() throws IOException
+        {
+            if (constructor == null)
+            {
+                throw new IOException(klass.getName() + " does not have a constructor without parameters.");
+            }
+
+            try
+            {
+                return constructor.newInstance();
+            }
+            catch (Exception e)
+            {
+                throw new IOException("Failed to create an instance of " + klass.getName(), e);
+            }
+        }
+    }
+
+
+    /**
+     * A class descriptor read from a stream.
+     */
+    private static class StreamClass
+    {
+        final String[] names;
+        final WireType[] types;
+        final Map<Class<?>, int[]> mappings = new HashMap<Class<?>, int[]>();
+
+
+        StreamClass(String[] names, WireType[] types)
+        {
+            this.names = names;
+            this.types = types;
+        }
+
+
+        /**
+         * Get the indexes of the local fields which correspond to the
+         * fields in this descriptor. -1 means that the field is skipped.
+         */
+        int[] getMapping(ClassInfo info)
+        {
+            int[] mapping = mappings.get(info.klass);
+
+            if (mapping != null)
+            {
+                return mapping;
+            }
+
+            mapping = new int[names.length];
+
+            for (int i = 0; i < names.length; ++i)
+            {
+                Integer index = info.indexes.get(names[i]);
+
+                if (index != null && types[i].isCompatibleWith(info.types[index].wire))
+                {
+                    mapping[i] = index;
+                }
+                else
+                {
+                    mapping[i] = -1;
+                }
+            }
+
+            mappings.put(info.klass, mapping);
+
+            return mapping;
+        }
+    }
+
+
+    private static class Encoder
+    {
+        private final OutputStream mOut;
+        private final Map<String, Integer> mStrings = new HashMap<String, Integer>();
+        private final Map<Class<?>, Integer> mClasses = new IdentityHashMap<Class<?>, Integer>();
+
+
+        Encoder(OutputStream out)
+        {
+            mOut = out;
+        }
+
+
+        void writeObject(Object object) throws IOException
+        {
+            Utils.materialize(object);
+
+            ClassInfo info = getClassInfo(object.getClass());
+
+            writeClassReference(info);
+
+            Field[] fields = info.fields;
+            LocalType[] types = info.types;
+            int count = fields.length;
+            Object[] values = new Object[count];
+
+            // Bitmap of boolean values and non-null flags.
+            BitWriter bits = new BitWriter(count);
+
+            for (int i = 0; i < count; ++i)
+            {
+                values[i] = getField(fields[i], object);
+
+                WireType wire = types[i].wire;
+
+                if (wire.tag == TAG_BOOLEAN && wire.nullable == false)
+                {
+                    bits.add((Boolean)values[i]);
+                }
+                else if (wire.nullable)
+                {
+                    bits.add(values[i] != null);
+                }
+            }
+
+            bits.writeTo(mOut);
+
+            for (int i = 0; i < count; ++i)
+            {
+                WireType wire = types[i].wire;
+
+                if ((wire.tag != TAG_BOOLEAN || wire.nullable) && values[i] != null)
+                {
+                    writeValue(types[i], values[i]);
+                }
+            }
+        }
+
+
+        private void writeClassReference(ClassInfo info) throws IOException
+        {
+            Integer index = mClasses.get(info.klass);
+
+            if (index != null)
+            {
+                writeVarint(mOut, index + 1);
+                return;
+            }
+
+            mClasses.put(info.klass, mClasses.size());
+
+            // Class descriptor.
+            writeVarint(mOut, 0);
+            writeVarint(mOut, info.fields.length);
+
+            for (int i = 0; i < info.fields.length; ++i)
+            {
+                writeString(info.fields[i].getName());
+                writeWireType(info.types[i].wire);
+            }
+        }
+
+
+        private void writeWireType(WireType wire) throws IOException
+        {
+            mOut.write(wire.tag | (wire.nullable ? FLAG_NULLABLE : 0));
+
+            if (wire.tag == TAG_ARRAY)
+            {
+                writeWireType(wire.component);
+            }
+        }
+
+
+        private void writeValue(LocalType type, Object value) throws IOException
+        {
+            switch (type.wire.tag)
+            {
+                case TAG_BOOLEAN:
+                    // Nullable Boolean.
+                    mOut.write(((Boolean)value) ? 1 : 0);
+                    break;
+
+                case TAG_INT:
+                    writeVarint(mOut, zigzag(toLong(value)));
+                    break;
+
+                case TAG_DOUBLE:
+                    writeDouble(((Number)value).doubleValue());
+                    break;
+
+                case TAG_STRING:
+                    writeString((String)value);
+                    break;
+
+                case TAG_URI:
+                    writeString(value.toString());
+                    break;
+
+                case TAG_ENUM:
+                    writeVarint(mOut, zigzag(type.enumInfo.toLong(value)));
+                    break;
+
+                case TAG_OBJECT:
+                    writeObject(value);
+                    break;
+
+                case TAG_ARRAY:
+                    writeArray(type.component, value);
+                    break;
+
+                default:
+                    writeString(GSON.toJson(value, type.genericType));
+                    break;
+            }
+        }
+
+
+        private void writeArray(LocalType component, Object array) throws IOException
+        {
+            int length = Array.getLength(array);
+
+            writeVarint(mOut, length);
+
+            WireType wire = component.wire;
+
+            if (wire.usesBit())
+            {
+                BitWriter bits = new BitWriter(length);
+
+                for (int i = 0; i < length; ++i)
+                {
+                    Object element = Array.get(array, i);
+
+                    if (wire.nullable)
+                    {
+                        bits.add(element != null);
+                    }
+                    else
+                    {
+                        bits.add((Boolean)element);
+                    }
+                }
+
+                bits.writeTo(mOut);
+            }
+
+            if (wire.tag == TAG_BOOLEAN && wire.nullable == false)
+            {
+                // All the values are in the bitmap.
+                return;
+            }
+
+            for (int i = 0; i < length; ++i)
+            {
+                Object element = Array.get(array, i);
+
+                if (element != null)
+                {
+                    writeValue(component, element);
+                }
+            }
+        }
+
+
+        private void writeString(String value) throws IOException
+        {
+            Integer index = mStrings.get(value);
+
+            if (index != null)
+            {
+                writeVarint(mOut, index + STRING_REF_BASE);
+                return;
+            }
+
+            if (value.length() <= MAX_SHARED_STRING_LENGTH)
+            {
+                mStrings.put(value, mStrings.size());
+                writeVarint(mOut, STRING_NEW_SHARED);
+            }
+            else
+            {
+                writeVarint(mOut, STRING_NEW_UNSHARED);
+            }
+
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+
+            writeVarint(mOut, bytes.length);
+            mOut.write(bytes);
+        }
+
+
+        private void writeDouble(double value) throws IOException
+        {
+            long bits = Double.doubleToLongBits(value);
+
+            for (int shift = 56; shift >= 0; shift -= 8)
+            {
+                mOut.write((int)(bits >>> shift) & 0xFF);
+            }
+        }
+
+
+        private static long toLong(Object value)
+        {
+            if (value instanceof Character)
+            {
+                return (Character)value;
+            }
+
+            return ((Number)value).longValue();
+        }
+
+
+        private static Object getField(Field field, Object object) throws IOException
+        {
+            try
+            {
+                return field.get(object);
+            }
+            catch (IllegalAccessException e)
+            {
+                throw new IOException("Failed to read " + field, e);
+            }
+        }
+    }
+
+
+    private static class Decoder
+    {
+        private final InputStream mIn;
+        private final List<String> mStrings = new ArrayList<String>();
+        private final List<StreamClass> mClasses = new ArrayList<StreamClass>();
+
+
+        Decoder(InputStream in)
+        {
+            mIn = in;
+        }
+
+
+        /**
+         * Read an object. When {@code info} is {@code null}, the object
+         * is skipped and {@code null} is returned.
+         */
+        Object readObject(ClassInfo info) throws IOException
+        {
+            StreamClass sc = readClassReference();
+
+            int count = sc.types.length;
+            BitReader bits = new BitReader(mIn, countBits(sc.types));
+
+            // Values of the bitmap.
+            boolean[] flags = new boolean[count];
+
+            for (int i = 0; i < count; ++i)
+            {
+                if (sc.types[i].usesBit())
+                {
+                    flags[i] = bits.next();
+                }
+            }
+
+            Object object  = (info == null) ? null : info.newInstance();
+            int[]  mapping = (info == null) ? null : sc.getMapping(info);
+
+            for (int i = 0; i < count; ++i)
+            {
+                WireType wire = sc.types[i];
+                int index     = (mapping == null) ? -1 : mapping[i];
+                LocalType local = (index < 0) ? null : info.types[index];
+                Object value;
+
+                if (wire.tag == TAG_BOOLEAN && wire.nullable == false)
+                {
+                    value = flags[i];
+                }
+                else if (wire.nullable && flags[i] == false)
+                {
+                    value = null;
+                }
+                else
+                {
+                    value = readValue(wire, local);
+                }
+
+                if (local != null && (value != null || local.klass.isPrimitive() == false))
+                {
+                    setField(info.fields[index], object, convert(local.klass, value));
+                }
+            }
+
+            return object;
+        }
+
+
+        private static int countBits(WireType[] types)
+        {
+            int count = 0;
+
+            for (WireType type : types)
+            {
+                if (type.usesBit())
+                {
+                    ++count;
+                }
+            }
+
+            return count;
+        }
+
+
+        private StreamClass readClassReference() throws IOException
+        {
+            long ref = readVarint(mIn);
+
+            if (ref != 0)
+            {
+                if (ref < 0 || mClasses.size() < ref)
+                {
+                    throw new IOException("Unknown class reference: " + ref);
+                }
+
+                return mClasses.get((int)ref - 1);
+            }
+
+            int count = readLength(mIn, "field count");
+
+            if (MAX_FIELD_COUNT < count)
+            {
+                throw new IOException("Too many fields: " + count);
+            }
+
+            String[]   names = new String[count];
+            WireType[] types = new WireType[count];
+
+            for (int i = 0; i < count; ++i)
+            {
+                names[i] = readString();
+                types[i] = readWireType();
+            }
+
+            StreamClass sc = new StreamClass(names, types);
+            mClasses.add(sc);
+
+            return sc;
+        }
+
+
+        private WireType readWireType() throws IOException
+        {
+            int b = readByte(mIn);
+            int tag = b & ~FLAG_NULLABLE;
+            boolean nullable = (b & FLAG_NULLABLE) != 0;
+
+            if (tag < TAG_BOOLEAN || TAG_JSON < tag)
+            {
+                throw new IOException("Unknown wire type: " + tag);
+            }
+
+            WireType component = (tag == TAG_ARRAY) ? readWireType() : null;
+
+            return new WireType(tag, nullable, component);
+        }
+
+
+        /**
+         * Read a value. When {@code local} is {@code null}, the value is
+         * skipped (the returned value is meaningless).
+         */
+        private Object readValue(WireType wire, LocalType local) throws IOException
+        {
+            switch (wire.tag)
+            {
+                case TAG_BOOLEAN:
+                    return readByte(mIn) != 0;
+
+                case TAG_INT:
+                    return unzigzag(readVarint(mIn));
+
+                case TAG_DOUBLE:
+                    return readDouble();
+
+                case TAG_STRING:
+                    return readString();
+
+                case TAG_URI:
+                    String uri = readString();
+                    return (local == null) ? null : URI.create(uri);
+
+                case TAG_ENUM:
+                    long value = unzigzag(readVarint(mIn));
+                    return (local == null) ? null : local.enumInfo.fromLong(value);
+
+                case TAG_OBJECT:
+                    return readObject((local == null) ? null : getClassInfo(local.klass));
+
+                case TAG_ARRAY:
+                    return readArray(wire.component, (local == null) ? null : local.component);
+
+                default:
+                    String json = readString();
+                    return (local == null) ? null : GSON.fromJson(json, local.genericType);
+            }
+        }
+
+
+        private Object readArray(WireType wire, LocalType component) throws IOException
+        {
+            int length = readLength(mIn, "array length");
+
+            // The bitmap has been read when the flags are allocated.
+            BitReader bits  = wire.usesBit() ? new BitReader(mIn, length) : null;
+            boolean[] flags = (bits == null) ? null : new boolean[length];
+
+            for (int i = 0; bits != null && i < length; ++i)
+            {
+                flags[i] = bits.next();
+            }
+
+            // Each element without a bit takes at least one byte, so the
+            // array is grown as elements are read.
+            int    capacity = (bits != null) ? length : Math.min(length, INITIAL_CAPACITY);
+            Object array    = (component == null) ? null : Array.newInstance(component.klass, capacity);
+
+            for (int i = 0; i < length; ++i)
+            {
+                Object value;
+
+                if (wire.tag == TAG_BOOLEAN && wire.nullable == false)
+                {
+                    value = flags[i];
+                }
+                else if (wire.nullable && flags[i] == false)
+                {
+                    continue;
+                }
+                else
+                {
+                    value = readValue(wire, component);
+                }
+
+                if (array != null && value != null)
+                {
+                    if (capacity <= i)
+                    {
+                        capacity = (int)Math.min((long)capacity * 2, length);
+                        array    = resize(array, component.klass, capacity);
+                    }
+
+                    Array.set(array, i, convert(component.klass, value));
+                }
+            }
+
+            if (array != null && capacity != length)
+            {
+                // Trailing elements are null.
+                array = resize(array, component.klass, length);
+            }
+
+            return array;
+        }
+
+
+        private static Object resize(Object array, Class<?> componentType, int length)
+        {
+            Object resized = Array.newInstance(componentType, length);
+
+            System.arraycopy(array, 0, resized, 0, Math.min(Array.getLength(array), length));
+
+            return resized;
+        }
+
+
+        private String readString() throws IOException
+        {
+            long header = readVarint(mIn);
+
+            if (header < 0)
+            {
+                throw new IOException("Invalid string header: " + header);
+            }
+
+            if (header >= STRING_REF_BASE)
+            {
+                long index = header - STRING_REF_BASE;
+
+                if (mStrings.size() <= index)
+                {
+                    throw new IOException("Unknown string reference: " + index);
+                }
+
+                return mStrings.get((int)index);
+            }
+
+            int length = readLength(mIn, "string length");
+            byte[] bytes = readBytes(mIn, length);
+
+            String value = new String(bytes, StandardCharsets.UTF_8);
+
+            if (header == STRING_NEW_SHARED)
+            {
+                mStrings.add(value);
+            }
+
+            return value;
+        }
+
+
+        private double readDouble() throws IOException
+        {
+            long bits = 0;
+
+            for (int i = 0; i < 8; ++i)
+            {
+                bits = (bits << 8) | readByte(mIn);
+            }
+
+            return Double.longBitsToDouble(bits);
+        }
+
+
+        private static Object convert(Class<?> klass, Object value)
+        {
+            if (value instanceof Long)
+            {
+                long n = (Long)value;
+
+                if (klass == int.class || klass == Integer.class)
+                {
+                    return (int)n;
+                }
+                else if (klass == short.class || klass == Short.class)
+                {
+                    return (short)n;
+                }
+                else if (klass == byte.class || klass == Byte.class)
+                {
+                    return (byte)n;
+                }
+                else if (klass == char.class || klass == Character.class)
+                {
+                    return (char)n;
+                }
+            }
+            else if (value instanceof Double)
+            {
+                if (klass == float.class || klass == Float.class)
+                {
+                    return ((Double)value).floatValue();
+                }
+            }
+
+            return value;
+        }
+
+
+        private static void setField(Field field, Object object, Object value) throws IOException
+        {
+            try
+            {
+                field.set(object, value);
+            }
+            catch (IllegalAccessException e)
+            {
+                throw new IOException("Failed to set " + field, e);
+            }
+        }
+    }
+
+
+    /**
+     * Writer of a packed bitmap (LSB first).
+     */
+    private static class BitWriter
+    {
+        private final byte[] mBytes;
+        private int mCount;
+
+
+        BitWriter(int capacity)
+        {
+            mBytes = new byte[(capacity + 7) / 8];
+        }
+
+
+        void add(boolean bit)
+        {
+            if (bit)
+            {
+                mBytes[mCount / 8] |= (1 << (mCount % 8));
+            }
+
+            ++mCount;
+        }
+
+
+        void writeTo(OutputStream out) throws IOException
+        {
+            out.write(mBytes, 0, (mCount + 7) / 8);
+        }
+    }
+
+
+    /**
+     * Reader of a packed bitmap (LSB first).
+     */
+    private static class BitReader
+    {
+        private final byte[] mBytes;
+        private int mIndex;
+
+
+        BitReader(InputStream in, int count) throws IOException
+        {
+            mBytes = readBytes(in, (int)(((long)count + 7) / 8));
+        }
+
+
+        boolean next()
+        {
+            boolean bit = (mBytes[mIndex / 8] & (1 << (mIndex % 8))) != 0;
+            ++mIndex;
+
+            return bit;
+        }
+    }
+
+
+    private static long zigzag(long n)
+    {
+        return (n << 1) ^ (n >> 63);
+    }
+
+
+    private static long unzigzag(long n)
+    {
+        return (n >>> 1) ^ -(n & 1);
+    }
+
+
+    private static void writeVarint(OutputStream out, long value) throws IOException
+    {
+        while ((value & ~0x7FL) != 0)
+        {
+            out.write((int)((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+
+        out.write((int)value);
+    }
+
+
+    private static long readVarint(InputStream in) throws IOException
+    {
+        long value = 0;
+
+        for (int shift = 0; shift < 64; shift += 7)
+        {
+            int b = readByte(in);
+
+            value |= (long)(b & 0x7F) << shift;
+
+            if ((b & 0x80) == 0)
+            {
+                return value;
+            }
+        }
+
+        throw new IOException("Malformed varint.");
+    }
+
+
+    /**
+     * Read a length and check that it is within {@link #MAX_LENGTH}.
+     */
+    private static int readLength(InputStream in, String name) throws IOException
+    {
+        long length = readVarint(in);
+
+        if (length < 0 || MAX_LENGTH < length)
+        {
+            throw new IOException(String.format("Invalid %s: %d", name, length));
+        }
+
+        return (int)length;
+    }
+
+
+    /**
+     * Read bytes. A buffer larger than {@link #CHUNK_SIZE} is not allocated
+     * before the data is actually read.
+     */
+    private static byte[] readBytes(InputStream in, int length) throws IOException
+    {
+        if (length <= CHUNK_SIZE)
+        {
+            byte[] bytes = new byte[length];
+            readFully(in, bytes);
+
+            return bytes;
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(CHUNK_SIZE);
+        byte[] chunk = new byte[CHUNK_SIZE];
+
+        for (int remaining = length; 0 < remaining; )
+        {
+            int len = in.read(chunk, 0, Math.min(remaining, CHUNK_SIZE));
+
+            if (len < 0)
+            {
+                throw new EOFException();
+            }
+
+            out.write(chunk, 0, len);
+            remaining -= len;
+        }
+
+        return out.toByteArray();
+    }
+
+
+    private static int readByte(InputStream in) throws IOException
+    {
+        int b = in.read();
+
+        if (b < 0)
+        {
+            throw new EOFException();
+        }
+
+        return b;
+    }
+
+
+    private static void readFully(InputStream in, byte[] buffer) throws IOException
+    {
+        int offset = 0;
+
+        while (offset < buffer.length)
+        {
+            int len = in.read(buffer, offset, buffer.length - offset);
+
+            if (len < 0)
+            {
+                throw new EOFException();
+            }
+
+            offset += len;
+        }
+    }
+}
@@ -16,9 +16,29 @@
 package com.authlete.common.util;
 
 
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import com.authlete.common.api.AuthleteApi;
 import com.authlete.common.api.AuthleteApiException;
 import com.authlete.common.api.AuthleteApiFactory;
@@ -26,8 +46,20 @@ import com.authlete.common.dto.AuthorizedClientListResponse;
 import com.authlete.common.dto.Client;
 import com.authlete.common.dto.ClientAuthorizationGetListRequest;
 import com.authlete.common.dto.ClientListResponse;
+import com.authlete.common.dto.IntrospectionRequest;
+import com.authlete.common.dto.IntrospectionResponse;
+import com.authlete.common.dto.RevocationRequest;
+import com.authlete.common.dto.RevocationResponse;
 import com.authlete.common.dto.Service;
 import com.authlete.common.dto.ServiceListResponse;
+import com.authlete.common.dto.TokenCreateRequest;
+import com.authlete.common.dto.TokenCreateResponse;
+import com.authlete.common.dto.TokenListResponse;
+import com.authlete.common.dto.TokenRequest;
+import com.authlete.common.dto.TokenResponse;
+import com.authlete.common.types.GrantType;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
 
 
 /**
@@ -50,6 +82,12 @@ import com.authlete.common.dto.ServiceListResponse;
  * <pre>
  * -h | --help : Show the help and exit.
  * -v | --verbose : Verbose output.
+ * -b | --batch : Batch mode. Commands are read from the standard input.
+ * -f | --file {file} : Batch mode. Commands are read from the file.
+ * -p | --parallelism {number} : The number of commands executed concurrently in batch mode and bench mode. (default: 4)
+ * --bench : Bench mode. The API is called repeatedly and the statistics are shown.
+ * -d | --duration {seconds} : The duration of bench mode. (default: 10)
+ * -r | --rate {number} : The maximum number of calls per second in bench mode. (default: unlimited)
  * </pre>
  *
  * <h3>API NAME AND ARGUMENTS</h3>
@@ -61,10 +99,37 @@ import com.authlete.common.dto.ServiceListResponse;
  * getServiceConfiguration [pretty={true|false}]
  * getServiceJwks [pretty={true|false}] [includePrivateKeys={true|false}]
  * getServiceList [start={start}] [end={end}]
+ * getTokenList [clientIdentifier={clientIdentifier}] [subject={subject}] [start={start}] [end={end}]
+ * introspection token={token} [scopes={scope1,scope2,...}] [subject={subject}]
+ * revocation parameters={parameters} [clientId={clientId}] [clientSecret={clientSecret}]
+ * token parameters={parameters} [clientId={clientId}] [clientSecret={clientSecret}]
+ * tokenCreate grantType={grantType} clientId={clientId} [subject={subject}] [scopes={scope1,scope2,...}]
  *
  * # API name is case-insensitive.
  * </pre>
  *
+ * <h3>BATCH MODE</h3>
+ * <pre>
+ * In batch mode, each line of the input is a command in the format of
+ * "{API name} [arguments]". Empty lines and lines starting with '#' are
+ * ignored. Commands are executed concurrently with one AuthleteApi
+ * instance and the results are written to the standard output in the
+ * JSON Lines format in the order of completion. Each line is a JSON
+ * object which has "line" (the line number of the command), "command"
+ * (the API name) and either "result" or "error". The exit status is 1
+ * if any command has failed.
+ * </pre>
+ *
+ * <h3>BENCH MODE</h3>
+ * <pre>
+ * In bench mode, the API is called by "parallelism" threads for the
+ * duration, at most "rate" times per second in total if a rate is given.
+ * Then, the throughput, the latency percentiles and the numbers of errors
+ * per HTTP status code (0 means that no response was received) are shown.
+ * The API is called once before the measurement to validate the arguments
+ * and to establish a connection.
+ * </pre>
+ *
  * <h3>EXAMPLES</h3>
  * <pre>
  * $ bin/authlete-cli.sh --help
@@ -75,6 +140,9 @@ import com.authlete.common.dto.ServiceListResponse;
  * $ bin/authlete-cli.sh getServiceConfiguration pretty=true
  * $ bin/authlete-cli.sh getServiceJwks pretty=true includePrivateKeys=true
  * $ bin/authlete-cli.sh getServiceList start=1
+ * $ bin/authlete-cli.sh introspection token=G7t2Qd0_aOYVQSuMdcP3JuvRlrt9Aymj5RhlPDuoTdI
+ * $ bin/authlete-cli.sh --file /tmp/commands.txt --parallelism 8
+ * $ bin/authlete-cli.sh --bench --duration 30 --parallelism 16 --rate 200 introspection token=G7t2Qd0_aOYVQSuMdcP3JuvRlrt9Aymj5RhlPDuoTdI
  * </pre>
  *
  * <h3>NOTE</h3>
@@ -106,6 +174,12 @@ public class CLI
             "OPTIONS:\n\n" +
             "  -h | --help : Show this help and exit.\n" +
             "  -v | --verbose : Verbose output.\n" +
+            "  -b | --batch : Batch mode. Commands are read from the standard input.\n" +
+            "  -f | --file {file} : Batch mode. Commands are read from the file.\n" +
+            "  -p | --parallelism {number} : The number of commands executed concurrently in batch mode and bench mode. (default: 4)\n" +
+            "  --bench : Bench mode. The API is called repeatedly and the statistics are shown.\n" +
+            "  -d | --duration {seconds} : The duration of bench mode. (default: 10)\n" +
+            "  -r | --rate {number} : The maximum number of calls per second in bench mode. (default: unlimited)\n" +
             "\n\n" +
             "API NAME AND ARGUMENTS:\n\n" +
             "  getClient {clientId}\n" +
@@ -115,9 +189,29 @@ public class CLI
             "  getServiceConfiguration [pretty={true|false}]\n" +
             "  getServiceJwks [pretty={true|false}] [includePrivateKeys={true|false}]\n" +
             "  getServiceList [start={start}] [end={end}]\n" +
+            "  getTokenList [clientIdentifier={clientIdentifier}] [subject={subject}] [start={start}] [end={end}]\n" +
+            "  introspection token={token} [scopes={scope1,scope2,...}] [subject={subject}]\n" +
+            "  revocation parameters={parameters} [clientId={clientId}] [clientSecret={clientSecret}]\n" +
+            "  token parameters={parameters} [clientId={clientId}] [clientSecret={clientSecret}]\n" +
+            "  tokenCreate grantType={grantType} clientId={clientId} [subject={subject}] [scopes={scope1,scope2,...}]\n" +
             "\n" +
             "  # API name is case-insensitive.\n" +
             "\n\n" +
+            "BATCH MODE:\n\n" +
+            "  Each line of the input is a command in the format of '{API name} [arguments]'.\n" +
+            "  Empty lines and lines starting with '#' are ignored. Commands are executed\n" +
+            "  concurrently and the results are written to the standard output in the JSON\n" +
+            "  Lines format in the order of completion. Each line is a JSON object which has\n" +
+            "  \"line\", \"command\" and either \"result\" or \"error\". The exit status is 1 if\n" +
+            "  any command has failed.\n" +
+            "\n\n" +
+            "BENCH MODE:\n\n" +
+            "  The API is called by 'parallelism' threads for the duration, at most 'rate' times\n" +
+            "  per second in total if a rate is given. Then, the throughput, the latency\n" +
+            "  percentiles and the numbers of errors per HTTP status code (0 means that no\n" +
+            "  response was received) are shown. The API is called once before the measurement\n" +
+            "  to validate the arguments and to establish a connection.\n" +
+            "\n\n" +
             "EXAMPLES:\n\n" +
             "  $ bin/authlete-cli.sh --help\n" +
             "  $ bin/authlete-cli.sh getClient 4326385670\n" +
@@ -127,12 +221,23 @@ public class CLI
             "  $ bin/authlete-cli.sh getServiceConfiguration pretty=true\n" +
             "  $ bin/authlete-cli.sh getServiceJwks pretty=true includePrivateKeys=true\n" +
             "  $ bin/authlete-cli.sh getServiceList start=1\n" +
+            "  $ bin/authlete-cli.sh introspection token=G7t2Qd0_aOYVQSuMdcP3JuvRlrt9Aymj5RhlPDuoTdI\n" +
+            "  $ bin/authlete-cli.sh --file /tmp/commands.txt --parallelism 8\n" +
+            "  $ bin/authlete-cli.sh --bench --duration 30 --parallelism 16 --rate 200 introspection token=...\n" +
             "\n\n" +
             "NOTE:\n\n" +
             "  'authlete.properties' must exist. See JavaDoc of AuthletePropertiesConfiguration."
             ;
 
 
+    private static final int DEFAULT_PARALLELISM = 4;
+    private static final int DEFAULT_DURATION = 10;
+
+
+    private int mVerbose;
+    private PrintStream mVerboseOut = System.out;
+
+
     /**
      * The entry point of this command line interface.
      */
@@ -150,19 +255,28 @@ public class CLI
         // Validate the settings.
         validateSettings(settings);
 
+        mVerbose = settings.verbose;
+
         // Load "authlete.properties" and create an AuthleteApi instance.
         AuthleteApi api = AuthleteApiFactory.getDefaultApi();
 
-        try
+        if (settings.batch)
         {
-            // Execute the specified API.
-            executeApi(api, settings);
+            // Execute the commands in the input and exit with 1 if any
+            // of them has failed.
+            System.exit(executeBatch(api, settings) == 0 ? 0 : 1);
         }
-        catch (AuthleteApiException e)
+
+        if (settings.bench)
         {
-            // Report the error.
-            reportError(e);
+            // Measure the API.
+            executeBench(api, settings.command, settings.parallelism,
+                    settings.rate, TimeUnit.SECONDS.toMillis(settings.duration), System.out);
+            return;
         }
+
+        // Execute the specified API.
+        executeSingle(api, settings.command);
     }
 
 
@@ -188,6 +302,88 @@ public class CLI
                 settings.verbose++;
                 continue;
             }
+            // Batch mode with the standard input.
+            else if (argv.equals("-b") || argv.equals("--batch"))
+            {
+                settings.batch = true;
+                continue;
+            }
+            // Batch mode with a file.
+            else if (argv.equals("-f") || argv.equals("--file"))
+            {
+                if (len <= i + 1)
+                {
+                    settings.setError("'%s' needs its value.", argv);
+                    break;
+                }
+
+                settings.batch = true;
+                settings.file  = args[++i];
+                continue;
+            }
+            // Parallelism of the batch mode.
+            else if (argv.equals("-p") || argv.equals("--parallelism"))
+            {
+                if (len <= i + 1)
+                {
+                    settings.setError("'%s' needs its value.", argv);
+                    break;
+                }
+
+                settings.parallelism = parsePositiveInteger(args[++i]);
+
+                if (settings.parallelism <= 0)
+                {
+                    settings.setError("The value of '%s' must be a positive integer.", argv);
+                    break;
+                }
+
+                continue;
+            }
+            // Bench mode.
+            else if (argv.equals("--bench"))
+            {
+                settings.bench = true;
+                continue;
+            }
+            // Duration of the bench mode.
+            else if (argv.equals("-d") || argv.equals("--duration"))
+            {
+                if (len <= i + 1)
+                {
+                    settings.setError("'%s' needs its value.", argv);
+                    break;
+                }
+
+                settings.duration = parsePositiveInteger(args[++i]);
+
+                if (settings.duration <= 0)
+                {
+                    settings.setError("The value of '%s' must be a positive integer.", argv);
+                    break;
+                }
+
+                continue;
+            }
+            // Rate limit of the bench mode.
+            else if (argv.equals("-r") || argv.equals("--rate"))
+            {
+                if (len <= i + 1)
+                {
+                    settings.setError("'%s' needs its value.", argv);
+                    break;
+                }
+
+                settings.rate = parsePositiveNumber(args[++i]);
+
+                if (settings.rate <= 0)
+                {
+                    settings.setError("The value of '%s' must be a positive number.", argv);
+                    break;
+                }
+
+                continue;
+            }
             // Unknown option
             else if (argv.startsWith("-"))
             {
@@ -196,12 +392,13 @@ public class CLI
             }
 
             // API and parameters.
-            settings.apiName = ApiName.parse(argv);
-            settings.setParameters(args, i + 1);
-
-            if (settings.apiName == null)
+            try
+            {
+                settings.command = Command.parse(args, i);
+            }
+            catch (CommandException e)
             {
-                settings.setError("Unknown API name: '%s'", argv);
+                settings.setError(e.getMessage());
             }
 
             break;
@@ -211,6 +408,32 @@ public class CLI
     }
 
 
+    private static int parsePositiveInteger(String value)
+    {
+        try
+        {
+            return Integer.parseInt(value);
+        }
+        catch (NumberFormatException e)
+        {
+            return 0;
+        }
+    }
+
+
+    private static double parsePositiveNumber(String value)
+    {
+        try
+        {
+            return Double.parseDouble(value);
+        }
+        catch (NumberFormatException e)
+        {
+            return 0;
+        }
+    }
+
+
     private void validateSettings(Settings settings)
     {
         // If "-h" or "--help" is included in the command line.
@@ -228,8 +451,24 @@ public class CLI
             showErrorAndExit(settings.errorMessage);
         }
 
+        if (settings.batch && settings.bench)
+        {
+            showErrorAndExit("Batch mode and bench mode cannot be used together.");
+        }
+
+        // In batch mode, commands are read from the input.
+        if (settings.batch)
+        {
+            if (settings.command != null)
+            {
+                showErrorAndExit("API name cannot be given in batch mode.");
+            }
+
+            return;
+        }
+
         // If an API name is not included in the command line.
-        if (settings.apiName == null)
+        if (settings.command == null)
         {
             showErrorAndExit("API name is not given.");
         }
@@ -245,6 +484,11 @@ public class CLI
         GET_SERVICE_CONFIGURATION("getServiceConfiguration"),
         GET_SERVICE_JWKS("getServiceJwks"),
         GET_SERVICE_LIST("getServiceList"),
+        GET_TOKEN_LIST("getTokenList"),
+        INTROSPECTION("introspection"),
+        REVOCATION("revocation"),
+        TOKEN("token"),
+        TOKEN_CREATE("tokenCreate"),
         ;
 
 
@@ -278,8 +522,13 @@ public class CLI
         public boolean error;
         public int verbose;
         public String errorMessage;
-        public ApiName apiName;
-        public Map<String, String> parameters = new LinkedHashMap<String, String>();
+        public boolean batch;
+        public String file;
+        public int parallelism = DEFAULT_PARALLELISM;
+        public boolean bench;
+        public int duration = DEFAULT_DURATION;
+        public double rate;
+        public Command command;
 
 
         public void setError(String format, Object... args)
@@ -287,6 +536,30 @@ public class CLI
             error = true;
             errorMessage = String.format(format, args);
         }
+    }
+
+
+    static class Command
+    {
+        public ApiName apiName;
+        public Map<String, String> parameters = new LinkedHashMap<String, String>();
+
+
+        public static Command parse(String[] args, int from) throws CommandException
+        {
+            Command command = new Command();
+
+            command.apiName = ApiName.parse(args[from]);
+
+            if (command.apiName == null)
+            {
+                throw new CommandException(String.format("Unknown API name: '%s'", args[from]));
+            }
+
+            command.setParameters(args, from + 1);
+
+            return command;
+        }
 
 
         public void setParameters(String[] args, int from)
@@ -320,6 +593,23 @@ public class CLI
     }
 
 
+    /**
+     * Exception to report a wrong command. In the single mode, the message
+     * is shown and the application exits. In batch mode, the message is
+     * reported as the error of the command.
+     */
+    private static class CommandException extends RuntimeException
+    {
+        private static final long serialVersionUID = 1L;
+
+
+        public CommandException(String message)
+        {
+            super(message);
+        }
+    }
+
+
     private void showErrorAndExit(String message)
     {
         System.err.println("ERROR: " + message);
@@ -328,41 +618,462 @@ public class CLI
     }
 
 
-    private void executeApi(AuthleteApi api, Settings settings)
+    private void executeSingle(AuthleteApi api, Command command)
+    {
+        Object result;
+
+        try
+        {
+            result = executeApi(api, command);
+        }
+        catch (CommandException e)
+        {
+            showErrorAndExit(e.getMessage());
+            return;
+        }
+        catch (AuthleteApiException e)
+        {
+            // Report the error.
+            reportError(e);
+            return;
+        }
+
+        // Dump the result. Some APIs return JSON strings.
+        if (result instanceof String)
+        {
+            System.out.println(result);
+        }
+        else
+        {
+            System.out.println(Utils.toJson(result, true));
+        }
+    }
+
+
+    private int executeBatch(AuthleteApi api, Settings settings)
     {
-        switch (settings.apiName)
+        // Keep the standard output for the results.
+        mVerboseOut = System.err;
+
+        InputStream in = System.in;
+
+        try
+        {
+            if (settings.file != null)
+            {
+                in = new FileInputStream(settings.file);
+            }
+
+            Reader reader = new InputStreamReader(in, StandardCharsets.UTF_8);
+            Writer writer = new OutputStreamWriter(System.out, StandardCharsets.UTF_8);
+
+            return executeBatch(api, reader, writer, settings.parallelism);
+        }
+        catch (IOException e)
+        {
+            showErrorAndExit(String.format("Failed to read the commands: %s", e.getMessage()));
+            return 1;
+        }
+        finally
+        {
+            if (in != System.in)
+            {
+                closeQuietly(in);
+            }
+        }
+    }
+
+
+    /**
+     * Execute the commands read from the reader and write the results to
+     * the writer in the JSON Lines format.
+     *
+     * @return
+     *         The number of failed commands.
+     */
+    int executeBatch(
+            final AuthleteApi api, Reader in, Writer out, int parallelism) throws IOException
+    {
+        BufferedReader reader = new BufferedReader(in);
+        final JsonLinesWriter writer = new JsonLinesWriter(out);
+        final AtomicInteger failures = new AtomicInteger();
+
+        // Commands are read as the preceding ones complete, so a huge
+        // input does not pile up in the queue of the executor.
+        final Semaphore window = new Semaphore(parallelism);
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+
+        try
+        {
+            int lineNumber = 0;
+            String line;
+
+            while ((line = reader.readLine()) != null)
+            {
+                ++lineNumber;
+                line = line.trim();
+
+                // Skip empty lines and comment lines.
+                if (line.length() == 0 || line.startsWith("#"))
+                {
+                    continue;
+                }
+
+                final int number    = lineNumber;
+                final String[] args = line.split("\\s+");
+
+                window.acquireUninterruptibly();
+
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run()
+                    {
+                        try
+                        {
+                            if (executeBatchCommand(api, number, args, writer) == false)
+                            {
+                                failures.incrementAndGet();
+                            }
+                        }
+                        finally
+                        {
+                            window.release();
+                        }
+                    }
+                });
+            }
+
+            // Wait for the commands in flight.
+            window.acquireUninterruptibly(parallelism);
+        }
+        finally
+        {
+            executor.shutdown();
+            writer.flush();
+        }
+
+        return failures.get();
+    }
+
+
+    /**
+     * Call the API repeatedly for the duration and print the statistics.
+     */
+    void executeBench(
+            final AuthleteApi api, final Command command, int concurrency,
+            double rate, long durationMillis, PrintStream out)
+    {
+        // Validate the arguments and establish a connection. Errors
+        // returned from Authlete server are measured as well.
+        try
+        {
+            executeApi(api, command);
+        }
+        catch (CommandException e)
+        {
+            showErrorAndExit(e.getMessage());
+            return;
+        }
+        catch (AuthleteApiException e)
+        {
+            out.format("WARNING: The first call failed: %s\n", e.getMessage());
+        }
+
+        // The message per call would disturb the measurement.
+        mVerbose = 0;
+
+        final RateLimiter limiter = (0 < rate) ? new RateLimiter(rate) : null;
+        final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(durationMillis);
+
+        ExecutorService executor = Executors.newFixedThreadPool(concurrency);
+        List<Future<BenchWorker>> futures = new ArrayList<Future<BenchWorker>>();
+        long begin = System.nanoTime();
+
+        for (int i = 0; i < concurrency; ++i)
+        {
+            futures.add(executor.submit(new BenchWorker(api, command, limiter, deadline)));
+        }
+
+        LatencyRecorder latencies = new LatencyRecorder();
+        Map<Integer, Integer> errors = new TreeMap<Integer, Integer>();
+        Map<String, Integer> otherErrors = new TreeMap<String, Integer>();
+
+        try
+        {
+            for (Future<BenchWorker> future : futures)
+            {
+                BenchWorker worker = future.get();
+
+                latencies.merge(worker.mLatencies);
+                mergeCounts(errors, worker.mErrors);
+                mergeCounts(otherErrors, worker.mOtherErrors);
+            }
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while measuring the API.", e);
+        }
+        catch (ExecutionException e)
+        {
+            throw new IllegalStateException("Failed to measure the API.", e.getCause());
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+
+        double elapsed = (System.nanoTime() - begin) / (double)TimeUnit.SECONDS.toNanos(1);
+        int failures   = countTotal(errors) + countTotal(otherErrors);
+
+        out.format("API:          %s\n", command.apiName.name);
+        out.format("Duration:     %.2f s\n", elapsed);
+        out.format("Concurrency:  %d\n", concurrency);
+        out.format("Rate limit:   %s\n", (0 < rate) ? String.format("%.1f/s", rate) : "none");
+        out.format("Requests:     %d\n", latencies.getCount());
+        out.format("Successes:    %d\n", latencies.getCount() - failures);
+        out.format("Errors:       %d\n", failures);
+
+        for (Map.Entry<Integer, Integer> entry : errors.entrySet())
+        {
+            out.format("  status %d: %d\n", entry.getKey(), entry.getValue());
+        }
+
+        for (Map.Entry<String, Integer> entry : otherErrors.entrySet())
+        {
+            out.format("  %s: %d\n", entry.getKey(), entry.getValue());
+        }
+
+        out.format("Throughput:   %.1f/s\n", latencies.getCount() / elapsed);
+        out.format("Latency (ms): %s\n", latencies.summarize());
+    }
+
+
+    private static <K> void mergeCounts(Map<K, Integer> target, Map<K, Integer> source)
+    {
+        for (Map.Entry<K, Integer> entry : source.entrySet())
+        {
+            Integer count = target.get(entry.getKey());
+
+            target.put(entry.getKey(), (count == null) ? entry.getValue() : count + entry.getValue());
+        }
+    }
+
+
+    private static <K> int countTotal(Map<K, Integer> counts)
+    {
+        int total = 0;
+
+        for (Integer count : counts.values())
+        {
+            total += count;
+        }
+
+        return total;
+    }
+
+
+    /**
+     * Worker of bench mode which calls the API until the deadline.
+     */
+    private class BenchWorker implements Callable<BenchWorker>
+    {
+        private final AuthleteApi mApi;
+        private final Command mCommand;
+        private final RateLimiter mLimiter;
+        private final long mDeadline;
+        private final LatencyRecorder mLatencies = new LatencyRecorder();
+        private final Map<Integer, Integer> mErrors = new TreeMap<Integer, Integer>();
+        private final Map<String, Integer> mOtherErrors = new TreeMap<String, Integer>();
+
+
+        public BenchWorker(AuthleteApi api, Command command, RateLimiter limiter, long deadline)
+        {
+            mApi      = api;
+            mCommand  = command;
+            mLimiter  = limiter;
+            mDeadline = deadline;
+        }
+
+
+        @Override
+        public BenchWorker call() throws InterruptedException
+        {
+            while (true)
+            {
+                if (mLimiter != null)
+                {
+                    mLimiter.acquire();
+                }
+
+                long begin = System.nanoTime();
+
+                if (mDeadline <= begin)
+                {
+                    return this;
+                }
+
+                try
+                {
+                    executeApi(mApi, mCommand);
+                }
+                catch (AuthleteApiException e)
+                {
+                    increment(mErrors, e.getStatusCode());
+                }
+                catch (RuntimeException e)
+                {
+                    increment(mOtherErrors, e.getClass().getName());
+                }
+
+                mLatencies.record(System.nanoTime() - begin);
+            }
+        }
+
+
+        private <K> void increment(Map<K, Integer> counts, K key)
+        {
+            Integer count = counts.get(key);
+
+            counts.put(key, (count == null) ? 1 : count + 1);
+        }
+    }
+
+
+    private boolean executeBatchCommand(AuthleteApi api, int line, String[] args, JsonLinesWriter writer)
+    {
+        Map<String, Object> entry = new LinkedHashMap<String, Object>();
+        entry.put("line", line);
+        entry.put("command", args[0]);
+
+        boolean successful = false;
+
+        try
+        {
+            entry.put("result", toJsonValue(executeApi(api, Command.parse(args, 0))));
+            successful = true;
+        }
+        catch (CommandException e)
+        {
+            entry.put("error", createError(e.getMessage(), null));
+        }
+        catch (AuthleteApiException e)
+        {
+            Map<String, Object> error = createError(e.getMessage(), e.getCause());
+            error.put("statusCode", e.getStatusCode());
+            error.put("statusMessage", e.getStatusMessage());
+            error.put("responseBody", e.getResponseBody());
+            entry.put("error", error);
+        }
+        catch (RuntimeException e)
+        {
+            entry.put("error", createError(e.toString(), null));
+        }
+
+        try
+        {
+            writer.write(entry);
+        }
+        catch (IOException e)
+        {
+            // The output is not writable any more.
+            return false;
+        }
+
+        return successful;
+    }
+
+
+    private static Object toJsonValue(Object result)
+    {
+        if (!(result instanceof String))
+        {
+            return result;
+        }
+
+        // Embed the JSON string as a JSON value so that the line is not
+        // broken by the line breaks in it.
+        try
+        {
+            return new JsonParser().parse((String)result);
+        }
+        catch (JsonParseException e)
+        {
+            return result;
+        }
+    }
+
+
+    private static Map<String, Object> createError(String message, Throwable cause)
+    {
+        Map<String, Object> error = new LinkedHashMap<String, Object>();
+        error.put("message", message);
+
+        if (cause != null)
+        {
+            error.put("cause", cause.toString());
+        }
+
+        return error;
+    }
+
+
+    private static void closeQuietly(InputStream in)
+    {
+        try
+        {
+            in.close();
+        }
+        catch (IOException e)
+        {
+            // Ignore.
+        }
+    }
+
+
+    private Object executeApi(AuthleteApi api, Command command)
+    {
+        switch (command.apiName)
         {
             case GET_CLIENT:
-                executeGetClientApi(api, settings);
-                break;
+                return executeGetClientApi(api, command);
 
             case GET_CLIENT_AUTHORIZATION_LIST:
-                executeGetClientAuthorizationListApi(api, settings);
-                break;
+                return executeGetClientAuthorizationListApi(api, command);
 
             case GET_CLIENT_LIST:
-                executeGetClientListApi(api, settings);
-                break;
+                return executeGetClientListApi(api, command);
 
             case GET_SERVICE:
-                executeGetServiceApi(api, settings);
-                break;
+                return executeGetServiceApi(api, command);
 
             case GET_SERVICE_CONFIGURATION:
-                executeGetServiceConfigurationApi(api, settings);
-                break;
+                return executeGetServiceConfigurationApi(api, command);
 
             case GET_SERVICE_JWKS:
-                executeGetServiceJwksApi(api, settings);
-                break;
+                return executeGetServiceJwksApi(api, command);
 
             case GET_SERVICE_LIST:
-                executeGetServiceListApi(api, settings);
-                break;
+                return executeGetServiceListApi(api, command);
+
+            case GET_TOKEN_LIST:
+                return executeGetTokenListApi(api, command);
+
+            case INTROSPECTION:
+                return executeIntrospectionApi(api, command);
+
+            case REVOCATION:
+                return executeRevocationApi(api, command);
+
+            case TOKEN:
+                return executeTokenApi(api, command);
+
+            case TOKEN_CREATE:
+                return executeTokenCreateApi(api, command);
 
             default:
                 // Not implemented unexpectedly.
-                throw new AssertionError(settings.apiName.name());
+                throw new AssertionError(command.apiName.name());
         }
     }
 
@@ -423,7 +1134,7 @@ public class CLI
     }
 
 
-    private int getIntegerOrExitIfNeeded(Map<String, String> parameters, String key, int defaultValue)
+    private int getInteger(Map<String, String> parameters, String key, int defaultValue)
     {
         if (parameters.containsKey(key) == false)
         {
@@ -434,7 +1145,7 @@ public class CLI
 
         if (value == null || value.length() == 0)
         {
-            showErrorAndExit(String.format("'%s' needs its value.", key));
+            throw new CommandException(String.format("'%s' needs its value.", key));
         }
 
         try
@@ -443,10 +1154,7 @@ public class CLI
         }
         catch (Exception e)
         {
-            showErrorAndExit(String.format("Failed to parse the value of '%s' as an integer.", key));
-
-            // Not reach here.
-            return defaultValue;
+            throw new CommandException(String.format("Failed to parse the value of '%s' as an integer.", key));
         }
     }
 
@@ -471,51 +1179,64 @@ public class CLI
     }
 
 
-    private String getFirstKeyOrExit(Map<String, String> parameters, String apiName, String parameterName)
+    private String getRequiredString(Map<String, String> parameters, String apiName, String key)
     {
-        int size = parameters.size();
+        String value = parameters.get(key);
 
-        if (size == 0)
+        if (value == null || value.length() == 0)
         {
-            showErrorAndExit(String.format("%s requires {%s}.", apiName, parameterName));
+            throw new CommandException(String.format("%s requires a '%s' value.", apiName, key));
         }
-        else if (size != 1)
+
+        return value;
+    }
+
+
+    private String[] getStringArray(Map<String, String> parameters, String key)
+    {
+        String value = parameters.get(key);
+
+        if (value == null || value.length() == 0)
         {
-            showErrorAndExit(String.format("Too many arguments for %s.", apiName));
+            return null;
         }
 
-        return getFirstKey(parameters);
+        // Comma-separated values.
+        return value.split(",");
     }
 
 
-    private String getFirstKey(Map<String, String> parameters)
+    private String getFirstKey(Map<String, String> parameters, String apiName, String parameterName)
     {
-        try
+        int size = parameters.size();
+
+        if (size == 0)
         {
-            return parameters.keySet().iterator().next();
+            throw new CommandException(String.format("%s requires {%s}.", apiName, parameterName));
         }
-        catch (Exception e)
+        else if (size != 1)
         {
-            return null;
+            throw new CommandException(String.format("Too many arguments for %s.", apiName));
         }
+
+        return parameters.keySet().iterator().next();
     }
 
 
-    private void verbose(Settings settings, String format, Object... args)
+    private void verbose(String format, Object... args)
     {
-        if (settings.verbose <= 0)
+        if (mVerbose <= 0)
         {
             return;
         }
 
-        System.out.format(format, args);
-        System.out.println();
+        mVerboseOut.println(String.format(format, args));
     }
 
 
-    private void executeGetClientApi(AuthleteApi api, Settings settings)
+    private Client executeGetClientApi(AuthleteApi api, Command command)
     {
-        String value = getFirstKeyOrExit(settings.parameters, "getClient", "clientId");
+        String value = getFirstKey(command.parameters, "getClient", "clientId");
 
         long clientId;
 
@@ -525,141 +1246,116 @@ public class CLI
         }
         catch (Exception e)
         {
-            showErrorAndExit("The value of {clientId} is invalid.");
-            return;
+            throw new CommandException("The value of {clientId} is invalid.");
         }
 
         // Get the client information.
-        verbose(settings, "Calling getClient(clientId=%d)", clientId);
-        Client client = api.getClient(clientId);
-
-        // Dump the client information.
-        System.out.println(Utils.toJson(client, true));
+        verbose("Calling getClient(clientId=%d)", clientId);
+        return api.getClient(clientId);
     }
 
 
-    private void executeGetClientAuthorizationListApi(AuthleteApi api, Settings settings)
+    private AuthorizedClientListResponse executeGetClientAuthorizationListApi(AuthleteApi api, Command command)
     {
         // Request parameters for /api/client/authorization/get/list API.
         ClientAuthorizationGetListRequest request = new ClientAuthorizationGetListRequest();
 
         // Request parameter: subject (mandatory)
-        String subject = settings.parameters.get("subject");
-        if (subject == null || subject.length() == 0)
-        {
-            showErrorAndExit("getClientAuthorizationList requires a 'subject' value.");
-            return;
-        }
-        request.setSubject(subject);
+        request.setSubject(getRequiredString(command.parameters, "getClientAuthorizationList", "subject"));
 
         // Request parameter: developer (optional)
-        if (settings.parameters.containsKey("developer"))
+        if (command.parameters.containsKey("developer"))
         {
-            request.setDeveloper(settings.parameters.get("developer"));
+            request.setDeveloper(command.parameters.get("developer"));
         }
 
         // Request parameter: start (optional)
-        if (settings.parameters.containsKey("start"))
+        if (command.parameters.containsKey("start"))
         {
-            request.setStart(getIntegerOrExitIfNeeded(settings.parameters, "start", 0));
+            request.setStart(getInteger(command.parameters, "start", 0));
         }
 
         // Request parameter: end (optional)
-        if (settings.parameters.containsKey("end"))
+        if (command.parameters.containsKey("end"))
         {
-            request.setStart(getIntegerOrExitIfNeeded(settings.parameters, "end", 5));
+            request.setEnd(getInteger(command.parameters, "end", 5));
         }
 
-        verbose(settings,
-                "Calling getClientAuthorizationList(request) (subject=%s, developer=%s, start=%d, end=%d)",
+        verbose("Calling getClientAuthorizationList(request) (subject=%s, developer=%s, start=%d, end=%d)",
                 request.getSubject(), request.getDeveloper(), request.getStart(), request.getEnd());
 
-        AuthorizedClientListResponse response = api.getClientAuthorizationList(request);
-
-        // Dump the list.
-        System.out.println(Utils.toJson(response, true));
+        return api.getClientAuthorizationList(request);
     }
 
 
-    private void executeGetClientListApi(AuthleteApi api, Settings settings)
+    private ClientListResponse executeGetClientListApi(AuthleteApi api, Command command)
     {
         boolean useRange = false;
         int start = 0;
         int end = 5;
 
-        if (settings.parameters.containsKey("start") || settings.parameters.containsKey("end"))
+        if (command.parameters.containsKey("start") || command.parameters.containsKey("end"))
         {
-            start    = getIntegerOrExitIfNeeded(settings.parameters, "start", 0);
-            end      = getIntegerOrExitIfNeeded(settings.parameters, "end", 5);
+            start    = getInteger(command.parameters, "start", 0);
+            end      = getInteger(command.parameters, "end", 5);
             useRange = true;
         }
 
-        String developer = settings.parameters.get("developer");
-
-        ClientListResponse response;
+        String developer = command.parameters.get("developer");
 
         if (developer != null)
         {
             if (useRange)
             {
-                verbose(settings, "Calling getClientList(developer=%s, start=%d, end=%d)", developer, start, end);
-                response = api.getClientList(developer, start, end);
+                verbose("Calling getClientList(developer=%s, start=%d, end=%d)", developer, start, end);
+                return api.getClientList(developer, start, end);
             }
             else
             {
-                verbose(settings, "Calling getClientList(developer=%s)", developer);
-                response = api.getClientList(developer);
+                verbose("Calling getClientList(developer=%s)", developer);
+                return api.getClientList(developer);
             }
         }
         else
         {
             if (useRange)
             {
-                verbose(settings, "Calling getClientList(start=%d, end=%d)", start, end);
-                response = api.getClientList(start, end);
+                verbose("Calling getClientList(start=%d, end=%d)", start, end);
+                return api.getClientList(start, end);
             }
             else
             {
-                verbose(settings, "Calling getClientList()");
-                response = api.getClientList();
+                verbose("Calling getClientList()");
+                return api.getClientList();
             }
         }
-
-        // Dump the list.
-        System.out.println(Utils.toJson(response, true));
     }
 
 
-    private void executeGetServiceConfigurationApi(AuthleteApi api, Settings settings)
+    private String executeGetServiceConfigurationApi(AuthleteApi api, Command command)
     {
-        boolean pretty = getBoolean(settings.parameters, "pretty", true);
+        boolean pretty = getBoolean(command.parameters, "pretty", true);
 
         // Get the service configuration.
-        verbose(settings, "Calling getServiceConfiguration(pretty=%s)", pretty);
-        String configuration = api.getServiceConfiguration(pretty);
-
-        // Dump the configuration.
-        System.out.println(configuration);
+        verbose("Calling getServiceConfiguration(pretty=%s)", pretty);
+        return api.getServiceConfiguration(pretty);
     }
 
 
-    private void executeGetServiceJwksApi(AuthleteApi api, Settings settings)
+    private String executeGetServiceJwksApi(AuthleteApi api, Command command)
     {
-        boolean pretty  = getBoolean(settings.parameters, "pretty", true);
-        boolean include = getBoolean(settings.parameters, "includePrivateKeys", false);
+        boolean pretty  = getBoolean(command.parameters, "pretty", true);
+        boolean include = getBoolean(command.parameters, "includePrivateKeys", false);
 
         // Get the JWKS of the service.
-        verbose(settings, "Calling getServiceJwks(pretty=%s, includePrivateKeys=%s)", pretty, include);
-        String jwks = api.getServiceJwks(pretty, include);
-
-        // Dump the JWKS.
-        System.out.println(jwks);
+        verbose("Calling getServiceJwks(pretty=%s, includePrivateKeys=%s)", pretty, include);
+        return api.getServiceJwks(pretty, include);
     }
 
 
-    private void executeGetServiceApi(AuthleteApi api, Settings settings)
+    private Service executeGetServiceApi(AuthleteApi api, Command command)
     {
-        String value = getFirstKeyOrExit(settings.parameters, "getService", "serviceApiKey");
+        String value = getFirstKey(command.parameters, "getService", "serviceApiKey");
 
         long serviceApiKey;
 
@@ -669,40 +1365,133 @@ public class CLI
         }
         catch (Exception e)
         {
-            showErrorAndExit("The value of {serviceApiKey} is invalid.");
-            return;
+            throw new CommandException("The value of {serviceApiKey} is invalid.");
         }
 
         // Get the service information.
-        verbose(settings, "Calling getService(serviceApiKey=%d)", serviceApiKey);
-        Service service = api.getService(serviceApiKey);
-
-        // Dump the service information.
-        System.out.println(Utils.toJson(service, true));
+        verbose("Calling getService(serviceApiKey=%d)", serviceApiKey);
+        return api.getService(serviceApiKey);
     }
 
 
-    private void executeGetServiceListApi(AuthleteApi api, Settings settings)
+    private ServiceListResponse executeGetServiceListApi(AuthleteApi api, Command command)
     {
-        ServiceListResponse response;
-
-        if (settings.parameters.containsKey("start") || settings.parameters.containsKey("end"))
+        if (command.parameters.containsKey("start") || command.parameters.containsKey("end"))
         {
-            int start = getIntegerOrExitIfNeeded(settings.parameters, "start", 0);
-            int end   = getIntegerOrExitIfNeeded(settings.parameters, "end", 5);
+            int start = getInteger(command.parameters, "start", 0);
+            int end   = getInteger(command.parameters, "end", 5);
 
             // Get the service list.
-            verbose(settings, "Calling getServiceList(start=%d, end=%d)", start, end);
-            response = api.getServiceList(start, end);
+            verbose("Calling getServiceList(start=%d, end=%d)", start, end);
+            return api.getServiceList(start, end);
         }
         else
         {
             // Get the service list.
-            verbose(settings, "Calling getServiceList()");
-            response = api.getServiceList();
+            verbose("Calling getServiceList()");
+            return api.getServiceList();
+        }
+    }
+
+
+    private TokenListResponse executeGetTokenListApi(AuthleteApi api, Command command)
+    {
+        String clientIdentifier = command.parameters.get("clientIdentifier");
+        String subject          = command.parameters.get("subject");
+
+        if (command.parameters.containsKey("start") || command.parameters.containsKey("end"))
+        {
+            int start = getInteger(command.parameters, "start", 0);
+            int end   = getInteger(command.parameters, "end", 5);
+
+            // Get the token list.
+            verbose("Calling getTokenList(clientIdentifier=%s, subject=%s, start=%d, end=%d)",
+                    clientIdentifier, subject, start, end);
+            return api.getTokenList(clientIdentifier, subject, start, end);
         }
+        else
+        {
+            // Get the token list.
+            verbose("Calling getTokenList(clientIdentifier=%s, subject=%s)", clientIdentifier, subject);
+            return api.getTokenList(clientIdentifier, subject);
+        }
+    }
+
+
+    private IntrospectionResponse executeIntrospectionApi(AuthleteApi api, Command command)
+    {
+        // Request parameters for /api/auth/introspection API.
+        IntrospectionRequest request = new IntrospectionRequest()
+            .setToken(getRequiredString(command.parameters, "introspection", "token"))
+            .setScopes(getStringArray(command.parameters, "scopes"))
+            .setSubject(command.parameters.get("subject"));
+
+        verbose("Calling introspection(request) (subject=%s)", request.getSubject());
+
+        return api.introspection(request);
+    }
+
+
+    private RevocationResponse executeRevocationApi(AuthleteApi api, Command command)
+    {
+        // Request parameters for /api/auth/revocation API.
+        RevocationRequest request = new RevocationRequest()
+            .setParameters(getRequiredString(command.parameters, "revocation", "parameters"))
+            .setClientId(command.parameters.get("clientId"))
+            .setClientSecret(command.parameters.get("clientSecret"));
+
+        verbose("Calling revocation(request) (clientId=%s)", request.getClientId());
+
+        return api.revocation(request);
+    }
+
+
+    private TokenResponse executeTokenApi(AuthleteApi api, Command command)
+    {
+        // Request parameters for /api/auth/token API.
+        TokenRequest request = new TokenRequest()
+            .setParameters(getRequiredString(command.parameters, "token", "parameters"))
+            .setClientId(command.parameters.get("clientId"))
+            .setClientSecret(command.parameters.get("clientSecret"));
+
+        verbose("Calling token(request) (clientId=%s)", request.getClientId());
+
+        return api.token(request);
+    }
+
+
+    private TokenCreateResponse executeTokenCreateApi(AuthleteApi api, Command command)
+    {
+        String value = getRequiredString(command.parameters, "tokenCreate", "grantType");
+        GrantType grantType = GrantType.parse(value);
+
+        if (grantType == null)
+        {
+            throw new CommandException(String.format("Unknown grant type: '%s'", value));
+        }
+
+        value = getRequiredString(command.parameters, "tokenCreate", "clientId");
+        long clientId;
+
+        try
+        {
+            clientId = Long.parseLong(value);
+        }
+        catch (Exception e)
+        {
+            throw new CommandException("The value of 'clientId' is invalid.");
+        }
+
+        // Request parameters for /api/auth/token/create API.
+        TokenCreateRequest request = new TokenCreateRequest()
+            .setGrantType(grantType)
+            .setClientId(clientId)
+            .setSubject(command.parameters.get("subject"))
+            .setScopes(getStringArray(command.parameters, "scopes"));
+
+        verbose("Calling tokenCreate(request) (grantType=%s, clientId=%d, subject=%s)",
+                grantType, clientId, request.getSubject());
 
-        // Dump the list.
-        System.out.println(Utils.toJson(response, true));
+        return api.tokenCreate(request);
     }
 }
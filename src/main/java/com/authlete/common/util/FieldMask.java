@@ -0,0 +1,347 @@
+/*
+ * Copyright (C) 2020 Authlete, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.authlete.common.util;
+
+
+import java.io.IOException;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+
+/**
+ * Field mask to bind only specified fields when JSON is converted into
+ * objects.
+ *
+ * <p>
+ * A field mask holds a set of field names per class. When JSON is parsed
+ * by {@link Utils#fromJson(String, Class, FieldMask)}, properties of an
+ * object of a masked class which are not included in the set are skipped
+ * by the JSON tokenizer without building any object for them. Objects of
+ * classes which are not registered in the mask are bound as usual.
+ * </p>
+ *
+ * <pre style="border: solid 1px black; padding: 0.5em;">
+ * FieldMask mask = new FieldMask()
+ *     .include(Client.class, "clientId", "clientName", "clientType");
+ *
+ * ClientListResponse response =
+ *     Utils.fromJson(json, ClientListResponse.class, mask);
+ * </pre>
+ *
+ * <p>
+ * Field names are the names of Java fields, which are identical to the
+ * property names in JSON exchanged with Authlete server. A field mask
+ * should be set up first and then shared; it is not modified after it
+ * is used for parsing.
+ * </p>
+ *
+ * @since 2.76
+ */
+public class FieldMask
+{
+    private final Map<Class<?>, Set<String>> mFields = new HashMap<Class<?>, Set<String>>();
+    private int mVersion;
+
+
+    /**
+     * Include the specified fields of the class.
+     *
+     * <p>
+     * This method can be called multiple times for the same class. The
+     * field names are accumulated.
+     * </p>
+     *
+     * @param klass
+     *         A class whose fields are to be masked.
+     *
+     * @param fieldNames
+     *         Names of fields to bind.
+     *
+     * @return
+     *         {@code this} object.
+     *
+     * @throws IllegalArgumentException
+     *         {@code klass} is {@code null}, or the class does not have
+     *         a field of one of the given names.
+     */
+    public synchronized FieldMask include(Class<?> klass, String... fieldNames)
+    {
+        if (klass == null)
+        {
+            throw new IllegalArgumentException("klass is null.");
+        }
+
+        Set<String> set = mFields.get(klass);
+
+        if (set == null)
+        {
+            set = new LinkedHashSet<String>();
+            mFields.put(klass, set);
+        }
+
+        if (fieldNames != null)
+        {
+            for (String fieldName : fieldNames)
+            {
+                if (findField(klass, fieldName) == null)
+                {
+                    throw new IllegalArgumentException(String.format(
+                            "%s does not have a field named '%s'.", klass.getName(), fieldName));
+                }
+
+                set.add(fieldName);
+            }
+        }
+
+        // Gson instances built for the previous state have to be rebuilt.
+        ++mVersion;
+
+        return this;
+    }
+
+
+    /**
+     * Get the names of the fields included for the class.
+     *
+     * @param klass
+     *         A class.
+     *
+     * @return
+     *         The names of the included fields. {@code null} is returned
+     *         if the class is not masked.
+     */
+    public synchronized String[] getFieldNames(Class<?> klass)
+    {
+        Set<String> set = mFields.get(klass);
+
+        if (set == null)
+        {
+            return null;
+        }
+
+        return set.toArray(new String[set.size()]);
+    }
+
+
+    /**
+     * Get the version of this field mask, which is incremented every
+     * time the mask is modified.
+     */
+    synchronized int getVersion()
+    {
+        return mVersion;
+    }
+
+
+    /**
+     * Create a {@link TypeAdapterFactory} which honors this field mask.
+     * The returned factory takes a snapshot of the current mask.
+     */
+    synchronized TypeAdapterFactory createFactory()
+    {
+        final Map<Class<?>, Field[]> snapshot = new HashMap<Class<?>, Field[]>();
+
+        for (Map.Entry<Class<?>, Set<String>> entry : mFields.entrySet())
+        {
+            Class<?> klass = entry.getKey();
+            Field[] fields = new Field[entry.getValue().size()];
+            int i = 0;
+
+            for (String fieldName : entry.getValue())
+            {
+                Field field = findField(klass, fieldName);
+                field.setAccessible(true);
+                fields[i++] = field;
+            }
+
+            snapshot.put(klass, fields);
+        }
+
+        return new TypeAdapterFactory() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> type)
+            {
+                Field[] fields = snapshot.get(type.getRawType());
+
+                if (fields == null)
+                {
+                    // Not masked.
+                    return null;
+                }
+
+                TypeAdapter<T> delegate = gson.getDelegateAdapter(this, type);
+
+                return (TypeAdapter<T>)new MaskedTypeAdapter<Object>(
+                        gson, (Class<Object>)type.getRawType(), fields, (TypeAdapter<Object>)delegate);
+            }
+        };
+    }
+
+
+    private static Field findField(Class<?> klass, String fieldName)
+    {
+        for (Class<?> c = klass; c != null && c != Object.class; c = c.getSuperclass())
+        {
+            try
+            {
+                Field field = c.getDeclaredField(fieldName);
+                int modifiers = field.getModifiers();
+
+                if (Modifier.isStatic(modifiers) || Modifier.isTransient(modifiers))
+                {
+                    return null;
+                }
+
+                return field;
+            }
+            catch (NoSuchFieldException e)
+            {
+                // Try the super class.
+            }
+        }
+
+        return null;
+    }
+
+
+    /**
+     * Type adapter which binds only the masked fields and skips the
+     * values of other properties. Serialization is delegated.
+     */
+    private static class MaskedTypeAdapter<T> extends TypeAdapter<T>
+    {
+        private final Constructor<T> mConstructor;
+        private final Map<String, Field> mFields;
+        private final Map<String, TypeAdapter<?>> mAdapters;
+        private final TypeAdapter<T> mDelegate;
+
+
+        MaskedTypeAdapter(Gson gson, Class<T> klass, Field[] fields, TypeAdapter<T> delegate)
+        {
+            mConstructor = getConstructor(klass);
+            mFields      = new HashMap<String, Field>();
+            mAdapters    = new HashMap<String, TypeAdapter<?>>();
+            mDelegate    = delegate;
+
+            for (Field field : fields)
+            {
+                mFields.put(field.getName(), field);
+                mAdapters.put(field.getName(), gson.getAdapter(TypeToken.get(field.getGenericType())));
+            }
+        }
+
+
+        private static <T> Constructor<T> getConstructor(Class<T> klass)
+        {
+            try
+            {
+                Constructor<T> constructor = klass.getDeclaredConstructor();
+                constructor.setAccessible(true);
+
+                return constructor;
+            }
+            catch (NoSuchMethodException e)
+            {
+                throw new IllegalArgumentException(String.format(
+                        "%s does not have a constructor without parameters.", klass.getName()), e);
+            }
+        }
+
+
+        @Override
+        public void write(JsonWriter out, T value) throws IOException
+        {
+            mDelegate.write(out, value);
+        }
+
+
+        @Override
+        public T read(JsonReader in) throws IOException
+        {
+            if (in.peek() == JsonToken.NULL)
+            {
+                in.nextNull();
+                return null;
+            }
+
+            T object = newInstance();
+
+            in.beginObject();
+
+            while (in.hasNext())
+            {
+                String name = in.nextName();
+                Field field = mFields.get(name);
+
+                if (field == null)
+                {
+                    // Skip the value at the tokenizer level.
+                    in.skipValue();
+                    continue;
+                }
+
+                Object value = mAdapters.get(name).read(in);
+
+                // Keep the default value of primitive fields for JSON null.
+                if (value == null && field.getType().isPrimitive())
+                {
+                    continue;
+                }
+
+                try
+                {
+                    field.set(object, value);
+                }
+                catch (IllegalAccessException e)
+                {
+                    throw new JsonParseException(e);
+                }
+            }
+
+            in.endObject();
+
+            return object;
+        }
+
+
+        private T newInstance()
+        {
+            try
+            {
+                return mConstructor.newInstance();
+            }
+            catch (Exception e)
+            {
+                throw new JsonParseException(String.format(
+                        "Failed to create an instance of %s.", mConstructor.getDeclaringClass().getName()), e);
+            }
+        }
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright (C) 2020 Authlete, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.authlete.common.util;
+
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+
+
+/**
+ * Reader of <a href="https://jsonlines.org/">JSON Lines</a>, which contains
+ * one JSON value per line.
+ *
+ * <p>
+ * Empty lines and lines which contain only whitespaces are skipped. This
+ * class is not thread-safe.
+ * </p>
+ *
+ * @see JsonLinesWriter
+ *
+ * @since 2.76
+ */
+public class JsonLinesReader implements Closeable
+{
+    private final BufferedReader mReader;
+    private int mLineNumber;
+
+
+    /**
+     * Constructor with a reader.
+     *
+     * @param reader
+     *         A reader from which JSON Lines are read.
+     */
+    public JsonLinesReader(Reader reader)
+    {
+        if (reader == null)
+        {
+            throw new IllegalArgumentException("reader is null.");
+        }
+
+        mReader = (reader instanceof BufferedReader)
+                ? (BufferedReader)reader : new BufferedReader(reader);
+    }
+
+
+    /**
+     * Constructor with an input stream. JSON Lines are read in UTF-8.
+     *
+     * @param in
+     *         An input stream from which JSON Lines are read.
+     */
+    public JsonLinesReader(InputStream in)
+    {
+        this(new InputStreamReader(in, StandardCharsets.UTF_8));
+    }
+
+
+    /**
+     * Read the next JSON.
+     *
+     * @return
+     *         The JSON in the next non-empty line, or {@code null} if the
+     *         end of the stream has been reached.
+     *
+     * @throws IOException
+     *         Failed to read.
+     */
+    public String next() throws IOException
+    {
+        while (true)
+        {
+            String line = mReader.readLine();
+
+            if (line == null)
+            {
+                return null;
+            }
+
+            ++mLineNumber;
+
+            line = line.trim();
+
+            if (line.length() != 0)
+            {
+                return line;
+            }
+        }
+    }
+
+
+    /**
+     * Read the next JSON and convert it into an object.
+     *
+     * @param klass
+     *         The class of the resultant object.
+     *
+     * @return
+     *         The object, or {@code null} if the end of the stream has
+     *         been reached.
+     *
+     * @throws IOException
+     *         Failed to read, or the line is not valid JSON for the class.
+     */
+    public <T> T next(Class<T> klass) throws IOException
+    {
+        String json = next();
+
+        if (json == null)
+        {
+            return null;
+        }
+
+        try
+        {
+            return Utils.fromJson(json, klass);
+        }
+        catch (RuntimeException e)
+        {
+            throw new IOException(String.format("Line %d is malformed: %s", mLineNumber, e.getMessage()), e);
+        }
+    }
+
+
+    /**
+     * Get the number of the line read last.
+     *
+     * @return
+     *         The line number starting from 1. 0 if nothing has been read.
+     */
+    public int getLineNumber()
+    {
+        return mLineNumber;
+    }
+
+
+    @Override
+    public void close() throws IOException
+    {
+        mReader.close();
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright (C) 2020 Authlete, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.authlete.common.util;
+
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+
+/**
+ * Writer of <a href="https://jsonlines.org/">JSON Lines</a>, which writes
+ * one JSON object per line.
+ *
+ * <p>
+ * Objects are converted into JSON by {@link Utils#toJson(Object)}. Because
+ * Gson escapes line terminators in strings, each JSON never contains a
+ * line break. This class is thread-safe.
+ * </p>
+ *
+ * @since 2.76
+ */
+public class JsonLinesWriter implements Closeable, Flushable
+{
+    private final Writer mWriter;
+
+
+    /**
+     * Constructor with a writer.
+     *
+     * @param writer
+     *         A writer to which JSON Lines are written.
+     */
+    public JsonLinesWriter(Writer writer)
+    {
+        if (writer == null)
+        {
+            throw new IllegalArgumentException("writer is null.");
+        }
+
+        mWriter = writer;
+    }
+
+
+    /**
+     * Constructor with an output stream. JSON Lines are written in UTF-8.
+     *
+     * @param out
+     *         An output stream to which JSON Lines are written.
+     */
+    public JsonLinesWriter(OutputStream out)
+    {
+        this(new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8)));
+    }
+
+
+    /**
+     * Write an object as a line.
+     *
+     * @param object
+     *         An object. {@code null} is written as {@code null}.
+     *
+     * @throws IOException
+     *         Failed to write.
+     */
+    public synchronized void write(Object object) throws IOException
+    {
+        String json = Utils.toJson(object);
+
+        mWriter.write(json != null ? json : "null");
+        mWriter.write('\n');
+    }
+
+
+    /**
+     * Write a JSON string as a line as is.
+     *
+     * @param json
+     *         A JSON string which does not contain line breaks.
+     *
+     * @throws IOException
+     *         Failed to write.
+     */
+    public synchronized void writeJson(String json) throws IOException
+    {
+        mWriter.write(json);
+        mWriter.write('\n');
+    }
+
+
+    @Override
+    public synchronized void flush() throws IOException
+    {
+        mWriter.flush();
+    }
+
+
+    @Override
+    public synchronized void close() throws IOException
+    {
+        mWriter.close();
+    }
+}
@@ -0,0 +1,297 @@
+/*
+ * Copyright (C) 2020 Authlete, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.authlete.common.util;
+
+
+import java.util.Map;
+
+
+/**
+ * Extractor of the raw JSON text of top-level members of a JSON object.
+ *
+ * <p>
+ * This class scans JSON text without building any tree or binding any
+ * object. It is used to defer the deserialization of large sub-objects
+ * (e.g. {@code "service"} and {@code "client"} in the response from
+ * Authlete's {@code /auth/authorization} API) until they are really
+ * needed.
+ * </p>
+ *
+ * @since 2.76
+ */
+public final class JsonMemberExtractor
+{
+    private JsonMemberExtractor()
+    {
+    }
+
+
+    /**
+     * Extract the values of the specified top-level members.
+     *
+     * <p>
+     * For each key in {@code members} which is found at the top level of
+     * the JSON object, the raw JSON text of the value is put into {@code
+     * members}, and the value in the returned JSON is replaced with {@code
+     * null}. Keys which are not found are left as they are (their values
+     * in the map are not touched).
+     * </p>
+     *
+     * <pre style="border: solid 1px black; padding: 0.5em;">
+     * Map&lt;String, String&gt; members = new HashMap&lt;&gt;();
+     * members.put("client", null);
+     *
+     * // rest = {"action":"OK","client":null}
+     * // members.get("client") = {"clientId":1}
+     * String rest = JsonMemberExtractor.extract(
+     *     "{\"action\":\"OK\",\"client\":{\"clientId\":1}}", members);
+     * </pre>
+     *
+     * @param json
+     *         JSON text which represents a JSON object.
+     *
+     * @param members
+     *         A map whose keys are the names of the members to extract.
+     *
+     * @return
+     *         The JSON text with the values of the extracted members
+     *         replaced with {@code null}. If {@code json} is {@code null}
+     *         or does not represent a JSON object, {@code json} is
+     *         returned as is.
+     */
+    public static String extract(String json, Map<String, String> members)
+    {
+        if (json == null || members == null || members.size() == 0)
+        {
+            return json;
+        }
+
+        Scanner scanner = new Scanner(json);
+
+        try
+        {
+            return scanner.extract(members);
+        }
+        catch (IllegalStateException e)
+        {
+            // Malformed JSON. Let the JSON parser report the error.
+            return json;
+        }
+    }
+
+
+    private static class Scanner
+    {
+        private final String mJson;
+        private final int mLength;
+        private int mPos;
+
+
+        Scanner(String json)
+        {
+            mJson   = json;
+            mLength = json.length();
+        }
+
+
+        String extract(Map<String, String> members)
+        {
+            skipWhitespace();
+
+            if (peek() != '{')
+            {
+                return mJson;
+            }
+
+            ++mPos;
+
+            StringBuilder rest = null;
+            int copied = 0;
+
+            while (true)
+            {
+                skipWhitespace();
+
+                if (peek() == '}')
+                {
+                    break;
+                }
+
+                // Member name.
+                int keyStart = mPos;
+                skipString();
+                String key = mJson.substring(keyStart + 1, mPos - 1);
+
+                skipWhitespace();
+                expect(':');
+                skipWhitespace();
+
+                // Member value.
+                int valueStart = mPos;
+                skipValue();
+                int valueEnd = mPos;
+
+                if (members.containsKey(key))
+                {
+                    members.put(key, mJson.substring(valueStart, valueEnd));
+
+                    if (rest == null)
+                    {
+                        rest = new StringBuilder(mLength);
+                    }
+
+                    // Replace the value with null.
+                    rest.append(mJson, copied, valueStart).append("null");
+                    copied = valueEnd;
+                }
+
+                skipWhitespace();
+
+                if (peek() == ',')
+                {
+                    ++mPos;
+                }
+            }
+
+            if (rest == null)
+            {
+                return mJson;
+            }
+
+            return rest.append(mJson, copied, mLength).toString();
+        }
+
+
+        private char peek()
+        {
+            if (mLength <= mPos)
+            {
+                throw new IllegalStateException("Unexpected end of JSON.");
+            }
+
+            return mJson.charAt(mPos);
+        }
+
+
+        private void expect(char ch)
+        {
+            if (peek() != ch)
+            {
+                throw new IllegalStateException("'" + ch + "' is expected at " + mPos);
+            }
+
+            ++mPos;
+        }
+
+
+        private void skipWhitespace()
+        {
+            while (mPos < mLength)
+            {
+                char ch = mJson.charAt(mPos);
+
+                if (ch != ' ' && ch != '\t' && ch != '\n' && ch != '\r')
+                {
+                    return;
+                }
+
+                ++mPos;
+            }
+        }
+
+
+        private void skipString()
+        {
+            expect('"');
+
+            while (true)
+            {
+                char ch = peek();
+                ++mPos;
+
+                if (ch == '\\')
+                {
+                    // Skip the escaped character.
+                    peek();
+                    ++mPos;
+                }
+                else if (ch == '"')
+                {
+                    return;
+                }
+            }
+        }
+
+
+        private void skipValue()
+        {
+            char ch = peek();
+
+            if (ch == '"')
+            {
+                skipString();
+                return;
+            }
+
+            if (ch != '{' && ch != '[')
+            {
+                // A number, true, false or null.
+                while (mPos < mLength)
+                {
+                    ch = mJson.charAt(mPos);
+
+                    if (ch == ',' || ch == '}' || ch == ']' || ch == ' '
+                            || ch == '\t' || ch == '\n' || ch == '\r')
+                    {
+                        return;
+                    }
+
+                    ++mPos;
+                }
+
+                return;
+            }
+
+            // An object or an array.
+            int depth = 0;
+
+            while (true)
+            {
+                ch = peek();
+
+                if (ch == '"')
+                {
+                    skipString();
+                    continue;
+                }
+
+                ++mPos;
+
+                if (ch == '{' || ch == '[')
+                {
+                    ++depth;
+                }
+                else if (ch == '}' || ch == ']')
+                {
+                    if (--depth == 0)
+                    {
+                        return;
+                    }
+                }
+            }
+        }
+    }
+}
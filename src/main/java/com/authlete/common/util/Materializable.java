@@ -0,0 +1,38 @@
+/*
+ * Copyright (C) 2020 Authlete, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.authlete.common.util;
+
+
+/**
+ * Object some of whose properties are bound lazily.
+ *
+ * <p>
+ * Serializers which read fields directly (e.g. {@link Utils#toJson(Object)}
+ * and {@link BinaryCodec}) call {@link #materialize()} before reading the
+ * fields so that the lazily-bound properties are included.
+ * </p>
+ *
+ * @see com.authlete.common.dto.AuthorizationResponse#fromJson(String, boolean)
+ *
+ * @since 2.76
+ */
+public interface Materializable
+{
+    /**
+     * Bind all the properties which have not been bound yet.
+     */
+    void materialize();
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2020 Authlete, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.authlete.common.util;
+
+
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Rate limiter which spaces permits evenly.
+ *
+ * <p>
+ * {@link #acquire()} blocks until the next permit becomes available. The
+ * interval between two permits is {@code 1 / permitsPerSecond} seconds.
+ * Permits are not accumulated while the limiter is idle, so bursts never
+ * exceed the configured rate. This class is thread-safe.
+ * </p>
+ *
+ * @since 2.76
+ */
+public class RateLimiter
+{
+    private final long mIntervalNanos;
+    private long mNextFreeNanos;
+
+
+    /**
+     * Constructor.
+     *
+     * @param permitsPerSecond
+     *         The number of permits per second. Must be positive.
+     *
+     * @throws IllegalArgumentException
+     *         {@code permitsPerSecond} is not positive.
+     */
+    public RateLimiter(double permitsPerSecond)
+    {
+        if (!(0 < permitsPerSecond))
+        {
+            throw new IllegalArgumentException("permitsPerSecond must be positive.");
+        }
+
+        mIntervalNanos = (long)(TimeUnit.SECONDS.toNanos(1) / permitsPerSecond);
+        mNextFreeNanos = System.nanoTime();
+    }
+
+
+    /**
+     * Acquire a permit, blocking until it becomes available.
+     *
+     * @throws InterruptedException
+     *         The current thread was interrupted while waiting.
+     */
+    public void acquire() throws InterruptedException
+    {
+        long waitNanos = reserve();
+
+        if (0 < waitNanos)
+        {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+    }
+
+
+    private synchronized long reserve()
+    {
+        long now = System.nanoTime();
+
+        // Do not accumulate permits while idle.
+        if (mNextFreeNanos - now < 0)
+        {
+            mNextFreeNanos = now;
+        }
+
+        long waitNanos = mNextFreeNanos - now;
+        mNextFreeNanos += mIntervalNanos;
+
+        return waitNanos;
+    }
+}
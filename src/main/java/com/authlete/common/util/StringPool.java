@@ -0,0 +1,339 @@
+/*
+ * Copyright (C) 2020 Authlete, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.authlete.common.util;
+
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import com.authlete.common.dto.AccessToken;
+import com.authlete.common.dto.AuthorizedClientListResponse;
+import com.authlete.common.dto.Client;
+import com.authlete.common.dto.ClientListResponse;
+import com.authlete.common.dto.IntrospectionResponse;
+import com.authlete.common.dto.Scope;
+import com.authlete.common.dto.TokenListResponse;
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+
+
+/**
+ * Bounded pool of strings to deduplicate string values.
+ *
+ * <p>
+ * Responses from Authlete APIs which contain many objects, such as
+ * {@link com.authlete.common.dto.TokenListResponse TokenListResponse} and
+ * {@link com.authlete.common.dto.ClientListResponse ClientListResponse},
+ * repeat the same scope names, subjects, client ID aliases and redirect
+ * URIs many times. When a string pool is given to {@link
+ * Utils#fromJson(String, Class, FieldMask, StringPool)}, equal values of
+ * such fields are decoded into the same {@code String} instance, so
+ * retained objects share them.
+ * </p>
+ *
+ * <p>
+ * Only the following fields are pooled. Other string values, including
+ * tokens, secrets and keys, never enter the pool.
+ * </p>
+ *
+ * <ul>
+ * <li>{@link AccessToken}: {@code subject}, {@code scopes}
+ * <li>{@link Client}: {@code developer}, {@code clientIdAlias}, {@code
+ *     redirectUris}, {@code defaultAcrs}
+ * <li>{@link IntrospectionResponse}: {@code subject}, {@code scopes},
+ *     {@code clientIdAlias}
+ * <li>{@link Scope}: {@code name}
+ * <li>{@link TokenListResponse}, {@link AuthorizedClientListResponse}:
+ *     {@code subject}
+ * <li>{@link ClientListResponse}: {@code developer}
+ * </ul>
+ *
+ * <p>
+ * Strings longer than the maximum length are not pooled. The pool holds
+ * two generations of strings, each of which holds at most half of the
+ * capacity. When the young generation becomes full, the old generation
+ * is discarded and the young one becomes old. A string found in the old
+ * generation is moved back to the young one, so values in use stay in the
+ * pool while values no longer seen are evicted. This class is thread-safe
+ * and an instance can be shared.
+ * </p>
+ *
+ * @since 2.76
+ */
+public class StringPool
+{
+    /**
+     * The default capacity, 10,000.
+     */
+    public static final int DEFAULT_CAPACITY = 10000;
+
+
+    /**
+     * The default maximum length of pooled strings, 256.
+     */
+    public static final int DEFAULT_MAX_LENGTH = 256;
+
+
+    private static final Map<Class<?>, Field[]> POOLED_FIELDS = new HashMap<Class<?>, Field[]>();
+
+
+    static
+    {
+        addPooledFields(AccessToken.class, "subject", "scopes");
+        addPooledFields(AuthorizedClientListResponse.class, "subject");
+        addPooledFields(Client.class, "developer", "clientIdAlias", "redirectUris", "defaultAcrs");
+        addPooledFields(ClientListResponse.class, "developer");
+        addPooledFields(IntrospectionResponse.class, "subject", "scopes", "clientIdAlias");
+        addPooledFields(Scope.class, "name");
+        addPooledFields(TokenListResponse.class, "subject");
+    }
+
+
+    private static void addPooledFields(Class<?> klass, String... fieldNames)
+    {
+        Field[] fields = new Field[fieldNames.length];
+
+        for (int i = 0; i < fieldNames.length; i++)
+        {
+            try
+            {
+                fields[i] = klass.getDeclaredField(fieldNames[i]);
+                fields[i].setAccessible(true);
+            }
+            catch (NoSuchFieldException e)
+            {
+                // This never happens unless the DTO is changed.
+                throw new IllegalStateException(e);
+            }
+        }
+
+        POOLED_FIELDS.put(klass, fields);
+    }
+
+
+    private final int mCapacity;
+    private final int mGenerationSize;
+    private final int mMaxLength;
+    private volatile ConcurrentMap<String, String> mYoung;
+    private volatile ConcurrentMap<String, String> mOld;
+
+
+    /**
+     * The default constructor with the default capacity and the default
+     * maximum length.
+     */
+    public StringPool()
+    {
+        this(DEFAULT_CAPACITY, DEFAULT_MAX_LENGTH);
+    }
+
+
+    /**
+     * Constructor with the capacity and the maximum length.
+     *
+     * @param capacity
+     *         The maximum number of strings held by the pool.
+     *
+     * @param maxLength
+     *         The maximum length of strings to pool.
+     *
+     * @throws IllegalArgumentException
+     *         {@code capacity} or {@code maxLength} is negative.
+     */
+    public StringPool(int capacity, int maxLength)
+    {
+        if (capacity < 0)
+        {
+            throw new IllegalArgumentException("capacity must not be negative.");
+        }
+
+        if (maxLength < 0)
+        {
+            throw new IllegalArgumentException("maxLength must not be negative.");
+        }
+
+        mCapacity       = capacity;
+        mGenerationSize = Math.max(1, capacity / 2);
+        mMaxLength      = maxLength;
+        mYoung          = new ConcurrentHashMap<String, String>();
+        mOld            = new ConcurrentHashMap<String, String>();
+    }
+
+
+    /**
+     * Get the canonical instance of the given string.
+     *
+     * @param string
+     *         A string.
+     *
+     * @return
+     *         The pooled instance equal to the given string, or the given
+     *         string itself if it is not pooled. If {@code string} is
+     *         {@code null}, {@code null} is returned.
+     */
+    public String intern(String string)
+    {
+        if (string == null || mCapacity == 0 || mMaxLength < string.length())
+        {
+            return string;
+        }
+
+        ConcurrentMap<String, String> young = mYoung;
+        String pooled = young.get(string);
+
+        if (pooled != null)
+        {
+            return pooled;
+        }
+
+        // Move the string from the old generation if it is there.
+        pooled = mOld.get(string);
+
+        if (pooled == null)
+        {
+            pooled = string;
+        }
+
+        if (mGenerationSize <= young.size())
+        {
+            young = rotate(young);
+        }
+
+        String existing = young.putIfAbsent(pooled, pooled);
+
+        return (existing != null) ? existing : pooled;
+    }
+
+
+    private synchronized ConcurrentMap<String, String> rotate(ConcurrentMap<String, String> full)
+    {
+        if (mYoung == full)
+        {
+            // Discard the old generation.
+            mOld   = full;
+            mYoung = new ConcurrentHashMap<String, String>();
+        }
+
+        return mYoung;
+    }
+
+
+    /**
+     * Get the number of pooled strings.
+     *
+     * @return
+     *         The number of pooled strings. A string which is being moved
+     *         between the generations may be counted twice.
+     */
+    public int size()
+    {
+        return mYoung.size() + mOld.size();
+    }
+
+
+    /**
+     * Remove all the pooled strings.
+     */
+    public synchronized void clear()
+    {
+        mOld   = new ConcurrentHashMap<String, String>();
+        mYoung = new ConcurrentHashMap<String, String>();
+    }
+
+
+    /**
+     * Create a Gson type adapter factory which interns the values of the
+     * pooled fields of decoded objects with this pool.
+     */
+    TypeAdapterFactory createTypeAdapterFactory()
+    {
+        return new TypeAdapterFactory() {
+            @Override
+            public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> type)
+            {
+                final Field[] fields = POOLED_FIELDS.get(type.getRawType());
+
+                if (fields == null)
+                {
+                    // The class has no pooled field.
+                    return null;
+                }
+
+                // The adapter which binds the object (possibly masked).
+                final TypeAdapter<T> delegate = gson.getDelegateAdapter(this, type);
+
+                return new TypeAdapter<T>() {
+                    @Override
+                    public T read(JsonReader in) throws IOException
+                    {
+                        T object = delegate.read(in);
+
+                        if (object != null)
+                        {
+                            internFields(object, fields);
+                        }
+
+                        return object;
+                    }
+
+
+                    @Override
+                    public void write(JsonWriter out, T value) throws IOException
+                    {
+                        delegate.write(out, value);
+                    }
+                };
+            }
+        };
+    }
+
+
+    private void internFields(Object object, Field[] fields)
+    {
+        try
+        {
+            for (Field field : fields)
+            {
+                Object value = field.get(object);
+
+                if (value instanceof String)
+                {
+                    field.set(object, intern((String)value));
+                }
+                else if (value instanceof String[])
+                {
+                    String[] array = (String[])value;
+
+                    for (int i = 0; i < array.length; i++)
+                    {
+                        array[i] = intern(array[i]);
+                    }
+                }
+            }
+        }
+        catch (IllegalAccessException e)
+        {
+            // This never happens because the fields are accessible.
+        }
+    }
+}
@@ -40,8 +40,21 @@ import com.authlete.common.types.UserCodeCharset;
  *         .{@link #setRandom(Random) setRandom}(new SecureRandom())
  *         .{@link #generate()}
  *         ;
+ *
+ * // Many user codes at once
+ * String[] userCodes = new UserCodeGenerator().{@link #generate(int) generate}(1000);
  * </pre>
  *
+ * <p>
+ * When a {@code Random} instance is not set, user codes are generated in
+ * a high-throughput mode. A {@link SecureRandom} instance is kept per
+ * thread instead of being created for each user code, and random bytes
+ * are drawn in blocks and mapped to characters by rejection sampling, so
+ * that one random byte yields one character without bias. Instances of
+ * this class are thread-safe as long as the properties are not changed
+ * concurrently.
+ * </p>
+ *
  * @see <a href="https://datatracker.ietf.org/doc/draft-ietf-oauth-device-flow/?include_text=1"
  *      >OAuth 2.0 Device Authorization Grant</a>
  *
@@ -49,6 +62,25 @@ import com.authlete.common.types.UserCodeCharset;
  */
 public class UserCodeGenerator
 {
+    /**
+     * The number of random bytes drawn at once in the high-throughput mode.
+     */
+    private static final int RANDOM_BLOCK_SIZE = 64;
+
+
+    /**
+     * {@link SecureRandom} per thread. Seeding a new instance for each
+     * user code is costly.
+     */
+    private static final ThreadLocal<SecureRandom> sRandoms = new ThreadLocal<SecureRandom>() {
+        @Override
+        protected SecureRandom initialValue()
+        {
+            return new SecureRandom();
+        }
+    };
+
+
     private String mCharacters;
     private int mLength;
     private Random mRandom;
@@ -296,8 +328,8 @@ public class UserCodeGenerator
      * </p>
      *
      * <p>
-     * If a {@code Random} instance is not set, a new instance of
-     * {@link SecureRandom} is created and used.
+     * If a {@code Random} instance is not set, a {@link SecureRandom}
+     * instance kept per thread is used in the high-throughput mode.
      * </p>
      *
      * @return
@@ -305,6 +337,34 @@ public class UserCodeGenerator
      */
     public String generate()
     {
+        return generate(1)[0];
+    }
+
+
+    /**
+     * Generate user codes.
+     *
+     * <p>
+     * The rules of {@link #generate()} apply. The properties are read once
+     * for the whole batch, and in the high-throughput mode, random bytes
+     * are shared across the user codes.
+     * </p>
+     *
+     * @param count
+     *         The number of user codes to generate.
+     *
+     * @return
+     *         Newly-generated user codes. They may contain duplicates.
+     *
+     * @since 2.76
+     */
+    public String[] generate(int count)
+    {
+        if (count < 0)
+        {
+            throw new IllegalArgumentException("count must not be negative.");
+        }
+
         // Characters
         String characters = getCharacters();
         if (characters == null || characters.length() == 0)
@@ -319,14 +379,28 @@ public class UserCodeGenerator
             length = getDefaultLength(characters);
         }
 
+        String[] userCodes = new String[count];
+
         // Random number generator
         Random random = getRandom();
-        if (random == null)
+        if (random == null && characters.length() <= 256)
         {
-            random = getDefaultRandom();
+            generate(characters, length, getDefaultRandom(), userCodes);
+        }
+        else
+        {
+            if (random == null)
+            {
+                random = getDefaultRandom();
+            }
+
+            for (int i = 0; i < count; ++i)
+            {
+                userCodes[i] = generate(characters, length, random);
+            }
         }
 
-        return generate(characters, length, random);
+        return userCodes;
     }
 
 
@@ -346,6 +420,44 @@ public class UserCodeGenerator
     }
 
 
+    /**
+     * Generate user codes in the high-throughput mode. Each random byte
+     * below the largest multiple of the number of characters is mapped to
+     * a character, so every character appears with the same probability.
+     */
+    private static void generate(String characters, int length, Random random, String[] userCodes)
+    {
+        int n     = characters.length();
+        int limit = 256 - (256 % n);
+
+        byte[] bytes = new byte[RANDOM_BLOCK_SIZE];
+        int position = bytes.length;
+
+        char[] userCode = new char[length];
+
+        for (int i = 0; i < userCodes.length; ++i)
+        {
+            for (int j = 0; j < length; )
+            {
+                if (position == bytes.length)
+                {
+                    random.nextBytes(bytes);
+                    position = 0;
+                }
+
+                int value = bytes[position++] & 0xFF;
+
+                if (value < limit)
+                {
+                    userCode[j++] = characters.charAt(value % n);
+                }
+            }
+
+            userCodes[i] = new String(userCode);
+        }
+    }
+
+
     private String getDefaultCharacters()
     {
         return UserCodeCharset.BASE20.getCharacters();
@@ -394,6 +506,6 @@ public class UserCodeGenerator
 
     private Random getDefaultRandom()
     {
-        return new SecureRandom();
+        return sRandoms.get();
     }
 }
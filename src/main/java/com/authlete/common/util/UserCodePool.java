@@ -0,0 +1,571 @@
+/*
+ * Copyright (C) 2020 Authlete, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.authlete.common.util;
+
+
+import java.io.Closeable;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import com.authlete.common.types.UserCodeCharset;
+
+
+/**
+ * Pool of user codes which are unique among active ones.
+ *
+ * <p>
+ * User codes of Device Flow must not collide with those of other pending
+ * device authorizations. {@link #acquire(long)} hands out a user code
+ * which is not active and makes it active until the given lifetime
+ * passes or until it is {@link #release(String) released}. Expired user
+ * codes become available again without any cleanup task.
+ * </p>
+ *
+ * <p>
+ * Candidates are generated by {@link UserCodeGenerator} in the background
+ * and queued, so that acquiring a user code usually takes a queued
+ * candidate and a uniqueness check only. Active user codes are held as
+ * {@code long} values (a user code of <i>L</i> characters out of <i>N</i>
+ * is a number below <i>N<sup>L</sup></i>) in open-addressing hash tables
+ * split into segments, instead of as strings in a concurrent set.
+ * </p>
+ *
+ * <pre style="border: solid 1px black; padding: 0.5em;">
+ * UserCodePool pool = new UserCodePool(UserCodeCharset.BASE20, 8);
+ *
+ * // For each device authorization request.
+ * String userCode = pool.{@link #acquire(long) acquire}(expiresIn * 1000L);
+ *
+ * // When the device flow completes.
+ * pool.{@link #release(String) release}(userCode);
+ * </pre>
+ *
+ * <p>
+ * The pool only knows the user codes it has handed out. Share one pool
+ * among the threads (and not among servers) which issue user codes.
+ * </p>
+ *
+ * @since 2.76
+ */
+public class UserCodePool implements Closeable
+{
+    /**
+     * The default number of queued candidates, 1024.
+     */
+    public static final int DEFAULT_QUEUE_SIZE = 1024;
+
+
+    /**
+     * The maximum number of candidates examined by one {@link
+     * #acquire(long)} call before giving up.
+     */
+    private static final int MAX_ATTEMPTS = 1000;
+
+
+    private static final int SEGMENT_COUNT = 16;
+
+
+    private final String mCharacters;
+    private final int mLength;
+    private final UserCodeGenerator mGenerator;
+    private final BlockingQueue<String> mCandidates;
+    private final Segment[] mSegments;
+    private final AtomicBoolean mRefilling = new AtomicBoolean();
+    private final ExecutorService mExecutor;
+
+
+    /**
+     * Constructor.
+     *
+     * @param charset
+     *         The character set of user codes.
+     *
+     * @param length
+     *         The length of user codes.
+     */
+    public UserCodePool(UserCodeCharset charset, int length)
+    {
+        this(charset != null ? charset.getCharacters() : null, length, DEFAULT_QUEUE_SIZE);
+    }
+
+
+    /**
+     * Constructor.
+     *
+     * @param characters
+     *         The characters which may appear in user codes. They must be
+     *         distinct.
+     *
+     * @param length
+     *         The length of user codes.
+     *
+     * @param queueSize
+     *         The number of candidates generated in advance.
+     *
+     * @throws IllegalArgumentException
+     *         The arguments are invalid, or the number of possible user
+     *         codes does not fit in a {@code long}.
+     */
+    public UserCodePool(String characters, int length, int queueSize)
+    {
+        if (characters == null || characters.length() < 2)
+        {
+            throw new IllegalArgumentException("characters must have two or more characters.");
+        }
+
+        if (length <= 0)
+        {
+            throw new IllegalArgumentException("length must be positive.");
+        }
+
+        if (queueSize <= 0)
+        {
+            throw new IllegalArgumentException("queueSize must be positive.");
+        }
+
+        if (Math.log(characters.length()) * length >= Math.log(Long.MAX_VALUE))
+        {
+            throw new IllegalArgumentException("Too many possible user codes.");
+        }
+
+        mCharacters = characters;
+        mLength     = length;
+        mGenerator  = new UserCodeGenerator(characters, length);
+        mCandidates = new ArrayBlockingQueue<String>(queueSize);
+        mSegments   = new Segment[SEGMENT_COUNT];
+
+        for (int i = 0; i < SEGMENT_COUNT; ++i)
+        {
+            mSegments[i] = new Segment();
+        }
+
+        mExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable)
+            {
+                Thread thread = new Thread(runnable, "authlete-user-code-pool");
+                thread.setDaemon(true);
+
+                return thread;
+            }
+        });
+
+        refillInBackground();
+    }
+
+
+    /**
+     * Acquire a user code which is not active and make it active.
+     *
+     * @param lifetime
+     *         The lifetime of the user code in milliseconds, typically
+     *         the lifetime of the device code.
+     *
+     * @return
+     *         A user code which is unique among the active ones.
+     *
+     * @throws IllegalStateException
+     *         A unique user code was not found. Most of the possible user
+     *         codes are active.
+     */
+    public String acquire(long lifetime)
+    {
+        if (lifetime <= 0)
+        {
+            throw new IllegalArgumentException("lifetime must be positive.");
+        }
+
+        long now = System.currentTimeMillis();
+        long expiresAt = now + lifetime;
+
+        for (int i = 0; i < MAX_ATTEMPTS; ++i)
+        {
+            String candidate = nextCandidate();
+            long code = pack(candidate);
+
+            if (segmentFor(code).add(code, expiresAt, now))
+            {
+                return candidate;
+            }
+        }
+
+        throw new IllegalStateException("Failed to find a unique user code.");
+    }
+
+
+    /**
+     * Release a user code so that it can be handed out again.
+     *
+     * @param userCode
+     *         A user code returned by {@link #acquire(long)}.
+     *
+     * @return
+     *         {@code true} if the user code was active.
+     */
+    public boolean release(String userCode)
+    {
+        long code = pack(userCode);
+
+        return code >= 0 && segmentFor(code).remove(code, System.currentTimeMillis());
+    }
+
+
+    /**
+     * Check whether a user code is active.
+     *
+     * @param userCode
+     *         A user code.
+     *
+     * @return
+     *         {@code true} if the user code has been handed out and has
+     *         neither expired nor been released.
+     */
+    public boolean isActive(String userCode)
+    {
+        long code = pack(userCode);
+
+        return code >= 0 && segmentFor(code).contains(code, System.currentTimeMillis());
+    }
+
+
+    /**
+     * Get the number of active user codes.
+     *
+     * @return
+     *         The number of active user codes.
+     */
+    public int getActiveCount()
+    {
+        long now = System.currentTimeMillis();
+        int count = 0;
+
+        for (Segment segment : mSegments)
+        {
+            count += segment.count(now);
+        }
+
+        return count;
+    }
+
+
+    /**
+     * Stop the background generation. {@link #acquire(long)} keeps working
+     * and generates candidates by itself.
+     */
+    @Override
+    public void close()
+    {
+        mExecutor.shutdownNow();
+    }
+
+
+    private String nextCandidate()
+    {
+        if (mCandidates.size() < mCandidates.remainingCapacity())
+        {
+            // Less than half full.
+            refillInBackground();
+        }
+
+        String candidate = mCandidates.poll();
+
+        if (candidate != null)
+        {
+            return candidate;
+        }
+
+        // The background generation cannot keep up.
+        return mGenerator.generate();
+    }
+
+
+    private void refillInBackground()
+    {
+        if (mRefilling.compareAndSet(false, true) == false)
+        {
+            return;
+        }
+
+        try
+        {
+            mExecutor.execute(new Runnable() {
+                @Override
+                public void run()
+                {
+                    try
+                    {
+                        for (String candidate : mGenerator.generate(mCandidates.remainingCapacity()))
+                        {
+                            if (mCandidates.offer(candidate) == false)
+                            {
+                                break;
+                            }
+                        }
+                    }
+                    finally
+                    {
+                        mRefilling.set(false);
+                    }
+                }
+            });
+        }
+        catch (RejectedExecutionException e)
+        {
+            // Closed.
+            mRefilling.set(false);
+        }
+    }
+
+
+    /**
+     * Convert a user code into a number. -1 is returned if the user code
+     * cannot be one of the pool.
+     */
+    private long pack(String userCode)
+    {
+        if (userCode == null || userCode.length() != mLength)
+        {
+            return -1;
+        }
+
+        int n = mCharacters.length();
+        long code = 0;
+
+        for (int i = 0; i < mLength; ++i)
+        {
+            int index = mCharacters.indexOf(userCode.charAt(i));
+
+            if (index < 0)
+            {
+                return -1;
+            }
+
+            code = code * n + index;
+        }
+
+        return code;
+    }
+
+
+    private Segment segmentFor(long code)
+    {
+        return mSegments[(int)(mix(code) >>> 60)];
+    }
+
+
+    private static long mix(long value)
+    {
+        // The finalizer of MurmurHash3.
+        value ^= value >>> 33;
+        value *= 0xff51afd7ed558ccdL;
+        value ^= value >>> 33;
+        value *= 0xc4ceb9fe1a85ec53L;
+        value ^= value >>> 33;
+
+        return value;
+    }
+
+
+    /**
+     * Open-addressing hash table of codes and their expiry times.
+     *
+     * <p>
+     * Slots are never emptied once used. An expired or released entry
+     * (whose expiry is in the past) stays in its slot and the slot is
+     * reused by a later insertion, so the probe sequences stay intact and
+     * expiry needs no cleanup. The table is rebuilt with the live entries
+     * only when the used slots exceed the load factor.
+     * </p>
+     */
+    private static class Segment
+    {
+        private static final long EMPTY = -1;
+
+
+        private long[] mCodes = newCodes(64);
+        private long[] mExpiries = new long[64];
+        private int mUsed;
+
+
+        private static long[] newCodes(int capacity)
+        {
+            long[] codes = new long[capacity];
+
+            Arrays.fill(codes, EMPTY);
+
+            return codes;
+        }
+
+
+        synchronized boolean add(long code, long expiresAt, long now)
+        {
+            int mask = mCodes.length - 1;
+            int reusable = -1;
+
+            for (int i = (int)mix(code) & mask; ; i = (i + 1) & mask)
+            {
+                long existing = mCodes[i];
+
+                if (existing == code)
+                {
+                    if (now < mExpiries[i])
+                    {
+                        // Active.
+                        return false;
+                    }
+
+                    mExpiries[i] = expiresAt;
+
+                    return true;
+                }
+
+                if (existing == EMPTY)
+                {
+                    if (reusable < 0)
+                    {
+                        reusable = i;
+                        ++mUsed;
+                    }
+
+                    break;
+                }
+
+                if (reusable < 0 && mExpiries[i] <= now)
+                {
+                    // The slot of an inactive code. The code is still
+                    // searched for in the rest of the probe sequence.
+                    reusable = i;
+                }
+            }
+
+            mCodes[reusable]    = code;
+            mExpiries[reusable] = expiresAt;
+
+            if (mUsed * 4 > mCodes.length * 3)
+            {
+                rebuild(now);
+            }
+
+            return true;
+        }
+
+
+        synchronized boolean remove(long code, long now)
+        {
+            int i = find(code);
+
+            if (i < 0 || mExpiries[i] <= now)
+            {
+                return false;
+            }
+
+            // Inactive from now on.
+            mExpiries[i] = 0;
+
+            return true;
+        }
+
+
+        synchronized boolean contains(long code, long now)
+        {
+            int i = find(code);
+
+            return 0 <= i && now < mExpiries[i];
+        }
+
+
+        synchronized int count(long now)
+        {
+            int count = 0;
+
+            for (int i = 0; i < mCodes.length; ++i)
+            {
+                if (mCodes[i] != EMPTY && now < mExpiries[i])
+                {
+                    ++count;
+                }
+            }
+
+            return count;
+        }
+
+
+        private int find(long code)
+        {
+            int mask = mCodes.length - 1;
+
+            for (int i = (int)mix(code) & mask; ; i = (i + 1) & mask)
+            {
+                if (mCodes[i] == code)
+                {
+                    return i;
+                }
+
+                if (mCodes[i] == EMPTY)
+                {
+                    return -1;
+                }
+            }
+        }
+
+
+        private void rebuild(long now)
+        {
+            int live = count(now);
+
+            // Keep the live entries at most a quarter of the capacity.
+            int capacity = mCodes.length;
+
+            while (capacity < live * 4)
+            {
+                capacity *= 2;
+            }
+
+            long[] codes    = mCodes;
+            long[] expiries = mExpiries;
+
+            mCodes    = newCodes(capacity);
+            mExpiries = new long[capacity];
+            mUsed     = 0;
+
+            int mask = capacity - 1;
+
+            for (int i = 0; i < codes.length; ++i)
+            {
+                if (codes[i] == EMPTY || expiries[i] <= now)
+                {
+                    continue;
+                }
+
+                int j = (int)mix(codes[i]) & mask;
+
+                while (mCodes[j] != EMPTY)
+                {
+                    j = (j + 1) & mask;
+                }
+
+                mCodes[j]    = codes[i];
+                mExpiries[j] = expiries[i];
+                ++mUsed;
+            }
+        }
+    }
+}
@@ -16,6 +16,8 @@
 package com.authlete.common.util;
 
 
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import com.authlete.common.dto.Property;
 import com.authlete.common.dto.Scope;
 import com.authlete.common.types.Prompt;
@@ -27,6 +29,8 @@ public class Utils
 {
     private static final Gson GSON = new Gson();
     private static final Gson PRETTY_GSON = new GsonBuilder().setPrettyPrinting().create();
+    private static final int MAX_CUSTOM_GSON_CACHE_SIZE = 32;
+    private static final ConcurrentMap<GsonKey, Gson> sCustomGsonCache = new ConcurrentHashMap<GsonKey, Gson>();
 
 
     private Utils()
@@ -34,6 +38,21 @@ public class Utils
     }
 
 
+    /**
+     * Parse lazily-bound sub-objects of the given object, if any, so that
+     * serializers which read fields directly can see them.
+     *
+     * @see Materializable
+     */
+    static void materialize(Object object)
+    {
+        if (object instanceof Materializable)
+        {
+            ((Materializable)object).materialize();
+        }
+    }
+
+
 
     /**
      * Concatenate string with the specified delimiter.
@@ -128,6 +147,8 @@ public class Utils
             return null;
         }
 
+        materialize(object);
+
         if (pretty)
         {
             return PRETTY_GSON.toJson(object);
@@ -160,6 +181,146 @@ public class Utils
     }
 
 
+    /**
+     * Convert the given JSON string into an object using
+     * <a href="https://github.com/google/gson">Gson</a>, binding only
+     * the fields included in the field mask.
+     *
+     * @param json
+     *         The input JSON.
+     *
+     * @param klass
+     *         The class of the resultant object.
+     *
+     * @param mask
+     *         A field mask. If {@code null} is given, this method behaves
+     *         in the same way as {@link #fromJson(String, Class)}.
+     *
+     * @return
+     *         A new object generated based on the input JSON.
+     *
+     * @since 2.76
+     */
+    public static <T> T fromJson(String json, Class<T> klass, FieldMask mask)
+    {
+        return fromJson(json, klass, mask, null);
+    }
+
+
+    /**
+     * Convert the given JSON string into an object using
+     * <a href="https://github.com/google/gson">Gson</a>, binding only
+     * the fields included in the field mask and deduplicating string
+     * values with the string pool.
+     *
+     * @param json
+     *         The input JSON.
+     *
+     * @param klass
+     *         The class of the resultant object.
+     *
+     * @param mask
+     *         A field mask. {@code null} to bind all fields.
+     *
+     * @param pool
+     *         A string pool. {@code null} not to deduplicate strings.
+     *
+     * @return
+     *         A new object generated based on the input JSON.
+     *
+     * @since 2.76
+     */
+    public static <T> T fromJson(String json, Class<T> klass, FieldMask mask, StringPool pool)
+    {
+        if (mask == null && pool == null)
+        {
+            return fromJson(json, klass);
+        }
+
+        return getCustomGson(mask, pool).fromJson(json, klass);
+    }
+
+
+    private static Gson getCustomGson(FieldMask mask, StringPool pool)
+    {
+        GsonKey key = new GsonKey(mask, pool);
+        Gson gson   = sCustomGsonCache.get(key);
+
+        if (gson != null)
+        {
+            return gson;
+        }
+
+        GsonBuilder builder = new GsonBuilder();
+
+        if (mask != null)
+        {
+            builder.registerTypeAdapterFactory(mask.createFactory());
+        }
+
+        // Registered after the mask so that it takes precedence and its
+        // adapters delegate the binding to the mask's ones.
+        if (pool != null)
+        {
+            builder.registerTypeAdapterFactory(pool.createTypeAdapterFactory());
+        }
+
+        gson = builder.create();
+
+        if (MAX_CUSTOM_GSON_CACHE_SIZE <= sCustomGsonCache.size())
+        {
+            // Entries for modified masks and discarded pools remain in
+            // the cache. Start over instead of tracking them.
+            sCustomGsonCache.clear();
+        }
+
+        sCustomGsonCache.put(key, gson);
+
+        return gson;
+    }
+
+
+    /**
+     * Key of the cache of Gson instances. Field masks and string pools
+     * are compared by identity.
+     */
+    private static final class GsonKey
+    {
+        private final FieldMask mMask;
+        private final StringPool mPool;
+        private final int mVersion;
+
+
+        GsonKey(FieldMask mask, StringPool pool)
+        {
+            mMask    = mask;
+            mPool    = pool;
+            mVersion = (mask != null) ? mask.getVersion() : 0;
+        }
+
+
+        @Override
+        public boolean equals(Object object)
+        {
+            if (!(object instanceof GsonKey))
+            {
+                return false;
+            }
+
+            GsonKey other = (GsonKey)object;
+
+            return mMask == other.mMask && mPool == other.mPool && mVersion == other.mVersion;
+        }
+
+
+        @Override
+        public int hashCode()
+        {
+            return 31 * (31 * System.identityHashCode(mMask) + System.identityHashCode(mPool)) + mVersion;
+        }
+    }
+
+
     /**
      * Stringify an array of {@link Property}.
      *
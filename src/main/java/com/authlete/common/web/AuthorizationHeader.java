@@ -0,0 +1,318 @@
+/*
+ * Copyright (C) 2020 Authlete, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.authlete.common.web;
+
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+
+/**
+ * Precomputed value of {@code Authorization} HTTP header.
+ *
+ * <p>
+ * Instances are immutable. The value is built and encoded only once at
+ * construction, so an instance can be shared by threads and written to
+ * requests repeatedly without allocation by {@link #writeTo(OutputStream)},
+ * {@link #writeTo(ByteBuffer)} or {@link #writeFieldTo(OutputStream)}.
+ * </p>
+ *
+ * <pre style="border: solid 1px black; padding: 0.5em;">
+ * // Created once.
+ * AuthorizationHeader header = new BasicCredentials(apiKey, apiSecret).{@link
+ * BasicCredentials#toAuthorizationHeader() toAuthorizationHeader()};
+ *
+ * // For each request.
+ * header.{@link #writeFieldTo(OutputStream) writeFieldTo}(out);
+ * </pre>
+ *
+ * @see BasicCredentials#toAuthorizationHeader()
+ *
+ * @since 2.76
+ */
+public final class AuthorizationHeader
+{
+    private static final byte[] FIELD_NAME = "Authorization: ".getBytes(StandardCharsets.ISO_8859_1);
+    private static final byte[] CRLF = { '\r', '\n' };
+
+
+    /**
+     * The value, e.g. "Basic {base64}".
+     */
+    private final String mValue;
+
+
+    /**
+     * The authentication scheme, e.g. "Basic".
+     */
+    private final String mScheme;
+
+
+    /**
+     * The part after the scheme, e.g. an access token.
+     */
+    private final String mCredentials;
+
+
+    /**
+     * "Authorization: {value}\r\n" in ISO-8859-1. The value is the range
+     * from FIELD_NAME.length to the length minus CRLF.length.
+     */
+    private final byte[] mField;
+
+
+    private AuthorizationHeader(String scheme, String credentials)
+    {
+        String value = scheme + " " + credentials;
+        byte[] bytes = value.getBytes(StandardCharsets.ISO_8859_1);
+
+        mValue       = value;
+        mScheme      = scheme;
+        mCredentials = credentials;
+        mField = new byte[FIELD_NAME.length + bytes.length + CRLF.length];
+
+        System.arraycopy(FIELD_NAME, 0, mField, 0, FIELD_NAME.length);
+        System.arraycopy(bytes, 0, mField, FIELD_NAME.length, bytes.length);
+        System.arraycopy(CRLF, 0, mField, FIELD_NAME.length + bytes.length, CRLF.length);
+    }
+
+
+    /**
+     * Create a header for Basic authentication.
+     *
+     * @param credentials
+     *         The credentials.
+     *
+     * @return
+     *         A header whose value is {@link BasicCredentials#format()}.
+     */
+    public static AuthorizationHeader basic(BasicCredentials credentials)
+    {
+        if (credentials == null)
+        {
+            throw new IllegalArgumentException("credentials is null.");
+        }
+
+        String formatted = credentials.format();
+
+        // "Basic {base64}"
+        return new AuthorizationHeader("Basic", formatted.substring(formatted.indexOf(' ') + 1));
+    }
+
+
+    /**
+     * Create a header for a bearer access token
+     * (<a href="https://tools.ietf.org/html/rfc6750#section-2.1">RFC 6750,
+     * 2.1</a>).
+     *
+     * @param accessToken
+     *         An access token.
+     *
+     * @return
+     *         A header whose value is {@code "Bearer {accessToken}"}.
+     */
+    public static AuthorizationHeader bearer(String accessToken)
+    {
+        return token("Bearer", accessToken);
+    }
+
+
+    /**
+     * Create a header for a DPoP-bound access token
+     * (<a href="https://datatracker.ietf.org/doc/draft-ietf-oauth-dpop/"
+     * >OAuth 2.0 DPoP</a>, 7.1). A request with the header must be
+     * accompanied by a {@code DPoP} header carrying a proof.
+     *
+     * @param accessToken
+     *         An access token.
+     *
+     * @return
+     *         A header whose value is {@code "DPoP {accessToken}"}.
+     */
+    public static AuthorizationHeader dpop(String accessToken)
+    {
+        return token("DPoP", accessToken);
+    }
+
+
+    private static AuthorizationHeader token(String scheme, String accessToken)
+    {
+        if (accessToken == null || accessToken.length() == 0)
+        {
+            throw new IllegalArgumentException("accessToken is null or empty.");
+        }
+
+        for (int i = 0; i < accessToken.length(); ++i)
+        {
+            char c = accessToken.charAt(i);
+
+            // Characters which would break the header.
+            if (c <= ' ' || 0x7F <= c)
+            {
+                throw new IllegalArgumentException("accessToken contains an illegal character.");
+            }
+        }
+
+        return new AuthorizationHeader(scheme, accessToken);
+    }
+
+
+    /**
+     * Get the value of the header.
+     *
+     * @return
+     *         The value, e.g. {@code "Basic {base64}"}. The same instance
+     *         is returned every time.
+     */
+    public String getValue()
+    {
+        return mValue;
+    }
+
+
+    /**
+     * Get the authentication scheme.
+     *
+     * @return
+     *         {@code "Basic"}, {@code "Bearer"} or {@code "DPoP"}.
+     */
+    public String getScheme()
+    {
+        return mScheme;
+    }
+
+
+    /**
+     * Get the part of the value after the scheme.
+     *
+     * @return
+     *         The Base64-encoded credentials for Basic authentication,
+     *         or the access token.
+     */
+    public String getCredentials()
+    {
+        return mCredentials;
+    }
+
+
+    /**
+     * Get the length of the value in bytes.
+     *
+     * @return
+     *         The length of the value.
+     */
+    public int length()
+    {
+        return mField.length - FIELD_NAME.length - CRLF.length;
+    }
+
+
+    /**
+     * Get a copy of the value in ISO-8859-1.
+     *
+     * @return
+     *         A new byte array. Use {@link #writeTo(OutputStream)} or
+     *         {@link #writeTo(ByteBuffer)} to avoid allocation.
+     */
+    public byte[] toByteArray()
+    {
+        return Arrays.copyOfRange(mField, FIELD_NAME.length, FIELD_NAME.length + length());
+    }
+
+
+    /**
+     * Write the value.
+     *
+     * @param out
+     *         The output stream.
+     *
+     * @throws IOException
+     *         Failed to write.
+     */
+    public void writeTo(OutputStream out) throws IOException
+    {
+        out.write(mField, FIELD_NAME.length, length());
+    }
+
+
+    /**
+     * Put the value into a buffer.
+     *
+     * @param buffer
+     *         The buffer, which must have at least {@link #length()}
+     *         bytes remaining.
+     *
+     * @throws java.nio.BufferOverflowException
+     *         The buffer does not have enough space.
+     */
+    public void writeTo(ByteBuffer buffer)
+    {
+        buffer.put(mField, FIELD_NAME.length, length());
+    }
+
+
+    /**
+     * Write the whole header field, {@code "Authorization: {value}\r\n"},
+     * for a transport which writes HTTP/1.1 requests by itself.
+     *
+     * @param out
+     *         The output stream.
+     *
+     * @throws IOException
+     *         Failed to write.
+     */
+    public void writeFieldTo(OutputStream out) throws IOException
+    {
+        out.write(mField);
+    }
+
+
+    @Override
+    public boolean equals(Object obj)
+    {
+        if (obj == this)
+        {
+            return true;
+        }
+
+        if ((obj instanceof AuthorizationHeader) == false)
+        {
+            return false;
+        }
+
+        return mValue.equals(((AuthorizationHeader)obj).mValue);
+    }
+
+
+    @Override
+    public int hashCode()
+    {
+        return mValue.hashCode();
+    }
+
+
+    /**
+     * Returns the scheme only, so that credentials are not leaked to logs.
+     */
+    @Override
+    public String toString()
+    {
+        return "Authorization: " + mScheme + " ***";
+    }
+}
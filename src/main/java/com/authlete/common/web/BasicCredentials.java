@@ -57,6 +57,12 @@ public class BasicCredentials
     private transient String mFormatted;
 
 
+    /**
+     * {@code Authorization} header built from mFormatted.
+     */
+    private transient AuthorizationHeader mHeader;
+
+
     /**
      * Constructor with credentials.
      *
@@ -198,6 +204,35 @@ public class BasicCredentials
     }
 
 
+    /**
+     * Get the precomputed {@code Authorization} header of the credentials.
+     *
+     * <p>
+     * The header is built on the first call and the same instance is
+     * returned thereafter, so it can be written to requests without
+     * formatting or allocation.
+     * </p>
+     *
+     * @return
+     *         {@code Authorization} header for Basic authentication.
+     *
+     * @since 2.76
+     */
+    public AuthorizationHeader toAuthorizationHeader()
+    {
+        AuthorizationHeader header = mHeader;
+
+        if (header == null)
+        {
+            // Instances are immutable, so a race only builds a duplicate.
+            header  = AuthorizationHeader.basic(this);
+            mHeader = header;
+        }
+
+        return header;
+    }
+
+
     private static byte[] getBytes(String string)
     {
         try
@@ -16,9 +16,13 @@
 package com.authlete.common.web;
 
 
+import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.net.URLDecoder;
-import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -26,10 +30,21 @@ import java.util.Map;
 /**
  * URL encoder/decoder.
  *
+ * <p>
+ * Encoding follows {@link java.net.URLEncoder} with UTF-8 (unreserved
+ * characters are {@code a-z}, {@code A-Z}, {@code 0-9}, {@code .},
+ * {@code -}, {@code *} and {@code _}, and a space becomes {@code +}) but
+ * is done in one pass without intermediate byte arrays, and can write
+ * directly into an {@link Appendable} or a {@link ByteBuffer}.
+ * </p>
+ *
  * @author Takahiko Kawasaki
  */
 public class URLCoder
 {
+    private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+
+
     /**
      * URL-encode the input with UTF-8.
      *
@@ -37,19 +52,31 @@ public class URLCoder
      *         A string to be encoded.
      *
      * @return
-     *         Encoded string.
+     *         Encoded string. The input itself if it does not contain
+     *         characters to encode.
      */
     public static String encode(String input)
     {
-        try
+        int length = input.length();
+        int i = 0;
+
+        // Skip the leading characters which are not changed.
+        while (i < length && isUnreserved(input.charAt(i)))
         {
-            return URLEncoder.encode(input, "UTF-8");
+            ++i;
         }
-        catch (UnsupportedEncodingException e)
+
+        if (i == length)
         {
-            // This never happens.
             return input;
         }
+
+        StringBuilder sb = new StringBuilder(length + 16);
+        sb.append(input, 0, i);
+
+        appendEncoded(sb, input, i);
+
+        return sb.toString();
     }
 
 
@@ -98,60 +125,473 @@ public class URLCoder
 
         StringBuilder sb = new StringBuilder();
 
+        encodeParametersQuietly(parameters, new StringBuilderSink(sb));
+
+        return sb.toString();
+    }
+
+
+    /**
+     * Write the given map in {@code x-www-form-urlencoded} format.
+     *
+     * @param parameters
+     *         Pairs of key and values. The type of values must be either
+     *         {@code String[]} or {@code List<String>}. Nothing is written
+     *         if {@code null} is given.
+     *
+     * @param out
+     *         The destination.
+     *
+     * @throws IOException
+     *         The destination threw it.
+     *
+     * @since 2.76
+     */
+    public static void formUrlEncode(Map<String, ?> parameters, final Appendable out) throws IOException
+    {
+        if (out == null)
+        {
+            throw new IllegalArgumentException("out is null.");
+        }
+
+        if (parameters == null)
+        {
+            return;
+        }
+
+        if (out instanceof StringBuilder)
+        {
+            encodeParameters(parameters, new StringBuilderSink((StringBuilder)out));
+            return;
+        }
+
+        encodeParameters(parameters, new Sink() {
+            @Override
+            public void append(char c) throws IOException
+            {
+                out.append(c);
+            }
+
+            @Override
+            public void append(String s, int start, int end) throws IOException
+            {
+                out.append(s, start, end);
+            }
+        });
+    }
+
+
+    /**
+     * Write the given map in {@code x-www-form-urlencoded} format into a
+     * byte buffer. The output consists of ASCII characters only.
+     *
+     * @param parameters
+     *         Pairs of key and values. The type of values must be either
+     *         {@code String[]} or {@code List<String>}. Nothing is written
+     *         if {@code null} is given.
+     *
+     * @param buffer
+     *         The destination.
+     *
+     * @throws java.nio.BufferOverflowException
+     *         The buffer does not have enough space.
+     *
+     * @since 2.76
+     */
+    public static void formUrlEncode(Map<String, ?> parameters, final ByteBuffer buffer)
+    {
+        if (buffer == null)
+        {
+            throw new IllegalArgumentException("buffer is null.");
+        }
+
+        if (parameters == null)
+        {
+            return;
+        }
+
+        encodeParametersQuietly(parameters, new Sink() {
+            @Override
+            public void append(char c)
+            {
+                buffer.put((byte)c);
+            }
+
+            @Override
+            public void append(String s, int start, int end)
+            {
+                for (int i = start; i < end; ++i)
+                {
+                    buffer.put((byte)s.charAt(i));
+                }
+            }
+        });
+    }
+
+
+    /**
+     * Parse a string in {@code x-www-form-urlencoded} format in one pass.
+     *
+     * <p>
+     * Keys and values are decoded with UTF-8. A key without {@code =} has
+     * an empty value. Empty pairs are skipped, and malformed escape
+     * sequences are kept as they are instead of making the whole input
+     * invalid.
+     * </p>
+     *
+     * @param input
+     *         A string in {@code x-www-form-urlencoded} format.
+     *
+     * @return
+     *         Pairs of key and values in the order of appearance. An empty
+     *         map is returned if {@code input} is {@code null}.
+     *
+     * @since 2.76
+     */
+    public static Map<String, List<String>> formUrlDecode(String input)
+    {
+        Map<String, List<String>> parameters = new LinkedHashMap<String, List<String>>();
+
+        if (input == null)
+        {
+            return parameters;
+        }
+
+        int length = input.length();
+
+        // Buffer for decoded bytes, shared by all the keys and values.
+        byte[] bytes = null;
+
+        for (int start = 0; start < length; )
+        {
+            int end = input.indexOf('&', start);
+
+            if (end < 0)
+            {
+                end = length;
+            }
+
+            if (start < end)
+            {
+                int equal = input.indexOf('=', start);
+
+                if (equal < 0 || end < equal)
+                {
+                    equal = end;
+                }
+
+                if (bytes == null)
+                {
+                    bytes = new byte[length];
+                }
+
+                String key   = decode(input, start, equal, bytes);
+                String value = (equal < end) ? decode(input, equal + 1, end, bytes) : "";
+
+                List<String> values = parameters.get(key);
+
+                if (values == null)
+                {
+                    values = new ArrayList<String>(1);
+                    parameters.put(key, values);
+                }
+
+                values.add(value);
+            }
+
+            start = end + 1;
+        }
+
+        return parameters;
+    }
+
+
+    /**
+     * Destination of encoded characters.
+     */
+    private interface Sink
+    {
+        void append(char c) throws IOException;
+        void append(String s, int start, int end) throws IOException;
+    }
+
+
+    private static class StringBuilderSink implements Sink
+    {
+        private final StringBuilder mBuilder;
+
+
+        StringBuilderSink(StringBuilder builder)
+        {
+            mBuilder = builder;
+        }
+
+
+        @Override
+        public void append(char c)
+        {
+            mBuilder.append(c);
+        }
+
+
+        @Override
+        public void append(String s, int start, int end)
+        {
+            mBuilder.append(s, start, end);
+        }
+    }
+
+
+    /**
+     * Encode parameters into a sink which never throws {@code IOException}.
+     */
+    private static void encodeParametersQuietly(Map<String, ?> parameters, Sink sink)
+    {
+        try
+        {
+            encodeParameters(parameters, sink);
+        }
+        catch (IOException e)
+        {
+            // This never happens.
+        }
+    }
+
+
+    private static void encodeParameters(Map<String, ?> parameters, Sink sink) throws IOException
+    {
+        boolean first = true;
+
         // For each key-values pair.
         for (Map.Entry<String, ?> entry : parameters.entrySet())
         {
             String key    = entry.getKey();
             Object values = entry.getValue();
 
+            // If the key is invalid.
+            if (key == null || key.length() == 0)
+            {
+                continue;
+            }
+
             if (values instanceof List)
             {
                 List<?> list = (List<?>)values;
-                values = list.toArray(new String[list.size()]);
+
+                if (list.size() == 0)
+                {
+                    first = appendParameter(sink, first, key, null);
+                    continue;
+                }
+
+                for (Object value : list)
+                {
+                    first = appendParameter(sink, first, key, (String)value);
+                }
             }
+            else
+            {
+                String[] array = (String[])values;
+
+                if (array == null || array.length == 0)
+                {
+                    first = appendParameter(sink, first, key, null);
+                    continue;
+                }
 
-            appendParameters(sb, key, (String[])values);
+                for (String value : array)
+                {
+                    first = appendParameter(sink, first, key, value);
+                }
+            }
         }
+    }
 
-        if (sb.length() != 0)
+
+    private static boolean appendParameter(Sink sink, boolean first, String key, String value) throws IOException
+    {
+        if (first == false)
         {
-            // Drop the last &.
-            sb.setLength(sb.length() - 1);
+            sink.append('&');
         }
 
-        return sb.toString();
+        appendEncoded(sink, key, 0);
+
+        if (value != null && value.length() != 0)
+        {
+            sink.append('=');
+            appendEncoded(sink, value, 0);
+        }
+
+        return false;
     }
 
 
-    private static void appendParameters(StringBuilder sb, String key, String[] values)
+    private static void appendEncoded(StringBuilder sb, String input, int from)
     {
-        // If the key is invalid.
-        if (key == null || key.length() == 0)
+        try
         {
-            return;
+            appendEncoded(new StringBuilderSink(sb), input, from);
+        }
+        catch (IOException e)
+        {
+            // This never happens.
         }
+    }
+
 
-        // Encode the key.
-        key = encode(key);
+    /**
+     * Append the URL-encoded form of {@code input} from the given index.
+     * Runs of unreserved characters are appended at once.
+     */
+    private static void appendEncoded(Sink sink, String input, int from) throws IOException
+    {
+        int length = input.length();
+        int i = from;
 
-        if (values == null || values.length == 0)
+        while (i < length)
         {
-            // Just append "{key}&".
-            sb.append(key).append("&");
-            return;
+            int run = i;
+
+            while (i < length && isUnreserved(input.charAt(i)))
+            {
+                ++i;
+            }
+
+            if (run < i)
+            {
+                sink.append(input, run, i);
+            }
+
+            if (i == length)
+            {
+                break;
+            }
+
+            char c = input.charAt(i++);
+
+            if (c == ' ')
+            {
+                sink.append('+');
+            }
+            else if (c < 0x80)
+            {
+                appendEscaped(sink, c);
+            }
+            else if (c < 0x800)
+            {
+                appendEscaped(sink, 0xC0 | (c >> 6));
+                appendEscaped(sink, 0x80 | (c & 0x3F));
+            }
+            else if (Character.isHighSurrogate(c) && i < length && Character.isLowSurrogate(input.charAt(i)))
+            {
+                int cp = Character.toCodePoint(c, input.charAt(i++));
+
+                appendEscaped(sink, 0xF0 | (cp >> 18));
+                appendEscaped(sink, 0x80 | ((cp >> 12) & 0x3F));
+                appendEscaped(sink, 0x80 | ((cp >> 6) & 0x3F));
+                appendEscaped(sink, 0x80 | (cp & 0x3F));
+            }
+            else if (Character.isSurrogate(c))
+            {
+                // An unpaired surrogate is replaced with '?' as
+                // java.net.URLEncoder does.
+                appendEscaped(sink, '?');
+            }
+            else
+            {
+                appendEscaped(sink, 0xE0 | (c >> 12));
+                appendEscaped(sink, 0x80 | ((c >> 6) & 0x3F));
+                appendEscaped(sink, 0x80 | (c & 0x3F));
+            }
         }
+    }
+
 
-        // For each value of the key.
-        for (String value : values)
+    private static void appendEscaped(Sink sink, int b) throws IOException
+    {
+        sink.append('%');
+        sink.append(HEX[(b >> 4) & 0xF]);
+        sink.append(HEX[b & 0xF]);
+    }
+
+
+    private static boolean isUnreserved(char c)
+    {
+        return ('a' <= c && c <= 'z') || ('A' <= c && c <= 'Z') || ('0' <= c && c <= '9')
+            || c == '.' || c == '-' || c == '*' || c == '_';
+    }
+
+
+    /**
+     * Decode the range of the input. {@code bytes} must be at least as
+     * long as the range.
+     */
+    private static String decode(String input, int start, int end, byte[] bytes)
+    {
+        int i = start;
+
+        // Skip the leading characters which are not changed.
+        while (i < end && input.charAt(i) != '%' && input.charAt(i) != '+')
         {
-            sb.append(key);
+            ++i;
+        }
 
-            if (value != null && value.length() != 0)
+        if (i == end)
+        {
+            return input.substring(start, end);
+        }
+
+        StringBuilder sb = new StringBuilder(end - start);
+        sb.append(input, start, i);
+
+        while (i < end)
+        {
+            char c = input.charAt(i);
+
+            if (c == '+')
             {
-                sb.append("=").append(encode(value));
+                sb.append(' ');
+                ++i;
             }
+            else if (c == '%')
+            {
+                // Collect the consecutive escaped bytes and decode them
+                // at once as they may form a multi-byte character.
+                int n = 0;
+
+                while (i + 2 < end && input.charAt(i) == '%')
+                {
+                    int hi = Character.digit(input.charAt(i + 1), 16);
+                    int lo = Character.digit(input.charAt(i + 2), 16);
+
+                    if (hi < 0 || lo < 0)
+                    {
+                        break;
+                    }
 
-            sb.append("&");
+                    bytes[n++] = (byte)((hi << 4) | lo);
+                    i += 3;
+                }
+
+                if (n == 0)
+                {
+                    // A malformed escape sequence is kept as it is.
+                    sb.append(c);
+                    ++i;
+                }
+                else
+                {
+                    sb.append(new String(bytes, 0, n, StandardCharsets.UTF_8));
+                }
+            }
+            else
+            {
+                sb.append(c);
+                ++i;
+            }
         }
+
+        return sb.toString();
     }
 }
@@ -0,0 +1,179 @@
+/*
+ * Copyright (C) 2020 Authlete, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.authlete.common;
+
+
+import static org.junit.Assert.*;
+import java.io.File;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.security.CodeSource;
+import java.util.HashSet;
+import java.util.Set;
+import org.junit.Assume;
+import org.junit.Test;
+import com.authlete.common.api.AuthleteApi;
+import com.authlete.common.api.AuthleteApiFactory;
+import com.authlete.common.api.StubAuthleteServer;
+import com.authlete.common.conf.AuthleteSimpleConfiguration;
+import com.authlete.common.dto.Client;
+import com.authlete.common.dto.TokenCreateRequest;
+import com.authlete.common.dto.TokenCreateResponse;
+import com.authlete.common.types.ApplicationType;
+import com.authlete.common.types.GrantType;
+import com.authlete.common.util.Utils;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParser;
+
+
+/**
+ * Tests of the native-image metadata. These tests are also run as a native
+ * image by {@code mvn -Pnative test}.
+ */
+public class NativeImageTest
+{
+    private static final String REFLECT_CONFIG =
+            "META-INF/native-image/com.authlete/authlete-java-common/reflect-config.json";
+
+
+    private static final String[] SERIALIZED_PACKAGES = {
+            "com.authlete.common.assurance",
+            "com.authlete.common.dto",
+            "com.authlete.common.types",
+    };
+
+
+    private static Set<String> loadReflectConfig() throws Exception
+    {
+        Set<String> names = new HashSet<String>();
+
+        InputStream in = NativeImageTest.class.getClassLoader().getResourceAsStream(REFLECT_CONFIG);
+        assertNotNull(REFLECT_CONFIG + " is not found.", in);
+
+        try
+        {
+            JsonElement config = new JsonParser().parse(
+                    new InputStreamReader(in, StandardCharsets.UTF_8));
+
+            for (JsonElement entry : config.getAsJsonArray())
+            {
+                names.add(entry.getAsJsonObject().get("name").getAsString());
+            }
+        }
+        finally
+        {
+            in.close();
+        }
+
+        return names;
+    }
+
+
+    @Test
+    public void test_reflect_config_classes_exist() throws Exception
+    {
+        for (String name : loadReflectConfig())
+        {
+            Class.forName(name);
+        }
+    }
+
+
+    @Test
+    public void test_reflect_config_covers_packages() throws Exception
+    {
+        Set<String> names = loadReflectConfig();
+
+        // The root of the main classes. The class loader would return the
+        // test classes first for the same package names.
+        CodeSource source = Client.class.getProtectionDomain().getCodeSource();
+        URL root = (source != null) ? source.getLocation() : null;
+
+        // Classes can be listed only when they are in a directory.
+        Assume.assumeTrue(root != null && "file".equals(root.getProtocol()));
+        Assume.assumeTrue(new File(root.toURI()).isDirectory());
+
+        for (String packageName : SERIALIZED_PACKAGES)
+        {
+            File directory = new File(new File(root.toURI()), packageName.replace('.', File.separatorChar));
+
+            for (String fileName : directory.list())
+            {
+                if (fileName.endsWith(".class") == false ||
+                    fileName.equals("package-info.class") ||
+                    fileName.matches(".*\\$[0-9]+.*"))
+                {
+                    // Not a class which is serialized.
+                    continue;
+                }
+
+                String name = packageName + "." + fileName.substring(0, fileName.length() - 6);
+
+                assertTrue(name + " is not listed in " + REFLECT_CONFIG + ".", names.contains(name));
+            }
+        }
+    }
+
+
+    @Test
+    public void test_dto_round_trip()
+    {
+        Client client = new Client()
+            .setClientId(1234L)
+            .setClientName("My Client")
+            .setApplicationType(ApplicationType.WEB)
+            .setGrantTypes(new GrantType[] { GrantType.AUTHORIZATION_CODE, GrantType.REFRESH_TOKEN });
+
+        Client copy = Utils.fromJson(Utils.toJson(client), Client.class);
+
+        assertEquals(1234L, copy.getClientId());
+        assertEquals("My Client", copy.getClientName());
+        assertEquals(ApplicationType.WEB, copy.getApplicationType());
+        assertArrayEquals(client.getGrantTypes(), copy.getGrantTypes());
+    }
+
+
+    @Test
+    public void test_api_call() throws Exception
+    {
+        StubAuthleteServer server = new StubAuthleteServer();
+
+        try
+        {
+            server.setResponse("/api/auth/token/create",
+                    "{\"action\":\"OK\",\"accessToken\":\"at\",\"expiresIn\":3600}");
+
+            AuthleteApi api = AuthleteApiFactory.create(new AuthleteSimpleConfiguration()
+                .setBaseUrl(server.getBaseUrl())
+                .setServiceApiKey("key")
+                .setServiceApiSecret("secret"));
+
+            TokenCreateResponse response = api.tokenCreate(new TokenCreateRequest()
+                .setClientId(1234L)
+                .setSubject("user"));
+
+            assertEquals(TokenCreateResponse.Action.OK, response.getAction());
+            assertEquals("at", response.getAccessToken());
+            assertEquals(3600L, response.getExpiresIn());
+        }
+        finally
+        {
+            server.close();
+        }
+    }
+}
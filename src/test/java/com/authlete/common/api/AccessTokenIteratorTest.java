@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2020 Authlete, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.authlete.common.api;
+
+
+import static org.junit.Assert.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.junit.Test;
+import com.authlete.common.dto.AccessToken;
+import com.authlete.common.dto.TokenListResponse;
+
+
+public class AccessTokenIteratorTest
+{
+    private static AuthleteApi createApi(final int totalCount, final AtomicInteger calls)
+    {
+        return new FakeAuthleteApi()
+            .on("getTokenList", new FakeAuthleteApi.Handler() {
+                @Override
+                public Object handle(Object[] args)
+                {
+                    // getTokenList(clientIdentifier, subject, start, end)
+                    if (args.length != 4)
+                    {
+                        throw new UnsupportedOperationException("getTokenList");
+                    }
+
+                    calls.incrementAndGet();
+
+                    int start = (Integer)args[2];
+                    int end   = Math.min((Integer)args[3], totalCount);
+
+                    List<AccessToken> tokens = new ArrayList<AccessToken>();
+
+                    for (int i = start; i < end; ++i)
+                    {
+                        tokens.add(new AccessToken().setAccessTokenHash("hash" + i));
+                    }
+
+                    return new TokenListResponse()
+                        .setTotalCount(totalCount)
+                        .setAccessTokens(tokens.toArray(new AccessToken[tokens.size()]));
+                }
+            })
+            .create();
+    }
+
+
+    @Test
+    public void test_all_pages_in_order()
+    {
+        AtomicInteger calls = new AtomicInteger();
+        AccessTokenIterator it = new AccessTokenIterator(createApi(25, calls));
+        it.setPageSize(10).setPrefetchWindow(3);
+
+        int count = 0;
+
+        while (it.hasNext())
+        {
+            assertEquals("hash" + count, it.next().getAccessTokenHash());
+            ++count;
+        }
+
+        assertEquals(25, count);
+        assertEquals(3, calls.get());
+        assertEquals(25, it.getTotalCount());
+    }
+
+
+    @Test
+    public void test_stream_without_prefetch()
+    {
+        AtomicInteger calls = new AtomicInteger();
+
+        try (Stream<AccessToken> stream = new AccessTokenIterator(createApi(7, calls))
+                .setPageSize(3).setPrefetchWindow(0).stream())
+        {
+            List<String> hashes = stream.limit(4)
+                .map(token -> token.getAccessTokenHash()).collect(Collectors.toList());
+
+            assertEquals(4, hashes.size());
+            assertEquals("hash3", hashes.get(3));
+        }
+
+        // Early termination does not fetch the last page.
+        assertEquals(2, calls.get());
+    }
+
+
+    @Test
+    public void test_empty()
+    {
+        AccessTokenIterator it = new AccessTokenIterator(createApi(0, new AtomicInteger()));
+
+        assertFalse(it.hasNext());
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright (C) 2020 Authlete, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.authlete.common.api;
+
+
+import static org.junit.Assert.*;
+import org.junit.After;
+import org.junit.Test;
+import com.authlete.common.conf.AuthleteSimpleConfiguration;
+
+
+public class AuthleteApiFactoryTest
+{
+    private static AuthleteSimpleConfiguration createConfiguration()
+    {
+        return new AuthleteSimpleConfiguration()
+            .setBaseUrl("http://localhost:8080")
+            .setServiceApiKey("key")
+            .setServiceApiSecret("secret");
+    }
+
+
+    @After
+    public void clearProperty()
+    {
+        System.clearProperty(AuthleteApiFactory.SYSTEM_PROPERTY_AUTHLETE_API_IMPL);
+    }
+
+
+    @Test
+    public void test_create_default()
+    {
+        AuthleteApi api = AuthleteApiFactory.create(createConfiguration());
+
+        assertTrue(api instanceof AuthleteApiImpl);
+    }
+
+
+    @Test
+    public void test_create_preferred()
+    {
+        System.setProperty(AuthleteApiFactory.SYSTEM_PROPERTY_AUTHLETE_API_IMPL,
+                AuthleteApiImplProvider.IMPLEMENTATION_NAME);
+
+        AuthleteApi api = AuthleteApiFactory.create(createConfiguration());
+
+        assertTrue(api instanceof AuthleteApiImpl);
+    }
+
+
+    @Test(expected = IllegalArgumentException.class)
+    public void test_create_preferred_unknown()
+    {
+        System.setProperty(AuthleteApiFactory.SYSTEM_PROPERTY_AUTHLETE_API_IMPL,
+                "com.example.NoSuchAuthleteApi");
+
+        AuthleteApiFactory.create(createConfiguration());
+    }
+}
@@ -0,0 +1,296 @@
+/*
+ * Copyright (C) 2020 Authlete, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.authlete.common.api;
+
+
+import static org.junit.Assert.*;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import com.authlete.common.conf.AuthleteSimpleConfiguration;
+import com.authlete.common.dto.AuthorizationRequest;
+import com.authlete.common.dto.AuthorizationResponse;
+import com.authlete.common.dto.DeviceAuthorizationRequest;
+import com.authlete.common.dto.DeviceAuthorizationResponse;
+import com.authlete.common.dto.IntrospectionRequest;
+import com.authlete.common.dto.IntrospectionResponse;
+import com.authlete.common.dto.PushedAuthReqRequest;
+import com.authlete.common.dto.PushedAuthReqResponse;
+import com.authlete.common.dto.TokenCreateRequest;
+import com.authlete.common.dto.TokenCreateResponse;
+import com.authlete.common.dto.TokenRequest;
+import com.authlete.common.dto.TokenResponse;
+import com.authlete.common.util.FieldMask;
+import com.authlete.common.util.StringPool;
+
+
+/**
+ * Load test of {@link AuthleteApiImpl} against {@link StubAuthleteServer}.
+ * The load is kept small so that the test runs quickly as part of the
+ * build. Increase the number of threads and iterations to measure, and
+ * run with {@code -Dauthlete.loadtest.verbose=true} to print the reports.
+ */
+public class AuthleteApiImplLoadTest
+{
+    private static final int THREADS    = 4;
+    private static final int ITERATIONS = 50;
+
+    private static final String INTROSPECTION_RESPONSE =
+        "{\"resultCode\":\"A056001\",\"resultMessage\":\"stub\",\"action\":\"OK\"," +
+        "\"clientId\":1001,\"subject\":\"user\",\"scopes\":[\"openid\",\"profile\"]," +
+        "\"expiresAt\":1600000000000,\"usable\":true,\"sufficient\":true,\"existent\":true}";
+
+    private static final String AUTHORIZATION_RESPONSE =
+        "{\"resultCode\":\"A004001\",\"resultMessage\":\"stub\",\"action\":\"INTERACTION\"," +
+        "\"service\":{\"number\":1,\"serviceName\":\"stub\",\"issuer\":\"https://as.example.com\"," +
+        "\"supportedScopes\":[{\"name\":\"openid\"},{\"name\":\"profile\"}]}," +
+        "\"client\":{\"number\":2,\"clientId\":1001,\"clientName\":\"stub client\"," +
+        "\"redirectUris\":[\"https://client.example.com/cb\"]},\"ticket\":\"ticket\"}";
+
+
+    private static final String NODELAY = "sun.net.httpserver.nodelay";
+    private static final boolean VERBOSE = Boolean.getBoolean("authlete.loadtest.verbose");
+
+
+    private static StubAuthleteServer sServer;
+    private static String sNodelay;
+
+
+    @BeforeClass
+    public static void startServer() throws Exception
+    {
+        // See the description of StubAuthleteServer.
+        sNodelay = System.setProperty(NODELAY, "true");
+
+        sServer = new StubAuthleteServer()
+            .setResponse("/api/auth/introspection", INTROSPECTION_RESPONSE)
+            .setResponse("/api/auth/authorization", AUTHORIZATION_RESPONSE)
+            .setResponse("/api/auth/token",
+                "{\"resultCode\":\"A050001\",\"resultMessage\":\"stub\",\"action\":\"OK\",\"accessToken\":\"at\"}");
+    }
+
+
+    @AfterClass
+    public static void stopServer()
+    {
+        sServer.close();
+
+        if (sNodelay == null)
+        {
+            System.clearProperty(NODELAY);
+        }
+        else
+        {
+            System.setProperty(NODELAY, sNodelay);
+        }
+    }
+
+
+    private static AuthleteApiImpl createApi()
+    {
+        return new AuthleteApiImpl(new AuthleteSimpleConfiguration()
+            .setBaseUrl(sServer.getBaseUrl())
+            .setServiceApiKey("1")
+            .setServiceApiSecret("secret"));
+    }
+
+
+    private static LoadDriver createDriver()
+    {
+        return new LoadDriver().setThreads(THREADS).setIterations(ITERATIONS).setWarmup(5);
+    }
+
+
+    private static void check(LoadDriver.Report report)
+    {
+        if (VERBOSE)
+        {
+            System.out.println(report);
+        }
+
+        assertEquals(THREADS * ITERATIONS, report.getCount());
+        assertEquals(0, report.getErrors());
+        assertTrue(report.getPercentile(50) <= report.getPercentile(99));
+    }
+
+
+    @Test
+    public void test_canned_responses()
+    {
+        AuthleteApiImpl api = createApi();
+
+        IntrospectionResponse introspection = api.introspection(new IntrospectionRequest().setToken("at"));
+        assertEquals(IntrospectionResponse.Action.OK, introspection.getAction());
+        assertEquals("user", introspection.getSubject());
+
+        TokenResponse token = api.token(new TokenRequest().setParameters("grant_type=client_credentials"));
+        assertEquals(TokenResponse.Action.OK, token.getAction());
+        assertEquals("at", token.getAccessToken());
+
+        AuthorizationResponse authorization = api.authorization(new AuthorizationRequest().setParameters("a=b"));
+        assertEquals(1001, authorization.getClient().getClientId());
+
+        // Canned responses of the stub.
+        assertEquals("https://as.example.com", api.getService(1).getIssuer().toString());
+        assertEquals(1002L, api.getClient(1002).getClientId());
+        assertEquals(1, api.getClientList().getClients().length);
+        assertEquals("user", api.getTokenList().getAccessTokens()[0].getSubject());
+        assertEquals(TokenCreateResponse.Action.OK,
+                api.tokenCreate(new TokenCreateRequest()).getAction());
+        assertEquals(DeviceAuthorizationResponse.Action.OK,
+                api.deviceAuthorization(new DeviceAuthorizationRequest()).getAction());
+        assertEquals(PushedAuthReqResponse.Action.CREATED,
+                api.pushAuthorizationRequest(new PushedAuthReqRequest()).getAction());
+    }
+
+
+    @Test
+    public void test_keep_alive() throws Exception
+    {
+        final AuthleteApiImpl api = createApi();
+        final IntrospectionRequest request = new IntrospectionRequest().setToken("at");
+
+        check(createDriver().run("introspection/keep-alive", new LoadDriver.Operation() {
+            @Override
+            public void run()
+            {
+                api.introspection(request);
+            }
+        }));
+    }
+
+
+    @Test
+    public void test_connection_close() throws Exception
+    {
+        final AuthleteApiImpl api = createApi();
+        final IntrospectionRequest request = new IntrospectionRequest().setToken("at");
+
+        sServer.setKeepAlive(false);
+
+        try
+        {
+            check(createDriver().run("introspection/connection-close", new LoadDriver.Operation() {
+                @Override
+                public void run()
+                {
+                    api.introspection(request);
+                }
+            }));
+        }
+        finally
+        {
+            sServer.setKeepAlive(true);
+        }
+    }
+
+
+    @Test
+    public void test_lazy_binding() throws Exception
+    {
+        final AuthleteApiImpl api = createApi();
+        final AuthorizationRequest request = new AuthorizationRequest().setParameters("a=b");
+
+        for (final boolean lazy : new boolean[] { false, true })
+        {
+            api.getSettings().setLazyBindingEnabled(lazy);
+
+            check(createDriver().run("authorization/lazy=" + lazy, new LoadDriver.Operation() {
+                @Override
+                public void run()
+                {
+                    api.authorization(request);
+                }
+            }));
+        }
+    }
+
+
+    @Test
+    public void test_field_mask_and_string_pool() throws Exception
+    {
+        final AuthleteApiImpl api = createApi();
+        final IntrospectionRequest request = new IntrospectionRequest().setToken("at");
+
+        api.getSettings()
+            .setFieldMask(new FieldMask().include(IntrospectionResponse.class, "action", "subject", "scopes"))
+            .setStringPool(new StringPool());
+
+        check(createDriver().run("introspection/mask+pool", new LoadDriver.Operation() {
+            @Override
+            public void run()
+            {
+                IntrospectionResponse response = api.introspection(request);
+
+                if (response.getSubject() == null || response.getClientId() != 0)
+                {
+                    throw new IllegalStateException("The field mask was not applied.");
+                }
+            }
+        }));
+    }
+
+
+    @Test
+    public void test_error_injection_and_retries()
+    {
+        final AuthleteApiImpl api = createApi();
+        List<String> tokens = new ArrayList<String>();
+
+        for (int i = 0; i < 20; ++i)
+        {
+            tokens.add("token" + i);
+        }
+
+        sServer.setErrorRate(1.0);
+
+        try
+        {
+            api.introspection(new IntrospectionRequest().setToken("at"));
+            fail("An error should have been injected.");
+        }
+        catch (AuthleteApiException e)
+        {
+            assertEquals(500, e.getStatusCode());
+        }
+
+        sServer.setErrorRate(0.3);
+
+        try
+        {
+            List<BulkResult<String, IntrospectionResponse>> results = new BulkExecutor()
+                .setConcurrency(4).setMaxRetries(10)
+                .execute(tokens, new BulkExecutor.Task<String, IntrospectionResponse>() {
+                    @Override
+                    public IntrospectionResponse execute(String token)
+                    {
+                        return api.introspection(new IntrospectionRequest().setToken(token));
+                    }
+                });
+
+            for (BulkResult<String, IntrospectionResponse> result : results)
+            {
+                assertTrue(result.isSuccessful());
+            }
+        }
+        finally
+        {
+            sServer.setErrorRate(0);
+        }
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright (C) 2020 Authlete, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.authlete.common.api;
+
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+import com.authlete.common.conf.AuthleteSimpleConfiguration;
+import com.authlete.common.dto.Client;
+import com.authlete.common.dto.ClientListResponse;
+import com.authlete.common.util.FieldMask;
+
+
+public class AuthleteApiImplTest
+{
+    private static final String CLIENT_JSON =
+            "{\"clientId\":1234,\"clientName\":\"My Client\",\"description\":\"Long description\"}";
+
+
+    private static AuthleteApi createApi(StubAuthleteServer server)
+    {
+        return new AuthleteApiImpl(new AuthleteSimpleConfiguration()
+            .setBaseUrl(server.getBaseUrl())
+            .setServiceApiKey("key")
+            .setServiceApiSecret("secret"));
+    }
+
+
+    @Test
+    public void test_field_mask() throws Exception
+    {
+        StubAuthleteServer server = new StubAuthleteServer()
+            .setResponse("/api/client/get/list", "{\"clients\":[" + CLIENT_JSON + "]}")
+            .setResponse("/api/client/get/", CLIENT_JSON);
+
+        try
+        {
+            AuthleteApi api = createApi(server);
+            api.getSettings().setFieldMask(
+                    new FieldMask().include(Client.class, "clientId", "clientName"));
+
+            // List APIs return masked clients.
+            ClientListResponse list = api.getClientList();
+            assertEquals(1234L, list.getClients()[0].getClientId());
+            assertNull(list.getClients()[0].getDescription());
+
+            // A client to be updated is not masked.
+            Client client = api.getClient(1234L);
+            assertEquals("My Client", client.getClientName());
+            assertEquals("Long description", client.getDescription());
+        }
+        finally
+        {
+            server.close();
+        }
+    }
+}
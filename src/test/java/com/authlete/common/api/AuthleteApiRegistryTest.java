@@ -0,0 +1,221 @@
+/*
+ * Copyright (C) 2020 Authlete, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.authlete.common.api;
+
+
+import static org.junit.Assert.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+import com.authlete.common.conf.AuthleteSimpleConfiguration;
+import com.authlete.common.dto.IntrospectionRequest;
+import com.authlete.common.web.AuthorizationHeader;
+import com.authlete.common.web.BasicCredentials;
+
+
+public class AuthleteApiRegistryTest
+{
+    private static AuthleteApiRegistry createRegistry(StubAuthleteServer server, final AtomicInteger loads)
+    {
+        AuthleteSimpleConfiguration base = new AuthleteSimpleConfiguration()
+            .setBaseUrl(server.getBaseUrl())
+            .setServiceOwnerApiKey("owner")
+            .setServiceOwnerApiSecret("owner-secret");
+
+        return new AuthleteApiRegistry(base, new AuthleteApiRegistry.TenantLoader() {
+            @Override
+            public String loadServiceApiSecret(String serviceApiKey)
+            {
+                loads.incrementAndGet();
+
+                return serviceApiKey.startsWith("unknown") ? null : serviceApiKey + "-secret";
+            }
+        });
+    }
+
+
+    private static String basic(String key, String secret)
+    {
+        return new BasicCredentials(key, secret).format();
+    }
+
+
+    @Test
+    public void test_tenants_use_own_credentials_and_shared_settings() throws Exception
+    {
+        StubAuthleteServer server = new StubAuthleteServer();
+
+        try
+        {
+            AtomicInteger loads = new AtomicInteger();
+            AuthleteApiRegistry registry = createRegistry(server, loads);
+
+            AuthleteApi a = registry.get("a");
+            AuthleteApi b = registry.get("b");
+
+            assertSame(a, registry.get("a"));
+            assertEquals(2, loads.get());
+            assertSame(registry.getSettings(), a.getSettings());
+            assertSame(registry.getSettings(), b.getSettings());
+
+            a.introspection(new IntrospectionRequest().setToken("at"));
+            assertEquals(basic("a", "a-secret"), server.getLastAuthorization());
+
+            b.introspection(new IntrospectionRequest().setToken("at"));
+            assertEquals(basic("b", "b-secret"), server.getLastAuthorization());
+
+            a.getServiceList(0, 1);
+            assertEquals(basic("owner", "owner-secret"), server.getLastAuthorization());
+
+            // Unknown tenants are not held, but their keys are remembered.
+            assertNull(registry.get("unknown"));
+            assertNull(registry.get("unknown"));
+            assertEquals(3, loads.get());
+            assertEquals(2, registry.size());
+
+            registry.invalidate("unknown");
+            assertNull(registry.get("unknown"));
+            assertEquals(4, loads.get());
+        }
+        finally
+        {
+            server.close();
+        }
+    }
+
+
+    @Test
+    public void test_eviction() throws Exception
+    {
+        StubAuthleteServer server = new StubAuthleteServer();
+
+        try
+        {
+            AtomicInteger loads = new AtomicInteger();
+            AuthleteApiRegistry registry = createRegistry(server, loads).setMaxTenants(2);
+
+            registry.get("a");
+            Thread.sleep(2);
+            registry.get("b");
+            Thread.sleep(2);
+            registry.get("a");
+            Thread.sleep(2);
+            registry.get("c");
+
+            // "b" was the least recently used.
+            assertEquals(2, registry.size());
+            assertEquals(1, registry.getEvictionCount());
+
+            registry.get("a");
+            assertEquals(3, registry.getLoadCount());
+
+            registry.get("b");
+            assertEquals(4, registry.getLoadCount());
+
+            registry.invalidate("a");
+            registry.get("a");
+            assertEquals(5, registry.getLoadCount());
+        }
+        finally
+        {
+            server.close();
+        }
+    }
+
+
+    @Test
+    public void test_negative_cache_timeout() throws Exception
+    {
+        StubAuthleteServer server = new StubAuthleteServer();
+
+        try
+        {
+            AtomicInteger loads = new AtomicInteger();
+            AuthleteApiRegistry registry = createRegistry(server, loads)
+                .setNegativeCacheTimeout(50).setMaxTenants(1);
+
+            assertNull(registry.get("unknown1"));
+            assertNull(registry.get("unknown1"));
+            assertEquals(1, loads.get());
+
+            // Unknown keys do not evict tenants.
+            registry.get("a");
+            assertNull(registry.get("unknown2"));
+            assertEquals(1, registry.size());
+            assertEquals(0, registry.getEvictionCount());
+
+            Thread.sleep(100);
+
+            assertNull(registry.get("unknown1"));
+            assertEquals(4, loads.get());
+        }
+        finally
+        {
+            server.close();
+        }
+    }
+
+
+    @Test
+    public void test_shared_settings_reject_service_access_token_provider() throws Exception
+    {
+        StubAuthleteServer server = new StubAuthleteServer();
+
+        try
+        {
+            AuthleteApiRegistry registry = createRegistry(server, new AtomicInteger());
+            AuthleteApi a = registry.get("a");
+
+            AccessTokenProvider provider = new AccessTokenProvider() {
+                @Override
+                public AuthorizationHeader getAuthorization()
+                {
+                    return AuthorizationHeader.bearer("a-token");
+                }
+            };
+
+            try
+            {
+                registry.getSettings().setServiceAccessTokenProvider(provider);
+                fail();
+            }
+            catch (IllegalStateException e)
+            {
+            }
+
+            try
+            {
+                a.getSettings().setServiceAccessTokenProvider(provider);
+                fail();
+            }
+            catch (IllegalStateException e)
+            {
+            }
+
+            // Every tenant keeps using its own credentials.
+            registry.get("b").introspection(new IntrospectionRequest().setToken("at"));
+            assertEquals(basic("b", "b-secret"), server.getLastAuthorization());
+
+            // The service owner credentials are common to the tenants.
+            registry.getSettings().setServiceOwnerAccessTokenProvider(provider);
+            a.getServiceList(0, 1);
+            assertEquals("Bearer a-token", server.getLastAuthorization());
+        }
+        finally
+        {
+            server.close();
+        }
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright (C) 2020 Authlete, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.authlete.common.api;
+
+
+import static org.junit.Assert.*;
+import java.net.ConnectException;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+
+
+public class BulkExecutorTest
+{
+    @Test
+    public void test_order_and_errors()
+    {
+        List<Integer> inputs = new ArrayList<Integer>();
+
+        for (int i = 0; i < 50; ++i)
+        {
+            inputs.add(i);
+        }
+
+        final AtomicInteger inFlight    = new AtomicInteger();
+        final AtomicInteger maxInFlight = new AtomicInteger();
+
+        List<BulkResult<Integer, String>> results = new BulkExecutor().setConcurrency(4).execute(inputs,
+            new BulkExecutor.Task<Integer, String>() {
+                @Override
+                public String execute(Integer input)
+                {
+                    int current = inFlight.incrementAndGet();
+                    maxInFlight.accumulateAndGet(current, Math::max);
+
+                    try
+                    {
+                        Thread.sleep(1);
+                    }
+                    catch (InterruptedException e)
+                    {
+                        Thread.currentThread().interrupt();
+                    }
+                    finally
+                    {
+                        inFlight.decrementAndGet();
+                    }
+
+                    if (input % 10 == 3)
+                    {
+                        throw new AuthleteApiException("failed", 400, "Bad Request", null);
+                    }
+
+                    return "out" + input;
+                }
+            });
+
+        assertEquals(50, results.size());
+        assertTrue(maxInFlight.get() <= 4);
+
+        for (int i = 0; i < 50; ++i)
+        {
+            BulkResult<Integer, String> result = results.get(i);
+
+            assertEquals(i, result.getIndex());
+            assertEquals(Integer.valueOf(i), result.getInput());
+            assertEquals(i % 10 != 3, result.isSuccessful());
+
+            if (result.isSuccessful())
+            {
+                assertEquals("out" + i, result.getOutput());
+            }
+        }
+    }
+
+
+    @Test
+    public void test_retry()
+    {
+        final AtomicInteger attempts = new AtomicInteger();
+
+        List<BulkResult<String, String>> results = new BulkExecutor().setMaxRetries(2).execute(
+            Collections.singletonList("x"),
+            new BulkExecutor.Task<String, String>() {
+                @Override
+                public String execute(String input)
+                {
+                    if (attempts.incrementAndGet() < 3)
+                    {
+                        throw new AuthleteApiException("unavailable", 503, "Service Unavailable", null);
+                    }
+
+                    return input;
+                }
+            });
+
+        assertTrue(results.get(0).isSuccessful());
+        assertEquals(3, attempts.get());
+    }
+
+
+    @Test
+    public void test_retry_non_idempotent()
+    {
+        final AtomicInteger attempts = new AtomicInteger();
+
+        BulkExecutor.RetryableTask<String, String> task = new BulkExecutor.RetryableTask<String, String>() {
+            @Override
+            public String execute(String input)
+            {
+                switch (attempts.incrementAndGet())
+                {
+                    case 1:
+                        throw new AuthleteApiException("refused", new ConnectException("refused"));
+                    case 2:
+                        throw new AuthleteApiException("throttled", 429, "Too Many Requests", null);
+                    default:
+                        throw new AuthleteApiException("timeout", new SocketTimeoutException("timeout"));
+                }
+            }
+
+
+            @Override
+            public boolean isRetryable(String input, AuthleteApiException exception)
+            {
+                return BulkExecutor.isUnprocessed(exception);
+            }
+        };
+
+        List<BulkResult<String, String>> results = new BulkExecutor().setMaxRetries(5).execute(
+            Collections.singletonList("x"), task);
+
+        // The timed-out request may have been processed, so it is not retried.
+        assertFalse(results.get(0).isSuccessful());
+        assertEquals(3, attempts.get());
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright (C) 2020 Authlete, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.authlete.common.api;
+
+
+import static org.junit.Assert.*;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+import com.authlete.common.dto.AccessToken;
+import com.authlete.common.dto.TokenListResponse;
+
+
+public class BulkRevokerTest
+{
+    @Test
+    public void test_revoke_authorizations() throws Exception
+    {
+        final AccessToken[] tokens = {
+            new AccessToken().setAccessTokenHash("h1").setClientId(1).setSubject("alice"),
+            new AccessToken().setAccessTokenHash("h2").setClientId(1).setSubject("alice"),
+            new AccessToken().setAccessTokenHash("h3").setClientId(1),
+            new AccessToken().setAccessTokenHash("h4").setClientId(2).setSubject("bob"),
+        };
+
+        final List<String> deleted = new ArrayList<String>();
+
+        AuthleteApi api = new FakeAuthleteApi()
+            .on("getTokenList", new FakeAuthleteApi.Handler() {
+                @Override
+                public Object handle(Object[] args)
+                {
+                    int start = (Integer)args[2];
+
+                    return new TokenListResponse().setTotalCount(tokens.length)
+                        .setAccessTokens((start == 0) ? tokens : new AccessToken[0]);
+                }
+            })
+            .on("deleteClientAuthorization", new FakeAuthleteApi.Handler() {
+                @Override
+                public Object handle(Object[] args)
+                {
+                    synchronized (deleted)
+                    {
+                        deleted.add(args[0] + ":" + args[1]);
+                    }
+
+                    return null;
+                }
+            })
+            .create();
+
+        List<BulkResult<AccessToken, Void>> results =
+                new BulkRevoker(api).revokeAuthorizations(null, null);
+
+        assertEquals(3, results.size());
+        assertTrue(results.get(0).isSuccessful());
+
+        // The token of the client credentials flow is not a grant.
+        assertEquals("h3", results.get(1).getInput().getAccessTokenHash());
+        assertFalse(results.get(1).isSuccessful());
+        assertTrue(results.get(1).getError() instanceof UnsupportedOperationException);
+
+        assertTrue(results.get(2).isSuccessful());
+        assertEquals(2, deleted.size());
+        assertTrue(deleted.contains("1:alice"));
+        assertTrue(deleted.contains("2:bob"));
+    }
+}
@@ -0,0 +1,208 @@
+/*
+ * Copyright (C) 2020 Authlete, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.authlete.common.api;
+
+
+import static org.junit.Assert.*;
+import java.io.StringReader;
+import java.net.SocketTimeoutException;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+import com.authlete.common.api.ClientProvisioner.Change;
+import com.authlete.common.api.ClientProvisioner.ChangeType;
+import com.authlete.common.dto.Client;
+import com.authlete.common.dto.ClientExtension;
+import com.authlete.common.dto.ClientListResponse;
+import com.authlete.common.util.FieldMask;
+
+
+public class ClientProvisionerTest
+{
+    private static FakeAuthleteApi createFake()
+    {
+        final Client[] clients = {
+            new Client().setClientId(1).setClientIdAlias("a").setClientName("A")
+                .setExtension(new ClientExtension().setRequestableScopes(new String[] { "read" })),
+            new Client().setClientId(2).setClientIdAlias("b").setClientName("B"),
+        };
+
+        return new FakeAuthleteApi()
+            .on("getClientList", new FakeAuthleteApi.Handler() {
+                @Override
+                public Object handle(Object[] args)
+                {
+                    return new ClientListResponse().setTotalCount(clients.length).setClients(clients);
+                }
+            });
+    }
+
+
+    @Test
+    public void test_plan() throws Exception
+    {
+        String definitions =
+            "{\"clientIdAlias\":\"a\",\"clientName\":\"A\",\"extension\":{\"requestableScopes\":[\"read\"]}}\n" +
+            "\n" +
+            "{\"clientId\":2,\"clientName\":\"B2\"}\n" +
+            "{\"clientIdAlias\":\"c\",\"clientName\":\"C\",\"extension\":{\"requestableScopes\":[\"write\"]}}\n";
+
+        List<Change> changes = new ClientProvisioner(createFake().create()).plan(new StringReader(definitions));
+
+        // "a" is unchanged.
+        assertEquals(2, changes.size());
+
+        Change update = changes.get(0);
+        assertEquals(ChangeType.UPDATE, update.getType());
+        assertEquals(2L, update.getClient().getClientId());
+        assertEquals("B2", update.getClient().getClientName());
+        assertEquals("b", update.getClient().getClientIdAlias());
+        assertNull(update.getRequestableScopes());
+        assertEquals(3, update.getLineNumber());
+
+        Change create = changes.get(1);
+        assertEquals(ChangeType.CREATE, create.getType());
+        assertArrayEquals(new String[] { "write" }, create.getRequestableScopes());
+    }
+
+
+    @Test
+    public void test_plan_with_field_mask() throws Exception
+    {
+        final Client full = new Client().setClientId(2).setClientIdAlias("b").setClientName("B")
+            .setDescription("Client B").setRedirectUris(new String[] { "https://b.example.com/cb" });
+
+        FakeAuthleteApi fake = createFake()
+            .on("getClient", new FakeAuthleteApi.Handler() {
+                @Override
+                public Object handle(Object[] args)
+                {
+                    assertEquals(2L, args[0]);
+
+                    return full;
+                }
+            });
+
+        // With a mask, the clients in the list are partial, so a client to
+        // update must be fetched again by getClient().
+        fake.getSettings().setFieldMask(new FieldMask()
+            .include(Client.class, "clientId", "clientIdAlias", "clientName"));
+
+        List<Change> changes = new ClientProvisioner(fake.create()).plan(new StringReader(
+            "{\"clientId\":2,\"clientName\":\"B2\"}\n"));
+
+        // The definition is merged into the full client application.
+        Client update = changes.get(0).getClient();
+        assertEquals("B2", update.getClientName());
+        assertEquals("Client B", update.getDescription());
+        assertArrayEquals(new String[] { "https://b.example.com/cb" }, update.getRedirectUris());
+
+        // A mask without the properties to match definitions is refused.
+        fake.getSettings().setFieldMask(new FieldMask().include(Client.class, "clientId", "clientName"));
+
+        try
+        {
+            new ClientProvisioner(fake.create()).plan(new StringReader("{\"clientIdAlias\":\"b\"}\n"));
+            fail();
+        }
+        catch (IllegalStateException e)
+        {
+            assertTrue(e.getMessage().contains("clientIdAlias"));
+        }
+    }
+
+
+    @Test
+    public void test_apply_retries() throws Exception
+    {
+        final AtomicInteger creates = new AtomicInteger();
+        final AtomicInteger updates = new AtomicInteger();
+        final AtomicInteger scopes  = new AtomicInteger();
+
+        AuthleteApi api = createFake()
+            .on("createClient", new FakeAuthleteApi.Handler() {
+                @Override
+                public Object handle(Object[] args)
+                {
+                    creates.incrementAndGet();
+                    Client client = (Client)args[0];
+
+                    if ("timeout".equals(client.getClientIdAlias()))
+                    {
+                        // The client may have been created.
+                        throw new AuthleteApiException("timeout", new SocketTimeoutException("timeout"));
+                    }
+
+                    return client.setClientId(10);
+                }
+            })
+            .on("updateClient", new FakeAuthleteApi.Handler() {
+                @Override
+                public Object handle(Object[] args)
+                {
+                    // The first call fails.
+                    unavailableIfFirst(updates);
+
+                    return args[0];
+                }
+            })
+            .on("setRequestableScopes", new FakeAuthleteApi.Handler() {
+                @Override
+                public Object handle(Object[] args)
+                {
+                    // The first call fails.
+                    unavailableIfFirst(scopes);
+
+                    return null;
+                }
+            })
+            .create();
+        ClientProvisioner provisioner = new ClientProvisioner(api);
+
+        List<BulkResult<Change, Client>> results;
+
+        // A timed-out creation is not retried.
+        results = provisioner.apply(provisioner.plan(new StringReader(
+            "{\"clientIdAlias\":\"timeout\"}\n")));
+
+        assertFalse(results.get(0).isSuccessful());
+        assertEquals(1, creates.get());
+
+        // A failure of setRequestableScopes does not repeat the creation.
+        results = provisioner.apply(provisioner.plan(new StringReader(
+            "{\"clientIdAlias\":\"c\",\"extension\":{\"requestableScopes\":[\"write\"]}}\n")));
+
+        assertTrue(results.get(0).isSuccessful());
+        assertEquals(2, creates.get());
+        assertEquals(2, scopes.get());
+
+        // An update is retried.
+        results = provisioner.apply(provisioner.plan(new StringReader(
+            "{\"clientId\":2,\"clientName\":\"B2\"}\n")));
+
+        assertTrue(results.get(0).isSuccessful());
+        assertEquals(2, updates.get());
+    }
+
+
+    private static void unavailableIfFirst(AtomicInteger calls)
+    {
+        if (calls.incrementAndGet() == 1)
+        {
+            throw new AuthleteApiException("unavailable", 503, "Service Unavailable", null);
+        }
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright (C) 2020 Authlete, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.authlete.common.api;
+
+
+import static org.junit.Assert.*;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.interfaces.ECPrivateKey;
+import java.security.interfaces.ECPublicKey;
+import java.security.interfaces.RSAPrivateCrtKey;
+import java.security.spec.ECGenParameterSpec;
+import org.junit.Test;
+import com.authlete.common.types.JWSAlg;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+
+public class DpopProofGeneratorTest
+{
+    private static String b64(BigInteger value, int length)
+    {
+        byte[] bytes = value.toByteArray();
+        byte[] fixed = new byte[length];
+
+        int start = Math.max(0, bytes.length - length);
+        System.arraycopy(bytes, start, fixed, length - (bytes.length - start), bytes.length - start);
+
+        return JwsSupport.encodeBase64Url(fixed);
+    }
+
+
+    private static String b64(BigInteger value)
+    {
+        return b64(value, (value.bitLength() + 7) / 8);
+    }
+
+
+    private static void verify(String jwk, JWSAlg expectedAlg) throws Exception
+    {
+        DpopProofGenerator generator = new DpopProofGenerator(jwk);
+        assertEquals(expectedAlg, generator.getAlg());
+
+        String proof = generator.generate("POST", "https://api.example.com/api/auth/token", "at");
+        String[] parts = proof.split("\\.");
+        assertEquals(3, parts.length);
+
+        JsonObject header  = parse(parts[0]);
+        JsonObject payload = parse(parts[1]);
+
+        assertEquals("dpop+jwt", header.get("typ").getAsString());
+        assertFalse(header.getAsJsonObject("jwk").has("d"));
+        assertEquals("POST", payload.get("htm").getAsString());
+        assertEquals("https://api.example.com/api/auth/token", payload.get("htu").getAsString());
+        assertTrue(payload.has("ath"));
+
+        // Each proof has a unique jti.
+        String other = generator.generate("POST", "https://api.example.com/api/auth/token", "at");
+        assertNotEquals(payload.get("jti").getAsString(), parse(other.split("\\.")[1]).get("jti").getAsString());
+
+        JwkSet keys = JwkSet.parse("{\"keys\":[" + header.getAsJsonObject("jwk") + "]}");
+
+        assertTrue(JwsSupport.verify(expectedAlg, keys.get(null),
+                (parts[0] + "." + parts[1]).getBytes(StandardCharsets.US_ASCII),
+                JwsSupport.decodeBase64Url(parts[2])));
+    }
+
+
+    private static JsonObject parse(String part)
+    {
+        return new JsonParser().parse(new String(JwsSupport.decodeBase64Url(part), StandardCharsets.UTF_8)).getAsJsonObject();
+    }
+
+
+    @Test
+    public void test_ec() throws Exception
+    {
+        String[][] curves = { { "P-256", "secp256r1", "32" }, { "P-521", "secp521r1", "66" } };
+
+        for (String[] curve : curves)
+        {
+            KeyPairGenerator kpg = KeyPairGenerator.getInstance("EC");
+            kpg.initialize(new ECGenParameterSpec(curve[1]));
+            KeyPair pair = kpg.generateKeyPair();
+            int length = Integer.parseInt(curve[2]);
+
+            ECPublicKey  pub  = (ECPublicKey)pair.getPublic();
+            ECPrivateKey priv = (ECPrivateKey)pair.getPrivate();
+
+            String jwk = String.format("{\"kty\":\"EC\",\"crv\":\"%s\",\"x\":\"%s\",\"y\":\"%s\",\"d\":\"%s\"}",
+                    curve[0], b64(pub.getW().getAffineX(), length), b64(pub.getW().getAffineY(), length),
+                    b64(priv.getS(), length));
+
+            verify(jwk, "P-256".equals(curve[0]) ? JWSAlg.ES256 : JWSAlg.ES512);
+        }
+    }
+
+
+    @Test
+    public void test_rsa() throws Exception
+    {
+        KeyPairGenerator kpg = KeyPairGenerator.getInstance("RSA");
+        kpg.initialize(2048);
+        RSAPrivateCrtKey key = (RSAPrivateCrtKey)kpg.generateKeyPair().getPrivate();
+
+        String jwk = String.format(
+                "{\"kty\":\"RSA\",\"alg\":\"RS256\",\"n\":\"%s\",\"e\":\"%s\",\"d\":\"%s\",\"p\":\"%s\",\"q\":\"%s\",\"dp\":\"%s\",\"dq\":\"%s\",\"qi\":\"%s\"}",
+                b64(key.getModulus()), b64(key.getPublicExponent()), b64(key.getPrivateExponent()),
+                b64(key.getPrimeP()), b64(key.getPrimeQ()), b64(key.getPrimeExponentP()),
+                b64(key.getPrimeExponentQ()), b64(key.getCrtCoefficient()));
+
+        verify(jwk, JWSAlg.RS256);
+    }
+
+
+    @Test(expected = IllegalArgumentException.class)
+    public void test_public_key_only()
+    {
+        new DpopProofGenerator("{\"kty\":\"EC\",\"crv\":\"P-256\",\"x\":\"AA\",\"y\":\"AA\"}");
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright (C) 2020 Authlete, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.authlete.common.api;
+
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+
+
+/**
+ * Fake {@link AuthleteApi} for tests which do not need HTTP. Methods are
+ * answered by handlers registered per method name, and {@link
+ * AuthleteApi#getSettings()} returns a {@link Settings} instance held by
+ * the fake unless a handler is registered for it. Calls of the other
+ * methods throw {@link UnsupportedOperationException}.
+ *
+ * <pre>
+ * AuthleteApi api = new FakeAuthleteApi()
+ *     .on("getServiceJwks", new FakeAuthleteApi.Handler() {
+ *         public Object handle(Object[] args) {
+ *             return jwks;
+ *         }
+ *     })
+ *     .create();
+ * </pre>
+ */
+public class FakeAuthleteApi
+{
+    /**
+     * Handler of calls of a method.
+     */
+    public interface Handler
+    {
+        /**
+         * Handle a call.
+         *
+         * @param args
+         *         The arguments of the call.
+         *
+         * @return
+         *         The return value of the call.
+         */
+        Object handle(Object[] args) throws Throwable;
+    }
+
+
+    private final Map<String, Handler> mHandlers = new HashMap<String, Handler>();
+    private final Settings mSettings = new Settings();
+
+
+    /**
+     * Register a handler of the method. A handler registered before for
+     * the same name is replaced.
+     */
+    public FakeAuthleteApi on(String methodName, Handler handler)
+    {
+        mHandlers.put(methodName, handler);
+
+        return this;
+    }
+
+
+    /**
+     * Get the settings returned by {@link AuthleteApi#getSettings()}.
+     */
+    public Settings getSettings()
+    {
+        return mSettings;
+    }
+
+
+    /**
+     * Create an {@link AuthleteApi} which calls the handlers.
+     */
+    public AuthleteApi create()
+    {
+        InvocationHandler handler = new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable
+            {
+                String  name    = method.getName();
+                Handler handler = mHandlers.get(name);
+
+                if (handler != null)
+                {
+                    return handler.handle((args != null) ? args : new Object[0]);
+                }
+
+                if (name.equals("getSettings"))
+                {
+                    return mSettings;
+                }
+
+                throw new UnsupportedOperationException(name);
+            }
+        };
+
+        return (AuthleteApi)Proxy.newProxyInstance(
+                AuthleteApi.class.getClassLoader(), new Class<?>[] { AuthleteApi.class }, handler);
+    }
+
+}
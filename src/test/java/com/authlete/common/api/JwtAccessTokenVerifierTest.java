@@ -0,0 +1,447 @@
+/*
+ * Copyright (C) 2020 Authlete, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.authlete.common.api;
+
+
+import static org.junit.Assert.*;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.Signature;
+import java.security.interfaces.ECPublicKey;
+import java.security.interfaces.RSAPublicKey;
+import java.security.spec.ECGenParameterSpec;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+import com.authlete.common.dto.IntrospectionRequest;
+import com.authlete.common.dto.IntrospectionResponse;
+import com.authlete.common.dto.IntrospectionResponse.Action;
+
+
+public class JwtAccessTokenVerifierTest
+{
+    private static final String ISSUER = "https://as.example.com";
+
+
+    private static final KeyPair RSA_KEY_PAIR = generateKeyPair("RSA");
+    private static final KeyPair EC_KEY_PAIR  = generateKeyPair("EC");
+
+
+    private static KeyPair generateKeyPair(String algorithm)
+    {
+        try
+        {
+            KeyPairGenerator generator = KeyPairGenerator.getInstance(algorithm);
+
+            if ("EC".equals(algorithm))
+            {
+                generator.initialize(new ECGenParameterSpec("secp256r1"));
+            }
+            else
+            {
+                generator.initialize(2048);
+            }
+
+            return generator.generateKeyPair();
+        }
+        catch (Exception e)
+        {
+            throw new IllegalStateException(e);
+        }
+    }
+
+
+    private static String base64url(byte[] bytes)
+    {
+        return JwsSupport.encodeBase64Url(bytes);
+    }
+
+
+    private static String base64url(String str) throws Exception
+    {
+        return base64url(str.getBytes("UTF-8"));
+    }
+
+
+    private static String unsigned(byte[] bytes)
+    {
+        // Drop the sign byte of BigInteger.toByteArray() if any.
+        if (bytes.length > 1 && bytes[0] == 0)
+        {
+            byte[] copy = new byte[bytes.length - 1];
+            System.arraycopy(bytes, 1, copy, 0, copy.length);
+            bytes = copy;
+        }
+
+        return base64url(bytes);
+    }
+
+
+    private static byte[] fixedLength(byte[] bytes, int length)
+    {
+        byte[] result = new byte[length];
+        int copy = Math.min(bytes.length, length);
+        System.arraycopy(bytes, bytes.length - copy, result, length - copy, copy);
+
+        return result;
+    }
+
+
+    private static String jwks()
+    {
+        RSAPublicKey rsa = (RSAPublicKey)RSA_KEY_PAIR.getPublic();
+        ECPublicKey  ec  = (ECPublicKey)EC_KEY_PAIR.getPublic();
+
+        return "{\"keys\":[" +
+            "{\"kty\":\"RSA\",\"kid\":\"rsa1\",\"use\":\"sig\"," +
+            "\"n\":\"" + unsigned(rsa.getModulus().toByteArray()) + "\"," +
+            "\"e\":\"" + unsigned(rsa.getPublicExponent().toByteArray()) + "\"}," +
+            "{\"kty\":\"EC\",\"kid\":\"ec1\",\"crv\":\"P-256\"," +
+            "\"x\":\"" + base64url(fixedLength(ec.getW().getAffineX().toByteArray(), 32)) + "\"," +
+            "\"y\":\"" + base64url(fixedLength(ec.getW().getAffineY().toByteArray(), 32)) + "\"}" +
+            "]}";
+    }
+
+
+    private static String sign(String alg, String kid, String typ, String payload) throws Exception
+    {
+        String header = "{\"alg\":\"" + alg + "\",\"kid\":\"" + kid + "\",\"typ\":\"" + typ + "\"}";
+        String input  = base64url(header) + "." + base64url(payload);
+
+        byte[] signature;
+
+        if (alg.startsWith("RS"))
+        {
+            Signature signer = Signature.getInstance("SHA256withRSA");
+            signer.initSign(RSA_KEY_PAIR.getPrivate());
+            signer.update(input.getBytes("US-ASCII"));
+            signature = signer.sign();
+        }
+        else
+        {
+            Signature signer = Signature.getInstance("SHA256withECDSA");
+            signer.initSign(EC_KEY_PAIR.getPrivate());
+            signer.update(input.getBytes("US-ASCII"));
+            signature = derToConcat(signer.sign(), 32);
+        }
+
+        return input + "." + base64url(signature);
+    }
+
+
+    private static byte[] derToConcat(byte[] der, int length)
+    {
+        // SEQUENCE { INTEGER r, INTEGER s } with short-form lengths.
+        int rLength = der[3];
+        byte[] r = new byte[rLength];
+        System.arraycopy(der, 4, r, 0, rLength);
+
+        int sLength = der[5 + rLength];
+        byte[] s = new byte[sLength];
+        System.arraycopy(der, 6 + rLength, s, 0, sLength);
+
+        byte[] result = new byte[length * 2];
+        System.arraycopy(fixedLength(r, length), 0, result, 0, length);
+        System.arraycopy(fixedLength(s, length), 0, result, length, length);
+
+        return result;
+    }
+
+
+    private static String payload(long exp, String scope)
+    {
+        return "{\"iss\":\"" + ISSUER + "\",\"sub\":\"user1\",\"client_id\":\"1234\",\"aud\":[\"https://rs.example.com\"]," +
+            "\"exp\":" + exp + ",\"scope\":\"" + scope + "\"}";
+    }
+
+
+    private static long now()
+    {
+        return System.currentTimeMillis() / 1000L;
+    }
+
+
+    private static AuthleteApi createApi(AtomicInteger introspectionCount)
+    {
+        return createApi(introspectionCount, jwks());
+    }
+
+
+    private static AuthleteApi createApi(final AtomicInteger introspectionCount, final String jwks)
+    {
+        return new FakeAuthleteApi()
+            .on("getServiceJwks", new FakeAuthleteApi.Handler() {
+                @Override
+                public Object handle(Object[] args)
+                {
+                    return jwks;
+                }
+            })
+            .on("getServiceConfiguration", new FakeAuthleteApi.Handler() {
+                @Override
+                public Object handle(Object[] args)
+                {
+                    return "{\"issuer\":\"" + ISSUER + "\"}";
+                }
+            })
+            .on("introspection", new FakeAuthleteApi.Handler() {
+                @Override
+                public Object handle(Object[] args)
+                {
+                    introspectionCount.incrementAndGet();
+
+                    IntrospectionResponse response = new IntrospectionResponse();
+                    response.setAction(Action.OK);
+                    response.setResultMessage("remote");
+
+                    return response;
+                }
+            })
+            .create();
+    }
+
+
+    @Test
+    public void test_valid_rs256()
+    {
+        AtomicInteger count = new AtomicInteger();
+        JwtAccessTokenVerifier verifier = new JwtAccessTokenVerifier(createApi(count))
+            .setAudiences("https://rs.example.com");
+
+        IntrospectionResponse response = verifier.introspect(new IntrospectionRequest()
+            .setToken(sign0("RS256", "rsa1", payload(now() + 600, "read write")))
+            .setScopes(new String[] { "read" }));
+
+        assertEquals(Action.OK, response.getAction());
+        assertEquals(1234L, response.getClientId());
+        assertEquals("user1", response.getSubject());
+        assertArrayEquals(new String[] { "read", "write" }, response.getScopes());
+        assertTrue(response.isUsable());
+        assertTrue(response.isSufficient());
+        assertNull(response.getResponseContent());
+        assertEquals(0, count.get());
+    }
+
+
+    @Test
+    public void test_valid_es256()
+    {
+        AtomicInteger count = new AtomicInteger();
+        JwtAccessTokenVerifier verifier = new JwtAccessTokenVerifier(createApi(count));
+
+        IntrospectionResponse response = verifier.introspect(new IntrospectionRequest()
+            .setToken(sign0("ES256", "ec1", payload(now() + 600, "read"))));
+
+        assertEquals(Action.OK, response.getAction());
+        assertEquals(0, count.get());
+    }
+
+
+    @Test
+    public void test_expired()
+    {
+        AtomicInteger count = new AtomicInteger();
+        JwtAccessTokenVerifier verifier = new JwtAccessTokenVerifier(createApi(count));
+
+        IntrospectionResponse response = verifier.introspect(new IntrospectionRequest()
+            .setToken(sign0("RS256", "rsa1", payload(now() - 10, "read"))));
+
+        assertEquals(Action.UNAUTHORIZED, response.getAction());
+        assertEquals(0, count.get());
+    }
+
+
+    @Test
+    public void test_insufficient_scope()
+    {
+        AtomicInteger count = new AtomicInteger();
+        JwtAccessTokenVerifier verifier = new JwtAccessTokenVerifier(createApi(count));
+
+        IntrospectionResponse response = verifier.introspect(new IntrospectionRequest()
+            .setToken(sign0("RS256", "rsa1", payload(now() + 600, "read")))
+            .setScopes(new String[] { "write" }));
+
+        assertEquals(Action.FORBIDDEN, response.getAction());
+        assertFalse(response.isSufficient());
+    }
+
+
+    @Test
+    public void test_wrong_audience()
+    {
+        AtomicInteger count = new AtomicInteger();
+        JwtAccessTokenVerifier verifier = new JwtAccessTokenVerifier(createApi(count))
+            .setAudiences("https://other.example.com");
+
+        IntrospectionResponse response = verifier.introspect(new IntrospectionRequest()
+            .setToken(sign0("RS256", "rsa1", payload(now() + 600, "read"))));
+
+        assertEquals(Action.UNAUTHORIZED, response.getAction());
+    }
+
+
+    @Test
+    public void test_tampered()
+    {
+        AtomicInteger count = new AtomicInteger();
+        JwtAccessTokenVerifier verifier = new JwtAccessTokenVerifier(createApi(count));
+
+        String token = sign0("RS256", "rsa1", payload(now() + 600, "read"));
+        String[] parts = token.split("\\.");
+        String tampered = parts[0] + "." + base64url0(payload(now() + 600, "admin")) + "." + parts[2];
+
+        IntrospectionResponse response = verifier.introspect(
+            new IntrospectionRequest().setToken(tampered));
+
+        assertEquals(Action.UNAUTHORIZED, response.getAction());
+        assertEquals(0, count.get());
+    }
+
+
+    @Test
+    public void test_fallback()
+    {
+        AtomicInteger count = new AtomicInteger();
+        JwtAccessTokenVerifier verifier = new JwtAccessTokenVerifier(createApi(count));
+
+        // Opaque access token.
+        verifier.introspect(new IntrospectionRequest().setToken("opaque-token"));
+        assertEquals(1, count.get());
+
+        // Unknown key ID.
+        verifier.introspect(new IntrospectionRequest()
+            .setToken(sign0("RS256", "unknown", payload(now() + 600, "read"))));
+        assertEquals(2, count.get());
+
+        // Revocation checking.
+        IntrospectionResponse response = verifier.introspect(new IntrospectionRequest()
+            .setToken(sign0("RS256", "rsa1", payload(now() + 600, "read"))), true);
+        assertEquals("remote", response.getResultMessage());
+        assertEquals(3, count.get());
+    }
+
+
+    @Test
+    public void test_not_access_token()
+    {
+        AtomicInteger count = new AtomicInteger();
+        JwtAccessTokenVerifier verifier = new JwtAccessTokenVerifier(createApi(count));
+
+        // An ID token signed with the same key, or a JWT access token of
+        // an issuer which does not set 'typ'. Checked by Authlete.
+        IntrospectionRequest request = new IntrospectionRequest()
+            .setToken(sign0("RS256", "rsa1", "JWT", payload(now() + 600, "read")));
+        IntrospectionResponse response = verifier.introspect(request);
+
+        assertEquals("remote", response.getResultMessage());
+        assertEquals(1, count.get());
+
+        // Rejected locally when 'at+jwt' is required.
+        response = verifier.setAccessTokenTypeRequired(true).introspect(request);
+
+        assertEquals(Action.UNAUTHORIZED, response.getAction());
+        assertEquals(1, count.get());
+    }
+
+
+    @Test
+    public void test_wrong_issuer()
+    {
+        AtomicInteger count = new AtomicInteger();
+        JwtAccessTokenVerifier verifier = new JwtAccessTokenVerifier(createApi(count));
+
+        IntrospectionResponse response = verifier.introspect(new IntrospectionRequest()
+            .setToken(sign0("RS256", "rsa1", payload(now() + 600, "read").replace(ISSUER, "https://evil.example.com"))));
+
+        assertEquals(Action.UNAUTHORIZED, response.getAction());
+
+        // The configured issuer takes precedence over the discovered one.
+        verifier = new JwtAccessTokenVerifier(createApi(count)).setIssuer("https://other.example.com");
+
+        response = verifier.introspect(new IntrospectionRequest()
+            .setToken(sign0("RS256", "rsa1", payload(now() + 600, "read"))));
+
+        assertEquals(Action.UNAUTHORIZED, response.getAction());
+        assertEquals(0, count.get());
+    }
+
+
+    @Test
+    public void test_missing_exp()
+    {
+        AtomicInteger count = new AtomicInteger();
+        JwtAccessTokenVerifier verifier = new JwtAccessTokenVerifier(createApi(count));
+
+        String payload = "{\"iss\":\"" + ISSUER + "\",\"sub\":\"user1\",\"scope\":\"read\"}";
+
+        IntrospectionResponse response = verifier.introspect(new IntrospectionRequest()
+            .setToken(sign0("RS256", "rsa1", payload)));
+
+        assertEquals(Action.UNAUTHORIZED, response.getAction());
+
+        response = verifier.introspect(new IntrospectionRequest()
+            .setToken(sign0("RS256", "rsa1", payload.replace("}", ",\"exp\":\"never\"}"))));
+
+        assertEquals(Action.UNAUTHORIZED, response.getAction());
+        assertEquals(0, count.get());
+    }
+
+
+    @Test
+    public void test_malformed_jwks()
+    {
+        AtomicInteger count = new AtomicInteger();
+        JwtAccessTokenVerifier verifier = new JwtAccessTokenVerifier(createApi(count, "{\"keys\":["));
+
+        // The token is sent to Authlete instead of the JSON error escaping.
+        IntrospectionResponse response = verifier.introspect(new IntrospectionRequest()
+            .setToken(sign0("RS256", "rsa1", payload(now() + 600, "read"))));
+
+        assertEquals("remote", response.getResultMessage());
+        assertEquals(1, count.get());
+    }
+
+
+    private static String sign0(String alg, String kid, String payload)
+    {
+        return sign0(alg, kid, "at+jwt", payload);
+    }
+
+
+    private static String sign0(String alg, String kid, String typ, String payload)
+    {
+        try
+        {
+            return sign(alg, kid, typ, payload);
+        }
+        catch (Exception e)
+        {
+            throw new IllegalStateException(e);
+        }
+    }
+
+
+    private static String base64url0(String str)
+    {
+        try
+        {
+            return base64url(str);
+        }
+        catch (Exception e)
+        {
+            throw new IllegalStateException(e);
+        }
+    }
+}
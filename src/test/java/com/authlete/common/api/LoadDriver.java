@@ -0,0 +1,222 @@
+/*
+ * Copyright (C) 2020 Authlete, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.authlete.common.api;
+
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import com.authlete.common.util.LatencyRecorder;
+
+
+/**
+ * Driver which runs an operation from multiple threads and measures the
+ * throughput and latency percentiles.
+ */
+public class LoadDriver
+{
+    /**
+     * Operation to measure.
+     */
+    public interface Operation
+    {
+        void run() throws Exception;
+    }
+
+
+    /**
+     * Result of a run.
+     */
+    public static class Report
+    {
+        private final String mName;
+        private final LatencyRecorder mLatencies;
+        private final int mErrors;
+        private final long mElapsedNanos;
+
+
+        Report(String name, LatencyRecorder latencies, int errors, long elapsedNanos)
+        {
+            mName         = name;
+            mLatencies    = latencies;
+            mErrors       = errors;
+            mElapsedNanos = elapsedNanos;
+        }
+
+
+        public int getCount()
+        {
+            return mLatencies.getCount();
+        }
+
+
+        public int getErrors()
+        {
+            return mErrors;
+        }
+
+
+        /**
+         * Get the number of operations per second.
+         */
+        public double getThroughput()
+        {
+            return mLatencies.getCount() * (double)TimeUnit.SECONDS.toNanos(1) / Math.max(1, mElapsedNanos);
+        }
+
+
+        /**
+         * Get the latency at the percentile (0 - 100) in microseconds.
+         */
+        public long getPercentile(double percentile)
+        {
+            return TimeUnit.NANOSECONDS.toMicros(mLatencies.getPercentile(percentile));
+        }
+
+
+        @Override
+        public String toString()
+        {
+            return String.format(
+                "%s: count=%d, errors=%d, throughput=%.1f/s, p50=%dus, p90=%dus, p99=%dus, max=%dus",
+                mName, getCount(), mErrors, getThroughput(),
+                getPercentile(50), getPercentile(90), getPercentile(99), getPercentile(100));
+        }
+    }
+
+
+    private int mThreads = 4;
+    private int mIterations = 100;
+    private int mWarmup = 10;
+
+
+    public LoadDriver setThreads(int threads)
+    {
+        mThreads = threads;
+
+        return this;
+    }
+
+
+    /**
+     * Set the number of measured operations per thread.
+     */
+    public LoadDriver setIterations(int iterations)
+    {
+        mIterations = iterations;
+
+        return this;
+    }
+
+
+    /**
+     * Set the number of unmeasured operations per thread run before the
+     * measurement.
+     */
+    public LoadDriver setWarmup(int warmup)
+    {
+        mWarmup = warmup;
+
+        return this;
+    }
+
+
+    public Report run(String name, final Operation operation) throws InterruptedException
+    {
+        final LatencyRecorder[] recorders = new LatencyRecorder[mThreads];
+        final AtomicInteger errors = new AtomicInteger();
+        final CountDownLatch ready = new CountDownLatch(mThreads);
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch done  = new CountDownLatch(mThreads);
+        Thread[] threads = new Thread[mThreads];
+
+        for (int t = 0; t < mThreads; ++t)
+        {
+            final LatencyRecorder recorder = recorders[t] = new LatencyRecorder();
+
+            threads[t] = new Thread(new Runnable() {
+                @Override
+                public void run()
+                {
+                    try
+                    {
+                        for (int i = 0; i < mWarmup; ++i)
+                        {
+                            execute(operation);
+                        }
+
+                        ready.countDown();
+                        start.await();
+
+                        for (int i = 0; i < mIterations; ++i)
+                        {
+                            long begin = System.nanoTime();
+
+                            if (execute(operation) == false)
+                            {
+                                errors.incrementAndGet();
+                            }
+
+                            recorder.record(System.nanoTime() - begin);
+                        }
+                    }
+                    catch (InterruptedException e)
+                    {
+                        Thread.currentThread().interrupt();
+                    }
+                    finally
+                    {
+                        done.countDown();
+                    }
+                }
+            }, "load-driver-" + t);
+
+            threads[t].setDaemon(true);
+            threads[t].start();
+        }
+
+        ready.await();
+
+        long begin = System.nanoTime();
+        start.countDown();
+        done.await();
+        long elapsed = System.nanoTime() - begin;
+
+        LatencyRecorder latencies = new LatencyRecorder();
+
+        for (LatencyRecorder recorder : recorders)
+        {
+            latencies.merge(recorder);
+        }
+
+        return new Report(name, latencies, errors.get(), elapsed);
+    }
+
+
+    private static boolean execute(Operation operation)
+    {
+        try
+        {
+            operation.run();
+
+            return true;
+        }
+        catch (Exception e)
+        {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,243 @@
+/*
+ * Copyright (C) 2020 Authlete, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.authlete.common.api;
+
+
+import static org.junit.Assert.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+import com.authlete.common.conf.AuthleteSimpleConfiguration;
+import com.authlete.common.dto.IntrospectionRequest;
+import com.authlete.common.web.AuthorizationHeader;
+
+
+public class RefreshingAccessTokenProviderTest
+{
+    @Test
+    public void test_single_flight_initial_fetch() throws Exception
+    {
+        final AtomicInteger fetches = new AtomicInteger();
+
+        final RefreshingAccessTokenProvider provider = new RefreshingAccessTokenProvider(
+            new RefreshingAccessTokenProvider.Fetcher() {
+                @Override
+                public RefreshingAccessTokenProvider.Token fetch() throws Exception
+                {
+                    Thread.sleep(50);
+
+                    return new RefreshingAccessTokenProvider.Token(
+                        "token" + fetches.incrementAndGet(), System.currentTimeMillis() + 600000);
+                }
+            });
+
+        final CountDownLatch start = new CountDownLatch(1);
+        final List<AuthorizationHeader> headers = new ArrayList<AuthorizationHeader>();
+        List<Thread> threads = new ArrayList<Thread>();
+
+        for (int i = 0; i < 8; ++i)
+        {
+            Thread thread = new Thread() {
+                @Override
+                public void run()
+                {
+                    try
+                    {
+                        start.await();
+                        AuthorizationHeader header = provider.getAuthorization();
+
+                        synchronized (headers)
+                        {
+                            headers.add(header);
+                        }
+                    }
+                    catch (InterruptedException e)
+                    {
+                    }
+                }
+            };
+
+            thread.start();
+            threads.add(thread);
+        }
+
+        start.countDown();
+
+        for (Thread thread : threads)
+        {
+            thread.join();
+        }
+
+        provider.close();
+
+        assertEquals(1, fetches.get());
+        assertEquals(8, headers.size());
+
+        for (AuthorizationHeader header : headers)
+        {
+            assertEquals("Bearer token1", header.getValue());
+        }
+    }
+
+
+    @Test
+    public void test_background_refresh() throws Exception
+    {
+        final AtomicInteger fetches = new AtomicInteger();
+
+        RefreshingAccessTokenProvider provider = new RefreshingAccessTokenProvider(
+            new RefreshingAccessTokenProvider.Fetcher() {
+                @Override
+                public RefreshingAccessTokenProvider.Token fetch() throws Exception
+                {
+                    // The margin is clamped to half the lifetime, 100 ms.
+                    return new RefreshingAccessTokenProvider.Token(
+                        "token" + fetches.incrementAndGet(), System.currentTimeMillis() + 200);
+                }
+            });
+
+        assertEquals("Bearer token1", provider.getAuthorization().getValue());
+
+        // Not within the margin yet.
+        assertEquals("Bearer token1", provider.getAuthorization().getValue());
+        assertEquals(1, fetches.get());
+
+        Thread.sleep(120);
+
+        // The current token is returned while the new one is being fetched.
+        assertEquals("Bearer token1", provider.getAuthorization().getValue());
+
+        for (int i = 0; i < 100 && fetches.get() < 2; ++i)
+        {
+            Thread.sleep(10);
+        }
+
+        assertTrue(2 <= fetches.get());
+        assertNotEquals("Bearer token1", provider.getAuthorization().getValue());
+
+        provider.close();
+    }
+
+
+    @Test
+    public void test_short_lifetime() throws Exception
+    {
+        final AtomicInteger fetches = new AtomicInteger();
+
+        RefreshingAccessTokenProvider provider = new RefreshingAccessTokenProvider(
+            new RefreshingAccessTokenProvider.Fetcher() {
+                @Override
+                public RefreshingAccessTokenProvider.Token fetch() throws Exception
+                {
+                    // Shorter than the default refresh margin.
+                    return new RefreshingAccessTokenProvider.Token(
+                        "token" + fetches.incrementAndGet(), System.currentTimeMillis() + 30000);
+                }
+            });
+
+        for (int i = 0; i < 100; ++i)
+        {
+            assertEquals("Bearer token1", provider.getAuthorization().getValue());
+        }
+
+        Thread.sleep(50);
+
+        assertEquals(1, fetches.get());
+
+        provider.close();
+    }
+
+
+    @Test
+    public void test_retry_interval() throws Exception
+    {
+        final AtomicInteger fetches = new AtomicInteger();
+
+        RefreshingAccessTokenProvider provider = new RefreshingAccessTokenProvider(
+            new RefreshingAccessTokenProvider.Fetcher() {
+                @Override
+                public RefreshingAccessTokenProvider.Token fetch() throws Exception
+                {
+                    if (fetches.incrementAndGet() == 1)
+                    {
+                        throw new Exception("unavailable");
+                    }
+
+                    return new RefreshingAccessTokenProvider.Token("at", 0);
+                }
+            }).setRetryInterval(100);
+
+        for (int i = 0; i < 10; ++i)
+        {
+            try
+            {
+                provider.getAuthorization();
+                fail();
+            }
+            catch (AuthleteApiException e)
+            {
+                assertTrue(e.getMessage().contains("unavailable"));
+            }
+        }
+
+        // The fetcher is not called again during the retry interval.
+        assertEquals(1, fetches.get());
+
+        Thread.sleep(150);
+
+        assertEquals("Bearer at", provider.getAuthorization().getValue());
+        assertEquals(2, fetches.get());
+
+        provider.close();
+    }
+
+
+    @Test
+    public void test_api_call_with_provider() throws Exception
+    {
+        StubAuthleteServer server = new StubAuthleteServer();
+
+        try
+        {
+            AuthleteApiImpl api = new AuthleteApiImpl(new AuthleteSimpleConfiguration()
+                .setBaseUrl(server.getBaseUrl())
+                .setServiceApiKey("1")
+                .setServiceApiSecret("secret"));
+
+            RefreshingAccessTokenProvider provider = new RefreshingAccessTokenProvider(
+                new RefreshingAccessTokenProvider.Fetcher() {
+                    @Override
+                    public RefreshingAccessTokenProvider.Token fetch() throws Exception
+                    {
+                        return new RefreshingAccessTokenProvider.Token("at", 0);
+                    }
+                });
+
+            api.getSettings().setServiceAccessTokenProvider(provider);
+            api.introspection(new IntrospectionRequest().setToken("x"));
+
+            assertEquals("Bearer at", server.getLastAuthorization());
+
+            provider.close();
+        }
+        finally
+        {
+            server.close();
+        }
+    }
+}
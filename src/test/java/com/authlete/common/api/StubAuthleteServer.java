@@ -0,0 +1,370 @@
+/*
+ * Copyright (C) 2020 Authlete, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.authlete.common.api;
+
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+
+/**
+ * In-process stand-in of Authlete server for tests and load tests.
+ *
+ * <p>
+ * Every path under {@code /api/} is answered. The response body is the
+ * canned JSON registered for the longest matching path prefix, or a
+ * generic successful response ({@code "action":"OK"}). Realistic canned
+ * responses of all the APIs called by {@link AuthleteApiImpl} are
+ * registered initially and can be replaced by {@link #setResponse(String,
+ * String)}. Latency, errors and connection reuse can be configured.
+ * </p>
+ *
+ * <p>
+ * On kept-alive connections, the JDK's HTTP server sends a response body
+ * after the delayed ACK of the client unless the system property {@code
+ * sun.net.httpserver.nodelay} is {@code true}, and every request takes
+ * about 40 milliseconds. Load tests should set the property before the
+ * first server in the JVM is created.
+ * </p>
+ */
+public class StubAuthleteServer implements Closeable
+{
+    private static final String DEFAULT_RESPONSE =
+        "{\"resultCode\":\"A000000\",\"resultMessage\":\"stub\",\"action\":\"OK\"}";
+
+    private static final String ERROR_RESPONSE =
+        "{\"resultCode\":\"A000500\",\"resultMessage\":\"injected error\"}";
+
+    private static final String SERVICE =
+        "{\"number\":1,\"apiKey\":1001,\"serviceName\":\"stub service\",\"issuer\":\"https://as.example.com\"," +
+        "\"supportedScopes\":[{\"name\":\"openid\"},{\"name\":\"profile\"}]," +
+        "\"supportedGrantTypes\":[\"AUTHORIZATION_CODE\",\"REFRESH_TOKEN\"],\"accessTokenDuration\":3600}";
+
+    private static final String CLIENT =
+        "{\"number\":2,\"serviceNumber\":1,\"clientId\":1002,\"clientIdAlias\":\"stub-client\"," +
+        "\"clientName\":\"stub client\",\"clientType\":\"CONFIDENTIAL\"," +
+        "\"redirectUris\":[\"https://client.example.com/cb\"],\"grantTypes\":[\"AUTHORIZATION_CODE\"]," +
+        "\"responseTypes\":[\"CODE\"]}";
+
+    private static final String ACCESS_TOKEN =
+        "{\"accessTokenHash\":\"stub-hash\",\"clientId\":1002,\"subject\":\"user\"," +
+        "\"scopes\":[\"openid\"],\"createdAt\":1600000000000,\"expiresAt\":1600003600000}";
+
+    /**
+     * Canned responses of the APIs called by {@link AuthleteApiImpl}.
+     */
+    private static final String[][] CANNED_RESPONSES = {
+        { "/api/auth/authorization", response("A004001",
+            "\"action\":\"INTERACTION\",\"service\":" + SERVICE + ",\"client\":" + CLIENT + "," +
+            "\"scopes\":[{\"name\":\"openid\"}],\"ticket\":\"stub-ticket\"") },
+        { "/api/auth/authorization/fail", response("A004201",
+            "\"action\":\"LOCATION\",\"responseContent\":\"https://client.example.com/cb?error=access_denied\"") },
+        { "/api/auth/authorization/issue", response("A040001",
+            "\"action\":\"LOCATION\",\"responseContent\":\"https://client.example.com/cb?code=stub-code\"," +
+            "\"authorizationCode\":\"stub-code\"") },
+        { "/api/auth/introspection", response("A056001",
+            "\"action\":\"OK\",\"clientId\":1002,\"subject\":\"user\",\"scopes\":[\"openid\",\"profile\"]," +
+            "\"expiresAt\":1600003600000,\"existent\":true,\"usable\":true,\"sufficient\":true") },
+        { "/api/auth/introspection/standard", response("A145001",
+            "\"action\":\"OK\",\"responseContent\":\"{\\\"active\\\":true,\\\"sub\\\":\\\"user\\\"}\"") },
+        { "/api/auth/revocation", response("A114001",
+            "\"action\":\"OK\"") },
+        { "/api/auth/token", response("A050001",
+            "\"action\":\"OK\",\"responseContent\":\"{\\\"access_token\\\":\\\"stub-access-token\\\"}\"," +
+            "\"accessToken\":\"stub-access-token\",\"refreshToken\":\"stub-refresh-token\"," +
+            "\"clientId\":1002,\"subject\":\"user\",\"scopes\":[\"openid\"]") },
+        { "/api/auth/token/create", response("A109001",
+            "\"action\":\"OK\",\"accessToken\":\"stub-access-token\",\"refreshToken\":\"stub-refresh-token\"," +
+            "\"expiresIn\":3600,\"clientId\":1002,\"subject\":\"user\",\"scopes\":[\"openid\"]") },
+        { "/api/auth/token/fail", response("A067301",
+            "\"action\":\"BAD_REQUEST\",\"responseContent\":\"{\\\"error\\\":\\\"invalid_grant\\\"}\"") },
+        { "/api/auth/token/get/list", "{\"start\":0,\"end\":1,\"totalCount\":1,\"accessTokens\":[" + ACCESS_TOKEN + "]}" },
+        { "/api/auth/token/issue", response("A066001",
+            "\"action\":\"OK\",\"accessToken\":\"stub-access-token\"") },
+        { "/api/auth/token/update", response("A135001",
+            "\"action\":\"OK\",\"accessToken\":\"stub-access-token\",\"scopes\":[\"openid\"]") },
+        { "/api/auth/userinfo", response("A091001",
+            "\"action\":\"OK\",\"clientId\":1002,\"subject\":\"user\",\"scopes\":[\"openid\"],\"claims\":[\"name\"]") },
+        { "/api/auth/userinfo/issue", response("A096001",
+            "\"action\":\"JSON\",\"responseContent\":\"{\\\"sub\\\":\\\"user\\\"}\"") },
+        { "/api/backchannel/authentication", response("A179001",
+            "\"action\":\"USER_IDENTIFICATION\",\"clientId\":1002,\"hintType\":\"LOGIN_HINT\",\"hint\":\"user\"," +
+            "\"scopes\":[{\"name\":\"openid\"}],\"ticket\":\"stub-ticket\"") },
+        { "/api/backchannel/authentication/complete", response("A198001",
+            "\"action\":\"NO_ACTION\",\"clientId\":1002") },
+        { "/api/backchannel/authentication/fail", response("A184001",
+            "\"action\":\"FORBIDDEN\",\"responseContent\":\"{\\\"error\\\":\\\"access_denied\\\"}\"") },
+        { "/api/backchannel/authentication/issue", response("A182001",
+            "\"action\":\"OK\",\"authReqId\":\"stub-auth-req-id\",\"expiresIn\":600,\"interval\":5") },
+        { "/api/client/authorization/get/list", "{\"start\":0,\"end\":1,\"totalCount\":1,\"subject\":\"user\",\"clients\":[" + CLIENT + "]}" },
+        { "/api/client/create", CLIENT },
+        { "/api/client/extension/requestable_scopes/", "{\"requestableScopes\":[\"openid\",\"profile\"]}" },
+        { "/api/client/get/", CLIENT },
+        { "/api/client/get/list", "{\"start\":0,\"end\":1,\"totalCount\":1,\"clients\":[" + CLIENT + "]}" },
+        { "/api/client/granted_scopes/get/", response("A155001",
+            "\"serviceApiKey\":1001,\"clientId\":1002,\"subject\":\"user\"," +
+            "\"latestGrantedScopes\":[\"openid\"],\"mergedGrantedScopes\":[\"openid\"]") },
+        { "/api/client/registration", response("A162001",
+            "\"action\":\"CREATED\",\"responseContent\":\"{\\\"client_id\\\":\\\"1002\\\"}\",\"client\":" + CLIENT) },
+        { "/api/client/registration/delete", response("A163001", "\"action\":\"DELETED\"") },
+        { "/api/client/registration/get", response("A164001", "\"action\":\"OK\",\"client\":" + CLIENT) },
+        { "/api/client/registration/update", response("A165001", "\"action\":\"UPDATED\",\"client\":" + CLIENT) },
+        { "/api/client/secret/", response("A148001",
+            "\"newClientSecret\":\"new-secret\",\"oldClientSecret\":\"old-secret\"") },
+        { "/api/client/update/", CLIENT },
+        { "/api/device/authorization", response("A215001",
+            "\"action\":\"OK\",\"clientId\":1002,\"deviceCode\":\"stub-device-code\",\"userCode\":\"BCDF-GHJK\"," +
+            "\"verificationUri\":\"https://as.example.com/device\",\"expiresIn\":600,\"interval\":5") },
+        { "/api/device/complete", response("A241001", "\"action\":\"SUCCESS\"") },
+        { "/api/device/verification", response("A219001",
+            "\"action\":\"VALID\",\"clientId\":1002,\"scopes\":[{\"name\":\"openid\"}],\"expiresAt\":1600000600000") },
+        { "/api/jose/verify", response("A250001", "\"valid\":true,\"signatureValid\":true") },
+        { "/api/pushed_auth_req", response("A245001",
+            "\"action\":\"CREATED\",\"requestUri\":\"urn:ietf:params:oauth:request_uri:stub\"") },
+        { "/api/service/configuration",
+            "{\"issuer\":\"https://as.example.com\",\"authorization_endpoint\":\"https://as.example.com/authorize\"," +
+            "\"token_endpoint\":\"https://as.example.com/token\",\"jwks_uri\":\"https://as.example.com/jwks\"}" },
+        { "/api/service/create", SERVICE },
+        { "/api/service/get/", SERVICE },
+        { "/api/service/get/list", "{\"start\":0,\"end\":1,\"totalCount\":1,\"services\":[" + SERVICE + "]}" },
+        { "/api/service/jwks/get", "{\"keys\":[]}" },
+        { "/api/service/update/", SERVICE },
+    };
+
+
+    private final HttpServer mServer;
+    private final ExecutorService mExecutor;
+    private final TreeMap<String, String> mResponses = new TreeMap<String, String>();
+    private final AtomicLong mRequestCount = new AtomicLong();
+    private final Random mRandom = new Random();
+    private volatile long mLatencyMillis;
+    private volatile double mErrorRate;
+    private volatile boolean mKeepAlive = true;
+    private volatile String mLastAuthorization;
+
+
+    public StubAuthleteServer() throws IOException
+    {
+        this(16);
+    }
+
+
+    public StubAuthleteServer(int threads) throws IOException
+    {
+        for (String[] canned : CANNED_RESPONSES)
+        {
+            mResponses.put(canned[0], canned[1]);
+        }
+
+        mServer   = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        mExecutor = Executors.newFixedThreadPool(threads);
+
+        mServer.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException
+            {
+                StubAuthleteServer.this.handle(exchange);
+            }
+        });
+        mServer.setExecutor(mExecutor);
+        mServer.start();
+    }
+
+
+    public String getBaseUrl()
+    {
+        return "http://127.0.0.1:" + mServer.getAddress().getPort();
+    }
+
+
+    /**
+     * Register the response body for requests whose path starts with the prefix.
+     */
+    public synchronized StubAuthleteServer setResponse(String pathPrefix, String json)
+    {
+        mResponses.put(pathPrefix, json);
+
+        return this;
+    }
+
+
+    public StubAuthleteServer setLatency(long millis)
+    {
+        mLatencyMillis = millis;
+
+        return this;
+    }
+
+
+    /**
+     * Set the ratio (0.0 - 1.0) of requests answered with 500 Internal Server Error.
+     */
+    public StubAuthleteServer setErrorRate(double rate)
+    {
+        mErrorRate = rate;
+
+        return this;
+    }
+
+
+    /**
+     * Set whether connections are kept alive. When false, every response
+     * has "Connection: close" and clients have to connect again.
+     */
+    public StubAuthleteServer setKeepAlive(boolean keepAlive)
+    {
+        mKeepAlive = keepAlive;
+
+        return this;
+    }
+
+
+    public long getRequestCount()
+    {
+        return mRequestCount.get();
+    }
+
+
+    /**
+     * Get the value of the Authorization header of the last request.
+     */
+    public String getLastAuthorization()
+    {
+        return mLastAuthorization;
+    }
+
+
+    @Override
+    public void close()
+    {
+        mServer.stop(0);
+        mExecutor.shutdownNow();
+    }
+
+
+    private void handle(HttpExchange exchange) throws IOException
+    {
+        mRequestCount.incrementAndGet();
+        mLastAuthorization = exchange.getRequestHeaders().getFirst("Authorization");
+
+        // Consume the request body.
+        drain(exchange.getRequestBody());
+
+        if (0 < mLatencyMillis)
+        {
+            sleep(mLatencyMillis);
+        }
+
+        int status;
+        String body;
+
+        if (0 < mErrorRate && nextDouble() < mErrorRate)
+        {
+            status = 500;
+            body   = ERROR_RESPONSE;
+        }
+        else
+        {
+            status = 200;
+            body   = findResponse(exchange.getRequestURI().getPath());
+        }
+
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+
+        exchange.getResponseHeaders().set("Content-Type", "application/json;charset=UTF-8");
+
+        if (mKeepAlive == false)
+        {
+            exchange.getResponseHeaders().set("Connection", "close");
+        }
+
+        exchange.sendResponseHeaders(status, bytes.length);
+
+        OutputStream out = exchange.getResponseBody();
+        out.write(bytes);
+        out.close();
+    }
+
+
+    private synchronized String findResponse(String path)
+    {
+        Map.Entry<String, String> entry = mResponses.floorEntry(path);
+
+        // Find the longest registered prefix of the path.
+        while (entry != null)
+        {
+            if (path.startsWith(entry.getKey()))
+            {
+                return entry.getValue();
+            }
+
+            entry = mResponses.lowerEntry(entry.getKey());
+        }
+
+        return DEFAULT_RESPONSE;
+    }
+
+
+    private static String response(String resultCode, String members)
+    {
+        return "{\"resultCode\":\"" + resultCode + "\",\"resultMessage\":\"stub\"," + members + "}";
+    }
+
+
+    private synchronized double nextDouble()
+    {
+        return mRandom.nextDouble();
+    }
+
+
+    private static void drain(InputStream in) throws IOException
+    {
+        byte[] buffer = new byte[4096];
+
+        while (in.read(buffer) != -1)
+        {
+        }
+
+        in.close();
+    }
+
+
+    private static void sleep(long millis)
+    {
+        try
+        {
+            Thread.sleep(millis);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
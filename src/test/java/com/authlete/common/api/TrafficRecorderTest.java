@@ -0,0 +1,179 @@
+/*
+ * Copyright (C) 2020 Authlete, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.authlete.common.api;
+
+
+import static org.junit.Assert.*;
+import java.io.StringReader;
+import java.io.StringWriter;
+import org.junit.Test;
+import com.authlete.common.conf.AuthleteSimpleConfiguration;
+import com.authlete.common.dto.IntrospectionRequest;
+import com.authlete.common.dto.TokenRequest;
+import com.authlete.common.util.JsonLinesReader;
+
+
+public class TrafficRecorderTest
+{
+    private static AuthleteSimpleConfiguration createConfiguration(StubAuthleteServer server)
+    {
+        return new AuthleteSimpleConfiguration()
+            .setBaseUrl(server.getBaseUrl())
+            .setServiceApiKey("1")
+            .setServiceApiSecret("service-secret")
+            .setServiceOwnerApiKey("2")
+            .setServiceOwnerApiSecret("owner-secret");
+    }
+
+
+    @Test
+    public void test_record_and_replay() throws Exception
+    {
+        StubAuthleteServer server = new StubAuthleteServer();
+
+        try
+        {
+            AuthleteApiImpl api = new AuthleteApiImpl(createConfiguration(server));
+            StringWriter writer = new StringWriter();
+            TrafficRecorder recorder = new TrafficRecorder(writer);
+            api.getSettings().setApiCallListener(recorder);
+
+            api.introspection(new IntrospectionRequest().setToken("at"));
+            api.getServiceList(0, 10);
+
+            server.setErrorRate(1.0);
+
+            try
+            {
+                api.getClient(1);
+                fail();
+            }
+            catch (AuthleteApiException e)
+            {
+                assertEquals(500, e.getStatusCode());
+            }
+
+            server.setErrorRate(0);
+            recorder.close();
+
+            String recorded = writer.toString();
+            assertFalse(recorded.contains("service-secret"));
+            assertFalse(recorded.contains("owner-secret"));
+            assertEquals(0, recorder.getDroppedCount());
+
+            JsonLinesReader reader = new JsonLinesReader(new StringReader(recorded));
+
+            ApiCall call = reader.next(ApiCall.class);
+            assertEquals("POST", call.getMethod());
+            assertEquals("/api/auth/introspection", call.getPath());
+            assertFalse(call.isServiceOwner());
+            assertTrue(call.getRequest().contains("\"token\":\"REDACTED\""));
+            assertEquals(200, call.getStatus());
+            assertNotNull(call.getResponse());
+
+            call = reader.next(ApiCall.class);
+            assertEquals("GET", call.getMethod());
+            assertTrue(call.isServiceOwner());
+            assertEquals("10", call.getQuery().get("end"));
+
+            call = reader.next(ApiCall.class);
+            assertEquals(500, call.getStatus());
+            assertNotNull(call.getError());
+            assertNull(reader.next(ApiCall.class));
+
+            // Replay. The last call succeeds this time.
+            long count = server.getRequestCount();
+
+            TrafficReplayer.Report report = new TrafficReplayer(createConfiguration(server))
+                .setSpeed(0).replay(new StringReader(recorded));
+
+            assertEquals(3, report.getCount());
+            assertEquals(0, report.getErrorCount());
+            assertEquals(1, report.getMismatchCount());
+            assertEquals(3, report.getLatencies().getCount());
+            assertEquals(count + 3, server.getRequestCount());
+        }
+        finally
+        {
+            server.close();
+        }
+    }
+
+
+    @Test
+    public void test_redaction() throws Exception
+    {
+        StubAuthleteServer server = new StubAuthleteServer();
+
+        try
+        {
+            AuthleteApiImpl api = new AuthleteApiImpl(createConfiguration(server));
+            StringWriter writer = new StringWriter();
+            TrafficRecorder recorder = new TrafficRecorder(writer);
+            api.getSettings().setApiCallListener(recorder);
+
+            api.token(new TokenRequest()
+                .setParameters("grant_type=authorization_code&code=my-code&client_secret=my-client-secret&redirect_uri=https%3A%2F%2Fclient.example.com%2Fcb")
+                .setClientId("1002")
+                .setClientSecret("my-secret"));
+            recorder.close();
+
+            String recorded = writer.toString();
+            assertFalse(recorded.contains("my-code"));
+            assertFalse(recorded.contains("my-client-secret"));
+            assertFalse(recorded.contains("my-secret"));
+
+            ApiCall call = new JsonLinesReader(new StringReader(recorded)).next(ApiCall.class);
+            assertTrue(call.getRequest().contains(
+                "grant_type=authorization_code&code=REDACTED&client_secret=REDACTED&redirect_uri=https%3A%2F%2Fclient.example.com%2Fcb"));
+            assertTrue(call.getRequest().contains("\"clientSecret\":\"REDACTED\""));
+            assertTrue(call.getRequest().contains("\"clientId\":\"1002\""));
+        }
+        finally
+        {
+            server.close();
+        }
+    }
+
+
+    @Test
+    public void test_redact_json()
+    {
+        String json = "{\"accessToken\":\"at\",\"refreshToken\":\"rt\",\"idToken\":\"it\","
+                    + "\"jwks\":\"{}\",\"subject\":\"user\",\"clients\":[{\"clientSecret\":\"cs\"}],"
+                    + "\"headers\":[{\"key\":\"Authorization\",\"value\":\"Bearer at\"}],"
+                    + "\"parameters\":\"grant_type=refresh_token&refresh_token=rt\"}";
+
+        assertEquals(
+                "{\"accessToken\":\"REDACTED\",\"refreshToken\":\"REDACTED\",\"idToken\":\"REDACTED\","
+              + "\"jwks\":\"REDACTED\",\"subject\":\"user\",\"clients\":[{\"clientSecret\":\"REDACTED\"}],"
+              + "\"headers\":[{\"key\":\"Authorization\",\"value\":\"REDACTED\"}],"
+              + "\"parameters\":\"grant_type=refresh_token&refresh_token=REDACTED\"}",
+                ApiCallRedactor.redactJson(json));
+
+        assertEquals("{\"token\":\"REDACTED\"}", ApiCallRedactor.redactJson("{\"token\" : \"at\"}"));
+        assertEquals("{\"parameters\":\"token=REDACTED&token_type_hint=access_token\"}",
+                ApiCallRedactor.redactJson("{\"parameters\":\"token=at&token_type_hint=access_token\"}"));
+        assertEquals("{\"parameters\":\"grant_type=password&username=user&password=REDACTED\"}",
+                ApiCallRedactor.redactJson("{\"parameters\":\"grant_type=password&username=user&password=pw\"}"));
+        assertEquals("{\"parameters\":\"code=REDACTED&code_verifier=REDACTED\"}",
+                ApiCallRedactor.redactJson("{\"parameters\":\"code=c&code_verifier=cv\"}"));
+
+        // Bodies without credentials and non-JSON bodies are kept as they are.
+        assertEquals("{\"subject\" : \"user\"}", ApiCallRedactor.redactJson("{\"subject\" : \"user\"}"));
+        assertEquals("<html>", ApiCallRedactor.redactJson("<html>"));
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright (C) 2020 Authlete, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.authlete.common.api;
+
+
+import static org.junit.Assert.*;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.junit.Test;
+
+
+public class UrlTemplateTest
+{
+    @Test
+    public void test_expand()
+    {
+        assertEquals("/api/client/get/123",
+                new UrlTemplate("/api/client/get/%d").expand(123L));
+
+        assertEquals("/api/client/secret/update/my-client/x",
+                new UrlTemplate("/api/client/secret/update/%s/x").expand("my-client"));
+
+        assertEquals("/api/client/get/list?developer=a+b%26c&start=0&end=5",
+                new UrlTemplate("/api/client/get/list", "developer", "start", "end").expand("a b&c", 0, 5));
+
+        assertEquals("/api/auth/token/get/list?clientIdentifier=&subject=u",
+                new UrlTemplate("/api/auth/token/get/list", "clientIdentifier", "subject").expand(null, "u"));
+
+        assertEquals("/api/service/configuration?pretty=true",
+                new UrlTemplate("/api/service/configuration", "pretty").expand(true));
+    }
+
+
+    @Test
+    public void test_expand_range()
+    {
+        assertEquals("/api/service/get/list?start=0&end=5",
+                new UrlTemplate("/api/service/get/list", "start", "end").expand(0, 5));
+
+        assertEquals("/api/client/get/list?developer=&start=-1&end=2147483647",
+                new UrlTemplate("/api/client/get/list", "developer", "start", "end").expand(null, -1, Integer.MAX_VALUE));
+
+        assertEquals("/api/auth/token/get/list?clientIdentifier=a%2Fb&subject=u+v&start=10&end=20",
+                new UrlTemplate("/api/auth/token/get/list", "clientIdentifier", "subject", "start", "end")
+                    .expand("a/b", "u v", 10, 20));
+    }
+
+
+    @Test(expected = IllegalArgumentException.class)
+    public void test_expand_range_mismatch()
+    {
+        new UrlTemplate("/api/client/get/%d", "start", "end").expand(0, 5);
+    }
+
+
+    @Test
+    public void test_append_query()
+    {
+        Map<String, String> query = new LinkedHashMap<String, String>();
+        query.put("start", "0");
+        query.put("", "ignored");
+        query.put("subject", "a/b");
+
+        assertEquals("/p?start=0&subject=a%2Fb", UrlTemplate.appendQuery("/p", query));
+        assertEquals("/p", UrlTemplate.appendQuery("/p", null));
+    }
+}
@@ -0,0 +1,190 @@
+/*
+ * Copyright (C) 2020 Authlete, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.authlete.common.conf;
+
+
+import static org.junit.Assert.*;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import com.authlete.common.api.AuthleteApi;
+import com.authlete.common.api.AuthleteApiFactory;
+import com.authlete.common.api.StubAuthleteServer;
+import com.authlete.common.web.BasicCredentials;
+
+
+public class ReloadablePropertiesConfigurationTest
+{
+    private static void write(File file, String baseUrl, String secret) throws Exception
+    {
+        String content =
+            "base_url = " + baseUrl + "\n" +
+            "service.api_key = 1001\n" +
+            "service.api_secret = " + secret + "\n";
+
+        // Replace the file atomically.
+        File temp = new File(file.getParentFile(), file.getName() + ".tmp");
+        Files.write(temp.toPath(), content.getBytes(StandardCharsets.UTF_8));
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+
+    private static File createDirectory() throws Exception
+    {
+        File directory = Files.createTempDirectory("authlete-conf").toFile();
+        directory.deleteOnExit();
+
+        return directory;
+    }
+
+
+    @Test
+    public void test_reload() throws Exception
+    {
+        File file = new File(createDirectory(), "authlete.properties");
+        write(file, "https://api.example.com", "secret1");
+
+        ReloadablePropertiesConfiguration conf = new ReloadablePropertiesConfiguration(file.getPath());
+
+        try
+        {
+            assertEquals("secret1", conf.getServiceApiSecret());
+
+            final BlockingQueue<AuthleteConfiguration> changes = new ArrayBlockingQueue<AuthleteConfiguration>(10);
+
+            conf.addListener(new ConfigurationListener() {
+                @Override
+                public void onConfigurationChanged(AuthleteConfiguration configuration)
+                {
+                    changes.add(configuration);
+                }
+            });
+
+            // Not changed.
+            assertFalse(conf.reload());
+
+            // Detected by the watcher.
+            write(file, "https://api.example.com", "secret2");
+
+            AuthleteConfiguration changed = changes.poll(10, TimeUnit.SECONDS);
+            assertNotNull(changed);
+            assertEquals("secret2", changed.getServiceApiSecret());
+            assertEquals("secret2", conf.getServiceApiSecret());
+            assertSame(changed, conf.getSnapshot());
+
+            // The current content is kept when the file is missing.
+            assertTrue(file.delete());
+            assertFalse(conf.reload());
+            assertEquals("secret2", conf.getServiceApiSecret());
+        }
+        finally
+        {
+            conf.close();
+            file.delete();
+        }
+    }
+
+
+    @Test
+    public void test_credentials_swap() throws Exception
+    {
+        StubAuthleteServer server = new StubAuthleteServer();
+        File file = new File(createDirectory(), "authlete.properties");
+        write(file, server.getBaseUrl(), "secret1");
+
+        ReloadablePropertiesConfiguration conf = new ReloadablePropertiesConfiguration(file.getPath());
+
+        try
+        {
+            AuthleteApi api = AuthleteApiFactory.create(conf, "com.authlete.common.api.AuthleteApiImpl");
+
+            api.getServiceConfiguration();
+            assertEquals(new BasicCredentials("1001", "secret1").format(), server.getLastAuthorization());
+
+            write(file, server.getBaseUrl(), "secret2");
+            conf.reload();
+
+            api.getServiceConfiguration();
+            assertEquals(new BasicCredentials("1001", "secret2").format(), server.getLastAuthorization());
+        }
+        finally
+        {
+            conf.close();
+            server.close();
+            file.delete();
+        }
+    }
+
+
+    @Test
+    public void test_symbolic_link_swap() throws Exception
+    {
+        // The layout of a ConfigMap mounted by Kubernetes.
+        //
+        //   authlete.properties -> ..data/authlete.properties
+        //   ..data -> ..2026_01_01
+        //   ..2026_01_01/authlete.properties
+        //
+        File directory = createDirectory();
+        File version1  = new File(directory, "..2026_01_01");
+        File version2  = new File(directory, "..2026_01_02");
+        assertTrue(version1.mkdir());
+        write(new File(version1, "authlete.properties"), "https://api.example.com", "secret1");
+
+        Path data = new File(directory, "..data").toPath();
+        Files.createSymbolicLink(data, version1.toPath().getFileName());
+        File file = new File(directory, "authlete.properties");
+        Files.createSymbolicLink(file.toPath(), data.getFileName().resolve("authlete.properties"));
+
+        ReloadablePropertiesConfiguration conf = new ReloadablePropertiesConfiguration(file.getPath());
+
+        try
+        {
+            assertEquals("secret1", conf.getServiceApiSecret());
+
+            final BlockingQueue<AuthleteConfiguration> changes = new ArrayBlockingQueue<AuthleteConfiguration>(10);
+
+            conf.addListener(new ConfigurationListener() {
+                @Override
+                public void onConfigurationChanged(AuthleteConfiguration configuration)
+                {
+                    changes.add(configuration);
+                }
+            });
+
+            // Swap '..data' atomically. No event is caused for the file.
+            assertTrue(version2.mkdir());
+            write(new File(version2, "authlete.properties"), "https://api.example.com", "secret2");
+            Path temp = new File(directory, "..data_tmp").toPath();
+            Files.createSymbolicLink(temp, version2.toPath().getFileName());
+            Files.move(temp, data, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+            AuthleteConfiguration changed = changes.poll(10, TimeUnit.SECONDS);
+            assertNotNull(changed);
+            assertEquals("secret2", changed.getServiceApiSecret());
+        }
+        finally
+        {
+            conf.close();
+        }
+    }
+}
@@ -0,0 +1,207 @@
+/*
+ * Copyright (C) 2020 Authlete, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.authlete.common.util;
+
+
+import static org.junit.Assert.*;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import org.junit.Test;
+import com.authlete.common.dto.AuthorizationResponse;
+import com.authlete.common.dto.Client;
+import com.authlete.common.dto.IntrospectionResponse;
+import com.authlete.common.types.GrantType;
+
+
+public class BinaryCodecTest
+{
+    private static final String CLIENT_JSON =
+        "{" +
+        "  \"number\": 3," +
+        "  \"developer\": \"dev0\"," +
+        "  \"clientId\": 4326385670," +
+        "  \"clientIdAlias\": \"my-client\"," +
+        "  \"clientIdAliasEnabled\": true," +
+        "  \"clientType\": \"CONFIDENTIAL\"," +
+        "  \"redirectUris\": [\"https://client.example.com/cb\", \"https://client.example.com/cb2\"]," +
+        "  \"responseTypes\": [\"CODE\", \"CODE_ID_TOKEN\"]," +
+        "  \"grantTypes\": [\"AUTHORIZATION_CODE\", \"REFRESH_TOKEN\"]," +
+        "  \"clientName\": \"My Client\"," +
+        "  \"clientNames\": [{\"tag\": \"ja\", \"value\": \"私のクライアント\"}]," +
+        "  \"logoUri\": \"https://client.example.com/logo.png\"," +
+        "  \"idTokenSignAlg\": \"RS256\"," +
+        "  \"extension\": {\"requestableScopes\": [\"openid\", \"profile\"], \"requestableScopesEnabled\": true}" +
+        "}";
+
+
+    private static final String AUTHORIZATION_RESPONSE_JSON =
+        "{" +
+        "  \"resultCode\": \"A004001\"," +
+        "  \"action\": \"INTERACTION\"," +
+        "  \"client\": " + CLIENT_JSON + "," +
+        "  \"service\": {\"apiKey\": 5526908833, \"serviceName\": \"My Service\"," +
+        "                \"supportedScopes\": [{\"name\": \"openid\", \"defaultEntry\": true}]}," +
+        "  \"display\": \"PAGE\"," +
+        "  \"maxAge\": -1," +
+        "  \"scopes\": [{\"name\": \"openid\"}, {\"name\": \"profile\"}]," +
+        "  \"acrEssential\": true," +
+        "  \"subject\": null," +
+        "  \"resources\": [\"https://rs.example.com\"]," +
+        "  \"ticket\": \"ticket-value\"" +
+        "}";
+
+
+    private static <T> T roundTrip(T object, Class<T> klass)
+    {
+        return BinaryCodec.decode(BinaryCodec.encode(object), klass);
+    }
+
+
+    @Test
+    public void test_client()
+    {
+        Client client = Utils.fromJson(CLIENT_JSON, Client.class);
+        Client copy   = roundTrip(client, Client.class);
+
+        assertEquals(Utils.toJson(client), Utils.toJson(copy));
+        assertEquals(4326385670L, copy.getClientId());
+        assertTrue(copy.isClientIdAliasEnabled());
+        assertArrayEquals(new GrantType[] { GrantType.AUTHORIZATION_CODE, GrantType.REFRESH_TOKEN },
+                copy.getGrantTypes());
+    }
+
+
+    @Test
+    public void test_authorization_response()
+    {
+        AuthorizationResponse response = Utils.fromJson(AUTHORIZATION_RESPONSE_JSON, AuthorizationResponse.class);
+        AuthorizationResponse copy     = roundTrip(response, AuthorizationResponse.class);
+
+        assertEquals(Utils.toJson(response), Utils.toJson(copy));
+        assertEquals(AuthorizationResponse.Action.INTERACTION, copy.getAction());
+        assertEquals("ticket-value", copy.getTicket());
+        assertEquals("My Service", copy.getService().getServiceName());
+        assertNull(copy.getSubject());
+    }
+
+
+    @Test
+    public void test_lazy_authorization_response()
+    {
+        AuthorizationResponse eager = AuthorizationResponse.fromJson(AUTHORIZATION_RESPONSE_JSON, false);
+        AuthorizationResponse lazy  = AuthorizationResponse.fromJson(AUTHORIZATION_RESPONSE_JSON, true);
+
+        // Lazily-bound objects must be encoded as well.
+        AuthorizationResponse copy = roundTrip(lazy, AuthorizationResponse.class);
+        assertEquals(Utils.toJson(eager), Utils.toJson(copy));
+
+        lazy = AuthorizationResponse.fromJson(AUTHORIZATION_RESPONSE_JSON, true);
+        assertEquals("ticket-value", lazy.getTicket());
+        assertEquals(4326385670L, lazy.getClient().getClientId());
+        assertEquals(Utils.toJson(eager), Utils.toJson(lazy));
+    }
+
+
+    @Test
+    public void test_null()
+    {
+        assertNull(roundTrip(null, IntrospectionResponse.class));
+    }
+
+
+    @Test
+    public void test_smaller_than_java_serialization() throws Exception
+    {
+        AuthorizationResponse response = Utils.fromJson(AUTHORIZATION_RESPONSE_JSON, AuthorizationResponse.class);
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        ObjectOutputStream oos = new ObjectOutputStream(baos);
+        oos.writeObject(response);
+        oos.close();
+
+        assertTrue(BinaryCodec.encode(response).length < baos.size());
+    }
+
+
+    @Test(expected = IllegalArgumentException.class)
+    public void test_malformed()
+    {
+        BinaryCodec.decode(new byte[] { 1, 2, 3 }, Client.class);
+    }
+
+
+    @Test
+    public void test_large_array()
+    {
+        String[] uris = new String[3000];
+
+        for (int i = 0; i < uris.length; ++i)
+        {
+            uris[i] = "https://client.example.com/cb" + i;
+        }
+
+        Client copy = roundTrip(new Client().setRedirectUris(uris), Client.class);
+
+        assertArrayEquals(uris, copy.getRedirectUris());
+    }
+
+
+    private static void assertCorrupt(byte[] data)
+    {
+        try
+        {
+            BinaryCodec.decode(new ByteArrayInputStream(data), Client.class);
+            fail();
+        }
+        catch (IOException e)
+        {
+            // Detected without allocating a buffer of the claimed length.
+        }
+    }
+
+
+    @Test
+    public void test_corrupt_lengths()
+    {
+        byte[] header = { (byte)0xA1, (byte)0xEB, 1, 1, 0 };
+
+        // Too many fields.
+        assertCorrupt(concat(header, new byte[] { (byte)0xFF, (byte)0xFF, (byte)0xFF, (byte)0xFF, 0x07 }));
+
+        // A field name of 0x7FFFFFF0 bytes in truncated input.
+        assertCorrupt(concat(header, new byte[] { 1, 1, (byte)0xF0, (byte)0xFF, (byte)0xFF, (byte)0xFF, 0x07 }));
+
+        // A string length which does not fit in an int.
+        assertCorrupt(concat(header, new byte[] { 1, 1, (byte)0xFF, (byte)0xFF, (byte)0xFF, (byte)0xFF, 0x7F }));
+
+        // "redirectUris" of 0x7FFFFFF0 strings in truncated input.
+        byte[] field = concat(new byte[] { 1, 1, 1, 12 }, "redirectUris".getBytes());
+        assertCorrupt(concat(header, concat(field,
+                new byte[] { 8, 4, (byte)0xF0, (byte)0xFF, (byte)0xFF, (byte)0xFF, 0x07, 1, 1, 'a' })));
+    }
+
+
+    private static byte[] concat(byte[] a, byte[] b)
+    {
+        byte[] c = new byte[a.length + b.length];
+        System.arraycopy(a, 0, c, 0, a.length);
+        System.arraycopy(b, 0, c, a.length, b.length);
+
+        return c;
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright (C) 2020 Authlete, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.authlete.common.util;
+
+
+import static org.junit.Assert.*;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.Test;
+import com.authlete.common.api.AuthleteApi;
+import com.authlete.common.api.AuthleteApiException;
+import com.authlete.common.api.FakeAuthleteApi;
+import com.authlete.common.dto.Client;
+import com.authlete.common.dto.IntrospectionRequest;
+import com.authlete.common.dto.IntrospectionResponse;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+
+public class CLITest
+{
+    private static AuthleteApi createApi()
+    {
+        return new FakeAuthleteApi()
+            .on("getClient", new FakeAuthleteApi.Handler() {
+                @Override
+                public Object handle(Object[] args)
+                {
+                    if (args[0] instanceof Long == false)
+                    {
+                        throw new UnsupportedOperationException("getClient(String)");
+                    }
+
+                    long clientId = (Long)args[0];
+
+                    if (clientId == 404)
+                    {
+                        throw new AuthleteApiException("Not found", 404, "Not Found", "{}");
+                    }
+
+                    return new Client().setClientId(clientId);
+                }
+            })
+            .on("introspection", new FakeAuthleteApi.Handler() {
+                @Override
+                public Object handle(Object[] args)
+                {
+                    IntrospectionResponse response = new IntrospectionResponse();
+                    response.setSubject(((IntrospectionRequest)args[0]).getToken());
+                    response.setAction(IntrospectionResponse.Action.OK);
+
+                    return response;
+                }
+            })
+            .on("getServiceConfiguration", new FakeAuthleteApi.Handler() {
+                @Override
+                public Object handle(Object[] args)
+                {
+                    return "{\n  \"issuer\": \"https://as.example.com\"\n}";
+                }
+            })
+            .create();
+    }
+
+
+    @Test
+    public void test_batch() throws Exception
+    {
+        String input =
+            "# comment\n" +
+            "getClient 1001\n" +
+            "\n" +
+            "introspection token=abc\n" +
+            "getServiceConfiguration pretty=true\n" +
+            "getClient 404\n" +
+            "getClient\n" +
+            "unknownApi\n";
+
+        StringWriter output = new StringWriter();
+        int failures = new CLI().executeBatch(createApi(), new StringReader(input), output, 3);
+
+        assertEquals(3, failures);
+
+        Map<Integer, JsonObject> results = new HashMap<Integer, JsonObject>();
+
+        for (String line : output.toString().split("\n"))
+        {
+            JsonObject object = new JsonParser().parse(line).getAsJsonObject();
+            results.put(object.get("line").getAsInt(), object);
+        }
+
+        assertEquals(6, results.size());
+        assertEquals(1001, results.get(2).getAsJsonObject("result").get("clientId").getAsLong());
+        assertEquals("abc", results.get(4).getAsJsonObject("result").get("subject").getAsString());
+        assertEquals("https://as.example.com",
+                results.get(5).getAsJsonObject("result").get("issuer").getAsString());
+        assertEquals(404, results.get(6).getAsJsonObject("error").get("statusCode").getAsInt());
+        assertTrue(results.get(7).has("error"));
+        assertEquals("unknownApi", results.get(8).get("command").getAsString());
+        assertTrue(results.get(8).has("error"));
+    }
+
+
+    @Test
+    public void test_bench() throws Exception
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        PrintStream out = new PrintStream(bytes, true, "UTF-8");
+        CLI cli = new CLI();
+
+        cli.executeBench(createApi(), CLI.Command.parse(new String[] { "getClient", "404" }, 0), 2, 0, 200, out);
+
+        String report = bytes.toString("UTF-8");
+
+        assertTrue(report, report.contains("API:          getClient"));
+        assertTrue(report, report.contains("Successes:    0"));
+        assertTrue(report, report.contains("status 404:"));
+        assertTrue(report, report.contains("Latency (ms): min="));
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright (C) 2020 Authlete, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.authlete.common.util;
+
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+import com.authlete.common.dto.Client;
+import com.authlete.common.dto.ClientListResponse;
+import com.authlete.common.types.ClientType;
+
+
+public class FieldMaskTest
+{
+    private static final String CLIENT_LIST_JSON =
+        "{" +
+        "  \"start\": 0," +
+        "  \"end\": 2," +
+        "  \"totalCount\": 2," +
+        "  \"clients\": [" +
+        "    {\"clientId\": 1, \"clientName\": \"A\", \"clientType\": \"PUBLIC\"," +
+        "     \"redirectUris\": [\"https://a.example.com/cb\"]," +
+        "     \"extension\": {\"requestableScopes\": [\"openid\"]}}," +
+        "    {\"clientId\": 2, \"clientName\": null, \"clientType\": \"CONFIDENTIAL\"," +
+        "     \"clientNames\": [{\"tag\": \"ja\", \"value\": \"B\"}]}" +
+        "  ]" +
+        "}";
+
+
+    @Test
+    public void test_client_list()
+    {
+        FieldMask mask = new FieldMask()
+            .include(Client.class, "clientId", "clientName", "clientType");
+
+        ClientListResponse response = Utils.fromJson(CLIENT_LIST_JSON, ClientListResponse.class, mask);
+
+        // The container is not masked.
+        assertEquals(2, response.getTotalCount());
+
+        Client[] clients = response.getClients();
+        assertEquals(2, clients.length);
+
+        assertEquals(1L, clients[0].getClientId());
+        assertEquals("A", clients[0].getClientName());
+        assertEquals(ClientType.PUBLIC, clients[0].getClientType());
+        assertNull(clients[0].getRedirectUris());
+        assertNull(clients[0].getExtension());
+
+        assertEquals(2L, clients[1].getClientId());
+        assertNull(clients[1].getClientName());
+        assertNull(clients[1].getClientNames());
+    }
+
+
+    @Test
+    public void test_client_list_with_string_pool()
+    {
+        FieldMask mask = new FieldMask()
+            .include(Client.class, "clientId", "redirectUris");
+
+        StringPool pool = new StringPool();
+
+        String json = CLIENT_LIST_JSON.replace("\"clientNames\"", "\"redirectUris\": [\"https://a.example.com/cb\"], \"x\"");
+        Client[] clients = Utils.fromJson(json, ClientListResponse.class, mask, pool).getClients();
+
+        // Equal values share the same instance.
+        assertSame(clients[0].getRedirectUris()[0], clients[1].getRedirectUris()[0]);
+    }
+
+
+    @Test(expected = IllegalArgumentException.class)
+    public void test_unknown_field()
+    {
+        new FieldMask().include(Client.class, "noSuchField");
+    }
+}
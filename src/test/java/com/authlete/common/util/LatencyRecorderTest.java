@@ -0,0 +1,118 @@
+/*
+ * Copyright (C) 2020 Authlete, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.authlete.common.util;
+
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+
+public class LatencyRecorderTest
+{
+    private static void assertClose(long expected, long actual)
+    {
+        assertTrue(expected + " vs " + actual,
+                Math.abs(expected - actual) <= expected / 32);
+    }
+
+
+    @Test
+    public void test_empty()
+    {
+        LatencyRecorder recorder = new LatencyRecorder();
+
+        assertEquals(0, recorder.getCount());
+        assertEquals(0, recorder.getMean());
+        assertEquals(0, recorder.getPercentile(99));
+    }
+
+
+    @Test
+    public void test_small_values_are_exact()
+    {
+        LatencyRecorder recorder = new LatencyRecorder();
+
+        for (int i = 1; i <= 50; i++)
+        {
+            recorder.record(i);
+        }
+
+        assertEquals(1, recorder.getPercentile(0));
+        assertEquals(25, recorder.getPercentile(50));
+        assertEquals(45, recorder.getPercentile(90));
+        assertEquals(50, recorder.getPercentile(100));
+    }
+
+
+    @Test
+    public void test_percentiles()
+    {
+        LatencyRecorder recorder = new LatencyRecorder();
+
+        for (int i = 1; i <= 100000; i++)
+        {
+            recorder.record(i * 1000L);
+        }
+
+        assertEquals(100000, recorder.getCount());
+        assertEquals(50000500, recorder.getMean());
+        assertEquals(1000, recorder.getPercentile(0));
+        assertClose(50000000, recorder.getPercentile(50));
+        assertClose(99000000, recorder.getPercentile(99));
+        assertClose(99900000, recorder.getPercentile(99.9));
+        assertEquals(100000000, recorder.getPercentile(100));
+    }
+
+
+    @Test
+    public void test_large_values()
+    {
+        LatencyRecorder recorder = new LatencyRecorder()
+            .record(Long.MAX_VALUE / 2).record(Long.MAX_VALUE).record(-1);
+
+        assertEquals(0, recorder.getPercentile(0));
+        assertClose(Long.MAX_VALUE / 2, recorder.getPercentile(50));
+        assertEquals(Long.MAX_VALUE, recorder.getPercentile(100));
+    }
+
+
+    @Test
+    public void test_merge()
+    {
+        LatencyRecorder a = new LatencyRecorder();
+        LatencyRecorder b = new LatencyRecorder();
+
+        for (int i = 1; i <= 1000; i++)
+        {
+            ((i % 2 == 0) ? a : b).record(i * 1000000L);
+        }
+
+        a.merge(b).merge(null).merge(new LatencyRecorder());
+
+        assertEquals(1000, a.getCount());
+        assertEquals(500500000, a.getMean());
+        assertEquals(1000000, a.getPercentile(0));
+        assertClose(500000000, a.getPercentile(50));
+        assertEquals(1000000000, a.getPercentile(100));
+    }
+
+
+    @Test(expected = IllegalArgumentException.class)
+    public void test_out_of_range()
+    {
+        new LatencyRecorder().getPercentile(101);
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright (C) 2020 Authlete, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.authlete.common.util;
+
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+import com.authlete.common.dto.Client;
+import com.authlete.common.dto.ClientListResponse;
+
+
+public class StringPoolTest
+{
+    private static final String CLIENT_LIST_JSON =
+            "{\"clients\":[" +
+            "{\"clientId\":1,\"clientIdAlias\":\"app\",\"clientSecret\":\"secret-1\",\"redirectUris\":[\"https://a.example.com/cb\"]}," +
+            "{\"clientId\":2,\"clientIdAlias\":\"app\",\"clientSecret\":\"secret-1\",\"redirectUris\":[\"https://a.example.com/cb\"]}" +
+            "]}";
+
+
+    @Test
+    public void test_pooled_fields_only()
+    {
+        StringPool pool = new StringPool();
+
+        Client[] clients = Utils.fromJson(CLIENT_LIST_JSON, ClientListResponse.class, null, pool).getClients();
+
+        assertSame(clients[0].getClientIdAlias(), clients[1].getClientIdAlias());
+        assertSame(clients[0].getRedirectUris()[0], clients[1].getRedirectUris()[0]);
+
+        // Secrets are not pooled.
+        assertNotSame(clients[0].getClientSecret(), clients[1].getClientSecret());
+        assertEquals(2, pool.size());
+    }
+
+
+    @Test
+    public void test_eviction()
+    {
+        StringPool pool = new StringPool(4, 256);
+
+        String hot = pool.intern(new String("hot"));
+
+        for (int i = 0; i < 100; i++)
+        {
+            pool.intern("value-" + i);
+
+            // A string in use stays in the pool.
+            assertSame(hot, pool.intern(new String("hot")));
+        }
+
+        assertTrue(pool.size() <= 4);
+    }
+}
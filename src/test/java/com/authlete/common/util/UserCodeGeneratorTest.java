@@ -0,0 +1,73 @@
+/*
+ * Copyright (C) 2020 Authlete, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.authlete.common.util;
+
+
+import static org.junit.Assert.*;
+import java.util.Random;
+import org.junit.Test;
+import com.authlete.common.types.UserCodeCharset;
+
+
+public class UserCodeGeneratorTest
+{
+    @Test
+    public void test_batch()
+    {
+        String characters = UserCodeCharset.BASE20.getCharacters();
+        String[] userCodes = new UserCodeGenerator().generate(2000);
+
+        assertEquals(2000, userCodes.length);
+
+        int[] counts = new int[characters.length()];
+
+        for (String userCode : userCodes)
+        {
+            assertEquals(8, userCode.length());
+
+            for (int i = 0; i < userCode.length(); ++i)
+            {
+                int index = characters.indexOf(userCode.charAt(i));
+                assertTrue(0 <= index);
+                ++counts[index];
+            }
+        }
+
+        // 16000 characters, 800 of each on average.
+        for (int count : counts)
+        {
+            assertTrue(600 < count && count < 1000);
+        }
+    }
+
+
+    @Test
+    public void test_given_random()
+    {
+        // A given Random is used in the same way as before.
+        String userCode = new UserCodeGenerator("ABC", 4, new Random(1)).generate();
+
+        Random random = new Random(1);
+        StringBuilder expected = new StringBuilder();
+
+        for (int i = 0; i < 4; ++i)
+        {
+            expected.append("ABC".charAt(random.nextInt(3)));
+        }
+
+        assertEquals(expected.toString(), userCode);
+    }
+}
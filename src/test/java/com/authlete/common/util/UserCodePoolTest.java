@@ -0,0 +1,95 @@
+/*
+ * Copyright (C) 2020 Authlete, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.authlete.common.util;
+
+
+import static org.junit.Assert.*;
+import java.util.HashSet;
+import java.util.Set;
+import org.junit.Test;
+
+
+public class UserCodePoolTest
+{
+    @Test
+    public void test_unique()
+    {
+        // 3^6 = 729 possible user codes.
+        UserCodePool pool = new UserCodePool("ABC", 6, 16);
+        Set<String> userCodes = new HashSet<String>();
+
+        try
+        {
+            for (int i = 0; i < 600; ++i)
+            {
+                assertTrue(userCodes.add(pool.acquire(60000)));
+            }
+
+            assertEquals(600, pool.getActiveCount());
+
+            String userCode = userCodes.iterator().next();
+            assertTrue(pool.isActive(userCode));
+            assertTrue(pool.release(userCode));
+            assertFalse(pool.isActive(userCode));
+            assertFalse(pool.release(userCode));
+            assertEquals(599, pool.getActiveCount());
+        }
+        finally
+        {
+            pool.close();
+        }
+    }
+
+
+    @Test
+    public void test_expiry() throws Exception
+    {
+        // 2^4 = 16 possible user codes.
+        UserCodePool pool = new UserCodePool("AB", 4, 4);
+
+        try
+        {
+            for (int i = 0; i < 16; ++i)
+            {
+                pool.acquire(50);
+            }
+
+            try
+            {
+                pool.acquire(50);
+                fail();
+            }
+            catch (IllegalStateException e)
+            {
+                // All the user codes are active.
+            }
+
+            Thread.sleep(100);
+
+            // Expired user codes are handed out again.
+            for (int i = 0; i < 16; ++i)
+            {
+                pool.acquire(60000);
+            }
+
+            assertEquals(16, pool.getActiveCount());
+        }
+        finally
+        {
+            pool.close();
+        }
+    }
+}
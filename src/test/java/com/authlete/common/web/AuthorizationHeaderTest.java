@@ -0,0 +1,66 @@
+/*
+ * Copyright (C) 2020 Authlete, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.authlete.common.web;
+
+
+import static org.junit.Assert.*;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import org.junit.Test;
+
+
+public class AuthorizationHeaderTest
+{
+    @Test
+    public void test_basic()
+    {
+        BasicCredentials credentials = new BasicCredentials("user", "pass");
+        AuthorizationHeader header = credentials.toAuthorizationHeader();
+
+        assertSame(header, credentials.toAuthorizationHeader());
+        assertEquals("Basic dXNlcjpwYXNz", header.getValue());
+        assertEquals(header.getValue().length(), header.length());
+        assertArrayEquals(header.getValue().getBytes(StandardCharsets.ISO_8859_1), header.toByteArray());
+        assertEquals("Authorization: Basic ***", header.toString());
+    }
+
+
+    @Test
+    public void test_write() throws Exception
+    {
+        AuthorizationHeader header = AuthorizationHeader.bearer("token");
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        header.writeTo(out);
+        assertEquals("Bearer token", new String(out.toByteArray(), StandardCharsets.ISO_8859_1));
+
+        out.reset();
+        header.writeFieldTo(out);
+        assertEquals("Authorization: Bearer token\r\n", new String(out.toByteArray(), StandardCharsets.ISO_8859_1));
+
+        ByteBuffer buffer = ByteBuffer.allocate(header.length());
+        header.writeTo(buffer);
+        assertEquals(0, buffer.remaining());
+    }
+
+
+    @Test(expected = IllegalArgumentException.class)
+    public void test_bearer_illegal()
+    {
+        AuthorizationHeader.bearer("a\r\nX-Injected: b");
+    }
+}
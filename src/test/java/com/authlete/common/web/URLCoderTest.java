@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2020 Authlete, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.authlete.common.web;
+
+
+import static org.junit.Assert.*;
+import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.Test;
+
+
+public class URLCoderTest
+{
+    @Test
+    public void test_encode_same_as_urlencoder() throws Exception
+    {
+        String[] inputs = {
+            "", "abcXYZ019.-*_", "a b+c&d=e/f?g", "éあ😀", "~!'()", "\ud800x"
+        };
+
+        for (String input : inputs)
+        {
+            assertEquals(input, URLEncoder.encode(input, "UTF-8"), URLCoder.encode(input));
+        }
+    }
+
+
+    @Test
+    public void test_form_url_encode()
+    {
+        Map<String, Object> parameters = new LinkedHashMap<String, Object>();
+        parameters.put("grant_type", new String[] { "authorization_code" });
+        parameters.put("redirect_uri", Arrays.asList("https://client.example.com/cb"));
+        parameters.put("scope", Arrays.asList("openid", "email profile"));
+        parameters.put("empty", new String[0]);
+        parameters.put("", new String[] { "ignored" });
+
+        String expected = "grant_type=authorization_code"
+                + "&redirect_uri=https%3A%2F%2Fclient.example.com%2Fcb"
+                + "&scope=openid&scope=email+profile&empty";
+
+        assertEquals(expected, URLCoder.formUrlEncode(parameters));
+
+        ByteBuffer buffer = ByteBuffer.allocate(256);
+        URLCoder.formUrlEncode(parameters, buffer);
+        assertEquals(expected, new String(buffer.array(), 0, buffer.position(), StandardCharsets.US_ASCII));
+    }
+
+
+    @Test
+    public void test_form_url_decode()
+    {
+        Map<String, List<String>> parameters =
+                URLCoder.formUrlDecode("a=1&b=x+y%2Fz&&a=%E3%81%82&c&d=&e=%zz%2");
+
+        assertEquals(Arrays.asList("1", "あ"), parameters.get("a"));
+        assertEquals(Arrays.asList("x y/z"), parameters.get("b"));
+        assertEquals(Arrays.asList(""), parameters.get("c"));
+        assertEquals(Arrays.asList(""), parameters.get("d"));
+        assertEquals(Arrays.asList("%zz%2"), parameters.get("e"));
+        assertEquals(5, parameters.size());
+    }
+}